@@ -101,36 +101,87 @@ public class SCrypt {
     */
    public static byte[] scryptJ(byte[] passwd, byte[] salt, int N, int r, int p, int dkLen,
          SCryptProgress progressTracker) throws GeneralSecurityException, InterruptedException {
-      if (N == 0 || (N & (N - 1)) != 0)
-         throw new IllegalArgumentException("N must be > 0 and a power of 2");
+      return scryptJ(passwd, salt, dkLen, progressTracker, new Workspace(N, r, p));
+   }
 
-      if (N > MAX_VALUE / 128 / r)
-         throw new IllegalArgumentException("Parameter N is too large");
-      if (r > MAX_VALUE / 128 / p)
-         throw new IllegalArgumentException("Parameter r is too large");
+   /**
+    * Buffers for scrypt runs with the same parameters, most of all V with its
+    * N * 128 * r bytes. Reusing a workspace avoids allocating them for every
+    * run. A workspace may only be used by one thread at a time.
+    */
+   public static class Workspace {
+      private final int N;
+      private final int r;
+      private final int p;
+      private final byte[] B;
+      private final byte[] XY;
+      private final byte[][] V;
+      private final byte[] X = new byte[64];
+      private final int[] B32 = new int[16];
+      private final int[] x = new int[16];
+
+      public Workspace(int N, int r, int p) {
+         if (N == 0 || (N & (N - 1)) != 0)
+            throw new IllegalArgumentException("N must be > 0 and a power of 2");
+
+         if (N > MAX_VALUE / 128 / r)
+            throw new IllegalArgumentException("Parameter N is too large");
+         if (r > MAX_VALUE / 128 / p)
+            throw new IllegalArgumentException("Parameter r is too large");
+
+         this.N = N;
+         this.r = r;
+         this.p = p;
+         B = new byte[128 * r * p];
+         XY = new byte[256 * r];
+         // The original SCrypt implementation uses one big V array with N * 128 *
+         // r bytes. We have observed that this may cause problems on some android
+         // devices due to memory fragmentation. Instead we allocate N arrays of
+         // size 128 * r.
+         V = new byte[N][];
+         for (int i = 0; i < N; i++) {
+            V[i] = new byte[128 * r];
+         }
+      }
+   }
+
+   /**
+    * Pure Java implementation of the <a
+    * href="http://www.tarsnap.com/scrypt/scrypt.pdf"/>scrypt KDF</a> with the
+    * parameters and buffers of a workspace.
+    * 
+    * @param passwd
+    *           Password.
+    * @param salt
+    *           Salt.
+    * @param dkLen
+    *           Intended length of the derived key.
+    * @param workspace
+    *           The parameters N, r and p and the buffers to use.
+    * 
+    * @return The derived key.
+    * 
+    * @throws GeneralSecurityException
+    *            when HMAC_SHA256 is not available.
+    * @throws InterruptedException
+    */
+   public static byte[] scryptJ(byte[] passwd, byte[] salt, int dkLen, SCryptProgress progressTracker,
+         Workspace workspace) throws GeneralSecurityException, InterruptedException {
+      int r = workspace.r;
+      int p = workspace.p;
+      byte[] B = workspace.B;
 
       Mac mac = Mac.getInstance("HmacSHA256");
       mac.init(new SecretKeySpec(passwd, "HmacSHA256"));
 
       byte[] DK = new byte[dkLen];
 
-      byte[] B = new byte[128 * r * p];
-      byte[] XY = new byte[256 * r];
-      // The original SCrypt implementation uses one big V array with N * 128 *
-      // r bytes. We have observed that this may cause problems on some android
-      // devices due to memory fragmentation. Instead we allocate N arrays of
-      // size 128 * r.
-      byte[][] V = new byte[N][];
-      for (int i = 0; i < N; i++) {
-         V[i] = new byte[128 * r];
-      }
-      
       int i;
 
       PBKDF.pbkdf2(mac, salt, 1, B, p * 128 * r);
 
       for (i = 0; i < p; i++) {
-         smix(B, i * 128 * r, r, N, V, XY, progressTracker);
+         smix(B, i * 128 * r, workspace, progressTracker);
          if (progressTracker != null) {
             progressTracker.setProgressP(i+1);
          }
@@ -142,6 +193,16 @@ public class SCrypt {
 
    public static void smix(byte[] B, int Bi, int r, int N, byte[][] V, byte[] XY, SCryptProgress progressTracker)
          throws InterruptedException {
+      smix(B, Bi, r, N, V, XY, new byte[64], new int[16], new int[16], progressTracker);
+   }
+
+   private static void smix(byte[] B, int Bi, Workspace w, SCryptProgress progressTracker)
+         throws InterruptedException {
+      smix(B, Bi, w.r, w.N, w.V, w.XY, w.X, w.B32, w.x, progressTracker);
+   }
+
+   private static void smix(byte[] B, int Bi, int r, int N, byte[][] V, byte[] XY, byte[] X, int[] B32, int[] x,
+         SCryptProgress progressTracker) throws InterruptedException {
       int Xi = 0;
       int Yi = 128 * r;
       int i;
@@ -150,7 +211,7 @@ public class SCrypt {
 
       for (i = 0; i < N; i++) {
          arraycopy(XY, Xi, V[i], 0, 128 * r);
-         blockmix_salsa8(XY, Xi, Yi, r);
+         blockmix_salsa8(XY, Xi, Yi, r, X, B32, x);
          if (progressTracker != null) {
             progressTracker.setProgressN1(i);
          }
@@ -159,7 +220,7 @@ public class SCrypt {
       for (i = 0; i < N; i++) {
          int j = integerify(XY, Xi, r) & (N - 1);
          blockxor(V[j], 0, XY, Xi, 128 * r);
-         blockmix_salsa8(XY, Xi, Yi, r);
+         blockmix_salsa8(XY, Xi, Yi, r, X, B32, x);
          if (progressTracker != null) {
             progressTracker.setProgressN2(i);
          }
@@ -169,14 +230,18 @@ public class SCrypt {
    }
 
    public static void blockmix_salsa8(byte[] BY, int Bi, int Yi, int r) {
-      byte[] X = new byte[64];
+      blockmix_salsa8(BY, Bi, Yi, r, new byte[64], new int[16], new int[16]);
+   }
+
+   // X, B32 and x are scratch buffers, which are not allocated per block
+   private static void blockmix_salsa8(byte[] BY, int Bi, int Yi, int r, byte[] X, int[] B32, int[] x) {
       int i;
 
       arraycopy(BY, Bi + (2 * r - 1) * 64, X, 0, 64);
 
       for (i = 0; i < 2 * r; i++) {
          blockxor(BY, i * 64, X, 0, 64);
-         salsa20_8(X);
+         salsa20_8(X, B32, x);
          arraycopy(X, 0, BY, Yi + (i * 64), 64);
       }
 
@@ -194,8 +259,10 @@ public class SCrypt {
    }
 
    public static void salsa20_8(byte[] B) {
-      int[] B32 = new int[16];
-      int[] x = new int[16];
+      salsa20_8(B, new int[16], new int[16]);
+   }
+
+   private static void salsa20_8(byte[] B, int[] B32, int[] x) {
       int i;
 
       for (i = 0; i < 16; i++) {
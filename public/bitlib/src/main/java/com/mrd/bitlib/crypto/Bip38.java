@@ -66,11 +66,21 @@ public class Bip38 {
     */
    public static byte[] bip38Stretch1(String passphrase, byte[] salt, SCryptProgress progressTracker, int outputSize)
          throws InterruptedException {
-      byte[] derived;
+      return bip38Stretch1(passphrase, salt, progressTracker, outputSize, null);
+   }
+
+   /**
+    * Perform BIP38 password stretching in the buffers of a scrypt workspace
+    * with the BIP38 parameters, or in new buffers if the workspace is null
+    */
+   static byte[] bip38Stretch1(String passphrase, byte[] salt, SCryptProgress progressTracker, int outputSize,
+                               SCrypt.Workspace workspace) throws InterruptedException {
       try {
-         derived = SCrypt.scrypt(passphrase.getBytes("UTF-8"), salt, SCRYPT_N, SCRYPT_R, SCRYPT_P, outputSize,
-               progressTracker);
-         return derived;
+         byte[] passwd = passphrase.getBytes(BIP38_CHARACTER_ENCODING);
+         if (workspace == null) {
+            return SCrypt.scrypt(passwd, salt, SCRYPT_N, SCRYPT_R, SCRYPT_P, outputSize, progressTracker);
+         }
+         return SCrypt.scryptJ(passwd, salt, outputSize, progressTracker, workspace);
       } catch (UnsupportedEncodingException e) {
          throw new RuntimeException(e);
       } catch (GeneralSecurityException e) {
@@ -251,6 +261,11 @@ public class Bip38 {
 
    public static String decryptEcMultiply(Bip38PrivateKey bip38Key, String passphrase, SCryptProgress progressTracker,
                                           NetworkParameters network) throws InterruptedException {
+      return decryptEcMultiply(bip38Key, passphrase, progressTracker, network, null);
+   }
+
+   static String decryptEcMultiply(Bip38PrivateKey bip38Key, String passphrase, SCryptProgress progressTracker,
+                                   NetworkParameters network, SCrypt.Workspace workspace) throws InterruptedException {
       // Get 8 byte Owner Salt
       byte[] ownerEntropy = new byte[8];
       System.arraycopy(bip38Key.data, 0, ownerEntropy, 0, 8);
@@ -262,7 +277,7 @@ public class Bip38 {
       }
 
       // Stretch to get Pass Factor
-      byte[] passFactor = bip38Stretch1(passphrase, ownerSalt, progressTracker, 32);
+      byte[] passFactor = bip38Stretch1(passphrase, ownerSalt, progressTracker, 32, workspace);
 
       if (bip38Key.lotSequence) {
          byte[] tmp = new byte[40];
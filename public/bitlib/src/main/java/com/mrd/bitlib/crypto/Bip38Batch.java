@@ -0,0 +1,280 @@
+/*
+ * Copyright 2013, 2014 Megion Research & Development GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.mrd.bitlib.crypto;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.lambdaworks.crypto.SCrypt;
+import com.lambdaworks.crypto.SCryptProgress;
+import com.mrd.bitlib.crypto.Bip38.Bip38PrivateKey;
+import com.mrd.bitlib.model.Address;
+import com.mrd.bitlib.model.NetworkParameters;
+
+/**
+ * Encrypts or decrypts a batch of keys with BIP38 and one passphrase, such as
+ * the paper wallets of an event.
+ * <p/>
+ * The keys are spread over at most the given number of workers of an
+ * executor. Every worker allocates one scrypt workspace of 16 MB and reuses it
+ * for all keys it takes, so the memory needed is bounded by the number of
+ * workers and not by the number of keys. Each key has its own progress tracker, see {@link #getProgress(int)}.
+ * A batch may be cancelled from any thread, see {@link #cancel()}.
+ * <p/>
+ * A batch is used once.
+ */
+public class Bip38Batch {
+
+   private interface KeyTask {
+      String process(int index, SCrypt.Workspace workspace) throws InterruptedException;
+   }
+
+   private final SCryptProgress[] _progress;
+   private final String[] _results;
+   private volatile boolean _cancelled;
+   private volatile boolean _rejected;
+
+   /**
+    * @param size
+    *           the number of keys to encrypt or decrypt
+    */
+   public Bip38Batch(int size) {
+      _progress = new SCryptProgress[size];
+      for (int i = 0; i < size; i++) {
+         _progress[i] = Bip38.getScryptProgressTracker();
+      }
+      _results = new String[size];
+   }
+
+   /**
+    * Encrypt private keys with a passphrase using BIP38 without EC
+    * multiplication
+    * 
+    * @param executor
+    *           the workers to use, or null to encrypt on the calling thread
+    * @param maxWorkers
+    *           the maximum number of keys encrypted at the same time, each
+    *           taking a scrypt workspace of 16 MB
+    * @return the BIP38 encrypted keys in the same order
+    * @throws InterruptedException
+    *            if the batch was cancelled
+    */
+   public List<String> encrypt(final String passphrase, final List<InMemoryPrivateKey> keys,
+         final NetworkParameters network, ExecutorService executor, int maxWorkers) throws InterruptedException {
+      checkSize(keys.size());
+      run(new KeyTask() {
+         @Override
+         public String process(int index, SCrypt.Workspace workspace) throws InterruptedException {
+            InMemoryPrivateKey key = keys.get(index);
+            Address address = key.getPublicKey().toAddress(network);
+            byte[] salt = Bip38.calculateScryptSalt(address);
+            byte[] stretched = Bip38.bip38Stretch1(passphrase, salt, _progress[index], Bip38.SCRYPT_LENGTH,
+                  workspace);
+            return Bip38.encryptNoEcMultiply(stretched, key, salt);
+         }
+      }, executor, maxWorkers);
+      return Arrays.asList(_results);
+   }
+
+   /**
+    * Decrypt BIP38 encrypted private keys with a passphrase.
+    * <p/>
+    * A wrong passphrase is detected by the address hash check of the first
+    * key which is decrypted with it. The batch then stops, the remaining keys
+    * share the passphrase and are not stretched in vain.
+    * 
+    * @param executor
+    *           the workers to use, or null to decrypt on the calling thread
+    * @param maxWorkers
+    *           the maximum number of keys decrypted at the same time, each
+    *           taking a scrypt workspace of 16 MB
+    * @return the private keys in SIPA format in the same order, or null if the
+    *         passphrase is wrong or the keys are not for the network
+    * @throws IllegalArgumentException
+    *            if a key is not BIP38 encrypted or maxWorkers is not positive
+    * @throws InterruptedException
+    *            if the batch was cancelled
+    */
+   public List<String> decrypt(final String passphrase, List<String> encryptedKeys, final NetworkParameters network,
+         ExecutorService executor, int maxWorkers) throws InterruptedException {
+      checkSize(encryptedKeys.size());
+      final List<Bip38PrivateKey> parsed = new ArrayList<Bip38PrivateKey>(encryptedKeys.size());
+      for (String encryptedKey : encryptedKeys) {
+         Bip38PrivateKey key = Bip38.parseBip38PrivateKey(encryptedKey);
+         if (key == null) {
+            throw new IllegalArgumentException("Not a BIP38 encrypted key: " + parsed.size());
+         }
+         parsed.add(key);
+      }
+      run(new KeyTask() {
+         @Override
+         public String process(int index, SCrypt.Workspace workspace) throws InterruptedException {
+            Bip38PrivateKey key = parsed.get(index);
+            String result;
+            if (key.ecMultiply) {
+               result = Bip38.decryptEcMultiply(key, passphrase, _progress[index], network, workspace);
+            } else {
+               byte[] stretched = Bip38.bip38Stretch1(passphrase, key.salt, _progress[index], Bip38.SCRYPT_LENGTH,
+                     workspace);
+               result = Bip38.decryptNoEcMultiply(key, stretched, network);
+            }
+            if (result == null) {
+               _rejected = true;
+               terminateAll();
+            }
+            return result;
+         }
+      }, executor, maxWorkers);
+      return _rejected ? null : Arrays.asList(_results);
+   }
+
+   private void checkSize(int size) {
+      if (size != _results.length) {
+         throw new IllegalArgumentException("Batch size is " + _results.length + " but got " + size + " keys");
+      }
+   }
+
+   private void run(final KeyTask task, ExecutorService executor, int maxWorkers) throws InterruptedException {
+      if (maxWorkers < 1) {
+         throw new IllegalArgumentException("At least one worker is needed, got " + maxWorkers);
+      }
+      final AtomicInteger next = new AtomicInteger();
+      Callable<Void> worker = new Callable<Void>() {
+         @Override
+         public Void call() throws InterruptedException {
+            // Only allocated if there is a key left for this worker
+            SCrypt.Workspace workspace = null;
+            int index;
+            while ((index = next.getAndIncrement()) < _results.length) {
+               if (_cancelled) {
+                  throw new InterruptedException();
+               }
+               if (_rejected) {
+                  break;
+               }
+               if (workspace == null) {
+                  workspace = new SCrypt.Workspace(Bip38.SCRYPT_N, Bip38.SCRYPT_R, Bip38.SCRYPT_P);
+               }
+               try {
+                  _results[index] = task.process(index, workspace);
+               } catch (InterruptedException e) {
+                  if (!_rejected || _cancelled) {
+                     throw e;
+                  }
+               }
+            }
+            return null;
+         }
+      };
+      if (executor == null) {
+         try {
+            worker.call();
+         } catch (InterruptedException e) {
+            throw e;
+         } catch (Exception e) {
+            throw new RuntimeException(e);
+         }
+         return;
+      }
+
+      int workers = Math.min(_results.length, maxWorkers);
+      List<Future<Void>> futures = new ArrayList<Future<Void>>(workers);
+      for (int i = 0; i < workers; i++) {
+         futures.add(executor.submit(worker));
+      }
+      try {
+         for (Future<Void> future : futures) {
+            try {
+               future.get();
+            } catch (ExecutionException e) {
+               if (e.getCause() instanceof InterruptedException) {
+                  throw (InterruptedException) e.getCause();
+               }
+               cancel();
+               if (e.getCause() instanceof RuntimeException) {
+                  throw (RuntimeException) e.getCause();
+               }
+               throw new RuntimeException(e.getCause());
+            }
+         }
+      } catch (InterruptedException e) {
+         // Either cancelled or the calling thread was interrupted, stop all workers
+         cancel();
+         throw e;
+      }
+   }
+
+   private void terminateAll() {
+      for (SCryptProgress progress : _progress) {
+         progress.terminate();
+      }
+   }
+
+   /**
+    * Stop the batch, the running encryption or decryption throws an
+    * {@link InterruptedException}
+    */
+   public void cancel() {
+      _cancelled = true;
+      terminateAll();
+   }
+
+   public boolean isCancelled() {
+      return _cancelled;
+   }
+
+   /**
+    * Get the progress tracker of one key
+    */
+   public SCryptProgress getProgress(int index) {
+      return _progress[index];
+   }
+
+   /**
+    * Get the progress of the whole batch between 0 and 1
+    */
+   public double getProgress() {
+      if (_progress.length == 0) {
+         return 1;
+      }
+      double sum = 0;
+      for (SCryptProgress progress : _progress) {
+         sum += progress.getProgress();
+      }
+      return sum / _progress.length;
+   }
+
+   /**
+    * Get the number of keys which are encrypted or decrypted
+    */
+   public int getCompletedCount() {
+      int completed = 0;
+      for (String result : _results) {
+         if (result != null) {
+            completed++;
+         }
+      }
+      return completed;
+   }
+
+}
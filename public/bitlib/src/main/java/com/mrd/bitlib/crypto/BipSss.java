@@ -44,6 +44,8 @@ import java.util.*;
 public class BipSss {
 
    private static final int TYPE_BASE_58_STRING = 19;
+   // Holds only its tables after construction and may be shared
+   private static final Gf256 GF = new Gf256();
 
    public static class NotEnoughSharesException extends Exception {
       public int needed;
@@ -71,6 +73,40 @@ public class BipSss {
     */
    public static String combine(Collection<Share> shares) throws IncompatibleSharesException,
          NotEnoughSharesException, InvalidContentTypeException {
+      byte[] content = GF.combineShares(selectShares(shares));
+      return Base58.encodeWithChecksum(content);
+   }
+
+   /**
+    * Combine the shares of many secrets, such as a batch of keys which were
+    * split alike. The shares of each secret are checked like in
+    * {@link #combine(Collection)}, secrets with the same share numbers share
+    * the Lagrange coefficients.
+    *
+    * @param shareCollections the shares of each secret
+    * @return the base58 encoded secrets in the same order
+    * @throws IncompatibleSharesException if there are shares not belonging to the same secret
+    * @throws NotEnoughSharesException if more shares are needed to get one of the secrets
+    * @throws InvalidContentTypeException if the content type is not 19 (for base58 encoded secret)
+    */
+   public static List<String> combineAll(List<? extends Collection<Share>> shareCollections)
+         throws IncompatibleSharesException, NotEnoughSharesException, InvalidContentTypeException {
+      List<List<Gf256.Share>> selections = new ArrayList<List<Gf256.Share>>(shareCollections.size());
+      for (Collection<Share> shares : shareCollections) {
+         selections.add(selectShares(shares));
+      }
+      List<String> secrets = new ArrayList<String>(selections.size());
+      for (byte[] content : GF.combineShareLists(selections)) {
+         secrets.add(Base58.encodeWithChecksum(content));
+      }
+      return secrets;
+   }
+
+   /**
+    * Check that shares can be combined and select as many of them as needed
+    */
+   private static List<Gf256.Share> selectShares(Collection<Share> shares) throws IncompatibleSharesException,
+         NotEnoughSharesException, InvalidContentTypeException {
 
       // Need at least one share
       if (shares.size() == 0) {
@@ -112,14 +148,11 @@ public class BipSss {
          }
       }
 
-      // Combine
-      Gf256 gf = new Gf256();
       List<Gf256.Share> gfShares = new ArrayList<Gf256.Share>();
       for (Share s : selection) {
          gfShares.add(new Gf256.Share((byte) s.shareNumber, s.shareData));
       }
-      byte[] content = gf.combineShares(gfShares);
-      return Base58.encodeWithChecksum(content);
+      return gfShares;
    }
 
    public static class Share implements Serializable {
@@ -17,11 +17,11 @@
 package com.mrd.bitlib.crypto;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
 import com.google.common.base.Preconditions;
 import com.mrd.bitlib.util.BitUtils;
-import com.mrd.bitlib.util.ByteWriter;
 import com.mrd.bitlib.util.HashUtils;
 
 /**
@@ -52,10 +52,9 @@ public class Gf256 {
 
    }
 
-   private int[] _logTable = new int[256];
-   private int[] _expTable = new int[256];
-
-   private static final int INFINITY = 255;
+   private final int[] _logTable;
+   // Two periods long, so that a sum of two logs needs no reduction modulo 255
+   private final int[] _expTable;
 
    /*
     * Create a Galois Field with the default polynomial 0x11d
@@ -71,18 +70,19 @@ public class Gf256 {
       // Initialize log and exponent tables by computing b = 2**i in GF
       // sequentially for all i from 0 to 254
       _logTable = new int[256];
-      _expTable = new int[256];
+      _expTable = new int[255 * 2];
       int b = 1; // 2**0
       for (int i = 0; i < 255; i++) {
          _logTable[b] = i;
          _expTable[i] = b;
+         _expTable[i + 255] = b;
          b <<= 1;
          if ((b & 0x100) > 0) {
             b ^= polynomial;
          }
       }
-      _logTable[0] = (byte) INFINITY;
-      _expTable[INFINITY] = 0;
+      // The log of zero is never looked up, zero is handled separately
+      _logTable[0] = 0;
       // Check that this polynomial really generates a GF by checking that we
       // are back to square one
       Preconditions.checkState(b == 1);
@@ -96,18 +96,6 @@ public class Gf256 {
       return _expTable[n];
    }
 
-   /**
-    * Addition. This is a simple X-or of two byte arrays
-    */
-   private final byte[] add(byte[] a, byte[] b) {
-      Preconditions.checkState(a.length == b.length);
-      byte[] c = new byte[a.length];
-      for (int i = 0; i < a.length; i++) {
-         c[i] = add(a[i], b[i]);
-      }
-      return c;
-   }
-
    /**
     * Addition. This is a simple X-or of two bytes
     */
@@ -122,18 +110,6 @@ public class Gf256 {
       return add(a, b);
    }
 
-   /**
-    * Multiplication.
-    */
-   private byte[] mul(byte[] a, byte[] b) {
-      Preconditions.checkState(a.length == b.length);
-      byte[] c = new byte[a.length];
-      for (int i = 0; i < a.length; i++) {
-         c[i] = mul(a[i], b[i]);
-      }
-      return c;
-   }
-
    /**
     * Multiplication.
     */
@@ -142,9 +118,7 @@ public class Gf256 {
          return 0;
       } else {
          // The log of the product is the sum of the log of the multiplicands
-         // modulo 255
-         int lp = mod255(log(b2i(a)) + log(b2i(b)));
-         return (byte) exp(lp);
+         return (byte) exp(log(b2i(a)) + log(b2i(b)));
       }
    }
 
@@ -158,13 +132,46 @@ public class Gf256 {
       if (a == 0) {
          return 0;
       } else {
-         int lp = mod255(log(b2i(a)) - log(b2i(b)));
-         return (byte) exp(lp);
+         return (byte) exp(log(b2i(a)) - log(b2i(b)) + 255);
+      }
+   }
+
+   /**
+    * Multiply each byte of a source array by a non-zero factor and add the
+    * products to the bytes of a target array, which may be the same
+    *
+    * @param products
+    *           the product table of the factor, or null to multiply by its log
+    */
+   private void mulAdd(byte[] source, byte factor, byte[] products, byte[] target, byte[] addend) {
+      if (products != null) {
+         for (int j = 0; j < source.length; j++) {
+            target[j] = (byte) (products[source[j] & 0xFF] ^ addend[j]);
+         }
+      } else {
+         int logFactor = log(b2i(factor));
+         for (int j = 0; j < source.length; j++) {
+            int b = source[j] & 0xFF;
+            target[j] = (byte) ((b == 0 ? 0 : exp(logFactor + log(b))) ^ addend[j]);
+         }
       }
    }
 
-   private int mod255(int n) {
-      return n % 255 + (n < 0 ? 255 : 0);
+   /**
+    * Get the products of a factor with all 256 field elements, which turns
+    * multiplying a whole byte array by the factor into one lookup per byte.
+    * Building the table takes as long as multiplying about 256 bytes without
+    * it.
+    */
+   private byte[] productTable(byte factor) {
+      byte[] table = new byte[256];
+      if (factor != 0) {
+         int logFactor = log(b2i(factor));
+         for (int i = 1; i < 256; i++) {
+            table[i] = (byte) exp(logFactor + log(i));
+         }
+      }
+      return table;
    }
 
    private final int b2i(byte b) {
@@ -175,30 +182,33 @@ public class Gf256 {
       byte[][] res = new byte[m][];
       byte[] coeff = BitUtils.copyByteArray(secret);
       res[0] = coeff;
+      byte[] hash = new byte[32];
       for (int n = 1; n < m; n++) {
-         ByteWriter writer = new ByteWriter(coeff.length + 32);
+         byte[] next = new byte[coeff.length];
          for (int i = 0; i < coeff.length; i += 32) {
             int toHash = Math.min(32, coeff.length - i);
-            writer.putBytes(HashUtils.sha256(coeff, i, toHash).getBytes());
+            HashUtils.sha256(coeff, i, toHash, hash, 0);
+            System.arraycopy(hash, 0, next, i, toHash);
          }
-         coeff = BitUtils.copyOf(writer.toBytes(), coeff.length);
+         coeff = next;
          res[n] = coeff;
       }
       return res;
    }
 
-   private Share makeShare(byte x, byte[][] coeff) {
+   /**
+    * Evaluate the polynomial with the coefficients at x by Horner's rule
+    *
+    * @param products
+    *           the product table of x or null
+    */
+   private Share makeShare(byte x, byte[] products, byte[][] coeff) {
       Preconditions.checkArgument(x != 0);
-      int q = coeff[0].length;
-      byte[] s = coeff[0];
-
-      byte xpow = 1;
-
-      for (int i = 1; i < coeff.length; i++) {
-         xpow = mul(xpow, x);
-         s = add(s, mul(byteArrayOf(xpow, q), coeff[i]));
+      byte[] s = BitUtils.copyByteArray(coeff[coeff.length - 1]);
+      for (int i = coeff.length - 2; i >= 0; i--) {
+         mulAdd(s, x, products, s, coeff[i]);
       }
-      return new Share((byte) x, s);
+      return new Share(x, s);
    }
 
    /**
@@ -212,35 +222,88 @@ public class Gf256 {
     * @return the combined secret
     */
    public byte[] combineShares(List<Share> shares) {
-      int m = shares.size();
-      Preconditions.checkArgument(m > 0);
-      int q = shares.get(0).data.length;
-
-      byte n = 1;
+      return combineShareLists(Collections.singletonList(shares)).get(0);
+   }
 
-      for (Share share : shares) {
-         n = mul(n, share.index);
+   /**
+    * Combine the shares of many secrets.
+    * <p>
+    * The Lagrange coefficients of a list of share indexes are only computed
+    * again when the indexes change from one secret to the next, so secrets
+    * which were split alike and whose shares are listed in the same order are
+    * combined fastest.
+    * 
+    * @param shareLists
+    *           the shares of each secret, see {@link #combineShares(List)}
+    * @return the combined secrets in the same order
+    */
+   public List<byte[]> combineShareLists(List<? extends List<Share>> shareLists) {
+      List<byte[]> secrets = new ArrayList<byte[]>(shareLists.size());
+      byte[] indexes = new byte[0];
+      byte[] coefficients = null;
+      byte[][] products = null;
+      for (List<Share> shares : shareLists) {
+         int m = shares.size();
+         Preconditions.checkArgument(m > 0);
+         if (!hasIndexes(shares, indexes)) {
+            indexes = new byte[m];
+            for (int k = 0; k < m; k++) {
+               indexes[k] = shares.get(k).index;
+            }
+            coefficients = lagrangeCoefficients(indexes);
+            products = null;
+         } else if (products == null) {
+            // The coefficients are reused, build their product tables
+            products = new byte[m][];
+            for (int k = 0; k < m; k++) {
+               products[k] = productTable(coefficients[k]);
+            }
+         }
+         int q = shares.get(0).data.length;
+         byte[] a = new byte[q];
+         for (int k = 0; k < m; k++) {
+            byte[] data = shares.get(k).data;
+            Preconditions.checkState(data.length == q);
+            mulAdd(data, coefficients[k], products == null ? null : products[k], a, a);
+         }
+         secrets.add(a);
       }
+      return secrets;
+   }
 
-      byte[] a = new byte[q];
-      for (Share share : shares) {
-         byte lc = div(n, share.index);
-         for (Share otherShare : shares) {
-            if (otherShare.index != share.index) {
-               lc = div(lc, sub(otherShare.index, share.index));
-            }
+   private static boolean hasIndexes(List<Share> shares, byte[] indexes) {
+      if (shares.size() != indexes.length) {
+         return false;
+      }
+      for (int k = 0; k < indexes.length; k++) {
+         if (shares.get(k).index != indexes[k]) {
+            return false;
          }
-         a = add(a, mul(share.data, byteArrayOf(lc, q)));
       }
-      return a;
+      return true;
    }
 
-   private static final byte[] byteArrayOf(byte b, int length) {
-      byte[] result = new byte[length];
-      for (int i = 0; i < length; i++) {
-         result[i] = b;
+   /**
+    * Get the Lagrange coefficients for interpolating at zero from shares with
+    * the given indexes
+    */
+   private byte[] lagrangeCoefficients(byte[] indexes) {
+      byte n = 1;
+      for (byte index : indexes) {
+         n = mul(n, index);
       }
-      return result;
+
+      byte[] coefficients = new byte[indexes.length];
+      for (int k = 0; k < indexes.length; k++) {
+         byte lc = div(n, indexes[k]);
+         for (byte other : indexes) {
+            if (other != indexes[k]) {
+               lc = div(lc, sub(other, indexes[k]));
+            }
+         }
+         coefficients[k] = lc;
+      }
+      return coefficients;
    }
 
    /**
@@ -257,15 +320,36 @@ public class Gf256 {
     *         shares can recreate the secret
     */
    public List<Share> makeShares(byte[] secret, int threshold, int shares) {
+      return makeShares(Collections.singletonList(secret), threshold, shares).get(0);
+   }
+
+   /**
+    * Shard many secrets into the same number of shares with the same
+    * threshold, see {@link #makeShares(byte[], int, int)}. The product tables
+    * of the share indexes are built once for all secrets.
+    * 
+    * @return the shares of each secret in the same order
+    */
+   public List<List<Share>> makeShares(List<byte[]> secrets, int threshold, int shares) {
       Preconditions.checkArgument(shares > 0, "Number of shares must be larger than zero");
       Preconditions.checkArgument(threshold <= shares,
             "Number of shares needed must be less than or equal to the number of shares");
-      byte[][] coeff = sha256Coefficients(secret, threshold);
-      List<Share> shareList = new ArrayList<Share>(shares);
-      for (int i = 0; i < shares; i++) {
-         shareList.add(makeShare((byte) (i + 1), coeff));
+      byte[][] products = new byte[shares][];
+      if (secrets.size() > 1) {
+         for (int i = 0; i < shares; i++) {
+            products[i] = productTable((byte) (i + 1));
+         }
       }
-      return shareList;
+      List<List<Share>> result = new ArrayList<List<Share>>(secrets.size());
+      for (byte[] secret : secrets) {
+         byte[][] coeff = sha256Coefficients(secret, threshold);
+         List<Share> shareList = new ArrayList<Share>(shares);
+         for (int i = 0; i < shares; i++) {
+            shareList.add(makeShare((byte) (i + 1), products[i], coeff));
+         }
+         result.add(shareList);
+      }
+      return result;
    }
 
 }
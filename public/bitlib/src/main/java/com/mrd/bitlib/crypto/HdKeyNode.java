@@ -81,7 +81,7 @@ public class HdKeyNode {
     * experimental
     */
    public byte[] toCustomByteFormat() {
-      ByteWriter writer = new ByteWriter(1024);
+      ByteWriter writer = new ByteWriter((isPrivateHdKeyNode() ? 1 + 32 : 1) + 33 + CHAIN_CODE_SIZE + 4 + 4 + 4);
       toCustomByteFormat(writer);
       return writer.toBytes();
    }
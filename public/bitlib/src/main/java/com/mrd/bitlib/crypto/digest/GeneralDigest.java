@@ -121,6 +121,28 @@ public abstract class GeneralDigest {
       return BYTE_LENGTH;
    }
 
+   /**
+    * Get the number of bytes digested so far
+    */
+   protected long getByteCount() {
+      return byteCount;
+   }
+
+   /**
+    * Get the number of bytes waiting for a complete word
+    */
+   protected int getBufferedBytes() {
+      return xBufOff;
+   }
+
+   /**
+    * Set the number of bytes digested so far, when restoring a state with no
+    * buffered bytes
+    */
+   protected void setByteCount(long byteCount) {
+      this.byteCount = byteCount;
+   }
+
    protected abstract void processWord(byte[] in, int inOff);
 
    protected abstract void processLength(long bitLength);
@@ -16,6 +16,8 @@
 
 package com.mrd.bitlib.model;
 
+import java.math.BigInteger;
+
 import com.mrd.bitlib.model.Transaction.TransactionParsingException;
 import com.mrd.bitlib.util.ByteReader;
 import com.mrd.bitlib.util.ByteWriter;
@@ -40,6 +42,9 @@ public class Block {
    // The maximum size of a serialized block
    public static final int MAX_BLOCK_SIZE = 1000000;
 
+   // The size of a serialized block header
+   public static final int HEADER_SIZE = 80;
+
    // Header
    public int version;
    public Sha256Hash prevBlockHash;
@@ -54,13 +59,7 @@ public class Block {
 
    public static Block fromBlockStore(ByteReader reader) throws BlockParsingException {
       try {
-         // Parse header
-         int version = reader.getIntLE();
-         Sha256Hash prevBlockHash = reader.getSha256Hash().reverse();
-         Sha256Hash merkleRoot = reader.getSha256Hash().reverse();
-         int time = reader.getIntLE();
-         int difficultyTarget = reader.getIntLE();
-         int nonce = reader.getIntLE();
+         Block block = headerFromByteReader(reader);
          // Parse transactions
          int numTransactions = (int) reader.getCompactInt();
          Transaction[] transactions = new Transaction[numTransactions];
@@ -71,12 +70,67 @@ public class Block {
                throw new BlockParsingException("Unable to parse transaction at index " + i + ": " + e.getMessage());
             }
          }
-         return new Block(version, prevBlockHash, merkleRoot, time, difficultyTarget, nonce, transactions);
+         block.transactions = transactions;
+         return block;
       } catch (InsufficientBytesException e) {
          throw new BlockParsingException(e.getMessage());
       }
    }
 
+   /**
+    * Parse a block header. The returned block has no transactions.
+    */
+   public static Block headerFromByteReader(ByteReader reader) throws InsufficientBytesException {
+      int version = reader.getIntLE();
+      Sha256Hash prevBlockHash = reader.getSha256Hash().reverse();
+      Sha256Hash merkleRoot = reader.getSha256Hash().reverse();
+      int time = reader.getIntLE();
+      int difficultyTarget = reader.getIntLE();
+      int nonce = reader.getIntLE();
+      return new Block(version, prevBlockHash, merkleRoot, time, difficultyTarget, nonce, new Transaction[0]);
+   }
+
+   /**
+    * Decode a difficulty target from its compact representation, which is a
+    * base 256 number with a one byte exponent and a three byte mantissa.
+    * 
+    * @return the target, or null if it is negative or overflows 256 bits
+    */
+   public static BigInteger decodeCompactTarget(int compact) {
+      int size = (compact >>> 24) & 0xFF;
+      int mantissa = compact & 0x007FFFFF;
+      if (mantissa != 0 && ((compact & 0x00800000) != 0 || size > 34 || (size > 33 && mantissa > 0xFF)
+            || (size > 32 && mantissa > 0xFFFF))) {
+         return null;
+      }
+      BigInteger target = BigInteger.valueOf(mantissa);
+      return size <= 3 ? target.shiftRight(8 * (3 - size)) : target.shiftLeft(8 * (size - 3));
+   }
+
+   /**
+    * Encode a positive difficulty target in its compact representation,
+    * dropping the precision that does not fit into the mantissa
+    */
+   public static int encodeCompactTarget(BigInteger target) {
+      int size = (target.bitLength() + 7) / 8;
+      int mantissa = size <= 3 ? target.intValue() << (8 * (3 - size)) : target.shiftRight(8 * (size - 3)).intValue();
+      if ((mantissa & 0x00800000) != 0) {
+         // The sign bit is set, move the mantissa one byte to the right
+         mantissa >>>= 8;
+         size++;
+      }
+      return (size << 24) | mantissa;
+   }
+
+   /**
+    * @return true if the hash of the header is at or below its difficulty
+    *         target
+    */
+   public boolean hasValidProofOfWork() {
+      BigInteger target = decodeCompactTarget(difficultyTarget);
+      return target != null && target.signum() > 0 && getHash().toPositiveBigInteger().compareTo(target) <= 0;
+   }
+
    public Block(int version, Sha256Hash prevBlockHash, Sha256Hash merkleRoot, int time, int difficultyTargetm,
          int nonce, Transaction[] transactions) {
       this.version = version;
@@ -111,9 +165,10 @@ public class Block {
 
    public Sha256Hash getHash() {
       if (_hash == null) {
-         ByteWriter writer = new ByteWriter(2000);
+         ByteWriter writer = ByteWriter.obtain(HEADER_SIZE);
          headerToByteWriter(writer);
-         _hash = HashUtils.doubleSha256(writer.toBytes()).reverse();
+         _hash = HashUtils.doubleSha256(writer).reverse();
+         writer.recycle();
       }
       return _hash;
    }
@@ -132,6 +132,22 @@ public class CompactInt {
       }
    }
 
+   /**
+    * Get the number of bytes needed for the CompactInt representation of a
+    * long value.
+    */
+   public static int size(long value) {
+      if (isLessThan(value, 253)) {
+         return 1;
+      } else if (isLessThan(value, 65536)) {
+         return 3;
+      } else if (isLessThan(value, 4294967295L)) {
+         return 5;
+      } else {
+         return 9;
+      }
+   }
+
    /**
     * Determine whether one long is less than another long when comparing as
     * unsigned longs.
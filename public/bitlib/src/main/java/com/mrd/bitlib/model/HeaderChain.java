@@ -0,0 +1,559 @@
+/*
+ * Copyright 2013, 2014 Megion Research & Development GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.mrd.bitlib.model;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.math.BigInteger;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.google.common.base.Preconditions;
+import com.mrd.bitlib.util.ByteReader;
+import com.mrd.bitlib.util.ByteWriter;
+import com.mrd.bitlib.util.HashUtils;
+import com.mrd.bitlib.util.Sha256Hash;
+
+/**
+ * A chain of verified block headers stored in a memory-mapped file of 80 byte
+ * headers.
+ * <p/>
+ * The chain starts at a trusted checkpoint at a retarget boundary, usually the
+ * genesis block. Every header added must connect to the chain, have the
+ * difficulty target mandated by the retarget rules, have a hash meeting that
+ * target, and have a timestamp above the median of the previous 11 blocks.
+ * Headers at the height of a checkpoint must match it. A branch replaces the
+ * top of the chain only if it has more work.
+ * <p/>
+ * With the headers verified, the merkle root of each header proves which
+ * transactions are included in its block, see
+ * {@link #isIncluded(Sha256Hash, int, int, List)}.
+ */
+public class HeaderChain implements Closeable {
+
+   public static class HeaderVerificationException extends Exception {
+      private static final long serialVersionUID = 1L;
+
+      public HeaderVerificationException(String message) {
+         super(message);
+      }
+   }
+
+   /**
+    * A block header known to be part of the best chain
+    */
+   public static class Checkpoint {
+      public final int height;
+      private final byte[] _header;
+
+      public Checkpoint(int height, byte[] header) {
+         Preconditions.checkArgument(header.length == Block.HEADER_SIZE);
+         this.height = height;
+         _header = header.clone();
+      }
+
+      public Sha256Hash getHash() {
+         return HashUtils.doubleSha256(_header).reverse();
+      }
+   }
+
+   /**
+    * The lowest difficulty of the production and test network in compact
+    * representation
+    */
+   public static final int PROOF_OF_WORK_LIMIT = 0x1d00ffff;
+   public static final int RETARGET_INTERVAL = 2016;
+   private static final int TARGET_TIMESPAN = 14 * 24 * 60 * 60;
+   private static final int TARGET_SPACING = 10 * 60;
+   private static final int MEDIAN_TIME_SPAN = 11;
+   private static final long MAX_FUTURE_SECONDS = 2 * 60 * 60;
+   private static final int TESTNET_GENESIS_TIME = 1296688602;
+   private static final int TESTNET_GENESIS_NONCE = 414098458;
+
+   // The file starts with the magic, the start height and the number of
+   // headers, followed by the headers
+   private static final int MAGIC = 0x48445243;
+   private static final int PREAMBLE_SIZE = 12;
+   private static final int COUNT_OFFSET = 8;
+
+   private static final int PREV_HASH_OFFSET = 4;
+   private static final int TIME_OFFSET = 68;
+   private static final int BITS_OFFSET = 72;
+
+   private final RandomAccessFile _file;
+   private final FileChannel _channel;
+   private MappedByteBuffer _buffer;
+   private int _capacity;
+   private final int _startHeight;
+   private int _count;
+   private final byte[] _tipHash = new byte[Sha256Hash.HASH_LENGTH];
+   private final int _proofOfWorkLimit;
+   private final boolean _minDifficultyBlocks;
+   private final Map<Integer, Sha256Hash> _checkpoints = new HashMap<Integer, Sha256Hash>();
+   // The last decoded target, little endian
+   private int _targetBits;
+   private byte[] _target;
+
+   /**
+    * Open a header chain of a network starting at its genesis block
+    */
+   public HeaderChain(File file, NetworkParameters network) throws IOException {
+      this(file, getGenesis(network), PROOF_OF_WORK_LIMIT, network.isTestnet());
+   }
+
+   /**
+    * Open a header chain, or create it if the file does not hold a chain
+    * starting at the given checkpoint
+    * 
+    * @param file
+    *           the file to store the headers in
+    * @param start
+    *           the first header of the chain, which must be at a retarget
+    *           boundary
+    * @param proofOfWorkLimit
+    *           the lowest difficulty target allowed in compact representation
+    * @param minDifficultyBlocks
+    *           whether blocks more than 20 minutes after their predecessor may
+    *           have the lowest difficulty, like on the test network
+    */
+   public HeaderChain(File file, Checkpoint start, int proofOfWorkLimit, boolean minDifficultyBlocks)
+         throws IOException {
+      Preconditions.checkArgument(start.height >= 0 && start.height % RETARGET_INTERVAL == 0,
+            "The chain must start at a retarget boundary");
+      _startHeight = start.height;
+      _proofOfWorkLimit = proofOfWorkLimit;
+      _minDifficultyBlocks = minDifficultyBlocks;
+      _file = new RandomAccessFile(file, "rw");
+      _channel = _file.getChannel();
+      long stored = (_file.length() - PREAMBLE_SIZE) / Block.HEADER_SIZE;
+      map((int) Math.max(RETARGET_INTERVAL, Math.min(stored, Integer.MAX_VALUE / Block.HEADER_SIZE)));
+      _count = _buffer.getInt(COUNT_OFFSET);
+      if (_buffer.getInt(0) != MAGIC || _buffer.getInt(4) != _startHeight || _count < 1 || _count > stored
+            || !isStored(_startHeight, start._header, 0)) {
+         // A new file or a chain from another checkpoint
+         _buffer.putInt(0, MAGIC);
+         _buffer.putInt(4, _startHeight);
+         write(_startHeight, start._header, 0);
+         setCount(1);
+      }
+      hashAt(getHeight(), _tipHash);
+      addCheckpoint(start);
+   }
+
+   private static Checkpoint getGenesis(NetworkParameters network) {
+      byte[] header = Arrays.copyOf(NetworkParameters.productionNetwork.getGenesisBlock(), Block.HEADER_SIZE);
+      if (network.isTestnet()) {
+         // The block kept for the test network is the one following its
+         // genesis block, which only differs from the production one in time
+         // and nonce
+         ByteWriter writer = new ByteWriter(Block.HEADER_SIZE);
+         writer.putBytes(header, 0, TIME_OFFSET);
+         writer.putIntLE(TESTNET_GENESIS_TIME);
+         writer.putIntLE(PROOF_OF_WORK_LIMIT);
+         writer.putIntLE(TESTNET_GENESIS_NONCE);
+         header = writer.toBytes();
+      }
+      return new Checkpoint(0, header);
+   }
+
+   /**
+    * Calculate the difficulty target of the first block of a retarget period
+    * 
+    * @param compactTarget
+    *           the target of the last block of the previous period
+    * @param actualTimespan
+    *           the seconds between the first and the last block of the
+    *           previous period
+    * @param proofOfWorkLimit
+    *           the lowest difficulty target allowed
+    * @return the new target in compact representation
+    */
+   public static int retarget(int compactTarget, long actualTimespan, int proofOfWorkLimit) {
+      actualTimespan = Math.min(Math.max(actualTimespan, TARGET_TIMESPAN / 4), TARGET_TIMESPAN * 4);
+      BigInteger target = Block.decodeCompactTarget(compactTarget).multiply(BigInteger.valueOf(actualTimespan))
+            .divide(BigInteger.valueOf(TARGET_TIMESPAN));
+      BigInteger limit = Block.decodeCompactTarget(proofOfWorkLimit);
+      return Block.encodeCompactTarget(target.compareTo(limit) > 0 ? limit : target);
+   }
+
+   /**
+    * Require the header at the height of a checkpoint to match it. A
+    * conflicting header already in the chain is removed along with the
+    * headers above it.
+    */
+   public synchronized void addCheckpoint(Checkpoint checkpoint) {
+      Sha256Hash hash = checkpoint.getHash();
+      _checkpoints.put(checkpoint.height, hash);
+      if (checkpoint.height > _startHeight && checkpoint.height <= getHeight()
+            && !hash.equals(getHash(checkpoint.height))) {
+         setCount(checkpoint.height - _startHeight);
+         hashAt(getHeight(), _tipHash);
+      }
+   }
+
+   public int getStartHeight() {
+      return _startHeight;
+   }
+
+   public synchronized int getHeight() {
+      return _startHeight + _count - 1;
+   }
+
+   /**
+    * @return the hash of the block at a height, or null if the chain has no
+    *         header at that height
+    */
+   public synchronized Sha256Hash getHash(int height) {
+      if (!contains(height)) {
+         return null;
+      }
+      byte[] hash = new byte[Sha256Hash.HASH_LENGTH];
+      hashAt(height, hash);
+      return Sha256Hash.of(hash).reverse();
+   }
+
+   /**
+    * @return the header of the block at a height, or null if the chain has no
+    *         header at that height
+    */
+   public synchronized Block getHeader(int height) {
+      if (!contains(height)) {
+         return null;
+      }
+      byte[] header = new byte[Block.HEADER_SIZE];
+      read(height, header, 0);
+      try {
+         return Block.headerFromByteReader(new ByteReader(header));
+      } catch (ByteReader.InsufficientBytesException e) {
+         throw new RuntimeException(e);
+      }
+   }
+
+   /**
+    * Determine whether a transaction is included in the block at a height
+    * 
+    * @param txid
+    *           the ID of the transaction
+    * @param height
+    *           the height of the block
+    * @param index
+    *           the index of the transaction in the block
+    * @param branch
+    *           the merkle branch of the transaction
+    * @return true if the merkle root of the transaction and its branch is the
+    *         merkle root of the block
+    */
+   public boolean isIncluded(Sha256Hash txid, int height, int index, List<Sha256Hash> branch) {
+      Block header = getHeader(height);
+      if (header == null) {
+         return false;
+      }
+      try {
+         return MerkleTree.computeRoot(txid, index, branch).equals(header.merkleRoot);
+      } catch (IllegalArgumentException e) {
+         return false;
+      }
+   }
+
+   /**
+    * Verify and add a run of consecutive headers.
+    * <p/>
+    * Headers already in the chain are skipped. If the headers branch off below
+    * the top of the chain they replace the top if they have more work than it,
+    * otherwise the chain is left as it is. If a header fails verification the
+    * headers before it are still added.
+    * 
+    * @param height
+    *           the height of the first header, the header below it must be in
+    *           the chain
+    * @param headers
+    *           the serialized headers
+    * @param offset
+    *           the offset of the first header
+    * @param count
+    *           the number of headers
+    * @return the height of the chain
+    * @throws HeaderVerificationException
+    *            if a header does not connect or fails verification
+    */
+   public synchronized int add(int height, byte[] headers, int offset, int count) throws HeaderVerificationException {
+      Preconditions.checkPositionIndexes(offset, offset + count * Block.HEADER_SIZE, headers.length);
+      if (height <= _startHeight || height > getHeight() + 1) {
+         throw new HeaderVerificationException("Headers at height " + height + " do not connect to the chain at height "
+               + getHeight());
+      }
+      // Skip the headers we already have
+      while (count > 0 && height <= getHeight() && isStored(height, headers, offset)) {
+         height++;
+         offset += Block.HEADER_SIZE;
+         count--;
+      }
+      if (count == 0) {
+         return getHeight();
+      }
+
+      int tip = getHeight();
+      byte[] replaced = null;
+      if (height <= tip) {
+         replaced = new byte[(tip - height + 1) * Block.HEADER_SIZE];
+         for (int h = height; h <= tip; h++) {
+            read(h, replaced, (h - height) * Block.HEADER_SIZE);
+         }
+      }
+      ensureCapacity(height - _startHeight + count);
+
+      // The headers are written in place as they are verified, so that the
+      // ones verified next can read them like the rest of the chain
+      byte[] previousHash = new byte[Sha256Hash.HASH_LENGTH];
+      hashAt(height - 1, previousHash);
+      byte[] hash = new byte[Sha256Hash.HASH_LENGTH];
+      int verified = 0;
+      HeaderVerificationException error = null;
+      try {
+         long latestTime = System.currentTimeMillis() / 1000 + MAX_FUTURE_SECONDS;
+         for (; verified < count; verified++) {
+            int headerOffset = offset + verified * Block.HEADER_SIZE;
+            verify(height + verified, headers, headerOffset, previousHash, hash, latestTime);
+            write(height + verified, headers, headerOffset);
+            byte[] swap = previousHash;
+            previousHash = hash;
+            hash = swap;
+         }
+      } catch (HeaderVerificationException e) {
+         error = e;
+      }
+
+      int newTip = height + verified - 1;
+      if (replaced != null && getWork(height, newTip).compareTo(getWork(replaced)) <= 0) {
+         // Our chain has at least as much work, put it back
+         for (int h = height; h <= tip; h++) {
+            write(h, replaced, (h - height) * Block.HEADER_SIZE);
+         }
+         if (error != null) {
+            throw error;
+         }
+         return tip;
+      }
+      if (verified > 0) {
+         setCount(newTip - _startHeight + 1);
+         System.arraycopy(previousHash, 0, _tipHash, 0, Sha256Hash.HASH_LENGTH);
+      }
+      if (error != null) {
+         throw error;
+      }
+      return getHeight();
+   }
+
+   /**
+    * Write the headers to the storage device
+    */
+   public synchronized void flush() {
+      _buffer.force();
+   }
+
+   @Override
+   public synchronized void close() throws IOException {
+      flush();
+      _channel.close();
+      _file.close();
+   }
+
+   private void verify(int height, byte[] header, int offset, byte[] previousHash, byte[] hash, long latestTime)
+         throws HeaderVerificationException {
+      for (int i = 0; i < Sha256Hash.HASH_LENGTH; i++) {
+         if (header[offset + PREV_HASH_OFFSET + i] != previousHash[i]) {
+            throw new HeaderVerificationException("Header at height " + height + " does not follow the previous one");
+         }
+      }
+      HashUtils.doubleSha256(header, offset, Block.HEADER_SIZE, hash, 0);
+      Sha256Hash checkpoint = _checkpoints.get(height);
+      if (checkpoint != null && !checkpoint.equals(Sha256Hash.of(hash).reverse())) {
+         throw new HeaderVerificationException("Header at height " + height + " does not match the checkpoint");
+      }
+
+      long time = uint32(header, offset + TIME_OFFSET);
+      int bits = int32(header, offset + BITS_OFFSET);
+      if (bits != getRequiredBits(height, time)) {
+         throw new HeaderVerificationException("Header at height " + height + " has the wrong difficulty target");
+      }
+      if (!meetsTarget(hash, bits)) {
+         throw new HeaderVerificationException("Header at height " + height + " has insufficient proof of work");
+      }
+      if (time <= getMedianTimePast(height)) {
+         throw new HeaderVerificationException("Header at height " + height + " is older than its predecessors");
+      }
+      if (time > latestTime) {
+         throw new HeaderVerificationException("Header at height " + height + " is too far in the future");
+      }
+   }
+
+   private int getRequiredBits(int height, long time) {
+      int previousBits = _buffer.getInt(position(height - 1) + BITS_OFFSET);
+      if (height % RETARGET_INTERVAL == 0) {
+         long timespan = getTime(height - 1) - getTime(height - RETARGET_INTERVAL);
+         return retarget(previousBits, timespan, _proofOfWorkLimit);
+      }
+      if (!_minDifficultyBlocks) {
+         return previousBits;
+      }
+      if (time > getTime(height - 1) + 2 * TARGET_SPACING) {
+         return _proofOfWorkLimit;
+      }
+      // Use the target of the last block that did not have the lowest
+      // difficulty because of the time rule
+      int h = height - 1;
+      while (h % RETARGET_INTERVAL != 0 && _buffer.getInt(position(h) + BITS_OFFSET) == _proofOfWorkLimit) {
+         h--;
+      }
+      return _buffer.getInt(position(h) + BITS_OFFSET);
+   }
+
+   private long getMedianTimePast(int height) {
+      int first = Math.max(_startHeight, height - MEDIAN_TIME_SPAN);
+      long[] times = new long[height - first];
+      for (int h = first; h < height; h++) {
+         times[h - first] = getTime(h);
+      }
+      Arrays.sort(times);
+      return times[times.length / 2];
+   }
+
+   private boolean meetsTarget(byte[] hash, int bits) throws HeaderVerificationException {
+      if (_target == null || bits != _targetBits) {
+         BigInteger target = Block.decodeCompactTarget(bits);
+         if (target == null || target.signum() <= 0 || target.bitLength() > 256) {
+            throw new HeaderVerificationException("Invalid difficulty target " + Integer.toHexString(bits));
+         }
+         byte[] bigEndian = target.toByteArray();
+         _target = new byte[Sha256Hash.HASH_LENGTH];
+         for (int i = 0; i < Sha256Hash.HASH_LENGTH && i < bigEndian.length; i++) {
+            _target[i] = bigEndian[bigEndian.length - 1 - i];
+         }
+         _targetBits = bits;
+      }
+      // Both are little endian, compare from the most significant byte
+      for (int i = Sha256Hash.HASH_LENGTH - 1; i >= 0; i--) {
+         int h = hash[i] & 0xFF;
+         int t = _target[i] & 0xFF;
+         if (h != t) {
+            return h < t;
+         }
+      }
+      return true;
+   }
+
+   private BigInteger getWork(int fromHeight, int toHeight) {
+      BigInteger work = BigInteger.ZERO;
+      for (int h = fromHeight; h <= toHeight; h++) {
+         work = work.add(getWork(_buffer.getInt(position(h) + BITS_OFFSET)));
+      }
+      return work;
+   }
+
+   private static BigInteger getWork(byte[] headers) {
+      BigInteger work = BigInteger.ZERO;
+      for (int offset = 0; offset < headers.length; offset += Block.HEADER_SIZE) {
+         work = work.add(getWork(int32(headers, offset + BITS_OFFSET)));
+      }
+      return work;
+   }
+
+   private static BigInteger getWork(int bits) {
+      BigInteger target = Block.decodeCompactTarget(bits);
+      return BigInteger.ONE.shiftLeft(256).divide(target.add(BigInteger.ONE));
+   }
+
+   private boolean contains(int height) {
+      return height >= _startHeight && height <= getHeight();
+   }
+
+   private long getTime(int height) {
+      return _buffer.getInt(position(height) + TIME_OFFSET) & 0xFFFFFFFFL;
+   }
+
+   private boolean isStored(int height, byte[] header, int offset) {
+      int position = position(height);
+      for (int i = 0; i < Block.HEADER_SIZE; i++) {
+         if (_buffer.get(position + i) != header[offset + i]) {
+            return false;
+         }
+      }
+      return true;
+   }
+
+   private void hashAt(int height, byte[] hash) {
+      if (height == getHeight() && _count > 0 && hash != _tipHash) {
+         System.arraycopy(_tipHash, 0, hash, 0, Sha256Hash.HASH_LENGTH);
+         return;
+      }
+      byte[] header = new byte[Block.HEADER_SIZE];
+      read(height, header, 0);
+      HashUtils.doubleSha256(header, 0, Block.HEADER_SIZE, hash, 0);
+   }
+
+   private void read(int height, byte[] header, int offset) {
+      _buffer.position(position(height));
+      _buffer.get(header, offset, Block.HEADER_SIZE);
+   }
+
+   private void write(int height, byte[] header, int offset) {
+      _buffer.position(position(height));
+      _buffer.put(header, offset, Block.HEADER_SIZE);
+   }
+
+   private void setCount(int count) {
+      _count = count;
+      _buffer.putInt(COUNT_OFFSET, count);
+   }
+
+   private int position(int height) {
+      return PREAMBLE_SIZE + (height - _startHeight) * Block.HEADER_SIZE;
+   }
+
+   private void ensureCapacity(int headers) {
+      if (headers > _capacity) {
+         map(Math.max(headers, _capacity * 2));
+      }
+   }
+
+   private void map(int capacity) {
+      try {
+         _buffer = _channel.map(FileChannel.MapMode.READ_WRITE, 0, PREAMBLE_SIZE + (long) capacity * Block.HEADER_SIZE);
+      } catch (IOException e) {
+         throw new RuntimeException(e);
+      }
+      _buffer.order(ByteOrder.LITTLE_ENDIAN);
+      _capacity = capacity;
+   }
+
+   private static int int32(byte[] bytes, int offset) {
+      return (bytes[offset] & 0xFF) | (bytes[offset + 1] & 0xFF) << 8 | (bytes[offset + 2] & 0xFF) << 16
+            | (bytes[offset + 3] & 0xFF) << 24;
+   }
+
+   private static long uint32(byte[] bytes, int offset) {
+      return int32(bytes, offset) & 0xFFFFFFFFL;
+   }
+
+}
@@ -0,0 +1,134 @@
+/*
+ * Copyright 2013, 2014 Megion Research & Development GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.mrd.bitlib.model;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.mrd.bitlib.util.BitUtils;
+import com.mrd.bitlib.util.HashUtils;
+import com.mrd.bitlib.util.Sha256Hash;
+
+/**
+ * Computes the merkle root of the transactions of a block and the merkle
+ * branches that prove that a transaction is included in a block.
+ * <p/>
+ * Transaction IDs and merkle roots are in the same byte order as
+ * {@link Transaction#getHash()} and {@link Block#merkleRoot}.
+ */
+public class MerkleTree {
+
+   /**
+    * Compute the merkle root of a list of transaction IDs
+    */
+   public static Sha256Hash computeRoot(List<Sha256Hash> txids) {
+      if (txids.isEmpty()) {
+         throw new IllegalArgumentException("A merkle tree needs at least one transaction");
+      }
+      List<byte[]> level = toInternalOrder(txids);
+      while (level.size() > 1) {
+         level = nextLevel(level);
+      }
+      return toHash(level.get(0));
+   }
+
+   /**
+    * Get the merkle branch of a transaction, which are the hashes it needs to
+    * be combined with from the bottom of the tree up to get the merkle root
+    * 
+    * @param txids
+    *           the IDs of all transactions of the block in block order
+    * @param index
+    *           the index of the transaction in the block
+    */
+   public static List<Sha256Hash> getBranch(List<Sha256Hash> txids, int index) {
+      if (index < 0 || index >= txids.size()) {
+         throw new IndexOutOfBoundsException("Transaction index " + index + " out of " + txids.size());
+      }
+      List<Sha256Hash> branch = new ArrayList<Sha256Hash>();
+      List<byte[]> level = toInternalOrder(txids);
+      while (level.size() > 1) {
+         // The last hash of a level with an odd number of hashes is paired with itself
+         int sibling = Math.min(index ^ 1, level.size() - 1);
+         branch.add(toHash(level.get(sibling)));
+         level = nextLevel(level);
+         index >>= 1;
+      }
+      return branch;
+   }
+
+   /**
+    * Compute the merkle root from a transaction ID and its merkle branch
+    * 
+    * @param txid
+    *           the ID of the transaction
+    * @param index
+    *           the index of the transaction in the block, which tells on
+    *           which side the transaction is combined with the branch on
+    *           every level
+    * @param branch
+    *           the merkle branch of the transaction
+    */
+   public static Sha256Hash computeRoot(Sha256Hash txid, int index, List<Sha256Hash> branch) {
+      if (index < 0 || (branch.size() < 31 && index >>> branch.size() != 0)) {
+         throw new IllegalArgumentException("Transaction index " + index + " does not fit a branch of length "
+               + branch.size());
+      }
+      byte[] pair = new byte[Sha256Hash.HASH_LENGTH * 2];
+      byte[] hash = BitUtils.reverseBytes(txid.getBytes());
+      for (Sha256Hash sibling : branch) {
+         byte[] siblingBytes = sibling.getBytes();
+         int siblingOffset = (index & 1) == 0 ? Sha256Hash.HASH_LENGTH : 0;
+         System.arraycopy(hash, 0, pair, Sha256Hash.HASH_LENGTH - siblingOffset, Sha256Hash.HASH_LENGTH);
+         // The sibling is in reverse byte order
+         for (int i = 0; i < Sha256Hash.HASH_LENGTH; i++) {
+            pair[siblingOffset + i] = siblingBytes[Sha256Hash.HASH_LENGTH - 1 - i];
+         }
+         HashUtils.doubleSha256(pair, 0, pair.length, hash, 0);
+         index >>>= 1;
+      }
+      return toHash(hash);
+   }
+
+   private static List<byte[]> toInternalOrder(List<Sha256Hash> txids) {
+      List<byte[]> hashes = new ArrayList<byte[]>(txids.size());
+      for (Sha256Hash txid : txids) {
+         hashes.add(BitUtils.reverseBytes(txid.getBytes()));
+      }
+      return hashes;
+   }
+
+   private static List<byte[]> nextLevel(List<byte[]> level) {
+      List<byte[]> next = new ArrayList<byte[]>((level.size() + 1) / 2);
+      byte[] pair = new byte[Sha256Hash.HASH_LENGTH * 2];
+      for (int i = 0; i < level.size(); i += 2) {
+         byte[] left = level.get(i);
+         byte[] right = level.get(Math.min(i + 1, level.size() - 1));
+         System.arraycopy(left, 0, pair, 0, Sha256Hash.HASH_LENGTH);
+         System.arraycopy(right, 0, pair, Sha256Hash.HASH_LENGTH, Sha256Hash.HASH_LENGTH);
+         byte[] hash = new byte[Sha256Hash.HASH_LENGTH];
+         HashUtils.doubleSha256(pair, 0, pair.length, hash, 0);
+         next.add(hash);
+      }
+      return next;
+   }
+
+   private static Sha256Hash toHash(byte[] internalOrder) {
+      return Sha256Hash.of(BitUtils.reverseBytes(internalOrder));
+   }
+
+}
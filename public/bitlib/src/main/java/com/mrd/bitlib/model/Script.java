@@ -65,6 +65,9 @@ public abstract class Script implements Serializable {
    public static final int OP_16 = 96;
    public static final int OP_NOP = 97;
    public static final int OP_IF = 99;
+   public static final int OP_NOTIF = 100;
+   public static final int OP_ELSE = 103;
+   public static final int OP_ENDIF = 104;
    public static final int OP_VERIFY = 105;
    public static final int OP_IFDUP = 115;
    public static final int OP_DEPTH = 116;
@@ -108,6 +111,9 @@ public abstract class Script implements Serializable {
       OP_CODE_MAP.put(OP_16, "OP_16");
       OP_CODE_MAP.put(OP_NOP, "OP_NOP");
       OP_CODE_MAP.put(OP_IF, "OP_IF");
+      OP_CODE_MAP.put(OP_NOTIF, "OP_NOTIF");
+      OP_CODE_MAP.put(OP_ELSE, "OP_ELSE");
+      OP_CODE_MAP.put(OP_ENDIF, "OP_ENDIF");
       OP_CODE_MAP.put(OP_VERIFY, "OP_VERIFY");
       OP_CODE_MAP.put(OP_IFDUP, "OP_IFDUP");
       OP_CODE_MAP.put(OP_DEPTH, "OP_DEPTH");
@@ -145,6 +151,10 @@ public abstract class Script implements Serializable {
       return chunk.length == 1 && (((int) chunk[0]) & 0xFF) == op;
    }
 
+   protected static final boolean isOP(byte[] scriptBytes, int index, int op) {
+      return (((int) scriptBytes[index]) & 0xFF) == op;
+   }
+
    public static int opToIntValue(byte[] chunk) {
       Preconditions.checkState(chunk.length == 1);
       int opCode = ((int) chunk[0]) & 0xFF;
@@ -0,0 +1,465 @@
+/*
+ * Copyright 2013, 2014 Megion Research & Development GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.mrd.bitlib.model;
+
+import static com.mrd.bitlib.model.Script.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import com.mrd.bitlib.util.BitUtils;
+import com.mrd.bitlib.util.HashUtils;
+
+/**
+ * Executes input and output scripts with the opcodes defined in {@link Script}
+ * and the pay-to-script-hash rules.
+ * <p/>
+ * A script using any other opcode is reported as
+ * {@link Result#UNSUPPORTED} rather than invalid, so that transactions we do
+ * not understand are never rejected. Signatures are not removed from the
+ * signed script before hashing, which makes no difference for scripts that do
+ * not contain their own signatures.
+ */
+public class ScriptInterpreter {
+
+   public enum Result {
+      VALID, INVALID, UNSUPPORTED;
+
+      /**
+       * Combine the results of two checks, invalid taking precedence over
+       * unsupported
+       */
+      public Result and(Result other) {
+         if (this == INVALID || other == INVALID) {
+            return INVALID;
+         }
+         if (this == UNSUPPORTED || other == UNSUPPORTED) {
+            return UNSUPPORTED;
+         }
+         return VALID;
+      }
+   }
+
+   /**
+    * Checks the signatures of the transaction input being verified
+    */
+   public interface SignatureChecker {
+
+      /**
+       * @param signature
+       *           the DER encoded signature followed by the hash type
+       * @param publicKey
+       *           the encoded public key
+       * @param script
+       *           the script being executed, which the signature commits to
+       * @return VALID or INVALID for a signature that could be checked,
+       *         UNSUPPORTED if the signature or key uses an encoding that
+       *         cannot be checked
+       */
+      Result checkSignature(byte[] signature, byte[] publicKey, byte[] script);
+   }
+
+   private static final int MAX_SCRIPT_SIZE = 10000;
+   private static final int MAX_ELEMENT_SIZE = 520;
+   private static final int MAX_OPS_PER_SCRIPT = 201;
+   private static final int MAX_STACK_SIZE = 1000;
+   private static final int MAX_MULTISIG_KEYS = 20;
+   private static final byte[] TRUE = new byte[] { 1 };
+   private static final byte[] FALSE = new byte[0];
+
+   private static class ScriptException extends Exception {
+      private static final long serialVersionUID = 1L;
+
+      private final Result _result;
+
+      private ScriptException(Result result, String message) {
+         super(message);
+         _result = result;
+      }
+   }
+
+   /**
+    * Verify that an input script satisfies the output script it spends
+    */
+   public static Result verify(byte[] inputScript, byte[] outputScript, SignatureChecker checker) {
+      try {
+         ArrayList<byte[]> stack = new ArrayList<byte[]>();
+         execute(inputScript, stack, checker);
+         boolean p2sh = ScriptOutputP2SH.isScriptOutputP2SH(outputScript);
+         ArrayList<byte[]> p2shStack = null;
+         if (p2sh) {
+            if (!isPushOnly(inputScript)) {
+               return Result.INVALID;
+            }
+            p2shStack = new ArrayList<byte[]>(stack);
+         }
+         execute(outputScript, stack, checker);
+         if (stack.isEmpty() || !castToBoolean(stack.get(stack.size() - 1))) {
+            return Result.INVALID;
+         }
+         if (p2sh) {
+            // The last push of the input script is the script that got hashed
+            byte[] redeemScript = pop(p2shStack);
+            execute(redeemScript, p2shStack, checker);
+            if (p2shStack.isEmpty() || !castToBoolean(p2shStack.get(p2shStack.size() - 1))) {
+               return Result.INVALID;
+            }
+         }
+         return Result.VALID;
+      } catch (ScriptException e) {
+         return e._result;
+      }
+   }
+
+   private static void execute(byte[] script, ArrayList<byte[]> stack, SignatureChecker checker)
+         throws ScriptException {
+      if (script.length > MAX_SCRIPT_SIZE) {
+         throw invalid("Script too large");
+      }
+      // One entry per enclosing OP_IF, telling whether its branch was taken.
+      // We execute while none of them is false.
+      ArrayList<Boolean> conditions = new ArrayList<Boolean>();
+      int skipping = 0;
+      int ops = 0;
+      int pc = 0;
+      while (pc < script.length) {
+         int opcode = script[pc++] & 0xFF;
+         if (opcode <= OP_PUSHDATA4) {
+            long size;
+            if (opcode < OP_PUSHDATA1) {
+               size = opcode;
+            } else if (opcode == OP_PUSHDATA1) {
+               checkAvailable(script, pc, 1);
+               size = script[pc] & 0xFF;
+               pc += 1;
+            } else if (opcode == OP_PUSHDATA2) {
+               checkAvailable(script, pc, 2);
+               size = (script[pc] & 0xFF) | ((script[pc + 1] & 0xFF) << 8);
+               pc += 2;
+            } else {
+               checkAvailable(script, pc, 4);
+               size = BitUtils.uint32ToLong(script, pc);
+               pc += 4;
+            }
+            if (size > MAX_ELEMENT_SIZE) {
+               throw invalid("Push too large");
+            }
+            checkAvailable(script, pc, (int) size);
+            if (skipping == 0) {
+               stack.add(BitUtils.copyOfRange(script, pc, pc + (int) size));
+            }
+            pc += (int) size;
+         } else {
+            if (opcode > OP_16 && ++ops > MAX_OPS_PER_SCRIPT) {
+               throw invalid("Too many operations");
+            }
+            switch (opcode) {
+            case OP_IF:
+            case OP_NOTIF:
+               boolean branch = false;
+               if (skipping == 0) {
+                  branch = castToBoolean(pop(stack)) ^ (opcode == OP_NOTIF);
+               }
+               conditions.add(branch);
+               if (!branch) {
+                  skipping++;
+               }
+               break;
+            case OP_ELSE:
+               if (conditions.isEmpty()) {
+                  throw invalid("OP_ELSE without OP_IF");
+               }
+               boolean taken = conditions.remove(conditions.size() - 1);
+               conditions.add(!taken);
+               skipping += taken ? 1 : -1;
+               break;
+            case OP_ENDIF:
+               if (conditions.isEmpty()) {
+                  throw invalid("OP_ENDIF without OP_IF");
+               }
+               if (!conditions.remove(conditions.size() - 1)) {
+                  skipping--;
+               }
+               break;
+            default:
+               if (skipping == 0) {
+                  ops += executeOperation(opcode, script, stack, checker);
+                  if (ops > MAX_OPS_PER_SCRIPT) {
+                     throw invalid("Too many operations");
+                  }
+               } else if (!isSupported(opcode)) {
+                  throw new ScriptException(Result.UNSUPPORTED, "Unsupported opcode " + opcode);
+               }
+            }
+         }
+         if (stack.size() > MAX_STACK_SIZE) {
+            throw invalid("Stack too large");
+         }
+      }
+      if (!conditions.isEmpty()) {
+         throw invalid("OP_IF without OP_ENDIF");
+      }
+   }
+
+   private static boolean isSupported(int opcode) {
+      return opcode == OP_1NEGATE || (opcode >= OP_TRUE && opcode <= OP_16) || OP_CODE_MAP.containsKey(opcode);
+   }
+
+   /**
+    * Execute an operation other than a push or flow control
+    *
+    * @return the number of additional operations to count against the limit
+    */
+   private static int executeOperation(int opcode, byte[] script, ArrayList<byte[]> stack, SignatureChecker checker)
+         throws ScriptException {
+      if (opcode == OP_1NEGATE || (opcode >= OP_TRUE && opcode <= OP_16)) {
+         stack.add(encodeNumber(opcode == OP_1NEGATE ? -1 : opcode - OP_TRUE + 1));
+         return 0;
+      }
+      switch (opcode) {
+      case OP_NOP:
+      case OP_NOP1:
+      case OP_NOP2:
+         return 0;
+      case OP_VERIFY:
+         verify(castToBoolean(pop(stack)));
+         return 0;
+      case OP_IFDUP:
+         if (castToBoolean(top(stack))) {
+            stack.add(top(stack));
+         }
+         return 0;
+      case OP_DEPTH:
+         stack.add(encodeNumber(stack.size()));
+         return 0;
+      case OP_DROP:
+         pop(stack);
+         return 0;
+      case OP_DUP:
+         stack.add(top(stack));
+         return 0;
+      case OP_EQUAL:
+      case OP_EQUALVERIFY:
+         boolean equal = Arrays.equals(pop(stack), pop(stack));
+         if (opcode == OP_EQUALVERIFY) {
+            verify(equal);
+         } else {
+            stack.add(equal ? TRUE : FALSE);
+         }
+         return 0;
+      case OP_MIN:
+         long b = decodeNumber(pop(stack));
+         long a = decodeNumber(pop(stack));
+         stack.add(encodeNumber(Math.min(a, b)));
+         return 0;
+      case OP_SHA256:
+         stack.add(HashUtils.sha256(pop(stack)).getBytes());
+         return 0;
+      case OP_HASH160:
+         stack.add(HashUtils.addressHash(pop(stack)));
+         return 0;
+      case OP_CHECKSIG:
+      case OP_CHECKSIGVERIFY:
+         byte[] publicKey = pop(stack);
+         byte[] signature = pop(stack);
+         boolean valid = checkSignature(checker, signature, publicKey, script);
+         if (opcode == OP_CHECKSIGVERIFY) {
+            verify(valid);
+         } else {
+            stack.add(valid ? TRUE : FALSE);
+         }
+         return 0;
+      case OP_CHECKMULTISIG:
+      case OP_CHECKMULTISIGVERIFY:
+         return checkMultisig(opcode, script, stack, checker);
+      default:
+         throw new ScriptException(Result.UNSUPPORTED, "Unsupported opcode " + opcode);
+      }
+   }
+
+   private static int checkMultisig(int opcode, byte[] script, ArrayList<byte[]> stack, SignatureChecker checker)
+         throws ScriptException {
+      int keyCount = (int) decodeNumber(pop(stack));
+      if (keyCount < 0 || keyCount > MAX_MULTISIG_KEYS || stack.size() < keyCount) {
+         throw invalid("Bad key count");
+      }
+      byte[][] publicKeys = new byte[keyCount][];
+      for (int i = keyCount - 1; i >= 0; i--) {
+         publicKeys[i] = pop(stack);
+      }
+      int signatureCount = (int) decodeNumber(pop(stack));
+      if (signatureCount < 0 || signatureCount > keyCount || stack.size() < signatureCount) {
+         throw invalid("Bad signature count");
+      }
+      byte[][] signatures = new byte[signatureCount][];
+      for (int i = signatureCount - 1; i >= 0; i--) {
+         signatures[i] = pop(stack);
+      }
+      // OP_CHECKMULTISIG consumes one more element than it uses
+      pop(stack);
+
+      // Signatures have to appear in the order of their keys. A key we cannot
+      // check is skipped, which only matters if no match is found.
+      boolean valid = true;
+      boolean unsupported = false;
+      int key = 0;
+      for (int i = 0; i < signatureCount && valid; i++) {
+         while (key < keyCount) {
+            Result result = checker.checkSignature(signatures[i], publicKeys[key], script);
+            if (result == Result.VALID) {
+               break;
+            }
+            unsupported |= result == Result.UNSUPPORTED;
+            key++;
+         }
+         if (key == keyCount) {
+            valid = false;
+         }
+         key++;
+      }
+      if (!valid && unsupported) {
+         throw new ScriptException(Result.UNSUPPORTED, "Unsupported signature or key encoding");
+      }
+      if (opcode == OP_CHECKMULTISIGVERIFY) {
+         verify(valid);
+      } else {
+         stack.add(valid ? TRUE : FALSE);
+      }
+      return keyCount;
+   }
+
+   private static boolean checkSignature(SignatureChecker checker, byte[] signature, byte[] publicKey, byte[] script)
+         throws ScriptException {
+      Result result = checker.checkSignature(signature, publicKey, script);
+      if (result == Result.UNSUPPORTED) {
+         // The script may behave differently on a failed check, so we cannot
+         // tell the outcome
+         throw new ScriptException(Result.UNSUPPORTED, "Unsupported signature or key encoding");
+      }
+      return result == Result.VALID;
+   }
+
+   private static boolean isPushOnly(byte[] script) throws ScriptException {
+      int pc = 0;
+      while (pc < script.length) {
+         int opcode = script[pc++] & 0xFF;
+         if (opcode > OP_16) {
+            return false;
+         }
+         long size = 0;
+         if (opcode == OP_PUSHDATA1) {
+            checkAvailable(script, pc, 1);
+            size = 1 + (script[pc] & 0xFF);
+         } else if (opcode == OP_PUSHDATA2) {
+            checkAvailable(script, pc, 2);
+            size = 2 + BitUtils.uint16ToLong(script, pc);
+         } else if (opcode == OP_PUSHDATA4) {
+            checkAvailable(script, pc, 4);
+            size = 4 + BitUtils.uint32ToLong(script, pc);
+         } else if (opcode < OP_PUSHDATA1) {
+            size = opcode;
+         }
+         if (size > script.length - pc) {
+            throw invalid("Push past end of script");
+         }
+         pc += (int) size;
+      }
+      return true;
+   }
+
+   static boolean castToBoolean(byte[] value) {
+      for (int i = 0; i < value.length; i++) {
+         if (value[i] != 0) {
+            // Negative zero is false
+            return i != value.length - 1 || (value[i] & 0xFF) != 0x80;
+         }
+      }
+      return false;
+   }
+
+   /**
+    * Decode a little endian sign and magnitude number of at most four bytes
+    */
+   static long decodeNumber(byte[] value) throws ScriptException {
+      if (value.length > 4) {
+         throw invalid("Number too large");
+      }
+      if (value.length == 0) {
+         return 0;
+      }
+      long result = 0;
+      for (int i = 0; i < value.length; i++) {
+         result |= (value[i] & 0xFFL) << (8 * i);
+      }
+      long signBit = 0x80L << (8 * (value.length - 1));
+      if ((result & signBit) != 0) {
+         return -(result & ~signBit);
+      }
+      return result;
+   }
+
+   static byte[] encodeNumber(long value) {
+      if (value == 0) {
+         return FALSE;
+      }
+      boolean negative = value < 0;
+      long magnitude = Math.abs(value);
+      byte[] buffer = new byte[9];
+      int length = 0;
+      while (magnitude != 0) {
+         buffer[length++] = (byte) (magnitude & 0xFF);
+         magnitude >>>= 8;
+      }
+      if ((buffer[length - 1] & 0x80) != 0) {
+         buffer[length++] = (byte) (negative ? 0x80 : 0);
+      } else if (negative) {
+         buffer[length - 1] |= 0x80;
+      }
+      return BitUtils.copyOf(buffer, length);
+   }
+
+   private static byte[] pop(ArrayList<byte[]> stack) throws ScriptException {
+      if (stack.isEmpty()) {
+         throw invalid("Stack empty");
+      }
+      return stack.remove(stack.size() - 1);
+   }
+
+   private static byte[] top(ArrayList<byte[]> stack) throws ScriptException {
+      if (stack.isEmpty()) {
+         throw invalid("Stack empty");
+      }
+      return stack.get(stack.size() - 1);
+   }
+
+   private static void verify(boolean condition) throws ScriptException {
+      if (!condition) {
+         throw invalid("Verify failed");
+      }
+   }
+
+   private static void checkAvailable(byte[] script, int pc, int size) throws ScriptException {
+      if (script.length - pc < size) {
+         throw invalid("Push past end of script");
+      }
+   }
+
+   private static ScriptException invalid(String message) {
+      return new ScriptException(Result.INVALID, message);
+   }
+
+}
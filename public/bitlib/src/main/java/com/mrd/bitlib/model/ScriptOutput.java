@@ -20,6 +20,14 @@ public abstract class ScriptOutput extends Script {
    private static final long serialVersionUID = 1L;
 
    public static ScriptOutput fromScriptBytes(byte[] scriptBytes) {
+      // Standard scripts are recognized without splitting them into chunks
+      if (ScriptOutputStandard.isScriptOutputStandard(scriptBytes)) {
+         return new ScriptOutputStandard(scriptBytes, ScriptOutputStandard.ADDRESS_OFFSET);
+      } else if (ScriptOutputP2SH.isScriptOutputP2SH(scriptBytes)) {
+         return new ScriptOutputP2SH(scriptBytes, ScriptOutputP2SH.ADDRESS_OFFSET);
+      } else if (ScriptOutputPubkey.isScriptOutputPubkey(scriptBytes)) {
+         return new ScriptOutputPubkey(scriptBytes, ScriptOutputPubkey.PUBLIC_KEY_OFFSET);
+      }
       byte[][] chunks;
       try {
          chunks = Script.chunksFromScriptBytes(scriptBytes);
@@ -43,6 +51,22 @@ public abstract class ScriptOutput extends Script {
 
    }
 
+   /**
+    * Find the 20 byte address hash in a pay to address or pay to script hash
+    * script without parsing it
+    *
+    * @return the offset of the hash in the script bytes or -1 if the script
+    *         has another form
+    */
+   public static int getAddressHashOffset(byte[] scriptBytes) {
+      if (ScriptOutputStandard.isScriptOutputStandard(scriptBytes)) {
+         return ScriptOutputStandard.ADDRESS_OFFSET;
+      } else if (ScriptOutputP2SH.isScriptOutputP2SH(scriptBytes)) {
+         return ScriptOutputP2SH.ADDRESS_OFFSET;
+      }
+      return -1;
+   }
+
    protected ScriptOutput(byte[] scriptBytes) {
       super(scriptBytes, false);
    }
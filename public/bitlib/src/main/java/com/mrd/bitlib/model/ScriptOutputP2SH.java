@@ -18,6 +18,8 @@ package com.mrd.bitlib.model;
 
 import java.io.Serializable;
 
+import com.mrd.bitlib.util.BitUtils;
+
 public class ScriptOutputP2SH extends ScriptOutput implements Serializable {
    private static final long serialVersionUID = 1L;
 
@@ -28,6 +30,23 @@ public class ScriptOutputP2SH extends ScriptOutput implements Serializable {
 
    private byte[] _p2shAddressBytes;
 
+   // Where the address bytes start in a script matching isScriptOutputP2SH(byte[])
+   static final int ADDRESS_OFFSET = 2;
+
+   ScriptOutputP2SH(byte[] scriptBytes, int addressOffset) {
+      super(scriptBytes);
+      _p2shAddressBytes = BitUtils.copyOfRange(scriptBytes, addressOffset, addressOffset + 20);
+   }
+
+   /**
+    * Match the canonical encoding OP_HASH160 &lt;20 bytes&gt; OP_EQUAL
+    * directly on the script bytes
+    */
+   protected static boolean isScriptOutputP2SH(byte[] scriptBytes) {
+      return scriptBytes.length == 23 && isOP(scriptBytes, 0, OP_HASH160) && scriptBytes[1] == 20
+            && isOP(scriptBytes, 22, OP_EQUAL);
+   }
+
    protected static boolean isScriptOutputP2SH(byte[][] chunks) {
       if (chunks.length != 3) {
          return false;
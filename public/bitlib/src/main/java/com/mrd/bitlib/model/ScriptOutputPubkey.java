@@ -18,6 +18,7 @@ package com.mrd.bitlib.model;
 
 import java.io.Serializable;
 
+import com.mrd.bitlib.util.BitUtils;
 import com.mrd.bitlib.util.HashUtils;
 
 public class ScriptOutputPubkey extends ScriptOutput implements Serializable {
@@ -30,6 +31,26 @@ public class ScriptOutputPubkey extends ScriptOutput implements Serializable {
       _publicKeyBytes = chunks[0];
    }
 
+   // Where the public key starts in a script matching isScriptOutputPubkey(byte[])
+   static final int PUBLIC_KEY_OFFSET = 1;
+
+   ScriptOutputPubkey(byte[] scriptBytes, int publicKeyOffset) {
+      super(scriptBytes);
+      _publicKeyBytes = BitUtils.copyOfRange(scriptBytes, publicKeyOffset, scriptBytes.length - 1);
+   }
+
+   /**
+    * Match a compressed or uncompressed public key followed by OP_CHECKSIG
+    * directly on the script bytes
+    */
+   protected static boolean isScriptOutputPubkey(byte[] scriptBytes) {
+      int length = scriptBytes.length;
+      if (length != 33 + 2 && length != 65 + 2) {
+         return false;
+      }
+      return scriptBytes[0] == length - 2 && isOP(scriptBytes, length - 1, OP_CHECKSIG);
+   }
+
    protected static boolean isScriptOutputPubkey(byte[][] chunks) {
       if (chunks.length != 2) {
          return false;
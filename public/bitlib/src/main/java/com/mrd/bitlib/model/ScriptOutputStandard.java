@@ -18,9 +18,14 @@ package com.mrd.bitlib.model;
 
 import java.io.Serializable;
 
+import com.mrd.bitlib.util.BitUtils;
+
 public class ScriptOutputStandard extends ScriptOutput implements Serializable {
    private static final long serialVersionUID = 1L;
 
+   // Where the address bytes start in a script matching isScriptOutputStandard(byte[])
+   static final int ADDRESS_OFFSET = 3;
+
    private byte[] _addressBytes;
 
    protected ScriptOutputStandard(byte[][] chunks, byte[] scriptBytes) {
@@ -28,6 +33,26 @@ public class ScriptOutputStandard extends ScriptOutput implements Serializable {
       _addressBytes = chunks[2];
    }
 
+   ScriptOutputStandard(byte[] scriptBytes, int addressOffset) {
+      super(scriptBytes);
+      _addressBytes = BitUtils.copyOfRange(scriptBytes, addressOffset, addressOffset + 20);
+   }
+
+   /**
+    * Match the canonical encoding OP_DUP OP_HASH160 &lt;20 bytes&gt;
+    * OP_EQUALVERIFY OP_CHECKSIG, optionally followed by OP_NOP, directly on the
+    * script bytes
+    */
+   protected static boolean isScriptOutputStandard(byte[] scriptBytes) {
+      int length = scriptBytes.length;
+      if (length != 25 && length != 26) {
+         return false;
+      }
+      return isOP(scriptBytes, 0, OP_DUP) && isOP(scriptBytes, 1, OP_HASH160) && scriptBytes[2] == 20
+            && isOP(scriptBytes, 23, OP_EQUALVERIFY) && isOP(scriptBytes, 24, OP_CHECKSIG)
+            && (length == 25 || isOP(scriptBytes, 25, OP_NOP));
+   }
+
    protected static boolean isScriptOutputStandard(byte[][] chunks) {
       if (chunks.length != 5 && chunks.length != 6) {
          return false;
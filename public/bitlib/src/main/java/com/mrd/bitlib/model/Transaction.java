@@ -91,11 +91,25 @@ public class Transaction implements Serializable {
    }
 
    public byte[] toBytes() {
-      ByteWriter writer = new ByteWriter(1024);
+      ByteWriter writer = new ByteWriter(getSize());
       toByteWriter(writer);
       return writer.toBytes();
    }
 
+   /**
+    * Get the size of the serialized transaction in bytes
+    */
+   public int getSize() {
+      int size = 4 + CompactInt.size(inputs.length) + CompactInt.size(outputs.length) + 4;
+      for (TransactionInput input : inputs) {
+         size += input.getSize();
+      }
+      for (TransactionOutput output : outputs) {
+         size += output.getSize();
+      }
+      return size;
+   }
+
    public void toByteWriter(ByteWriter writer) {
       writer.putIntLE(version);
       writer.putCompactInt(inputs.length);
@@ -118,9 +132,10 @@ public class Transaction implements Serializable {
 
    public Sha256Hash getHash() {
       if (_hash == null) {
-         ByteWriter writer = new ByteWriter(2000);
+         ByteWriter writer = ByteWriter.obtain(getSize());
          toByteWriter(writer);
-         _hash = HashUtils.doubleSha256(writer.toBytes()).reverse();
+         _hash = HashUtils.doubleSha256(writer).reverse();
+         writer.recycle();
       }
       return _hash;
    }
@@ -131,15 +146,17 @@ public class Transaction implements Serializable {
     */
    public Sha256Hash getUnmalleableHash() {
       if (_unmalleableHash == null) {
-         ByteWriter writer = new ByteWriter(2000);
+         ByteWriter writer = ByteWriter.obtain(2000);
          for (TransactionInput i : inputs) {
             byte[] bytes = i.getUnmalleableBytes();
             if (bytes == null) {
+               writer.recycle();
                return null;
             }
             writer.putBytes(bytes);
          }
-         _unmalleableHash = HashUtils.doubleSha256(writer.toBytes()).reverse();
+         _unmalleableHash = HashUtils.doubleSha256(writer).reverse();
+         writer.recycle();
       }
       return _unmalleableHash;
    }
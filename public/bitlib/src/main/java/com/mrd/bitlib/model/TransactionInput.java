@@ -103,6 +103,14 @@ public class TransactionInput implements Serializable {
       writer.putIntLE(sequence);
    }
 
+   /**
+    * Get the size of the serialized input in bytes
+    */
+   public int getSize() {
+      int scriptSize = getScript().getScriptBytes().length;
+      return 32 + 4 + CompactInt.size(scriptSize) + scriptSize + 4;
+   }
+
    public byte[] getUnmalleableBytes() {
       byte[] scriptBytes = script.getUnmalleableBytes();
       if (scriptBytes == null) {
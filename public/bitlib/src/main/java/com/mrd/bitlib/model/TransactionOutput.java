@@ -59,11 +59,19 @@ public class TransactionOutput implements Serializable {
    }
 
    public byte[] toBytes() {
-      ByteWriter writer = new ByteWriter(1024);
+      ByteWriter writer = new ByteWriter(getSize());
       toByteWriter(writer);
       return writer.toBytes();
    }
 
+   /**
+    * Get the size of the serialized output in bytes
+    */
+   public int getSize() {
+      int scriptSize = script.getScriptBytes().length;
+      return 8 + CompactInt.size(scriptSize) + scriptSize;
+   }
+
    public void toByteWriter(ByteWriter writer) {
       writer.putLongLE(value);
       byte[] scriptBytes = script.getScriptBytes();
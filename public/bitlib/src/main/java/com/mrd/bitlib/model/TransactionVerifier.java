@@ -0,0 +1,354 @@
+/*
+ * Copyright 2013, 2014 Megion Research & Development GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.mrd.bitlib.model;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import com.mrd.bitlib.crypto.PublicKey;
+import com.mrd.bitlib.crypto.ec.Curve;
+import com.mrd.bitlib.crypto.ec.FieldElement;
+import com.mrd.bitlib.crypto.ec.Parameters;
+import com.mrd.bitlib.crypto.ec.Point;
+import com.mrd.bitlib.model.ScriptInterpreter.Result;
+import com.mrd.bitlib.util.ByteWriter;
+import com.mrd.bitlib.util.HashUtils;
+import com.mrd.bitlib.util.Sha256Hash;
+
+/**
+ * Verifies the input scripts of a transaction against the output scripts they
+ * spend.
+ * <p/>
+ * The hashes signed by the inputs are cached: each input hashes the
+ * transaction once per hash type, and the serialized outputs are shared by
+ * all inputs signing them all. Many transactions can be verified at once on a
+ * worker pool, see {@link #verify(List, OutputScripts, ExecutorService)}.
+ */
+public class TransactionVerifier {
+
+   public static final int SIGHASH_ALL = 1;
+   public static final int SIGHASH_NONE = 2;
+   public static final int SIGHASH_SINGLE = 3;
+   public static final int SIGHASH_ANYONECANPAY = 0x80;
+
+   /**
+    * Inputs are verified in parallel from this many on
+    */
+   private static final int PARALLEL_THRESHOLD = 8;
+
+   /**
+    * Looks up the output scripts spent by the inputs being verified
+    */
+   public interface OutputScripts {
+
+      /**
+       * @return the script of the output, or null if it is unknown
+       */
+      byte[] get(OutPoint outPoint);
+   }
+
+   private final Transaction _transaction;
+   // Serialized outputs for SIGHASH_ALL, created on first use
+   private volatile byte[] _allOutputs;
+
+   public TransactionVerifier(Transaction transaction) {
+      _transaction = transaction;
+   }
+
+   /**
+    * Verify all inputs of the transaction. Coinbase inputs are valid, inputs
+    * whose output script is unknown are unsupported.
+    */
+   public Result verify(OutputScripts outputScripts) {
+      Result result = Result.VALID;
+      for (int i = 0; i < _transaction.inputs.length && result != Result.INVALID; i++) {
+         result = result.and(verifyInput(i, outputScripts));
+      }
+      return result;
+   }
+
+   /**
+    * Verify one input of the transaction
+    */
+   public Result verifyInput(int index, OutputScripts outputScripts) {
+      TransactionInput input = _transaction.inputs[index];
+      if (input.script instanceof ScriptInputCoinbase) {
+         return Result.VALID;
+      }
+      byte[] outputScript = outputScripts.get(input.outPoint);
+      if (outputScript == null) {
+         return Result.UNSUPPORTED;
+      }
+      return ScriptInterpreter.verify(input.script.getScriptBytes(), outputScript, new InputChecker(index));
+   }
+
+   /**
+    * Verify many transactions, spreading their inputs over the given workers
+    *
+    * @param executor
+    *           the workers to use, or null to verify on the calling thread
+    * @return the result for each transaction in the same order
+    */
+   public static List<Result> verify(List<Transaction> transactions, final OutputScripts outputScripts,
+         ExecutorService executor) {
+      final List<TransactionVerifier> verifiers = new ArrayList<TransactionVerifier>(transactions.size());
+      int inputCount = 0;
+      for (Transaction transaction : transactions) {
+         verifiers.add(new TransactionVerifier(transaction));
+         inputCount += transaction.inputs.length;
+      }
+      List<Result> results = new ArrayList<Result>(verifiers.size());
+      if (executor == null || inputCount < PARALLEL_THRESHOLD) {
+         for (TransactionVerifier verifier : verifiers) {
+            results.add(verifier.verify(outputScripts));
+         }
+         return results;
+      }
+
+      // Flatten the inputs and hand them out in a few chunks per worker
+      final int[] transactionIndexes = new int[inputCount];
+      final int[] inputIndexes = new int[inputCount];
+      int flat = 0;
+      for (int t = 0; t < verifiers.size(); t++) {
+         for (int i = 0; i < transactions.get(t).inputs.length; i++) {
+            transactionIndexes[flat] = t;
+            inputIndexes[flat++] = i;
+         }
+      }
+      final Result[] inputResults = new Result[inputCount];
+      int chunkSize = Math.max(1, inputCount / (4 * Runtime.getRuntime().availableProcessors()));
+      List<Future<?>> futures = new ArrayList<Future<?>>();
+      for (int start = 0; start < inputCount; start += chunkSize) {
+         final int from = start;
+         final int to = Math.min(inputCount, start + chunkSize);
+         futures.add(executor.submit(new Callable<Void>() {
+            @Override
+            public Void call() {
+               for (int i = from; i < to; i++) {
+                  inputResults[i] = verifiers.get(transactionIndexes[i]).verifyInput(inputIndexes[i], outputScripts);
+               }
+               return null;
+            }
+         }));
+      }
+      for (Future<?> future : futures) {
+         try {
+            future.get();
+         } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+         } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+               throw (RuntimeException) e.getCause();
+            }
+            throw new RuntimeException(e.getCause());
+         }
+      }
+      Result[] combined = new Result[verifiers.size()];
+      Arrays.fill(combined, Result.VALID);
+      for (int i = 0; i < inputCount; i++) {
+         combined[transactionIndexes[i]] = combined[transactionIndexes[i]].and(inputResults[i]);
+      }
+      results.addAll(Arrays.asList(combined));
+      return results;
+   }
+
+   /**
+    * Calculate the hash an input signs
+    *
+    * @param index
+    *           the index of the input
+    * @param script
+    *           the script the input is verified against
+    * @param hashType
+    *           the hash type, the last byte of a signature
+    */
+   public Sha256Hash getSignatureHash(int index, byte[] script, int hashType) {
+      Transaction t = _transaction;
+      int type = hashType & 0x1F;
+      boolean anyoneCanPay = (hashType & SIGHASH_ANYONECANPAY) != 0;
+      if (type == SIGHASH_SINGLE && index >= t.outputs.length) {
+         // The reference client signs the number one in this case
+         byte[] one = new byte[Sha256Hash.HASH_LENGTH];
+         one[0] = 1;
+         return Sha256Hash.of(one);
+      }
+      ByteWriter writer = ByteWriter.obtain(t.getSize() + script.length);
+      writer.putIntLE(t.version);
+      if (anyoneCanPay) {
+         writer.putCompactInt(1);
+         writeInput(writer, t.inputs[index], script, t.inputs[index].sequence);
+      } else {
+         writer.putCompactInt(t.inputs.length);
+         for (int i = 0; i < t.inputs.length; i++) {
+            TransactionInput input = t.inputs[i];
+            if (i == index) {
+               writeInput(writer, input, script, input.sequence);
+            } else {
+               // Other inputs may be updated unless all outputs are signed
+               int sequence = type == SIGHASH_NONE || type == SIGHASH_SINGLE ? 0 : input.sequence;
+               writeInput(writer, input, null, sequence);
+            }
+         }
+      }
+      if (type == SIGHASH_NONE) {
+         writer.putCompactInt(0);
+      } else if (type == SIGHASH_SINGLE) {
+         writer.putCompactInt(index + 1);
+         for (int i = 0; i < index; i++) {
+            writer.putLongLE(-1);
+            writer.putCompactInt(0);
+         }
+         t.outputs[index].toByteWriter(writer);
+      } else {
+         writer.putBytes(getAllOutputs());
+      }
+      writer.putIntLE(t.lockTime);
+      writer.putIntLE(hashType);
+      Sha256Hash hash = HashUtils.doubleSha256(writer);
+      writer.recycle();
+      return hash;
+   }
+
+   private static void writeInput(ByteWriter writer, TransactionInput input, byte[] script, int sequence) {
+      writer.putSha256Hash(input.outPoint.hash, true);
+      writer.putIntLE(input.outPoint.index);
+      if (script == null) {
+         writer.putCompactInt(0);
+      } else {
+         writer.putCompactInt(script.length);
+         writer.putBytes(script);
+      }
+      writer.putIntLE(sequence);
+   }
+
+   private byte[] getAllOutputs() {
+      byte[] allOutputs = _allOutputs;
+      if (allOutputs == null) {
+         int size = CompactInt.size(_transaction.outputs.length);
+         for (TransactionOutput output : _transaction.outputs) {
+            size += output.getSize();
+         }
+         ByteWriter writer = new ByteWriter(size);
+         writer.putCompactInt(_transaction.outputs.length);
+         for (TransactionOutput output : _transaction.outputs) {
+            output.toByteWriter(writer);
+         }
+         allOutputs = writer.toBytes();
+         _allOutputs = allOutputs;
+      }
+      return allOutputs;
+   }
+
+   /**
+    * Checks the signatures of one input. Signatures of a multisig input almost
+    * always share their hash type, so the last hash is kept.
+    */
+   private class InputChecker implements ScriptInterpreter.SignatureChecker {
+      private final int _index;
+      private byte[] _script;
+      private int _hashType;
+      private Sha256Hash _hash;
+
+      private InputChecker(int index) {
+         _index = index;
+      }
+
+      @Override
+      public Result checkSignature(byte[] signature, byte[] publicKey, byte[] script) {
+         if (signature.length == 0) {
+            return Result.INVALID;
+         }
+         // Old transactions may carry BER signatures or hybrid keys, which
+         // are valid by consensus but which we cannot decode reliably
+         if (!isStrictDerSignature(signature) || !isSupportedPublicKey(publicKey)) {
+            return Result.UNSUPPORTED;
+         }
+         int hashType = signature[signature.length - 1] & 0xFF;
+         // The redeem script of a pay-to-script-hash input is signed rather
+         // than the output script
+         if (script != _script || hashType != _hashType) {
+            _hash = getSignatureHash(_index, script, hashType);
+            _script = script;
+            _hashType = hashType;
+         }
+         try {
+            return new PublicKey(publicKey).verifyStandardBitcoinSignature(_hash, signature) ? Result.VALID
+                  : Result.INVALID;
+         } catch (RuntimeException e) {
+            // Not a point on the curve
+            return Result.UNSUPPORTED;
+         }
+      }
+   }
+
+   /**
+    * Is this a DER encoded signature followed by a hash type, in the strict
+    * form of BIP 66?
+    */
+   static boolean isStrictDerSignature(byte[] signature) {
+      if (signature.length < 9 || signature.length > 73) {
+         return false;
+      }
+      if (signature[0] != 0x30 || (signature[1] & 0xFF) != signature.length - 3) {
+         return false;
+      }
+      int rLength = signature[3] & 0xFF;
+      if (5 + rLength >= signature.length) {
+         return false;
+      }
+      int sLength = signature[5 + rLength] & 0xFF;
+      if (rLength + sLength + 7 != signature.length) {
+         return false;
+      }
+      return isStrictDerInteger(signature, 2, rLength) && isStrictDerInteger(signature, rLength + 4, sLength);
+   }
+
+   private static boolean isStrictDerInteger(byte[] signature, int offset, int length) {
+      if (signature[offset] != 0x02 || length == 0) {
+         return false;
+      }
+      // Positive and without padding
+      if ((signature[offset + 2] & 0x80) != 0) {
+         return false;
+      }
+      return length == 1 || signature[offset + 2] != 0 || (signature[offset + 3] & 0x80) != 0;
+   }
+
+   /**
+    * Is this a compressed or uncompressed public key which is on the curve?
+    * Compressed keys are checked when they get decoded.
+    */
+   private static boolean isSupportedPublicKey(byte[] publicKey) {
+      if (publicKey.length == 33) {
+         return publicKey[0] == 0x02 || publicKey[0] == 0x03;
+      }
+      if (publicKey.length != 65 || publicKey[0] != 0x04) {
+         return false;
+      }
+      Curve curve = Parameters.curve;
+      Point point = curve.decodePoint(publicKey);
+      FieldElement x = point.getX();
+      return point.getY().square().equals(x.multiply(x.square().add(curve.getA())).add(curve.getB()));
+   }
+
+}
@@ -16,8 +16,16 @@
 
 package com.mrd.bitlib.util;
 
+import java.nio.ByteBuffer;
+
 import com.mrd.bitlib.model.CompactInt;
 
+/**
+ * Reads from a window of a byte array. Positions are relative to the start of
+ * the window. {@link #getSlice(int)} and {@link #getReader(int)} hand out
+ * ranges without copying them, which suits fields that are only looked at
+ * rather than kept.
+ */
 public class ByteReader {
 
    public static class InsufficientBytesException extends Exception {
@@ -25,19 +33,47 @@ public class ByteReader {
       private static final long serialVersionUID = 1L;
    }
 
-   private byte[] _buf;
+   private final byte[] _buf;
+   private final int _start;
+   private final int _limit;
    private int _index;
 
    public ByteReader(byte[] buf) {
-      _buf = buf;
-      _index = 0;
+      this(buf, 0, buf.length);
    }
 
    public ByteReader(byte[] buf, int index) {
-      _buf = buf;
+      this(buf, 0, buf.length);
       _index = index;
    }
 
+   /**
+    * Read length bytes of an array starting at offset
+    */
+   public ByteReader(byte[] buf, int offset, int length) {
+      if (offset < 0 || length < 0 || offset > buf.length - length) {
+         throw new IndexOutOfBoundsException();
+      }
+      _buf = buf;
+      _start = offset;
+      _limit = offset + length;
+      _index = offset;
+   }
+
+   /**
+    * Read the remaining bytes of a buffer, without copying them if it is
+    * backed by an accessible array. Direct and read-only buffers are copied
+    * once. The position of the buffer is not changed.
+    */
+   public static ByteReader wrap(ByteBuffer buffer) {
+      if (buffer.hasArray()) {
+         return new ByteReader(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+      }
+      byte[] bytes = new byte[buffer.remaining()];
+      buffer.duplicate().get(bytes);
+      return new ByteReader(bytes);
+   }
+
    public byte get() throws InsufficientBytesException {
       checkAvailable(1);
       return _buf[_index++];
@@ -79,6 +115,26 @@ public class ByteReader {
       return bytes;
    }
 
+   /**
+    * Get a read-only view of the next bytes without copying them
+    */
+   public ByteBuffer getSlice(int size) throws InsufficientBytesException {
+      checkAvailable(size);
+      ByteBuffer slice = ByteBuffer.wrap(_buf, _index, size).slice().asReadOnlyBuffer();
+      _index += size;
+      return slice;
+   }
+
+   /**
+    * Get a reader for the next bytes, which shares the array of this reader
+    */
+   public ByteReader getReader(int size) throws InsufficientBytesException {
+      checkAvailable(size);
+      ByteReader reader = new ByteReader(_buf, _index, size);
+      _index += size;
+      return reader;
+   }
+
    public String getString() throws InsufficientBytesException {
       int length = getIntLE();
       byte[] bytes = getBytes(length);
@@ -91,7 +147,7 @@ public class ByteReader {
    }
 
    public void reset() {
-      _index = 0;
+      _index = _start;
    }
 
    public long getCompactInt() throws InsufficientBytesException {
@@ -100,23 +156,25 @@ public class ByteReader {
 
    public Sha256Hash getSha256Hash() throws InsufficientBytesException {
       checkAvailable(Sha256Hash.HASH_LENGTH);
-      return Sha256Hash.of(getBytes(Sha256Hash.HASH_LENGTH));
+      Sha256Hash hash = Sha256Hash.copyOf(_buf, _index);
+      _index += Sha256Hash.HASH_LENGTH;
+      return hash;
    }
 
    public int getPosition() {
-      return _index;
+      return _index - _start;
    }
 
    public void setPosition(int index) {
-      _index = index;
+      _index = _start + index;
    }
 
    public final int available() {
-      return _buf.length - _index;
+      return _limit - _index;
    }
 
    private final void checkAvailable(int num) throws InsufficientBytesException {
-      if (_buf.length - _index < num) {
+      if (_limit - _index < num) {
          throw new InsufficientBytesException();
       }
    }
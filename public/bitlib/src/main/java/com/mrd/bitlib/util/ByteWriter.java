@@ -16,12 +16,31 @@
 
 package com.mrd.bitlib.util;
 
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+
 import com.mrd.bitlib.model.CompactInt;
 
+/**
+ * Writes into a growing byte array. Give a size estimate as capacity: if it is
+ * exact, {@link #toBytes()} hands out the array without copying it.
+ * <p/>
+ * Writers whose result is consumed right away, for instance hashed or written
+ * to a stream, can be taken from a per thread pool with {@link #obtain(int)}
+ * and handed back with {@link #recycle()}, which saves growing a fresh array
+ * every time.
+ */
 final public class ByteWriter {
 
+   private static final int MAX_POOLED_CAPACITY = 64 * 1024;
+
+   private static final ThreadLocal<ByteWriter> POOL = new ThreadLocal<ByteWriter>();
+
    private byte[] _buf;
    private int _index;
+   private boolean _shared;
+   private boolean _pooled;
 
    public ByteWriter(int capacity) {
       _buf = new byte[capacity];
@@ -31,6 +50,42 @@ final public class ByteWriter {
    public ByteWriter(byte[] buf) {
       _buf = buf;
       _index = buf.length;
+      // The array belongs to the caller
+      _shared = true;
+   }
+
+   /**
+    * Get an empty writer with room for at least the estimated number of bytes
+    * from the pool of the current thread. The writer must not be used after
+    * calling {@link #recycle()}.
+    */
+   public static ByteWriter obtain(int estimatedSize) {
+      ByteWriter writer = POOL.get();
+      if (writer == null) {
+         writer = new ByteWriter(Math.max(estimatedSize, 256));
+      } else {
+         POOL.set(null);
+         writer.ensureCapacity(estimatedSize);
+      }
+      writer._pooled = true;
+      return writer;
+   }
+
+   /**
+    * Hand a writer obtained by {@link #obtain(int)} back to the pool of the
+    * current thread. Arrays and buffers previously handed out stay valid.
+    */
+   public void recycle() {
+      if (!_pooled) {
+         return;
+      }
+      _pooled = false;
+      _index = 0;
+      if (_shared || _buf.length > MAX_POOLED_CAPACITY) {
+         _buf = new byte[256];
+         _shared = false;
+      }
+      POOL.set(this);
    }
 
    final private void ensureCapacity(int capacity) {
@@ -38,6 +93,7 @@ final public class ByteWriter {
          byte[] temp = new byte[_buf.length * 2 + capacity];
          System.arraycopy(_buf, 0, temp, 0, _index);
          _buf = temp;
+         _shared = false;
       }
    }
 
@@ -108,8 +164,25 @@ final public class ByteWriter {
       _index += length;
    }
 
+   public void putBytes(ByteBuffer value) {
+      int length = value.remaining();
+      ensureCapacity(length);
+      value.get(_buf, _index, length);
+      _index += length;
+   }
+
    public void putCompactInt(long value) {
-      putBytes(CompactInt.toBytes(value));
+      int size = CompactInt.size(value);
+      if (size == 1) {
+         put((byte) value);
+         return;
+      }
+      ensureCapacity(size);
+      _buf[_index++] = (byte) (size == 3 ? 253 : size == 5 ? 254 : 255);
+      for (int i = 1; i < size; i++) {
+         _buf[_index++] = (byte) (0xFFL & value);
+         value >>>= 8;
+      }
    }
 
    public void putSha256Hash(Sha256Hash hash) {
@@ -118,7 +191,11 @@ final public class ByteWriter {
 
    public void putSha256Hash(Sha256Hash hash, boolean reverse) {
       if (reverse) {
-         putBytes(BitUtils.reverseBytes(hash.getBytes()));
+         byte[] bytes = hash.getBytes();
+         ensureCapacity(bytes.length);
+         for (int i = bytes.length - 1; i >= 0; i--) {
+            _buf[_index++] = bytes[i];
+         }
       } else {
          putBytes(hash.getBytes());
       }
@@ -131,11 +208,38 @@ final public class ByteWriter {
    }
 
    public byte[] toBytes() {
+      if (_index == _buf.length && !_shared && !_pooled) {
+         // Exactly sized, the next write reallocates anyway
+         _shared = true;
+         return _buf;
+      }
       byte[] bytes = new byte[_index];
       System.arraycopy(_buf, 0, bytes, 0, _index);
       return bytes;
    }
 
+   /**
+    * Get a read-only view of the bytes written so far without copying them
+    */
+   public ByteBuffer toByteBuffer() {
+      _shared = true;
+      return ByteBuffer.wrap(_buf, 0, _index).slice().asReadOnlyBuffer();
+   }
+
+   /**
+    * Write the bytes written so far to a stream without copying them
+    */
+   public void writeTo(OutputStream stream) throws IOException {
+      stream.write(_buf, 0, _index);
+   }
+
+   /**
+    * The array holding the bytes written so far, for hashing them in place
+    */
+   byte[] getBuffer() {
+      return _buf;
+   }
+
    public int length() {
       return _index;
    }
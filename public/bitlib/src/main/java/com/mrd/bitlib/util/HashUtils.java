@@ -16,41 +16,53 @@
 
 package com.mrd.bitlib.util;
 
+import com.google.common.base.Preconditions;
 import com.mrd.bitlib.crypto.digest.RIPEMD160Digest;
+import com.mrd.bitlib.crypto.digest.SHA256Digest;
 
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 
 /**
  * Various hashing utilities used in the Bitcoin system.
+ * <p/>
+ * SHA-256 and RIPEMD-160 are computed by digests which each thread reuses, so
+ * that hashing allocates nothing but the result. The variants taking an output
+ * buffer do not allocate at all. Ranges are checked before a digest is
+ * touched, so that a bad argument cannot leave it half way through a message.
  */
 public class HashUtils {
 
-   private static final String SHA256 = "SHA-256";
    private static final String SHA512 = "SHA-512";
+   private static final int SHA256_LENGTH = 32;
+   public static final int HASH160_LENGTH = 20;
+
+   private static class Digests {
+      private final SHA256Digest sha256 = new SHA256Digest();
+      private final RIPEMD160Digest ripemd160 = new RIPEMD160Digest();
+      private final byte[] buffer = new byte[SHA256_LENGTH];
+      private final MessageDigest sha512 = getSha512Digest();
+   }
+
+   private static final ThreadLocal<Digests> DIGESTS = new ThreadLocal<Digests>() {
+      @Override
+      protected Digests initialValue() {
+         return new Digests();
+      }
+   };
 
    public static Sha256Hash sha256(byte[] data) {
-      MessageDigest digest;
-      digest = getSha256Digest();
-      digest.update(data, 0, data.length);
-      return Sha256Hash.of(digest.digest());
+      return sha256(data, 0, data.length);
    }
 
    public static Sha256Hash sha256(byte[] data1, byte[] data2) {
-      MessageDigest digest;
-      digest = getSha256Digest();
+      Preconditions.checkNotNull(data2);
+      SHA256Digest digest = DIGESTS.get().sha256;
       digest.update(data1, 0, data1.length);
       digest.update(data2, 0, data2.length);
-      return new Sha256Hash(digest.digest());
-
-   }
-
-   private static MessageDigest getSha256Digest() {
-      try {
-         return MessageDigest.getInstance(SHA256);
-      } catch (NoSuchAlgorithmException e) {
-         throw new RuntimeException(e); //cannot happen
-      }
+      byte[] out = new byte[SHA256_LENGTH];
+      digest.doFinal(out, 0);
+      return new Sha256Hash(out);
    }
 
    public static Sha256Hash doubleSha256(byte[] data) {
@@ -58,42 +70,92 @@ public class HashUtils {
    }
 
    public static Sha256Hash doubleSha256TwoBuffers(byte[] data1, byte[] data2) {
-      MessageDigest digest;
-      digest = getSha256Digest();
+      Preconditions.checkNotNull(data2);
+      Digests digests = DIGESTS.get();
+      SHA256Digest digest = digests.sha256;
       digest.update(data1, 0, data1.length);
       digest.update(data2, 0, data2.length);
-      return new Sha256Hash(digest.digest(digest.digest()));
-
+      digest.doFinal(digests.buffer, 0);
+      byte[] out = new byte[SHA256_LENGTH];
+      digest.update(digests.buffer, 0, SHA256_LENGTH);
+      digest.doFinal(out, 0);
+      return new Sha256Hash(out);
    }
 
    public static Sha256Hash doubleSha256(byte[] data, int offset, int length) {
-      MessageDigest digest;
-      digest = getSha256Digest();
+      byte[] out = new byte[SHA256_LENGTH];
+      doubleSha256(data, offset, length, out, 0);
+      return new Sha256Hash(out);
+   }
+
+   /**
+    * Calculate the double SHA-256 of a range of bytes into a buffer
+    */
+   public static void doubleSha256(byte[] data, int offset, int length, byte[] out, int outOffset) {
+      checkRanges(data, offset, length, out, outOffset, SHA256_LENGTH);
+      Digests digests = DIGESTS.get();
+      SHA256Digest digest = digests.sha256;
       digest.update(data, offset, length);
-      return new Sha256Hash(digest.digest(digest.digest()));
+      digest.doFinal(digests.buffer, 0);
+      digest.update(digests.buffer, 0, SHA256_LENGTH);
+      digest.doFinal(out, outOffset);
+   }
+
+   /**
+    * Calculate the double SHA-256 of the bytes written so far without copying
+    * them
+    */
+   public static Sha256Hash doubleSha256(ByteWriter writer) {
+      return doubleSha256(writer.getBuffer(), 0, writer.length());
    }
 
    public static Sha512Hash sha512(byte[] data) {
-      MessageDigest digest;
-      digest = getSha512Digest();
+      MessageDigest digest = DIGESTS.get().sha512;
       digest.update(data, 0, data.length);
       return Sha512Hash.of(digest.digest());
    }
 
    public static Sha256Hash sha256(byte[] data, int offset, int length) {
-      MessageDigest digest;
-      digest = getSha256Digest();
+      byte[] out = new byte[SHA256_LENGTH];
+      sha256(data, offset, length, out, 0);
+      return new Sha256Hash(out);
+   }
+
+   /**
+    * Calculate the SHA-256 of a range of bytes into a buffer
+    */
+   public static void sha256(byte[] data, int offset, int length, byte[] out, int outOffset) {
+      checkRanges(data, offset, length, out, outOffset, SHA256_LENGTH);
+      SHA256Digest digest = DIGESTS.get().sha256;
       digest.update(data, offset, length);
-      return new Sha256Hash(digest.digest());
+      digest.doFinal(out, outOffset);
+   }
+
+   /**
+    * Calculate the SHA-256 of a midstate, as exported by
+    * {@link SHA256Digest#getMidstate(int[])}, followed by a range of bytes into
+    * a buffer. This saves hashing a common prefix of many messages every time.
+    */
+   public static void sha256(int[] midstate, long midstateLength, byte[] data, int offset, int length, byte[] out,
+                             int outOffset) {
+      checkRanges(data, offset, length, out, outOffset, SHA256_LENGTH);
+      SHA256Digest digest = DIGESTS.get().sha256;
+      digest.setMidstate(midstate, midstateLength);
+      digest.update(data, offset, length);
+      digest.doFinal(out, outOffset);
    }
 
    public static Sha512Hash sha512(byte[] data1, byte[] data2) {
-      MessageDigest digest;
-      digest = getSha512Digest();
+      Preconditions.checkNotNull(data2);
+      MessageDigest digest = DIGESTS.get().sha512;
       digest.update(data1, 0, data1.length);
       digest.update(data2, 0, data2.length);
       return new Sha512Hash(digest.digest());
+   }
 
+   private static void checkRanges(byte[] data, int offset, int length, byte[] out, int outOffset, int outLength) {
+      Preconditions.checkPositionIndexes(offset, offset + length, data.length);
+      Preconditions.checkPositionIndexes(outOffset, outOffset + outLength, out.length);
    }
 
    private static MessageDigest getSha512Digest() {
@@ -112,12 +174,21 @@ public class HashUtils {
     * @return The Bitcoin address as an array of bytes.
     */
    public static byte[] addressHash(byte[] pubkeyBytes) {
-      byte[] sha256 = getSha256Digest().digest(pubkeyBytes);
-      byte[] out = new byte[20];
-      RIPEMD160Digest ripeMD160 = new RIPEMD160Digest();
-      ripeMD160.update(sha256, 0, sha256.length);
-      ripeMD160.doFinal(out, 0); // This also resets the hash function for
-      // next use
+      byte[] out = new byte[HASH160_LENGTH];
+      hash160(pubkeyBytes, 0, pubkeyBytes.length, out, 0);
       return out;
    }
+
+   /**
+    * Calculate the RipeMd160 of the SHA-256 of a range of bytes into a buffer
+    * without allocating
+    */
+   public static void hash160(byte[] data, int offset, int length, byte[] out, int outOffset) {
+      checkRanges(data, offset, length, out, outOffset, HASH160_LENGTH);
+      Digests digests = DIGESTS.get();
+      digests.sha256.update(data, offset, length);
+      digests.sha256.doFinal(digests.buffer, 0);
+      digests.ripemd160.update(digests.buffer, 0, SHA256_LENGTH);
+      digests.ripemd160.doFinal(out, outOffset); // This also resets the hash function for next use
+   }
 }
@@ -0,0 +1,197 @@
+/*
+ * Copyright 2013, 2014 Megion Research & Development GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.mrd.bitlib.util;
+
+import com.google.common.base.Preconditions;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Open addressing hash table keyed by a raw 32 byte hash and an optional int
+ * (for instance an output index). The key words are stored in a flat long
+ * array, so lookups neither allocate nor call {@link Sha256Hash#hashCode()}.
+ * <p/>
+ * Collisions are resolved with linear probing. Entries cannot be removed and
+ * null values are not allowed, an empty slot is marked by a null value.
+ */
+abstract class OpenHashTable<V> {
+   private static final int HASH_WORDS = Sha256Hash.HASH_LENGTH / 8;
+   private static final int MIN_CAPACITY = 16;
+
+   private final int _stride;
+   private long[] _keys;
+   private Object[] _values;
+   private int _mask;
+   private int _size;
+
+   /**
+    * @param withIndex    true if keys carry an int index besides the hash
+    * @param expectedSize the number of entries expected, used for pre-sizing
+    */
+   protected OpenHashTable(boolean withIndex, int expectedSize) {
+      _stride = withIndex ? HASH_WORDS + 1 : HASH_WORDS;
+      allocate(capacityFor(expectedSize));
+   }
+
+   private static int capacityFor(int expectedSize) {
+      // Keep the load factor at or below 0.5
+      int capacity = MIN_CAPACITY;
+      while (capacity < expectedSize * 2) {
+         capacity <<= 1;
+      }
+      return capacity;
+   }
+
+   private void allocate(int capacity) {
+      _keys = new long[capacity * _stride];
+      _values = new Object[capacity];
+      _mask = capacity - 1;
+   }
+
+   private static int slotHash(long w0, long w1, long w2, long w3, int index) {
+      // Hashes are mostly uniformly distributed already, but we don't want
+      // to trust that for data coming from a server
+      long h = w0 ^ Long.rotateLeft(w1, 16) ^ Long.rotateLeft(w2, 32) ^ Long.rotateLeft(w3, 48);
+      h += index * 0x9E3779B97F4A7C15L;
+      h ^= h >>> 33;
+      h *= 0xFF51AFD7ED558CCDL;
+      h ^= h >>> 33;
+      h *= 0xC4CEB9FE1A85EC53L;
+      h ^= h >>> 33;
+      return (int) h;
+   }
+
+   private int findSlot(byte[] hash, int index) {
+      Preconditions.checkArgument(hash.length == Sha256Hash.HASH_LENGTH);
+      long w0 = BitUtils.uint64ToLong(hash, 0);
+      long w1 = BitUtils.uint64ToLong(hash, 8);
+      long w2 = BitUtils.uint64ToLong(hash, 16);
+      long w3 = BitUtils.uint64ToLong(hash, 24);
+      int slot = slotHash(w0, w1, w2, w3, index) & _mask;
+      while (true) {
+         if (_values[slot] == null) {
+            return slot;
+         }
+         int k = slot * _stride;
+         if (_keys[k] == w0 && _keys[k + 1] == w1 && _keys[k + 2] == w2 && _keys[k + 3] == w3
+               && (_stride == HASH_WORDS || _keys[k + 4] == index)) {
+            return slot;
+         }
+         slot = (slot + 1) & _mask;
+      }
+   }
+
+   @SuppressWarnings("unchecked")
+   protected final V getEntry(byte[] hash, int index) {
+      return (V) _values[findSlot(hash, index)];
+   }
+
+   /**
+    * Insert or replace an entry
+    *
+    * @return the previous value of the entry or null if there was none
+    */
+   @SuppressWarnings("unchecked")
+   protected final V putEntry(byte[] hash, int index, V value) {
+      Preconditions.checkNotNull(value);
+      int slot = findSlot(hash, index);
+      V previous = (V) _values[slot];
+      if (previous == null) {
+         if ((_size + 1) * 2 > _values.length) {
+            grow();
+            slot = findSlot(hash, index);
+         }
+         int k = slot * _stride;
+         _keys[k] = BitUtils.uint64ToLong(hash, 0);
+         _keys[k + 1] = BitUtils.uint64ToLong(hash, 8);
+         _keys[k + 2] = BitUtils.uint64ToLong(hash, 16);
+         _keys[k + 3] = BitUtils.uint64ToLong(hash, 24);
+         if (_stride != HASH_WORDS) {
+            _keys[k + 4] = index;
+         }
+         _size++;
+      }
+      _values[slot] = value;
+      return previous;
+   }
+
+   private void grow() {
+      long[] oldKeys = _keys;
+      Object[] oldValues = _values;
+      allocate(oldValues.length * 2);
+      for (int i = 0; i < oldValues.length; i++) {
+         if (oldValues[i] == null) {
+            continue;
+         }
+         int k = i * _stride;
+         int index = _stride == HASH_WORDS ? 0 : (int) oldKeys[k + 4];
+         int slot = slotHash(oldKeys[k], oldKeys[k + 1], oldKeys[k + 2], oldKeys[k + 3], index) & _mask;
+         while (_values[slot] != null) {
+            slot = (slot + 1) & _mask;
+         }
+         System.arraycopy(oldKeys, k, _keys, slot * _stride, _stride);
+         _values[slot] = oldValues[i];
+      }
+   }
+
+   public int size() {
+      return _size;
+   }
+
+   public boolean isEmpty() {
+      return _size == 0;
+   }
+
+   /**
+    * Iterate over all values in table order
+    */
+   protected final Iterator<V> valueIterator() {
+      return new Iterator<V>() {
+         private final Object[] _snapshot = _values;
+         private int _next = advance(0);
+
+         private int advance(int from) {
+            while (from < _snapshot.length && _snapshot[from] == null) {
+               from++;
+            }
+            return from;
+         }
+
+         @Override
+         public boolean hasNext() {
+            return _next < _snapshot.length;
+         }
+
+         @SuppressWarnings("unchecked")
+         @Override
+         public V next() {
+            if (!hasNext()) {
+               throw new NoSuchElementException();
+            }
+            V value = (V) _snapshot[_next];
+            _next = advance(_next + 1);
+            return value;
+         }
+
+         @Override
+         public void remove() {
+            throw new UnsupportedOperationException();
+         }
+      };
+   }
+}
@@ -0,0 +1,65 @@
+/*
+ * Copyright 2013, 2014 Megion Research & Development GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.mrd.bitlib.util;
+
+import com.mrd.bitlib.model.OutPoint;
+
+import java.util.Iterator;
+
+/**
+ * Map from outpoints (transaction hash and output index) to values. Lookups
+ * can be done without creating {@link OutPoint} instances. See
+ * {@link OpenHashTable}.
+ */
+public class OutPointMap<V> extends OpenHashTable<V> implements Iterable<V> {
+
+   public OutPointMap() {
+      this(0);
+   }
+
+   public OutPointMap(int expectedSize) {
+      super(true, expectedSize);
+   }
+
+   public V get(OutPoint outPoint) {
+      return getEntry(outPoint.hash.getBytes(), outPoint.index);
+   }
+
+   public V get(Sha256Hash hash, int index) {
+      return getEntry(hash.getBytes(), index);
+   }
+
+   public boolean containsKey(OutPoint outPoint) {
+      return get(outPoint) != null;
+   }
+
+   public boolean containsKey(Sha256Hash hash, int index) {
+      return get(hash, index) != null;
+   }
+
+   /**
+    * @return the previous value or null if there was none
+    */
+   public V put(OutPoint outPoint, V value) {
+      return putEntry(outPoint.hash.getBytes(), outPoint.index, value);
+   }
+
+   @Override
+   public Iterator<V> iterator() {
+      return valueIterator();
+   }
+}
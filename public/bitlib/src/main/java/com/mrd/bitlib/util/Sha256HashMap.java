@@ -0,0 +1,54 @@
+/*
+ * Copyright 2013, 2014 Megion Research & Development GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.mrd.bitlib.util;
+
+import java.util.Iterator;
+
+/**
+ * Map from {@link Sha256Hash} to values, which does not depend on the key
+ * objects for lookups. See {@link OpenHashTable}.
+ */
+public class Sha256HashMap<V> extends OpenHashTable<V> implements Iterable<V> {
+
+   public Sha256HashMap() {
+      this(0);
+   }
+
+   public Sha256HashMap(int expectedSize) {
+      super(false, expectedSize);
+   }
+
+   public V get(Sha256Hash hash) {
+      return getEntry(hash.getBytes(), 0);
+   }
+
+   public boolean containsKey(Sha256Hash hash) {
+      return getEntry(hash.getBytes(), 0) != null;
+   }
+
+   /**
+    * @return the previous value or null if there was none
+    */
+   public V put(Sha256Hash hash, V value) {
+      return putEntry(hash.getBytes(), 0, value);
+   }
+
+   @Override
+   public Iterator<V> iterator() {
+      return valueIterator();
+   }
+}
@@ -0,0 +1,62 @@
+/*
+ * Copyright 2013, 2014 Megion Research & Development GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.mrd.bitlib.util;
+
+import java.util.AbstractSet;
+import java.util.Collection;
+import java.util.Iterator;
+
+/**
+ * Set of {@link Sha256Hash} instances backed by a {@link Sha256HashMap}.
+ * Removal is not supported.
+ */
+public class Sha256HashSet extends AbstractSet<Sha256Hash> {
+   private final Sha256HashMap<Sha256Hash> _map;
+
+   public Sha256HashSet() {
+      this(0);
+   }
+
+   public Sha256HashSet(int expectedSize) {
+      _map = new Sha256HashMap<Sha256Hash>(expectedSize);
+   }
+
+   public Sha256HashSet(Collection<Sha256Hash> hashes) {
+      this(hashes.size());
+      addAll(hashes);
+   }
+
+   @Override
+   public boolean add(Sha256Hash hash) {
+      return _map.put(hash, hash) == null;
+   }
+
+   @Override
+   public boolean contains(Object o) {
+      return o instanceof Sha256Hash && _map.containsKey((Sha256Hash) o);
+   }
+
+   @Override
+   public Iterator<Sha256Hash> iterator() {
+      return _map.iterator();
+   }
+
+   @Override
+   public int size() {
+      return _map.size();
+   }
+}
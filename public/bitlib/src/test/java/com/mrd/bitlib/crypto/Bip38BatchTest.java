@@ -0,0 +1,140 @@
+package com.mrd.bitlib.crypto;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadPoolExecutor;
+
+import org.junit.Ignore;
+import org.junit.Test;
+
+import com.mrd.bitlib.model.NetworkParameters;
+
+public class Bip38BatchTest {
+
+   private static final NetworkParameters NETWORK = NetworkParameters.productionNetwork;
+   private static final String PASSPHRASE = "TestingOneTwoThree";
+
+   private static List<InMemoryPrivateKey> parseKeys(String... keys) {
+      List<InMemoryPrivateKey> result = new ArrayList<InMemoryPrivateKey>();
+      for (String key : keys) {
+         result.add(new InMemoryPrivateKey(key, NETWORK));
+      }
+      return result;
+   }
+
+   @Test
+   public void encryptMatchesSingleKeys() throws InterruptedException {
+      ExecutorService executor = Executors.newFixedThreadPool(2);
+      try {
+         Bip38Batch batch = new Bip38Batch(2);
+         List<String> encrypted = batch.encrypt(PASSPHRASE, parseKeys(
+               "5KN7MzqK5wt2TP1fQCYyHBtDrXdJuXbUzm4A9rKAteGu3Qi5CVR",
+               "L44B5gGEpqEDRS9vVPz7QT35jcBG2r3CZwSwQ4fCewXAhAhqGVpP"), NETWORK, executor, 2);
+         assertEquals(Arrays.asList("6PRVWUbkzzsbcVac2qwfssoUJAN1Xhrg6bNk8J7Nzm5H7kxEbn2Nh2ZoGg",
+               "6PYNKZ1EAgYgmQfmNVamxyXVWHzK5s6DGhwP4J5o44cvXdoY7sRzhtpUeo"), encrypted);
+         assertEquals(1.0, batch.getProgress(), 0.0);
+      } finally {
+         executor.shutdown();
+      }
+   }
+
+   @Test
+   public void decryptWithAndWithoutEcMultiply() throws InterruptedException {
+      Bip38Batch batch = new Bip38Batch(3);
+      List<String> decrypted = batch.decrypt(PASSPHRASE, Arrays.asList(
+            "6PRVWUbkzzsbcVac2qwfssoUJAN1Xhrg6bNk8J7Nzm5H7kxEbn2Nh2ZoGg",
+            "6PfQu77ygVyJLZjfvMLyhLMQbYnu5uguoJJ4kMCLqWwPEdfpwANVS76gTX",
+            "6PYNKZ1EAgYgmQfmNVamxyXVWHzK5s6DGhwP4J5o44cvXdoY7sRzhtpUeo"), NETWORK, null, 1);
+      assertEquals(Arrays.asList("5KN7MzqK5wt2TP1fQCYyHBtDrXdJuXbUzm4A9rKAteGu3Qi5CVR",
+            "5K4caxezwjGCGfnoPTZ8tMcJBLB7Jvyjv4xxeacadhq8nLisLR2",
+            "L44B5gGEpqEDRS9vVPz7QT35jcBG2r3CZwSwQ4fCewXAhAhqGVpP"), decrypted);
+      assertEquals(3, batch.getCompletedCount());
+   }
+
+   @Test
+   public void wrongPassphraseStopsBatch() throws InterruptedException {
+      Bip38Batch batch = new Bip38Batch(3);
+      assertNull(batch.decrypt("Wrong", Arrays.asList(
+            "6PRVWUbkzzsbcVac2qwfssoUJAN1Xhrg6bNk8J7Nzm5H7kxEbn2Nh2ZoGg",
+            "6PYNKZ1EAgYgmQfmNVamxyXVWHzK5s6DGhwP4J5o44cvXdoY7sRzhtpUeo",
+            "6PYLtMnXvfG3oJde97zRyLYFZCYizPU5T3LwgdYJz1fRhh16bU7u6PPmY7"), NETWORK, null, 1));
+      assertEquals(1.0, batch.getProgress(0).getProgress(), 0.0);
+      assertEquals(0.0, batch.getProgress(1).getProgress(), 0.0);
+      assertEquals(0.0, batch.getProgress(2).getProgress(), 0.0);
+   }
+
+   @Test(expected = InterruptedException.class)
+   public void cancelledBatchThrows() throws InterruptedException {
+      Bip38Batch batch = new Bip38Batch(1);
+      batch.cancel();
+      batch.encrypt(PASSPHRASE, parseKeys("5KN7MzqK5wt2TP1fQCYyHBtDrXdJuXbUzm4A9rKAteGu3Qi5CVR"), NETWORK, null, 1);
+   }
+
+   @Test(expected = IllegalArgumentException.class)
+   public void rejectsUnencryptedKeys() throws InterruptedException {
+      new Bip38Batch(1).decrypt(PASSPHRASE, Arrays.asList("5KN7MzqK5wt2TP1fQCYyHBtDrXdJuXbUzm4A9rKAteGu3Qi5CVR"),
+            NETWORK, null, 1);
+   }
+
+   @Test
+   public void workersAreLimited() throws InterruptedException {
+      ThreadPoolExecutor executor = (ThreadPoolExecutor) Executors.newCachedThreadPool();
+      try {
+         List<InMemoryPrivateKey> keys = parseKeys("5KN7MzqK5wt2TP1fQCYyHBtDrXdJuXbUzm4A9rKAteGu3Qi5CVR",
+               "L44B5gGEpqEDRS9vVPz7QT35jcBG2r3CZwSwQ4fCewXAhAhqGVpP",
+               "5K4caxezwjGCGfnoPTZ8tMcJBLB7Jvyjv4xxeacadhq8nLisLR2");
+         new Bip38Batch(keys.size()).encrypt(PASSPHRASE, keys, NETWORK, executor, 2);
+         assertEquals(2, executor.getLargestPoolSize());
+      } finally {
+         executor.shutdown();
+      }
+   }
+
+   @Test(expected = IllegalArgumentException.class)
+   public void rejectsZeroWorkers() throws InterruptedException {
+      new Bip38Batch(1).encrypt(PASSPHRASE, parseKeys("5KN7MzqK5wt2TP1fQCYyHBtDrXdJuXbUzm4A9rKAteGu3Qi5CVR"),
+            NETWORK, null, 0);
+   }
+
+   @Test
+   @Ignore
+   public void testSpeed() throws InterruptedException {
+      final Random random = new Random(1);
+      RandomSource randomSource = new RandomSource() {
+         @Override
+         public void nextBytes(byte[] bytes) {
+            random.nextBytes(bytes);
+         }
+      };
+      List<InMemoryPrivateKey> keys = new ArrayList<InMemoryPrivateKey>();
+      for (int i = 0; i < 16; i++) {
+         keys.add(new InMemoryPrivateKey(randomSource, true));
+      }
+      int threads = Runtime.getRuntime().availableProcessors();
+      ExecutorService executor = Executors.newFixedThreadPool(threads);
+      try {
+         for (int round = 0; round < 3; round++) {
+            long start = System.nanoTime();
+            for (InMemoryPrivateKey key : keys) {
+               Bip38.encryptNoEcMultiply(PASSPHRASE, key.getBase58EncodedPrivateKey(NETWORK), null, NETWORK);
+            }
+            long singleNanos = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            new Bip38Batch(keys.size()).encrypt(PASSPHRASE, keys, NETWORK, executor, threads);
+            long batchNanos = System.nanoTime() - start;
+            System.out.println(keys.size() + " keys, one by one: " + singleNanos / 1000000 + " ms, batch on "
+                  + threads + " threads: " + batchNanos / 1000000 + " ms");
+         }
+      } finally {
+         executor.shutdown();
+      }
+   }
+}
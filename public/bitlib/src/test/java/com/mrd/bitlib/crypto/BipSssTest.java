@@ -8,7 +8,9 @@ import junit.framework.Assert;
 import org.junit.Test;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.List;
 
 public class BipSssTest {
 
@@ -176,6 +178,23 @@ public class BipSssTest {
       assertResult(result1, HexUtils.toBytes("ea1bef413e406b7a39280a39bf8ea76b59a4543f3f1797cfb90d33492b3eb57cf05c9cbce61ecff3854028c045049cdf0ba97cd18cbfa76b58481a17ff19ca87"));
    }
 
+   @Test
+   public void combineAllMatchesCombine() throws BipSss.NotEnoughSharesException, BipSss.InvalidContentTypeException, BipSss.IncompatibleSharesException {
+      Collection<Share> first = addShareWithId("SSS-FmEQ1wApUkUA", "ff12", new ArrayList<Share>());
+      addShareWithId("SSS-FmEQ2TkajyyQ", "ff12", first);
+      Collection<Share> second = addShareWithId("SSS-FmEQ2TkajyyQ", "ff12", new ArrayList<Share>());
+      addShareWithId("SSS-FmEQ2yQJjYme", "ff12", second);
+      Collection<Share> third = addShareWithId("SSS-2b8cxNvVnwSHzDKPr3", "1234", new ArrayList<Share>());
+      List<Collection<Share>> shareSets = new ArrayList<Collection<Share>>();
+      shareSets.add(first);
+      shareSets.add(second);
+      shareSets.add(third);
+      List<String> results = BipSss.combineAll(shareSets);
+      Assert.assertEquals(Arrays.asList(BipSss.combine(first), BipSss.combine(second), BipSss.combine(third)), results);
+      assertResult(results.get(1), HexUtils.toBytes("2a"));
+      assertResult(results.get(2), HexUtils.toBytes("0102030405"));
+   }
+
    @Test
    public void notEnoughShares() throws BipSss.InvalidContentTypeException, BipSss.IncompatibleSharesException {
       Collection<Share> shares = addShareWithId("SSS-5CJkUwdiUPZi2R8RJJzkUFvs1TWC22JAQD2T3QMyhuAvDgzrXKuhT5at", "20ba", new ArrayList<Share>());
@@ -1,9 +1,13 @@
 package com.mrd.bitlib.crypto;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Random;
 
 import org.junit.Assert;
+import org.junit.Ignore;
 import org.junit.Test;
 
 import com.mrd.bitlib.crypto.Gf256.Share;
@@ -96,4 +100,76 @@ public class Gf256Test {
       return combinations;
    }
 
+   @Test
+   public void batchMatchesSingleSecrets() {
+      Random random = new Random(42);
+      List<byte[]> secrets = new ArrayList<byte[]>();
+      for (int i = 0; i < 50; i++) {
+         byte[] secret = new byte[random.nextInt(80)];
+         random.nextBytes(secret);
+         secrets.add(secret);
+      }
+      Gf256 gf = new Gf256();
+      List<List<Share>> shareLists = gf.makeShares(secrets, 3, 5);
+      List<List<Share>> selections = new ArrayList<List<Share>>();
+      for (int i = 0; i < secrets.size(); i++) {
+         List<Share> single = gf.makeShares(secrets.get(i), 3, 5);
+         for (int j = 0; j < 5; j++) {
+            Assert.assertEquals(single.get(j).index, shareLists.get(i).get(j).index);
+            Assert.assertArrayEquals(single.get(j).data, shareLists.get(i).get(j).data);
+         }
+         // Mostly the same share indexes, sometimes others in another order
+         List<Share> selection = new ArrayList<Share>(shareLists.get(i));
+         if (i % 7 == 0) {
+            Collections.shuffle(selection, random);
+         }
+         selections.add(selection.subList(0, 3));
+      }
+      List<byte[]> combined = gf.combineShareLists(selections);
+      for (int i = 0; i < secrets.size(); i++) {
+         Assert.assertArrayEquals(secrets.get(i), combined.get(i));
+      }
+   }
+
+   @Test
+   @Ignore
+   public void testSpeed() {
+      Random random = new Random(1);
+      List<byte[]> secrets = new ArrayList<byte[]>();
+      for (int i = 0; i < 10000; i++) {
+         byte[] secret = new byte[32];
+         random.nextBytes(secret);
+         secrets.add(secret);
+      }
+      Gf256 gf = new Gf256();
+      for (int round = 0; round < 5; round++) {
+         long start = System.nanoTime();
+         List<List<Share>> shareLists = new ArrayList<List<Share>>();
+         for (byte[] secret : secrets) {
+            shareLists.add(gf.makeShares(secret, 3, 5));
+         }
+         long splitNanos = System.nanoTime() - start;
+
+         start = System.nanoTime();
+         gf.makeShares(secrets, 3, 5);
+         long batchSplitNanos = System.nanoTime() - start;
+
+         List<List<Share>> selections = new ArrayList<List<Share>>();
+         for (List<Share> shares : shareLists) {
+            selections.add(shares.subList(1, 4));
+         }
+         start = System.nanoTime();
+         for (List<Share> selection : selections) {
+            gf.combineShares(selection);
+         }
+         long combineNanos = System.nanoTime() - start;
+
+         start = System.nanoTime();
+         gf.combineShareLists(selections);
+         long batchCombineNanos = System.nanoTime() - start;
+         System.out.println("split: " + splitNanos / 1000000 + " ms, batch: " + batchSplitNanos / 1000000
+               + " ms, combine: " + combineNanos / 1000000 + " ms, batch: " + batchCombineNanos / 1000000 + " ms");
+      }
+   }
+
 }
@@ -0,0 +1,392 @@
+package com.mrd.bitlib.model;
+
+import com.mrd.bitlib.model.HeaderChain.Checkpoint;
+import com.mrd.bitlib.model.HeaderChain.HeaderVerificationException;
+import com.mrd.bitlib.util.BitUtils;
+import com.mrd.bitlib.util.ByteWriter;
+import com.mrd.bitlib.util.Sha256Hash;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Ignore;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class HeaderChainTest {
+
+   private static final int LIMIT = 0x207fffff;
+   private static final int START_TIME = 1400000000;
+
+   /**
+    * Mines blocks on top of each other with the easiest difficulty the retarget rules allow
+    */
+   private static class Miner {
+      private final List<Block> _blocks = new ArrayList<Block>();
+      private final int _limit;
+      private int _merkleRootSeed;
+
+      Miner(int limit, int bits) {
+         _limit = limit;
+         _blocks.add(mine(Sha256Hash.ZERO_HASH, START_TIME, bits));
+      }
+
+      Miner(Miner other, int height) {
+         _limit = other._limit;
+         _blocks.addAll(other._blocks.subList(0, height + 1));
+         _merkleRootSeed = other._merkleRootSeed + 1000000;
+      }
+
+      int getHeight() {
+         return _blocks.size() - 1;
+      }
+
+      Block next(int spacing) {
+         Block previous = _blocks.get(getHeight());
+         int height = _blocks.size();
+         int bits = previous.difficultyTarget;
+         if (height % HeaderChain.RETARGET_INTERVAL == 0) {
+            Block first = _blocks.get(height - HeaderChain.RETARGET_INTERVAL);
+            bits = HeaderChain.retarget(bits, previous.time - first.time, _limit);
+         }
+         return next(spacing, bits);
+      }
+
+      Block next(int spacing, int bits) {
+         Block previous = _blocks.get(getHeight());
+         Block block = mine(previous.getHash(), previous.time + spacing, bits);
+         _blocks.add(block);
+         return block;
+      }
+
+      void mine(int count, int spacing) {
+         for (int i = 0; i < count; i++) {
+            next(spacing);
+         }
+      }
+
+      private Block mine(Sha256Hash prevBlockHash, int time, int bits) {
+         // Every block gets another merkle root, so that blocks on different branches differ
+         byte[] seed = new byte[Sha256Hash.HASH_LENGTH];
+         BitUtils.uint32ToByteArrayLE(_merkleRootSeed++, seed, 0);
+         Sha256Hash merkleRoot = Sha256Hash.of(seed);
+         for (int nonce = 0; ; nonce++) {
+            Block block = new Block(1, prevBlockHash, merkleRoot, time, bits, nonce, new Transaction[0]);
+            if (block.hasValidProofOfWork()) {
+               return block;
+            }
+         }
+      }
+
+      Checkpoint getCheckpoint(int height) {
+         return new Checkpoint(height, getHeader(height));
+      }
+
+      byte[] getHeader(int height) {
+         return getHeaders(height, 1);
+      }
+
+      byte[] getHeaders(int fromHeight, int count) {
+         ByteWriter writer = new ByteWriter(count * Block.HEADER_SIZE);
+         for (int i = 0; i < count; i++) {
+            _blocks.get(fromHeight + i).headerToByteWriter(writer);
+         }
+         return writer.toBytes();
+      }
+
+      void addTo(HeaderChain chain, int fromHeight, int toHeight) throws HeaderVerificationException {
+         chain.add(fromHeight, getHeaders(fromHeight, toHeight - fromHeight + 1), 0, toHeight - fromHeight + 1);
+      }
+   }
+
+   private File _file;
+
+   @Before
+   public void createFile() throws IOException {
+      _file = File.createTempFile("headers", ".bin");
+      assertTrue(_file.delete());
+   }
+
+   @After
+   public void deleteFile() {
+      _file.delete();
+   }
+
+   private HeaderChain open(Miner miner) throws IOException {
+      return new HeaderChain(_file, miner.getCheckpoint(0), LIMIT, false);
+   }
+
+   private static void assertRejected(HeaderChain chain, int height, byte[] header) {
+      int chainHeight = chain.getHeight();
+      try {
+         chain.add(height, header, 0, 1);
+         fail("Header accepted");
+      } catch (HeaderVerificationException e) {
+         // expected
+      }
+      assertEquals(chainHeight, chain.getHeight());
+   }
+
+   @Test
+   public void genesisBlocks() throws Exception {
+      HeaderChain chain = new HeaderChain(_file, NetworkParameters.productionNetwork);
+      assertEquals(0, chain.getHeight());
+      assertEquals(Sha256Hash.fromString("000000000019d6689c085ae165831e934ff763ae46a2a6c172b3f1b60a8ce26f"),
+            chain.getHash(0));
+      Block genesis = chain.getHeader(0);
+      assertTrue(genesis.hasValidProofOfWork());
+      assertEquals(HeaderChain.PROOF_OF_WORK_LIMIT, genesis.difficultyTarget);
+      assertEquals(Sha256Hash.fromString("4a5e1e4baab89f3a32518a88c31bc87f618f76673e2cc77ab2127b7afdeda33b"),
+            genesis.merkleRoot);
+      chain.close();
+
+      // A chain of another network replaces the file
+      chain = new HeaderChain(_file, NetworkParameters.testNetwork);
+      assertEquals(Sha256Hash.fromString("000000000933ea01ad0ee984209779baaec3ced90fa3f408719526f8d77f4943"),
+            chain.getHash(0));
+      assertNull(chain.getHash(1));
+      // Which precedes the block kept for the test network
+      byte[] next = NetworkParameters.testNetwork.getGenesisBlock();
+      assertEquals(chain.getHash(0), Sha256Hash.copyOf(next, 4).reverse());
+      chain.add(1, next, 0, 1);
+      assertEquals(1, chain.getHeight());
+      chain.close();
+   }
+
+   @Test
+   public void compactTargets() {
+      BigInteger limit = Block.decodeCompactTarget(HeaderChain.PROOF_OF_WORK_LIMIT);
+      assertEquals(BigInteger.valueOf(0xffff).shiftLeft(208), limit);
+      assertEquals(HeaderChain.PROOF_OF_WORK_LIMIT, Block.encodeCompactTarget(limit));
+      assertEquals(LIMIT, Block.encodeCompactTarget(Block.decodeCompactTarget(LIMIT)));
+      // The mantissa is shifted if its top bit would be set
+      assertEquals(0x02008000, Block.encodeCompactTarget(BigInteger.valueOf(0x80)));
+      assertEquals(BigInteger.valueOf(0x12), Block.decodeCompactTarget(0x01120000));
+      // Negative and overflowing targets
+      assertNull(Block.decodeCompactTarget(0x04923456));
+      assertNull(Block.decodeCompactTarget(0xff123456));
+      // Four times slower blocks make a four times higher target, but no more
+      assertEquals(0x1d03fffc, HeaderChain.retarget(0x1d00ffff, 8 * 14 * 24 * 60 * 60, 0x1d7fffff));
+      assertEquals(0x1d00ffff, HeaderChain.retarget(0x1d00ffff, 8 * 14 * 24 * 60 * 60, 0x1d00ffff));
+   }
+
+   @Test
+   public void verifiesAcrossRetargetAndReopens() throws Exception {
+      Miner miner = new Miner(LIMIT, LIMIT);
+      // Blocks twice as fast as intended make the difficulty go up
+      miner.mine(2100, 300);
+      HeaderChain chain = open(miner);
+      for (int height = 1; height <= miner.getHeight(); height += 500) {
+         miner.addTo(chain, height, Math.min(miner.getHeight(), height + 499));
+      }
+      assertEquals(2100, chain.getHeight());
+      int retargeted = chain.getHeader(HeaderChain.RETARGET_INTERVAL).difficultyTarget;
+      assertTrue(Block.decodeCompactTarget(retargeted).compareTo(Block.decodeCompactTarget(LIMIT)) < 0);
+      assertEquals(retargeted, chain.getHeader(2100).difficultyTarget);
+      Sha256Hash tip = chain.getHash(2100);
+      chain.close();
+
+      chain = open(miner);
+      assertEquals(2100, chain.getHeight());
+      assertEquals(tip, chain.getHash(2100));
+      assertEquals(miner._blocks.get(1500).getHash(), chain.getHash(1500));
+      // Headers we already have are skipped
+      miner.addTo(chain, 2000, 2100);
+      assertEquals(2100, chain.getHeight());
+      chain.close();
+   }
+
+   @Test
+   public void rejectsInvalidHeaders() throws Exception {
+      Miner miner = new Miner(LIMIT, LIMIT);
+      miner.mine(20, 600);
+      HeaderChain chain = open(miner);
+      miner.addTo(chain, 1, 20);
+
+      // Not connecting
+      Miner other = new Miner(miner, 0);
+      other.mine(21, 600);
+      assertRejected(chain, 21, other.getHeader(21));
+      assertRejected(chain, 23, miner.getHeader(20));
+
+      // A different difficulty target than the previous block
+      Miner wrongBits = new Miner(miner, 20);
+      wrongBits.next(600, 0x2007ffff);
+      assertRejected(chain, 21, wrongBits.getHeader(21));
+
+      // Not meeting the target
+      Block previous = miner._blocks.get(20);
+      Block weak = null;
+      for (int nonce = 0; weak == null; nonce++) {
+         Block block = new Block(1, previous.getHash(), previous.merkleRoot, previous.time + 600, LIMIT, nonce,
+               new Transaction[0]);
+         if (!block.hasValidProofOfWork()) {
+            weak = block;
+         }
+      }
+      ByteWriter writer = new ByteWriter(Block.HEADER_SIZE);
+      weak.headerToByteWriter(writer);
+      assertRejected(chain, 21, writer.toBytes());
+
+      // Not after the median time of the previous blocks
+      Miner early = new Miner(miner, 20);
+      early.next(-3000);
+      assertRejected(chain, 21, early.getHeader(21));
+
+      // A bad header in a run leaves the ones before it
+      Miner partly = new Miner(miner, 20);
+      partly.mine(5, 600);
+      byte[] headers = partly.getHeaders(21, 5);
+      headers[3 * Block.HEADER_SIZE + 10]++;
+      try {
+         chain.add(21, headers, 0, 5);
+         fail("Header accepted");
+      } catch (HeaderVerificationException e) {
+         // expected
+      }
+      assertEquals(23, chain.getHeight());
+      chain.close();
+   }
+
+   @Test
+   public void checkpointsMustMatch() throws Exception {
+      Miner miner = new Miner(LIMIT, LIMIT);
+      miner.mine(30, 600);
+      Miner fork = new Miner(miner, 10);
+      fork.mine(25, 600);
+
+      HeaderChain chain = open(miner);
+      chain.addCheckpoint(fork.getCheckpoint(15));
+      try {
+         miner.addTo(chain, 1, 30);
+         fail("Header accepted");
+      } catch (HeaderVerificationException e) {
+         // expected
+      }
+      assertEquals(14, chain.getHeight());
+      fork.addTo(chain, 11, 35);
+      assertEquals(35, chain.getHeight());
+      assertEquals(fork._blocks.get(15).getHash(), chain.getHash(15));
+
+      // A checkpoint added later drops the headers that don't match it
+      chain.addCheckpoint(miner.getCheckpoint(12));
+      assertEquals(11, chain.getHeight());
+      assertEquals(fork._blocks.get(11).getHash(), chain.getHash(11));
+      chain.close();
+   }
+
+   @Test
+   public void branchWithMoreWorkWins() throws Exception {
+      Miner miner = new Miner(LIMIT, LIMIT);
+      miner.mine(50, 600);
+      HeaderChain chain = open(miner);
+      miner.addTo(chain, 1, 50);
+
+      // As much work is not enough
+      Miner equal = new Miner(miner, 40);
+      equal.mine(10, 600);
+      assertEquals(50, chain.getHeight());
+      equal.addTo(chain, 41, 50);
+      assertEquals(miner._blocks.get(45).getHash(), chain.getHash(45));
+
+      Miner longer = new Miner(miner, 40);
+      longer.mine(12, 600);
+      longer.addTo(chain, 38, 52);
+      assertEquals(52, chain.getHeight());
+      assertEquals(longer._blocks.get(41).getHash(), chain.getHash(41));
+      assertEquals(miner._blocks.get(40).getHash(), chain.getHash(40));
+      chain.close();
+
+      chain = open(miner);
+      assertEquals(longer._blocks.get(52).getHash(), chain.getHash(52));
+      chain.close();
+   }
+
+   @Test
+   public void minimumDifficultyBlocks() throws Exception {
+      int bits = 0x2007ffff;
+      Miner miner = new Miner(LIMIT, bits);
+      miner.next(600, bits);
+      // More than 20 minutes after the previous block the lowest difficulty is allowed
+      miner.next(1300, LIMIT);
+      miner.next(600, bits);
+      HeaderChain chain = new HeaderChain(_file, miner.getCheckpoint(0), LIMIT, true);
+      miner.addTo(chain, 1, 3);
+      assertEquals(3, chain.getHeight());
+
+      // Otherwise the target is the one of the last block not mined at the lowest difficulty
+      Miner fast = new Miner(miner, 2);
+      fast.next(600, LIMIT);
+      assertRejected(chain, 3, fast.getHeader(3));
+      chain.close();
+
+      // Which does not hold without the rule
+      assertTrue(_file.delete());
+      chain = new HeaderChain(_file, miner.getCheckpoint(0), LIMIT, false);
+      try {
+         miner.addTo(chain, 1, 3);
+         fail("Header accepted");
+      } catch (HeaderVerificationException e) {
+         // expected
+      }
+      assertEquals(1, chain.getHeight());
+      chain.close();
+   }
+
+   @Test
+   public void includedTransactions() throws Exception {
+      Miner miner = new Miner(LIMIT, LIMIT);
+      List<Sha256Hash> txids = Arrays.asList(Sha256Hash.fromString(
+            "8c14f0db3df150123e6f3dbbf30f8b955a8249b62ac1d1ff16284aefa3d06d87"), Sha256Hash.fromString(
+            "fff2525b8931402dd09222c50775608f75787bd2b87e56995a7bdd30f79702c4"), Sha256Hash.fromString(
+            "6359f0868171b1d194cbee1af2f16ea598ae8fad666d9b012c8ed2b79a236ec4"));
+      Block previous = miner._blocks.get(0);
+      Block block = null;
+      for (int nonce = 0; block == null || !block.hasValidProofOfWork(); nonce++) {
+         block = new Block(1, previous.getHash(), MerkleTree.computeRoot(txids), previous.time + 600, LIMIT, nonce,
+               new Transaction[0]);
+      }
+      miner._blocks.add(block);
+      HeaderChain chain = open(miner);
+      miner.addTo(chain, 1, 1);
+      assertTrue(chain.isIncluded(txids.get(2), 1, 2, MerkleTree.getBranch(txids, 2)));
+      assertFalse(chain.isIncluded(txids.get(2), 1, 1, MerkleTree.getBranch(txids, 2)));
+      assertFalse(chain.isIncluded(txids.get(2), 0, 2, MerkleTree.getBranch(txids, 2)));
+      assertFalse(chain.isIncluded(txids.get(2), 2, 2, MerkleTree.getBranch(txids, 2)));
+      assertFalse(chain.isIncluded(txids.get(2), 1, 9, MerkleTree.getBranch(txids, 2)));
+      chain.close();
+   }
+
+   @Test
+   @Ignore
+   public void testSpeed() throws Exception {
+      Miner miner = new Miner(LIMIT, LIMIT);
+      miner.mine(300000, 600);
+      byte[] headers = miner.getHeaders(1, miner.getHeight());
+      for (int round = 0; round < 5; round++) {
+         assertTrue(!_file.exists() || _file.delete());
+         HeaderChain chain = open(miner);
+         long start = System.nanoTime();
+         for (int height = 1; height <= miner.getHeight(); height += 10000) {
+            int count = Math.min(10000, miner.getHeight() - height + 1);
+            chain.add(height, headers, (height - 1) * Block.HEADER_SIZE, count);
+         }
+         chain.flush();
+         long nanos = System.nanoTime() - start;
+         assertEquals(miner.getHeight(), chain.getHeight());
+         chain.close();
+         System.out.println(miner.getHeight() + " headers in " + nanos / 1000000 + " ms, "
+               + (long) miner.getHeight() * 1000000000L / nanos + " headers/s");
+      }
+   }
+}
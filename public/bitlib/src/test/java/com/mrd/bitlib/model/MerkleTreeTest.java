@@ -0,0 +1,74 @@
+package com.mrd.bitlib.model;
+
+import com.mrd.bitlib.util.Sha256Hash;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class MerkleTreeTest {
+
+   private static List<Sha256Hash> randomTxids(Random random, int count) {
+      List<Sha256Hash> txids = new ArrayList<Sha256Hash>();
+      for (int i = 0; i < count; i++) {
+         byte[] bytes = new byte[Sha256Hash.HASH_LENGTH];
+         random.nextBytes(bytes);
+         txids.add(Sha256Hash.of(bytes));
+      }
+      return txids;
+   }
+
+   @Test
+   public void block100000() {
+      // Block 000000000003ba27aa200b1cecaad478d2b00432346c3f1f3986da1afd33e506 of the production network
+      List<Sha256Hash> txids = Arrays.asList(
+            Sha256Hash.fromString("8c14f0db3df150123e6f3dbbf30f8b955a8249b62ac1d1ff16284aefa3d06d87"),
+            Sha256Hash.fromString("fff2525b8931402dd09222c50775608f75787bd2b87e56995a7bdd30f79702c4"),
+            Sha256Hash.fromString("6359f0868171b1d194cbee1af2f16ea598ae8fad666d9b012c8ed2b79a236ec4"),
+            Sha256Hash.fromString("e9a66845e05d5abc0ad04ec80f774a7e585c6e8db975962d069a522137b80c1d"));
+      Sha256Hash merkleRoot = Sha256Hash.fromString("f3e94742aca4b5ef85488dc37c06c3282295ffec960994b2c0d5ac2a25a95766");
+      assertEquals(merkleRoot, MerkleTree.computeRoot(txids));
+      for (int i = 0; i < txids.size(); i++) {
+         assertEquals(merkleRoot, MerkleTree.computeRoot(txids.get(i), i, MerkleTree.getBranch(txids, i)));
+      }
+   }
+
+   @Test
+   public void singleTransactionIsTheRoot() {
+      Sha256Hash txid = randomTxids(new Random(2), 1).get(0);
+      assertEquals(txid, MerkleTree.computeRoot(Arrays.asList(txid)));
+      assertTrue(MerkleTree.getBranch(Arrays.asList(txid), 0).isEmpty());
+   }
+
+   @Test
+   public void branchesLeadToTheRoot() {
+      Random random = new Random(42);
+      for (int count = 1; count <= 40; count++) {
+         List<Sha256Hash> txids = randomTxids(random, count);
+         Sha256Hash root = MerkleTree.computeRoot(txids);
+         for (int index = 0; index < count; index++) {
+            List<Sha256Hash> branch = MerkleTree.getBranch(txids, index);
+            assertEquals(root, MerkleTree.computeRoot(txids.get(index), index, branch));
+            if (count > 1) {
+               // The transaction proves nothing at another position
+               int otherIndex = index ^ 1;
+               if (otherIndex < count && !txids.get(otherIndex).equals(txids.get(index))) {
+                  assertFalse(root.equals(MerkleTree.computeRoot(txids.get(index), otherIndex, branch)));
+               }
+            }
+         }
+      }
+   }
+
+   @Test(expected = IllegalArgumentException.class)
+   public void indexMustFitTheBranch() {
+      List<Sha256Hash> txids = randomTxids(new Random(3), 4);
+      MerkleTree.computeRoot(txids.get(0), 4, MerkleTree.getBranch(txids, 0));
+   }
+}
@@ -41,6 +41,9 @@ import org.junit.Assert;
 import org.junit.Test;
 
 import java.security.SecureRandom;
+import java.util.Random;
+
+import static com.mrd.bitlib.model.Script.OP_CHECKSIG;
 
 public class ScriptTest {
 
@@ -71,5 +74,69 @@ public class ScriptTest {
 
    }
 
+   @Test
+   public void standardOutputsWithoutChunksTest() throws Script.ScriptParsingException {
+      Random random = new Random(42);
+      byte[] hash = new byte[20];
+      random.nextBytes(hash);
+      byte[] compressed = new byte[33];
+      random.nextBytes(compressed);
+      byte[] uncompressed = new byte[65];
+      random.nextBytes(uncompressed);
+      byte[][] scripts = new byte[][] {
+            new ScriptOutputStandard(hash).getScriptBytes(),
+            HexUtils.toBytes("76a914" + HexUtils.toHex(hash) + "88ac61"),
+            new ScriptOutputP2SH(hash).getScriptBytes(),
+            HexUtils.toBytes("21" + HexUtils.toHex(compressed) + "ac"),
+            HexUtils.toBytes("41" + HexUtils.toHex(uncompressed) + "ac") };
+      Class<?>[] types = new Class<?>[] { ScriptOutputStandard.class, ScriptOutputStandard.class,
+            ScriptOutputP2SH.class, ScriptOutputPubkey.class, ScriptOutputPubkey.class };
+      for (int i = 0; i < scripts.length; i++) {
+         ScriptOutput script = ScriptOutput.fromScriptBytes(scripts[i]);
+         Assert.assertEquals(types[i], script.getClass());
+         byte[][] chunks = Script.chunksFromScriptBytes(scripts[i]);
+         Assert.assertEquals(chunksToOutput(chunks, scripts[i]).getAddress(NetworkParameters.productionNetwork),
+               script.getAddress(NetworkParameters.productionNetwork));
+      }
+
+      // A non-canonical push of the hash is still recognized from its chunks
+      ScriptOutput pushData = ScriptOutput.fromScriptBytes(HexUtils.toBytes("a94c14" + HexUtils.toHex(hash) + "87"));
+      Assert.assertTrue(pushData instanceof ScriptOutputP2SH);
+      Assert.assertArrayEquals(hash, ((ScriptOutputP2SH) pushData).getP2SHAddressBytes());
+
+      // Random scripts are classified as before
+      for (int i = 0; i < 10000; i++) {
+         byte[] bytes = new byte[random.nextInt(70)];
+         random.nextBytes(bytes);
+         if (bytes.length > 0 && random.nextBoolean()) {
+            bytes[bytes.length - 1] = (byte) OP_CHECKSIG;
+            bytes[0] = (byte) (bytes.length - 2);
+         }
+         ScriptOutput script = ScriptOutput.fromScriptBytes(bytes);
+         byte[][] chunks;
+         try {
+            chunks = Script.chunksFromScriptBytes(bytes);
+         } catch (Script.ScriptParsingException e) {
+            Assert.assertTrue(script instanceof ScriptOutputError);
+            continue;
+         }
+         Assert.assertEquals(chunksToOutput(chunks, bytes).getClass(), script.getClass());
+      }
+   }
+
+   private static ScriptOutput chunksToOutput(byte[][] chunks, byte[] scriptBytes) {
+      if (ScriptOutputStandard.isScriptOutputStandard(chunks)) {
+         return new ScriptOutputStandard(chunks, scriptBytes);
+      } else if (ScriptOutputPubkey.isScriptOutputPubkey(chunks)) {
+         return new ScriptOutputPubkey(chunks, scriptBytes);
+      } else if (ScriptOutputP2SH.isScriptOutputP2SH(chunks)) {
+         return new ScriptOutputP2SH(chunks, scriptBytes);
+      } else if (ScriptOutputMsg.isScriptOutputMsg(chunks)) {
+         return new ScriptOutputMsg(chunks, scriptBytes);
+      } else {
+         return new ScriptOutputStrange(chunks, scriptBytes);
+      }
+   }
+
 
 }
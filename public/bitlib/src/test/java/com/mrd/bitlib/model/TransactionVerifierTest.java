@@ -0,0 +1,308 @@
+package com.mrd.bitlib.model;
+
+import com.mrd.bitlib.crypto.InMemoryPrivateKey;
+import com.mrd.bitlib.crypto.RandomSource;
+import com.mrd.bitlib.model.ScriptInterpreter.Result;
+import com.mrd.bitlib.util.ByteReader;
+import com.mrd.bitlib.util.HexUtils;
+import com.mrd.bitlib.util.OutPointMap;
+import com.mrd.bitlib.util.Sha256Hash;
+import org.junit.Ignore;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.Assert.*;
+
+public class TransactionVerifierTest {
+
+   private static final String P2SH_MULTISIG_TRANSACTION = "010000000123d773a6dff771f9e32566b1d3fb08dcd9a0b2be78881461eef23e0861f2de3c01000000b2004730440220363939e550920b4d9947659a70f1c40603230c3e6967d20f22da130976ba01c1022056560d6f480b1bd150faf238c6ab36b42ad03d502970cce0a3092052ba5efe88014c6751210378d430274f8c5ec1321338151e9f27f4c676a008bdf8638d07c0b6be9ab35c71410778d430274f8c5ec1321338151e9f27f4c676a008bdf8638d07c0b6be9ab35c71a1518063243acd4dfe96b66e3f2ec8013c8e072cd09b3834a19f81f659cc345552aeffffffff01905f01000000000017a914367e3c2c31cb061606e5a812257fc153f2bef80e8700000000";
+   private static final String FUNDING = "0100000001990d1b71e3b572926982fa2419144aaccbc14ba2e918496052d26a4da3777132000000006a4730440220387b5e2d0005ff13f9a02df718fb85a67133484adc8e2571379aed1fccc0692b02204cc4555d33244e2abffcf362dcd4b71b5f373578c3a39da90bf120c2d3d80f9601210254df56fd5663610ce8370a8af0aa9e3e8bc1befd176554f35575769aec249d16ffffffff0280380100000000001976a914f679b8239ffdf39987d7c5ca8e5fd44475a795e188aca08601000000000017a9147e76c2468a8d453bfbc130e0ca86b6821b24c7b38700000000";
+
+   private static final Random RANDOM = new Random(42);
+   private static final RandomSource RANDOM_SOURCE = new RandomSource() {
+      @Override
+      public void nextBytes(byte[] bytes) {
+         RANDOM.nextBytes(bytes);
+      }
+   };
+
+   private static class Scripts implements TransactionVerifier.OutputScripts {
+      private final OutPointMap<byte[]> _scripts = new OutPointMap<byte[]>();
+      private OutPoint _unknown;
+
+      void add(Transaction transaction) {
+         for (int i = 0; i < transaction.outputs.length; i++) {
+            _scripts.put(new OutPoint(transaction.getHash(), i), transaction.outputs[i].script.getScriptBytes());
+         }
+      }
+
+      void add(OutPoint outPoint, byte[] script) {
+         _scripts.put(outPoint, script);
+      }
+
+      void forget(OutPoint outPoint) {
+         _unknown = outPoint;
+      }
+
+      @Override
+      public byte[] get(OutPoint outPoint) {
+         if (outPoint.equals(_unknown)) {
+            return null;
+         }
+         return _scripts.get(outPoint);
+      }
+   }
+
+   private static Transaction parse(String hex) throws Transaction.TransactionParsingException {
+      return Transaction.fromByteReader(new ByteReader(HexUtils.toBytes(hex)));
+   }
+
+   private static OutPoint randomOutPoint() {
+      byte[] hash = new byte[Sha256Hash.HASH_LENGTH];
+      RANDOM.nextBytes(hash);
+      return new OutPoint(Sha256Hash.of(hash), RANDOM.nextInt(4));
+   }
+
+   /**
+    * Create a transaction spending a pay-to-pubkey-hash output of each key,
+    * and register the outputs it spends
+    */
+   private static Transaction spend(Scripts scripts, InMemoryPrivateKey... keys) {
+      TransactionInput[] inputs = new TransactionInput[keys.length];
+      byte[][] fundingScripts = new byte[keys.length][];
+      for (int i = 0; i < keys.length; i++) {
+         inputs[i] = new TransactionInput(randomOutPoint(), ScriptInput.EMPTY);
+         fundingScripts[i] = new ScriptOutputStandard(keys[i].getPublicKey().getPublicKeyHash()).getScriptBytes();
+         scripts.add(inputs[i].outPoint, fundingScripts[i]);
+      }
+      TransactionOutput[] outputs = new TransactionOutput[] {
+            new TransactionOutput(100000, new ScriptOutputStandard(keys[0].getPublicKey().getPublicKeyHash())) };
+      Transaction transaction = new Transaction(1, inputs, outputs, 0);
+      TransactionVerifier verifier = new TransactionVerifier(transaction);
+      byte[][] signatures = new byte[keys.length][];
+      for (int i = 0; i < keys.length; i++) {
+         Sha256Hash hash = verifier.getSignatureHash(i, fundingScripts[i], TransactionVerifier.SIGHASH_ALL);
+         signatures[i] = keys[i].makeStandardBitcoinSignature(hash, RANDOM_SOURCE);
+      }
+      for (int i = 0; i < keys.length; i++) {
+         inputs[i] = new TransactionInput(inputs[i].outPoint, new ScriptInputStandard(signatures[i],
+               keys[i].getPublicKey().getPublicKeyBytes()));
+      }
+      return transaction;
+   }
+
+   @Test
+   public void multisigFromTheBlockChain() throws Transaction.TransactionParsingException {
+      Transaction funding = parse(FUNDING);
+      Transaction spending = parse(P2SH_MULTISIG_TRANSACTION);
+      assertTrue(spending.inputs[0].script instanceof ScriptInputP2SHMultisig);
+      Scripts scripts = new Scripts();
+      scripts.add(funding);
+      assertEquals(Result.VALID, new TransactionVerifier(spending).verify(scripts));
+
+      // The funding transaction spends an output we don't know
+      assertEquals(Result.UNSUPPORTED, new TransactionVerifier(funding).verify(scripts));
+
+      // Change what the signatures commit to. The second key of the multisig
+      // script is hybrid, so we cannot rule out that it matches.
+      spending.outputs[0].value++;
+      assertEquals(Result.UNSUPPORTED, new TransactionVerifier(spending).verify(scripts));
+   }
+
+   @Test
+   public void payToPubkeyHash() {
+      InMemoryPrivateKey first = new InMemoryPrivateKey(RANDOM_SOURCE, true);
+      InMemoryPrivateKey second = new InMemoryPrivateKey(RANDOM_SOURCE, false);
+      Scripts scripts = new Scripts();
+      Transaction transaction = spend(scripts, first, second);
+      assertEquals(Result.VALID, new TransactionVerifier(transaction).verify(scripts));
+
+      // Signed by a key other than the one paid to
+      scripts.add(transaction.inputs[1].outPoint,
+            new ScriptOutputStandard(first.getPublicKey().getPublicKeyHash()).getScriptBytes());
+      assertEquals(Result.INVALID, new TransactionVerifier(transaction).verify(scripts));
+      assertEquals(Result.VALID, new TransactionVerifier(transaction).verifyInput(0, scripts));
+   }
+
+   @Test
+   public void berSignatureIsUnsupported() {
+      InMemoryPrivateKey key = new InMemoryPrivateKey(RANDOM_SOURCE, true);
+      Scripts scripts = new Scripts();
+      Transaction transaction = spend(scripts, key);
+      byte[] signature = ((ScriptInputStandard) transaction.inputs[0].script).getSignature();
+      assertTrue(TransactionVerifier.isStrictDerSignature(signature));
+
+      // Pad R with a zero byte, which BER allows and consensus accepts
+      int rLength = signature[3];
+      byte[] padded = new byte[signature.length + 1];
+      padded[0] = 0x30;
+      padded[1] = (byte) (signature[1] + 1);
+      padded[2] = 0x02;
+      padded[3] = (byte) (rLength + 1);
+      System.arraycopy(signature, 4, padded, 5, signature.length - 4);
+      assertFalse(TransactionVerifier.isStrictDerSignature(padded));
+      transaction.inputs[0] = new TransactionInput(transaction.inputs[0].outPoint, new ScriptInputStandard(padded,
+            key.getPublicKey().getPublicKeyBytes()));
+      assertEquals(Result.UNSUPPORTED, new TransactionVerifier(transaction).verify(scripts));
+   }
+
+   @Test
+   public void hybridPublicKeyIsUnsupported() {
+      InMemoryPrivateKey key = new InMemoryPrivateKey(RANDOM_SOURCE, false);
+      byte[] hybridKey = key.getPublicKey().getPublicKeyBytes().clone();
+      hybridKey[0] = (byte) (0x06 | (hybridKey[64] & 1));
+      byte[] fundingScript = new ScriptOutputStandard(com.mrd.bitlib.util.HashUtils.addressHash(hybridKey))
+            .getScriptBytes();
+      Scripts scripts = new Scripts();
+      OutPoint outPoint = randomOutPoint();
+      scripts.add(outPoint, fundingScript);
+      TransactionInput[] inputs = new TransactionInput[] { new TransactionInput(outPoint, ScriptInput.EMPTY) };
+      Transaction transaction = new Transaction(1, inputs, new TransactionOutput[] { new TransactionOutput(100000,
+            new ScriptOutputStandard(key.getPublicKey().getPublicKeyHash())) }, 0);
+      Sha256Hash hash = new TransactionVerifier(transaction).getSignatureHash(0, fundingScript,
+            TransactionVerifier.SIGHASH_ALL);
+      inputs[0] = new TransactionInput(outPoint, new ScriptInputStandard(key.makeStandardBitcoinSignature(hash,
+            RANDOM_SOURCE), hybridKey));
+      assertEquals(Result.UNSUPPORTED, new TransactionVerifier(transaction).verify(scripts));
+
+      // A key which is not on the curve cannot be checked either
+      byte[] offCurve = key.getPublicKey().getPublicKeyBytes().clone();
+      offCurve[64] ^= 1;
+      fundingScript = new ScriptOutputStandard(com.mrd.bitlib.util.HashUtils.addressHash(offCurve)).getScriptBytes();
+      scripts.add(outPoint, fundingScript);
+      hash = new TransactionVerifier(transaction).getSignatureHash(0, fundingScript, TransactionVerifier.SIGHASH_ALL);
+      inputs[0] = new TransactionInput(outPoint, new ScriptInputStandard(key.makeStandardBitcoinSignature(hash,
+            RANDOM_SOURCE), offCurve));
+      assertEquals(Result.UNSUPPORTED, new TransactionVerifier(transaction).verify(scripts));
+   }
+
+   @Test
+   public void signatureHashMatchesTransactionBuilder() {
+      // StandardTransactionBuilder signs the transaction with the funding
+      // script in place of the input script followed by the hash type
+      InMemoryPrivateKey key = new InMemoryPrivateKey(RANDOM_SOURCE, true);
+      Transaction transaction = spend(new Scripts(), key);
+      byte[] fundingScript = new ScriptOutputStandard(key.getPublicKey().getPublicKeyHash()).getScriptBytes();
+      TransactionInput input = transaction.inputs[0];
+      Transaction unsigned = new Transaction(1, new TransactionInput[] { new TransactionInput(input.outPoint,
+            ScriptInput.fromOutputScript(ScriptOutput.fromScriptBytes(fundingScript))) }, transaction.outputs, 0);
+      byte[] bytes = unsigned.toBytes();
+      byte[] withHashType = new byte[bytes.length + 4];
+      System.arraycopy(bytes, 0, withHashType, 0, bytes.length);
+      withHashType[bytes.length] = 1;
+      assertEquals(com.mrd.bitlib.util.HashUtils.doubleSha256(withHashType),
+            new TransactionVerifier(transaction).getSignatureHash(0, fundingScript, TransactionVerifier.SIGHASH_ALL));
+   }
+
+   @Test
+   public void scriptsWithoutSignatures() {
+      // OP_1 OP_IF OP_0 OP_ELSE OP_1 OP_ENDIF
+      assertEquals(Result.INVALID, run("", "516300675168"));
+      // OP_0 OP_IF OP_0 OP_ELSE OP_1 OP_ENDIF
+      assertEquals(Result.VALID, run("", "006300675168"));
+      // OP_0 OP_NOTIF OP_0 OP_IF OP_0 OP_ENDIF OP_1 OP_ENDIF
+      assertEquals(Result.VALID, run("", "00640063006851" + "68"));
+      // 5 -3 | OP_MIN OP_DEPTH OP_1 OP_EQUALVERIFY -3 OP_EQUAL
+      assertEquals(Result.VALID, run("550183", "a37451880183" + "87"));
+      // 5 -3 | OP_MIN 5 OP_EQUAL
+      assertEquals(Result.INVALID, run("550183", "a35587"));
+      // Pushing past the end of the script
+      assertEquals(Result.INVALID, run("", "4c05"));
+      // Unbalanced conditions
+      assertEquals(Result.INVALID, run("51", "5163"));
+      assertEquals(Result.INVALID, run("51", "5168"));
+      // OP_CAT is not something we handle
+      assertEquals(Result.UNSUPPORTED, run("5151", "7e"));
+      // A pay-to-script-hash input must only push
+      byte[] redeemScript = HexUtils.toBytes("51");
+      String p2sh = HexUtils.toHex(new ScriptOutputP2SH(com.mrd.bitlib.util.HashUtils.addressHash(redeemScript))
+            .getScriptBytes());
+      assertEquals(Result.VALID, run("0151", p2sh));
+      assertEquals(Result.INVALID, run("760151", p2sh));
+      assertEquals(Result.INVALID, run("0100", p2sh));
+   }
+
+   private static Result run(String inputScript, String outputScript) {
+      return ScriptInterpreter.verify(HexUtils.toBytes(inputScript), HexUtils.toBytes(outputScript),
+            new ScriptInterpreter.SignatureChecker() {
+               @Override
+               public Result checkSignature(byte[] signature, byte[] publicKey, byte[] script) {
+                  throw new AssertionError();
+               }
+            });
+   }
+
+   @Test
+   public void numbers() throws Exception {
+      long[] values = { 0, 1, -1, 127, -127, 128, -128, 255, 256, 32767, -32768, 8388607, -8388608, 2147483647,
+            -2147483647 };
+      for (long value : values) {
+         assertEquals(value, ScriptInterpreter.decodeNumber(ScriptInterpreter.encodeNumber(value)));
+      }
+      assertArrayEquals(new byte[] { (byte) 0x80, 0 }, ScriptInterpreter.encodeNumber(128));
+      assertArrayEquals(new byte[] { (byte) 0x81 }, ScriptInterpreter.encodeNumber(-1));
+      assertFalse(ScriptInterpreter.castToBoolean(new byte[] { 0, (byte) 0x80 }));
+      assertTrue(ScriptInterpreter.castToBoolean(new byte[] { (byte) 0x80, 0 }));
+   }
+
+   @Test
+   public void parallelMatchesSequential() {
+      List<InMemoryPrivateKey> keys = new ArrayList<InMemoryPrivateKey>();
+      for (int i = 0; i < 4; i++) {
+         keys.add(new InMemoryPrivateKey(RANDOM_SOURCE, true));
+      }
+      Scripts scripts = new Scripts();
+      List<Transaction> transactions = new ArrayList<Transaction>();
+      for (int i = 0; i < 12; i++) {
+         transactions.add(spend(scripts, keys.get(i % 4), keys.get((i + 1) % 4)));
+      }
+      transactions.get(3).outputs[0].value--;
+      scripts.forget(transactions.get(7).inputs[1].outPoint);
+      ExecutorService executor = Executors.newFixedThreadPool(3);
+      try {
+         List<Result> parallel = TransactionVerifier.verify(transactions, scripts, executor);
+         assertEquals(TransactionVerifier.verify(transactions, scripts, null), parallel);
+         for (int i = 0; i < transactions.size(); i++) {
+            assertEquals(i == 3 ? Result.INVALID : i == 7 ? Result.UNSUPPORTED : Result.VALID, parallel.get(i));
+         }
+      } finally {
+         executor.shutdown();
+      }
+   }
+
+   @Test
+   @Ignore
+   public void testSpeed() {
+      Scripts scripts = new Scripts();
+      List<Transaction> transactions = new ArrayList<Transaction>();
+      InMemoryPrivateKey[] keys = new InMemoryPrivateKey[4];
+      for (int i = 0; i < keys.length; i++) {
+         keys[i] = new InMemoryPrivateKey(RANDOM_SOURCE, true);
+      }
+      for (int i = 0; i < 100; i++) {
+         transactions.add(spend(scripts, keys));
+      }
+      int inputs = transactions.size() * keys.length;
+      int threads = Runtime.getRuntime().availableProcessors();
+      ExecutorService executor = Executors.newFixedThreadPool(threads);
+      try {
+         for (int round = 0; round < 3; round++) {
+            long start = System.nanoTime();
+            TransactionVerifier.verify(transactions, scripts, null);
+            long sequentialNanos = System.nanoTime() - start;
+            start = System.nanoTime();
+            TransactionVerifier.verify(transactions, scripts, executor);
+            long parallelNanos = System.nanoTime() - start;
+            System.out.println("sequential: " + inputs * 1000000000L / sequentialNanos + " inputs/s, parallel ("
+                  + threads + " threads): " + inputs * 1000000000L / parallelNanos + " inputs/s");
+         }
+      } finally {
+         executor.shutdown();
+      }
+   }
+}
@@ -0,0 +1,138 @@
+package com.mrd.bitlib.util;
+
+import com.mrd.bitlib.model.CompactInt;
+import com.mrd.bitlib.model.Transaction;
+import com.mrd.bitlib.util.ByteReader.InsufficientBytesException;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class ByteReaderWriterTest {
+
+   private static final String TRANSACTION = "0100000001990d1b71e3b572926982fa2419144aaccbc14ba2e918496052d26a4da3777132000000006a4730440220387b5e2d0005ff13f9a02df718fb85a67133484adc8e2571379aed1fccc0692b02204cc4555d33244e2abffcf362dcd4b71b5f373578c3a39da90bf120c2d3d80f9601210254df56fd5663610ce8370a8af0aa9e3e8bc1befd176554f35575769aec249d16ffffffff0280380100000000001976a914f679b8239ffdf39987d7c5ca8e5fd44475a795e188aca08601000000000017a9147e76c2468a8d453bfbc130e0ca86b6821b24c7b38700000000";
+
+   @Test
+   public void compactIntMatchesCompactIntBytes() throws InsufficientBytesException {
+      long[] values = {0, 1, 252, 253, 254, 255, 65535, 65536, 4294967294L, 4294967295L, 4294967296L,
+            Long.MAX_VALUE, -1};
+      for (long value : values) {
+         ByteWriter writer = new ByteWriter(1);
+         writer.putCompactInt(value);
+         byte[] bytes = writer.toBytes();
+         assertArrayEquals(CompactInt.toBytes(value), bytes);
+         assertEquals(bytes.length, CompactInt.size(value));
+      }
+      for (long value : new long[]{0, 252, 253, 65535, 65536, Integer.MAX_VALUE}) {
+         ByteWriter writer = ByteWriter.obtain(1);
+         writer.putCompactInt(value);
+         assertEquals(value, new ByteReader(writer.toBytes()).getCompactInt());
+         writer.recycle();
+      }
+   }
+
+   @Test
+   public void reversedHash() {
+      byte[] bytes = new byte[Sha256Hash.HASH_LENGTH];
+      new Random(1).nextBytes(bytes);
+      Sha256Hash hash = Sha256Hash.copyOf(bytes, 0);
+      ByteWriter writer = new ByteWriter(10);
+      writer.putSha256Hash(hash, true);
+      assertArrayEquals(BitUtils.reverseBytes(bytes), writer.toBytes());
+   }
+
+   @Test
+   public void handedOutBytesStayValid() throws IOException {
+      ByteWriter exact = new ByteWriter(4);
+      exact.putIntLE(0x04030201);
+      byte[] bytes = exact.toBytes();
+      exact.putIntLE(0x08070605);
+      assertArrayEquals(new byte[]{1, 2, 3, 4}, bytes);
+      assertArrayEquals(new byte[]{1, 2, 3, 4, 5, 6, 7, 8}, exact.toBytes());
+
+      byte[] original = new byte[]{9, 9};
+      ByteWriter wrapping = new ByteWriter(original);
+      assertNotSame(original, wrapping.toBytes());
+
+      ByteWriter pooled = ByteWriter.obtain(8);
+      pooled.putLongLE(-1);
+      ByteBuffer view = pooled.toByteBuffer();
+      ByteArrayOutputStream stream = new ByteArrayOutputStream();
+      pooled.writeTo(stream);
+      pooled.recycle();
+      ByteWriter reused = ByteWriter.obtain(8);
+      assertEquals(0, reused.length());
+      reused.putLongLE(0);
+      reused.recycle();
+      assertEquals(8, view.remaining());
+      assertTrue(view.isReadOnly());
+      for (int i = 0; i < 8; i++) {
+         assertEquals((byte) -1, view.get(i));
+      }
+      assertEquals(8, stream.size());
+   }
+
+   @Test
+   public void readerWindowsAndSlices() throws InsufficientBytesException {
+      byte[] bytes = new byte[]{0, 1, 2, 3, 4, 5, 6, 7, 8, 9};
+      ByteReader reader = new ByteReader(bytes, 2, 6);
+      assertEquals(6, reader.available());
+      assertEquals(2, reader.get());
+      assertEquals(1, reader.getPosition());
+
+      ByteBuffer slice = reader.getSlice(2);
+      assertTrue(slice.isReadOnly());
+      assertEquals(2, slice.remaining());
+      assertEquals(3, slice.get(0));
+      bytes[3] = 42;
+      assertEquals(42, slice.get(0));
+
+      ByteReader sub = reader.getReader(2);
+      assertEquals(5, sub.get());
+      assertEquals(1, sub.available());
+      assertEquals(1, reader.available());
+      try {
+         reader.getBytes(2);
+         fail();
+      } catch (InsufficientBytesException e) {
+         // expected
+      }
+      reader.reset();
+      assertEquals(2, reader.get());
+      reader.setPosition(5);
+      assertEquals(7, reader.get());
+      assertEquals(0, reader.available());
+   }
+
+   @Test
+   public void wrapsBuffers() throws InsufficientBytesException {
+      ByteBuffer heap = ByteBuffer.wrap(new byte[]{0, 1, 2, 3});
+      heap.position(1);
+      ByteReader reader = ByteReader.wrap(heap.slice());
+      assertEquals(1, reader.get());
+      assertEquals(2, reader.available());
+
+      ByteBuffer direct = ByteBuffer.allocateDirect(4);
+      direct.put(new byte[]{4, 5, 6, 7});
+      direct.flip();
+      assertArrayEquals(new byte[]{4, 5, 6, 7}, ByteReader.wrap(direct).getBytes(4));
+      assertEquals(0, direct.position());
+   }
+
+   @Test
+   public void transactionFromWindow() throws Transaction.TransactionParsingException {
+      byte[] raw = HexUtils.toBytes(TRANSACTION);
+      byte[] padded = new byte[raw.length + 20];
+      System.arraycopy(raw, 0, padded, 10, raw.length);
+      Transaction transaction = Transaction.fromByteReader(new ByteReader(padded, 10, raw.length));
+      assertEquals(raw.length, transaction.getSize());
+      assertArrayEquals(raw, transaction.toBytes());
+      assertEquals(HashUtils.doubleSha256(raw).reverse(), transaction.getHash());
+      assertTrue(Arrays.equals(raw, transaction.copy().toBytes()));
+   }
+}
@@ -0,0 +1,146 @@
+package com.mrd.bitlib.util;
+
+import com.mrd.bitlib.crypto.digest.RIPEMD160Digest;
+import com.mrd.bitlib.crypto.digest.SHA256Digest;
+import org.junit.Ignore;
+import org.junit.Test;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class HashUtilsTest {
+
+   private static byte[] jcaSha256(byte[] data, int offset, int length) throws NoSuchAlgorithmException {
+      MessageDigest digest = MessageDigest.getInstance("SHA-256");
+      digest.update(data, offset, length);
+      return digest.digest();
+   }
+
+   @Test
+   public void sha256TestVector() {
+      assertEquals("ba7816bf8f01cfea414140de5dae2223b00361a396177a9cb410ff61f20015ad",
+            HexUtils.toHex(HashUtils.sha256(new byte[]{'a', 'b', 'c'}).getBytes()));
+   }
+
+   @Test
+   public void sha256MatchesJca() throws NoSuchAlgorithmException {
+      Random random = new Random(42);
+      byte[] out = new byte[40];
+      for (int length = 0; length < 300; length++) {
+         byte[] data = new byte[length + 10];
+         random.nextBytes(data);
+         int offset = random.nextInt(10);
+         byte[] expected = jcaSha256(data, offset, length);
+         assertArrayEquals(expected, HashUtils.sha256(data, offset, length).getBytes());
+         HashUtils.sha256(data, offset, length, out, 5);
+         assertArrayEquals(expected, Arrays.copyOfRange(out, 5, 37));
+
+         byte[] first = Arrays.copyOfRange(data, offset, offset + length / 3);
+         byte[] second = Arrays.copyOfRange(data, offset + length / 3, offset + length);
+         assertArrayEquals(expected, HashUtils.sha256(first, second).getBytes());
+
+         byte[] twice = jcaSha256(expected, 0, expected.length);
+         assertArrayEquals(twice, HashUtils.doubleSha256(data, offset, length).getBytes());
+         assertArrayEquals(twice, HashUtils.doubleSha256TwoBuffers(first, second).getBytes());
+         HashUtils.doubleSha256(data, offset, length, out, 0);
+         assertArrayEquals(twice, Arrays.copyOf(out, 32));
+      }
+   }
+
+   @Test
+   public void midstateContinuesHash() throws NoSuchAlgorithmException {
+      Random random = new Random(7);
+      byte[] data = new byte[200];
+      random.nextBytes(data);
+      SHA256Digest digest = new SHA256Digest();
+      digest.update(data, 0, 128);
+      int[] midstate = new int[SHA256Digest.MIDSTATE_LENGTH];
+      long midstateLength = digest.getMidstate(midstate);
+      assertEquals(128, midstateLength);
+
+      byte[] out = new byte[32];
+      for (int length = 0; length <= 72; length++) {
+         HashUtils.sha256(midstate, midstateLength, data, 128, length, out, 0);
+         assertArrayEquals(jcaSha256(data, 0, 128 + length), out);
+      }
+   }
+
+   @Test(expected = IllegalStateException.class)
+   public void midstateRequiresBlockBoundary() {
+      SHA256Digest digest = new SHA256Digest();
+      digest.update(new byte[65], 0, 65);
+      digest.getMidstate(new int[SHA256Digest.MIDSTATE_LENGTH]);
+   }
+
+   @Test
+   public void badRangeLeavesDigestUsable() {
+      byte[] data = new byte[]{'a', 'b', 'c'};
+      try {
+         HashUtils.sha256(data, 2, 5);
+      } catch (IndexOutOfBoundsException e) {
+         // expected
+      }
+      assertEquals("ba7816bf8f01cfea414140de5dae2223b00361a396177a9cb410ff61f20015ad",
+            HexUtils.toHex(HashUtils.sha256(data).getBytes()));
+   }
+
+   @Test
+   public void nullSecondBufferLeavesSha512Usable() throws NoSuchAlgorithmException {
+      byte[] data = new byte[]{'a', 'b', 'c'};
+      try {
+         HashUtils.sha512(data, null);
+      } catch (NullPointerException e) {
+         // expected
+      }
+      byte[] expected = MessageDigest.getInstance("SHA-512").digest(data);
+      assertArrayEquals(expected, HashUtils.sha512(data).getBytes());
+   }
+
+   @Test
+   public void hash160MatchesAddressHash() throws NoSuchAlgorithmException {
+      Random random = new Random(3);
+      byte[] out = new byte[HashUtils.HASH160_LENGTH];
+      for (int i = 0; i < 100; i++) {
+         byte[] pubkey = new byte[i % 2 == 0 ? 33 : 65];
+         random.nextBytes(pubkey);
+         byte[] sha = jcaSha256(pubkey, 0, pubkey.length);
+         RIPEMD160Digest ripemd = new RIPEMD160Digest();
+         ripemd.update(sha, 0, sha.length);
+         byte[] expected = new byte[HashUtils.HASH160_LENGTH];
+         ripemd.doFinal(expected, 0);
+         assertArrayEquals(expected, HashUtils.addressHash(pubkey));
+         HashUtils.hash160(pubkey, 0, pubkey.length, out, 0);
+         assertArrayEquals(expected, out);
+      }
+   }
+
+   @Test
+   @Ignore
+   public void testSpeed() throws NoSuchAlgorithmException {
+      byte[] data = new byte[80];
+      new Random(1).nextBytes(data);
+      byte[] out = new byte[32];
+      for (int round = 0; round < 5; round++) {
+         long start = System.nanoTime();
+         for (int i = 0; i < 1000000; i++) {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(data);
+            digest.update(digest.digest());
+            digest.digest();
+         }
+         long jcaNanos = System.nanoTime() - start;
+
+         start = System.nanoTime();
+         for (int i = 0; i < 1000000; i++) {
+            HashUtils.doubleSha256(data, 0, data.length, out, 0);
+         }
+         long reusedNanos = System.nanoTime() - start;
+         System.out.println("JCA: " + jcaNanos / 1000000 + " ms, reused: " + reusedNanos / 1000000 + " ms");
+      }
+   }
+}
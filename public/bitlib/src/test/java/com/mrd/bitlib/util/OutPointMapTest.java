@@ -0,0 +1,135 @@
+/*
+ * Copyright 2013, 2014 Megion Research & Development GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.mrd.bitlib.util;
+
+import com.mrd.bitlib.model.OutPoint;
+import org.junit.Ignore;
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+public class OutPointMapTest {
+
+   private static Sha256Hash[] randomHashes(int count, long seed) {
+      Random random = new Random(seed);
+      Sha256Hash[] hashes = new Sha256Hash[count];
+      for (int i = 0; i < count; i++) {
+         byte[] bytes = new byte[Sha256Hash.HASH_LENGTH];
+         random.nextBytes(bytes);
+         hashes[i] = Sha256Hash.of(bytes);
+      }
+      return hashes;
+   }
+
+   @Test
+   public void outPointMapPutGet() {
+      Sha256Hash[] hashes = randomHashes(1000, 1);
+      OutPointMap<String> map = new OutPointMap<String>();
+      for (Sha256Hash hash : hashes) {
+         for (int index = 0; index < 3; index++) {
+            assertNull(map.put(new OutPoint(hash, index), hash.toString() + index));
+         }
+      }
+      assertEquals(3000, map.size());
+      for (Sha256Hash hash : hashes) {
+         for (int index = 0; index < 3; index++) {
+            // Use a copy of the hash to make sure we don't depend on identity
+            Sha256Hash copy = Sha256Hash.copyOf(hash.getBytes(), 0);
+            assertEquals(hash.toString() + index, map.get(new OutPoint(copy, index)));
+            assertTrue(map.containsKey(copy, index));
+         }
+         assertFalse(map.containsKey(hash, 3));
+      }
+      assertEquals(hashes[0].toString() + 0, map.put(new OutPoint(hashes[0], 0), "y"));
+      assertEquals("y", map.get(hashes[0], 0));
+      assertEquals(3000, map.size());
+   }
+
+   @Test
+   public void zeroHashIsAValidKey() {
+      OutPointMap<Integer> map = new OutPointMap<Integer>();
+      assertFalse(map.containsKey(OutPoint.COINBASE_OUTPOINT));
+      map.put(OutPoint.COINBASE_OUTPOINT, 1);
+      assertEquals(Integer.valueOf(1), map.get(OutPoint.COINBASE_OUTPOINT));
+   }
+
+   @Test
+   public void sha256HashSet() {
+      Sha256Hash[] hashes = randomHashes(500, 2);
+      Sha256HashSet set = new Sha256HashSet();
+      for (Sha256Hash hash : hashes) {
+         assertTrue(set.add(hash));
+         assertFalse(set.add(Sha256Hash.copyOf(hash.getBytes(), 0)));
+      }
+      assertEquals(500, set.size());
+      Set<Sha256Hash> reference = new HashSet<Sha256Hash>();
+      for (Sha256Hash hash : set) {
+         reference.add(hash);
+      }
+      assertEquals(set, reference);
+      for (Sha256Hash hash : randomHashes(500, 3)) {
+         assertFalse(set.contains(hash));
+      }
+   }
+
+   @Test
+   @Ignore
+   public void testSpeed() {
+      for (int size : new int[]{10000, 100000, 1000000}) {
+         Sha256Hash[] hashes = randomHashes(size, size);
+         OutPoint[] outPoints = new OutPoint[size];
+         for (int i = 0; i < size; i++) {
+            outPoints[i] = new OutPoint(Sha256Hash.copyOf(hashes[i].getBytes(), 0), i & 7);
+         }
+         for (int round = 0; round < 5; round++) {
+            long start = System.nanoTime();
+            Map<OutPoint, OutPoint> hashMap = new HashMap<OutPoint, OutPoint>();
+            for (OutPoint outPoint : outPoints) {
+               hashMap.put(outPoint, outPoint);
+            }
+            int found = 0;
+            for (int i = 0; i < size; i++) {
+               if (hashMap.containsKey(new OutPoint(hashes[i], i & 7))) {
+                  found++;
+               }
+            }
+            long hashMapNanos = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            OutPointMap<OutPoint> outPointMap = new OutPointMap<OutPoint>();
+            for (OutPoint outPoint : outPoints) {
+               outPointMap.put(outPoint, outPoint);
+            }
+            for (int i = 0; i < size; i++) {
+               if (outPointMap.containsKey(hashes[i], i & 7)) {
+                  found++;
+               }
+            }
+            long outPointMapNanos = System.nanoTime() - start;
+            assertEquals(size * 2, found);
+            System.out.println("entries: " + size + " HashMap: " + hashMapNanos / size + " ns/entry OutPointMap: "
+                  + outPointMapNanos / size + " ns/entry");
+         }
+      }
+   }
+}
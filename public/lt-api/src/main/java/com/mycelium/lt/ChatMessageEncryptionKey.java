@@ -18,18 +18,22 @@ package com.mycelium.lt;
 
 import java.io.Serializable;
 import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.UUID;
 
 import Rijndael.Rijndael;
 
 import com.google.common.io.BaseEncoding;
 import com.mrd.bitlib.crypto.Ecdh;
-import com.mrd.bitlib.crypto.Hmac;
 import com.mrd.bitlib.crypto.InMemoryPrivateKey;
 import com.mrd.bitlib.crypto.PublicKey;
 import com.mrd.bitlib.util.BitUtils;
-import com.mrd.bitlib.util.ByteReader;
-import com.mrd.bitlib.util.ByteReader.InsufficientBytesException;
 import com.mrd.bitlib.util.ByteWriter;
 import com.mrd.bitlib.util.HashUtils;
 
@@ -48,6 +52,13 @@ public class ChatMessageEncryptionKey implements Serializable {
       }
    }
 
+   /**
+    * Maximum number of ECDH shared secrets kept by {@link #fromEcdh}
+    */
+   public static final int SHARED_SECRET_CACHE_SIZE = 32;
+
+   private static final SharedSecretCache _sharedSecretCache = new SharedSecretCache(SHARED_SECRET_CACHE_SIZE);
+
    public final byte[] encryptionKey;
    public final byte[] hmacKey;
 
@@ -70,17 +81,93 @@ public class ChatMessageEncryptionKey implements Serializable {
     */
    public static ChatMessageEncryptionKey fromEcdh(PublicKey foreignPublicKey, InMemoryPrivateKey privateKey,
          UUID tradeSessionId) {
-      byte[] sharedSecret = Ecdh.calculateSharedSecret(foreignPublicKey, privateKey);
+      // The shared secret only depends on the key pair, so all trade sessions
+      // with the same peer can share the expensive point multiplication
+      byte[] sharedSecret = _sharedSecretCache.get(foreignPublicKey, privateKey);
       ByteWriter writer = new ByteWriter(sharedSecret.length + 8 + 8);
       writer.putLongBE(tradeSessionId.getMostSignificantBits());
       writer.putLongBE(tradeSessionId.getLeastSignificantBits());
       writer.putBytes(sharedSecret);
-      byte[] keyMaterial = HashUtils.sha256(writer.toBytes()).getBytes();
+      byte[] preImage = writer.toBytes();
+      byte[] keyMaterial = HashUtils.sha256(preImage).getBytes();
       byte[] encryptionKey = BitUtils.copyOfRange(keyMaterial, 0, 16);
       byte[] hmacKey = BitUtils.copyOfRange(keyMaterial, 16, 32);
+      Arrays.fill(sharedSecret, (byte) 0);
+      Arrays.fill(preImage, (byte) 0);
+      Arrays.fill(keyMaterial, (byte) 0);
       return new ChatMessageEncryptionKey(encryptionKey, hmacKey);
    }
 
+   /**
+    * Wipe and forget all cached shared secrets. Call this when the local
+    * trader key is no longer in use.
+    */
+   public static void clearSharedSecretCache() {
+      _sharedSecretCache.clear();
+   }
+
+   /**
+    * Overwrite the key material of this key with zeros. The key is unusable
+    * afterwards.
+    */
+   public void wipe() {
+      Arrays.fill(encryptionKey, (byte) 0);
+      Arrays.fill(hmacKey, (byte) 0);
+   }
+
+   /**
+    * Bounded LRU cache of ECDH shared secrets keyed by the public keys of both
+    * parties. Evicted secrets are overwritten with zeros.
+    */
+   private static class SharedSecretCache {
+      private final Map<List<PublicKey>, byte[]> _secrets;
+
+      private SharedSecretCache(final int maxSize) {
+         _secrets = new LinkedHashMap<List<PublicKey>, byte[]>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<List<PublicKey>, byte[]> eldest) {
+               if (size() <= maxSize) {
+                  return false;
+               }
+               Arrays.fill(eldest.getValue(), (byte) 0);
+               return true;
+            }
+         };
+      }
+
+      /**
+       * Get a copy of the shared secret for a key pair, calculating it if it
+       * is not cached
+       */
+      private byte[] get(PublicKey foreignPublicKey, InMemoryPrivateKey privateKey) {
+         List<PublicKey> id = Arrays.asList(foreignPublicKey, privateKey.getPublicKey());
+         byte[] secret;
+         synchronized (this) {
+            secret = _secrets.get(id);
+            if (secret != null) {
+               return BitUtils.copyOf(secret, secret.length);
+            }
+         }
+         secret = Ecdh.calculateSharedSecret(foreignPublicKey, privateKey);
+         synchronized (this) {
+            byte[] previous = _secrets.put(id, secret);
+            if (previous != null) {
+               Arrays.fill(previous, (byte) 0);
+            }
+            return BitUtils.copyOf(secret, secret.length);
+         }
+      }
+
+      private synchronized void clear() {
+         for (byte[] secret : _secrets.values()) {
+            Arrays.fill(secret, (byte) 0);
+         }
+         _secrets.clear();
+      }
+   }
+
    @Override
    public int hashCode() {
       return (int) BitUtils.uint32ToLong(encryptionKey, 0) + (int) BitUtils.uint32ToLong(hmacKey, 0);
@@ -111,30 +198,7 @@ public class ChatMessageEncryptionKey implements Serializable {
     * @return An encrypted message
     */
    public String encryptChatMessage(String message) {
-
-      // Get the UTF-8 byte encoding of the message
-      byte[] messageBytes = utf8StringToBytes(message);
-
-      // Calculate MAC value, linking this message with the trade session
-      byte[] mac = calculateHmac(messageBytes);
-
-      // Prepare message for encryption
-      ByteWriter writer = new ByteWriter(messageBytes.length + 4);
-      writer.putIntLE(messageBytes.length);
-      writer.putBytes(messageBytes);
-
-      // Encrypt message using the MAC value as IV
-      byte[] IV = BitUtils.copyOf(mac, Rijndael.BLOCK_SIZE);
-      byte[] enc = aesCbcEncryption(IV, writer.toBytes());
-
-      // Concatenate the MAC value and the encrypted message
-      byte[] concatenated = new byte[mac.length + enc.length];
-      System.arraycopy(mac, 0, concatenated, 0, mac.length);
-      System.arraycopy(enc, 0, concatenated, mac.length, enc.length);
-
-      // Base-64 encode without padding
-      String encryptedMessage = BaseEncoding.base64().omitPadding().encode(concatenated);
-      return encryptedMessage;
+      return new CipherContext().encrypt(message);
    }
 
    /**
@@ -147,107 +211,180 @@ public class ChatMessageEncryptionKey implements Serializable {
     *            if the message fails integrity checks
     */
    public String decryptAndCheckChatMessage(String encryptedChatMessage) throws InvalidChatMessage {
+      return new CipherContext().decryptAndCheck(encryptedChatMessage);
+   }
 
-      // Base-64 decode without padding
-      byte[] encryptedMessageBytes;
-      try {
-         encryptedMessageBytes = BaseEncoding.base64().omitPadding().decode(encryptedChatMessage);
-      } catch (IllegalArgumentException e) {
-         throw new InvalidChatMessage("Invalid Base-64 encoding");
+   /**
+    * Decrypt and verify the integrity of a list of encrypted chat messages,
+    * for instance the chat history of a trade session. The key schedule and
+    * HMAC state are set up once and reused for all messages.
+    * 
+    * @param encryptedChatMessages
+    *           the encrypted messages
+    * @return a list with the plaintext of each message in the same order, and
+    *         null in place of messages that fail integrity checks
+    */
+   public List<String> decryptAndCheckChatMessages(List<String> encryptedChatMessages) {
+      CipherContext context = new CipherContext();
+      List<String> messages = new ArrayList<String>(encryptedChatMessages.size());
+      for (String encryptedChatMessage : encryptedChatMessages) {
+         try {
+            messages.add(context.decryptAndCheck(encryptedChatMessage));
+         } catch (InvalidChatMessage e) {
+            messages.add(null);
+         }
       }
+      return messages;
+   }
 
-      // Extract MAC and encrypted bytes
-      byte[] mac = BitUtils.copyOf(encryptedMessageBytes, MAC_LENGTH);
-      byte[] encryptedBytes = BitUtils.copyOfRange(encryptedMessageBytes, MAC_LENGTH, encryptedMessageBytes.length);
-
-      // Decrypt message using the MAC value as IV
-      byte[] IV = BitUtils.copyOf(mac, Rijndael.BLOCK_SIZE);
-      byte[] decryptedMessage = aesDecrypt(IV, encryptedBytes);
+   private static final int MAC_LENGTH = 128 / 8;
+   private static final int HMAC_BLOCK_SIZE = 64;
 
-      // Get message bytes
-      ByteReader reader = new ByteReader(decryptedMessage);
-      byte[] messageBytes;
-      try {
-         int messageByteSize = reader.getIntLE();
-         if (messageByteSize < 0 || messageByteSize > encryptedMessageBytes.length) {
-            throw new InvalidChatMessage("Invalid chat message size");
+   /**
+    * AES and HMAC state for this key, to be reused across messages. Not thread
+    * safe.
+    */
+   private class CipherContext {
+      private Rijndael _aes;
+      private final MessageDigest _digest;
+      private final byte[] _iKeyPad;
+      private final byte[] _oKeyPad;
+      private final byte[] _block;
+      private final byte[] _parentBlock;
+
+      private CipherContext() {
+         try {
+            _digest = MessageDigest.getInstance("SHA-256");
+         } catch (NoSuchAlgorithmException e) {
+            // Only happens if the platform does not support SHA-256
+            throw new RuntimeException(e);
+         }
+         // The HMAC key is shorter than the block size, so it is zero padded
+         _iKeyPad = new byte[HMAC_BLOCK_SIZE];
+         _oKeyPad = new byte[HMAC_BLOCK_SIZE];
+         for (int i = 0; i < HMAC_BLOCK_SIZE; i++) {
+            byte k = i < hmacKey.length ? hmacKey[i] : 0;
+            _iKeyPad[i] = (byte) (0x36 ^ k);
+            _oKeyPad[i] = (byte) (0x5c ^ k);
          }
-         messageBytes = reader.getBytes(messageByteSize);
-      } catch (InsufficientBytesException e) {
-         throw new InvalidChatMessage("Invalid chat message size");
+         _block = new byte[Rijndael.BLOCK_SIZE];
+         _parentBlock = new byte[Rijndael.BLOCK_SIZE];
       }
 
-      // Validate MAC
-      byte[] calculatedMac = calculateHmac(messageBytes);
-      if (!BitUtils.areEqual(calculatedMac, mac)) {
-         throw new InvalidChatMessage("Message integrity check failed");
+      private Rijndael getAes() {
+         if (_aes == null) {
+            _aes = new Rijndael();
+            _aes.makeKey(encryptionKey, encryptionKey.length * 8, Rijndael.DIR_BOTH);
+         }
+         return _aes;
       }
 
-      // Get the string
-      String message = bytesToUtf8String(messageBytes);
-      return message;
-   }
+      private String encrypt(String message) {
 
-   private byte[] aesDecrypt(byte[] IV, byte[] encryptedBytes) {
-      // Prepare AES key
-      Rijndael aes = new Rijndael();
-      aes.makeKey(encryptionKey, encryptionKey.length * 8, Rijndael.DIR_DECRYPT);
-
-      // Decrypt in CBC mode using IV
-      byte[] pt = new byte[Rijndael.BLOCK_SIZE];
-      byte[] ct;
-      byte[] parentBlock = IV;
-      ByteWriter writer = new ByteWriter(encryptedBytes.length);
-      for (int i = 0; i < encryptedBytes.length; i += Rijndael.BLOCK_SIZE) {
-         ct = BitUtils.copyOfRange(encryptedBytes, i, i + Rijndael.BLOCK_SIZE);
-         aes.decrypt(ct, pt);
-         xorBytes(parentBlock, pt);
-         parentBlock = ct;
-         writer.putBytes(pt);
-      }
-      return writer.toBytes();
-   }
+         // Get the UTF-8 byte encoding of the message
+         byte[] messageBytes = utf8StringToBytes(message);
+
+         // Calculate MAC value, linking this message with the trade session
+         byte[] mac = calculateHmac(messageBytes, 0, messageBytes.length);
+
+         // Prepare message for encryption, padded with zeros to a whole number
+         // of blocks
+         int length = messageBytes.length + 4;
+         int paddedLength = (length + Rijndael.BLOCK_SIZE - 1) / Rijndael.BLOCK_SIZE * Rijndael.BLOCK_SIZE;
+         byte[] concatenated = new byte[MAC_LENGTH + paddedLength];
+         BitUtils.uint32ToByteArrayLE(messageBytes.length, concatenated, MAC_LENGTH);
+         System.arraycopy(messageBytes, 0, concatenated, MAC_LENGTH + 4, messageBytes.length);
+
+         // Encrypt message in place using the MAC value as IV, and prepend the
+         // MAC value
+         System.arraycopy(mac, 0, concatenated, 0, MAC_LENGTH);
+         aesCbcEncrypt(mac, concatenated, MAC_LENGTH, paddedLength);
 
-   private byte[] aesCbcEncryption(byte[] IV, byte[] data) {
-
-      // Prepare AES key
-      Rijndael aes = new Rijndael();
-      aes.makeKey(encryptionKey, encryptionKey.length * 8, Rijndael.DIR_ENCRYPT);
-
-      // Encrypt in CBC mode using IV
-      byte[] pt;
-      byte[] ct = new byte[Rijndael.BLOCK_SIZE];
-      byte[] parentBlock = IV;
-      ByteWriter writer = new ByteWriter(data.length + Rijndael.BLOCK_SIZE);
-      for (int i = 0; i < data.length; i += Rijndael.BLOCK_SIZE) {
-         pt = BitUtils.copyOfRange(data, i, i + Rijndael.BLOCK_SIZE);
-         xorBytes(parentBlock, pt);
-         aes.encrypt(pt, ct);
-         parentBlock = ct;
-         writer.putBytes(ct);
+         // Base-64 encode without padding
+         return BaseEncoding.base64().omitPadding().encode(concatenated);
       }
-      return writer.toBytes();
-   }
 
-   private static void xorBytes(byte[] toApply, byte[] target) {
-      if (toApply.length != target.length) {
-         throw new RuntimeException();
+      private String decryptAndCheck(String encryptedChatMessage) throws InvalidChatMessage {
+
+         // Base-64 decode without padding
+         byte[] encryptedMessageBytes;
+         try {
+            encryptedMessageBytes = BaseEncoding.base64().omitPadding().decode(encryptedChatMessage);
+         } catch (IllegalArgumentException e) {
+            throw new InvalidChatMessage("Invalid Base-64 encoding");
+         }
+         int encryptedLength = encryptedMessageBytes.length - MAC_LENGTH;
+         if (encryptedLength < Rijndael.BLOCK_SIZE || encryptedLength % Rijndael.BLOCK_SIZE != 0) {
+            throw new InvalidChatMessage("Invalid chat message size");
+         }
+
+         // Decrypt message after the MAC value in place, using the MAC value as
+         // IV
+         aesCbcDecrypt(encryptedMessageBytes, MAC_LENGTH, encryptedLength);
+
+         // Get message bytes
+         int messageByteSize = (int) BitUtils.uint32ToLong(encryptedMessageBytes, MAC_LENGTH);
+         if (messageByteSize < 0 || messageByteSize > encryptedLength - 4) {
+            throw new InvalidChatMessage("Invalid chat message size");
+         }
+
+         // Validate MAC
+         byte[] calculatedMac = calculateHmac(encryptedMessageBytes, MAC_LENGTH + 4, messageByteSize);
+         if (!BitUtils.areEqual(calculatedMac, BitUtils.copyOf(encryptedMessageBytes, MAC_LENGTH))) {
+            throw new InvalidChatMessage("Message integrity check failed");
+         }
+
+         // Get the string
+         return bytesToUtf8String(encryptedMessageBytes, MAC_LENGTH + 4, messageByteSize);
       }
-      for (int i = 0; i < toApply.length; i++) {
-         target[i] = (byte) (target[i] ^ toApply[i]);
+
+      /**
+       * Decrypt whole blocks in CBC mode, the IV being the block right before
+       * the offset
+       */
+      private void aesCbcDecrypt(byte[] data, int offset, int length) {
+         Rijndael aes = getAes();
+         System.arraycopy(data, offset - Rijndael.BLOCK_SIZE, _parentBlock, 0, Rijndael.BLOCK_SIZE);
+         byte[] ct = new byte[Rijndael.BLOCK_SIZE];
+         for (int i = offset; i < offset + length; i += Rijndael.BLOCK_SIZE) {
+            System.arraycopy(data, i, ct, 0, Rijndael.BLOCK_SIZE);
+            aes.decrypt(ct, _block);
+            for (int j = 0; j < Rijndael.BLOCK_SIZE; j++) {
+               data[i + j] = (byte) (_block[j] ^ _parentBlock[j]);
+            }
+            System.arraycopy(ct, 0, _parentBlock, 0, Rijndael.BLOCK_SIZE);
+         }
       }
-   }
 
-   private static final int MAC_LENGTH = 128 / 8;
+      /**
+       * Encrypt whole blocks in CBC mode
+       */
+      private void aesCbcEncrypt(byte[] IV, byte[] data, int offset, int length) {
+         Rijndael aes = getAes();
+         System.arraycopy(IV, 0, _parentBlock, 0, Rijndael.BLOCK_SIZE);
+         for (int i = offset; i < offset + length; i += Rijndael.BLOCK_SIZE) {
+            for (int j = 0; j < Rijndael.BLOCK_SIZE; j++) {
+               _block[j] = (byte) (data[i + j] ^ _parentBlock[j]);
+            }
+            aes.encrypt(_block, _parentBlock);
+            System.arraycopy(_parentBlock, 0, data, i, Rijndael.BLOCK_SIZE);
+         }
+      }
 
-   /**
-    * Calculate the HMAC-SHA256 value of a message, and return the first 16
-    * bytes
-    */
-   private byte[] calculateHmac(byte[] messageBytes) {
-      byte[] hmac = Hmac.hmacSha256(hmacKey, messageBytes);
-      // We use the first half of the H-MAC value as our MAC value
-      return BitUtils.copyOf(hmac, MAC_LENGTH);
+      /**
+       * Calculate the HMAC-SHA256 value of a message, and return the first 16
+       * bytes
+       */
+      private byte[] calculateHmac(byte[] data, int offset, int length) {
+         _digest.reset();
+         _digest.update(_iKeyPad);
+         _digest.update(data, offset, length);
+         byte[] inner = _digest.digest();
+         _digest.update(_oKeyPad);
+         _digest.update(inner);
+         // We use the first half of the H-MAC value as our MAC value
+         return BitUtils.copyOf(_digest.digest(), MAC_LENGTH);
+      }
    }
 
    private static byte[] utf8StringToBytes(String string) {
@@ -258,9 +395,9 @@ public class ChatMessageEncryptionKey implements Serializable {
       }
    }
 
-   private static String bytesToUtf8String(byte[] stringBytes) {
+   private static String bytesToUtf8String(byte[] stringBytes, int offset, int length) {
       try {
-         return new String(stringBytes, "UTF-8");
+         return new String(stringBytes, offset, length, "UTF-8");
       } catch (UnsupportedEncodingException e) {
          throw new RuntimeException();
       }
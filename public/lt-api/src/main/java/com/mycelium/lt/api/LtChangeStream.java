@@ -0,0 +1,534 @@
+/*
+ * Copyright 2013, 2014 Megion Research & Development GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.mycelium.lt.api;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.mrd.bitlib.model.Address;
+import com.mycelium.lt.api.model.TradeSession;
+
+/**
+ * A single stream delivering changes to the local trader and to any number of
+ * watched trade sessions.
+ * <p/>
+ * The server only offers long polls for the trader and for one trade session
+ * at a time, so the stream multiplexes them: every wait is a request with an
+ * ID of its own, and the responses of all waits end up in one queue which a
+ * single thread dispatches. A response is matched to its wait by request ID
+ * and dropped if the wait was cancelled in the meantime. Trader changes are
+ * dispatched before trade session changes that are queued at the same time,
+ * see {@link #PRIORITY_TRADER} and {@link #PRIORITY_TRADE_SESSION}.
+ * <p/>
+ * All callbacks happen on the dispatching thread, one at a time.
+ */
+public class LtChangeStream {
+
+   public static final long RETRY_TIMEOUT_MS = 5000;
+   public static final long NO_TRADER_TIMEOUT_MS = 10000;
+
+   /**
+    * Priority of responses to trader waits, lower values are dispatched first
+    */
+   public static final int PRIORITY_TRADER = 0;
+
+   /**
+    * Priority of responses to trade session waits
+    */
+   public static final int PRIORITY_TRADE_SESSION = 1;
+
+   public interface SessionSource {
+
+      /**
+       * Get the address of the local trader or null if there is no trader
+       * account
+       */
+      public Address getTraderAddress();
+
+      /**
+       * Get the ID of a session where the local trader is logged in,
+       * creating and logging in a new session if necessary
+       */
+      public UUID getLoggedInSessionId() throws LtApiException;
+
+      /**
+       * Called when the server rejects a session obtained from
+       * {@link #getLoggedInSessionId()}
+       */
+      public void invalidateSession(UUID sessionId);
+   }
+
+   public interface Listener {
+
+      public void onTraderChanged(long timestamp);
+
+      public void onTradeSessionChanged(TradeSession tradeSession);
+
+      public void onError(int errorCode);
+   }
+
+   private final LtApi _api;
+   private final SessionSource _source;
+   private final Listener _listener;
+   private final Map<UUID, Long> _watchedTradeSessions;
+   private final Map<Long, Wait> _pendingWaits;
+   private final Map<UUID, Long> _tradeSessionRequests;
+   private final AtomicLong _nextSequence;
+   private boolean _watchTrader;
+   private long _traderRequestId;
+   private long _traderTimestamp;
+   private long _nextRequestId;
+   private UUID _invalidatedSessionId;
+   private Dispatcher _dispatcher;
+
+   public LtChangeStream(LtApi api, SessionSource source, Listener listener) {
+      _api = api;
+      _source = source;
+      _listener = listener;
+      _watchedTradeSessions = new HashMap<UUID, Long>();
+      _pendingWaits = new HashMap<Long, Wait>();
+      _tradeSessionRequests = new HashMap<UUID, Long>();
+      _nextSequence = new AtomicLong();
+   }
+
+   /**
+    * Start or stop reporting trader changes
+    */
+   public synchronized void watchTrader(boolean watch) {
+      _watchTrader = watch;
+      updateDispatcher();
+      if (watch && _traderRequestId == 0) {
+         issueTraderWait(0);
+      } else if (!watch && _traderRequestId != 0) {
+         cancelWait(_traderRequestId);
+         _traderRequestId = 0;
+      }
+   }
+
+   /**
+    * Report changes to a trade session that happen after the specified
+    * timestamp. Watching a trade session which is already watched replaces
+    * its timestamp.
+    */
+   public synchronized void watchTradeSession(UUID tradeSessionId, long lastChange) {
+      _watchedTradeSessions.put(tradeSessionId, lastChange);
+      updateDispatcher();
+      // A wait which is already pending for an older timestamp returns right
+      // away, and the next one uses the new timestamp
+      if (!_tradeSessionRequests.containsKey(tradeSessionId)) {
+         issueTradeSessionWait(tradeSessionId, 0);
+      }
+   }
+
+   public synchronized void unwatchTradeSession(UUID tradeSessionId) {
+      _watchedTradeSessions.remove(tradeSessionId);
+      Long requestId = _tradeSessionRequests.remove(tradeSessionId);
+      if (requestId != null) {
+         cancelWait(requestId);
+      }
+      updateDispatcher();
+   }
+
+   public synchronized boolean isRunning() {
+      return _dispatcher != null;
+   }
+
+   /**
+    * Stop watching everything and terminate the stream thread
+    */
+   public synchronized void stop() {
+      _watchTrader = false;
+      _watchedTradeSessions.clear();
+      updateDispatcher();
+   }
+
+   private void updateDispatcher() {
+      boolean needed = _watchTrader || !_watchedTradeSessions.isEmpty();
+      if (needed && _dispatcher == null) {
+         _dispatcher = new Dispatcher();
+      } else if (!needed && _dispatcher != null) {
+         cancelWaits(new ArrayList<Wait>(_pendingWaits.values()));
+         _pendingWaits.clear();
+         _tradeSessionRequests.clear();
+         _traderRequestId = 0;
+         _dispatcher.cancel();
+         _dispatcher = null;
+      }
+   }
+
+   private void issueTraderWait(long delayMs) {
+      Wait wait = new Wait(++_nextRequestId, null, _traderTimestamp, delayMs);
+      _traderRequestId = wait._requestId;
+      issue(wait);
+   }
+
+   private void issueTradeSessionWait(UUID tradeSessionId, long delayMs) {
+      Wait wait = new Wait(++_nextRequestId, tradeSessionId, _watchedTradeSessions.get(tradeSessionId), delayMs);
+      _tradeSessionRequests.put(tradeSessionId, wait._requestId);
+      issue(wait);
+   }
+
+   private void issue(Wait wait) {
+      _pendingWaits.put(wait._requestId, wait);
+      _dispatcher.execute(wait);
+   }
+
+   private void cancelWait(long requestId) {
+      Wait wait = _pendingWaits.remove(requestId);
+      if (wait != null) {
+         cancelWaits(Collections.singletonList(wait));
+      }
+   }
+
+   /**
+    * Cancel waits and stop them on the server side by making API calls in a
+    * separate thread
+    */
+   private void cancelWaits(Collection<Wait> waits) {
+      final List<UUID> tokens = new ArrayList<UUID>();
+      final Set<UUID> sessionIds = new HashSet<UUID>();
+      for (Wait wait : waits) {
+         UUID sessionId = wait.cancel();
+         if (wait._tradeSessionId == null) {
+            tokens.add(wait._token);
+         } else if (sessionId != null) {
+            // This also stops the waits for the other trade sessions, which
+            // get issued again when their responses come in
+            sessionIds.add(sessionId);
+         }
+      }
+      if (tokens.isEmpty() && sessionIds.isEmpty()) {
+         return;
+      }
+      Thread t = new Thread(new Runnable() {
+
+         @Override
+         public void run() {
+            for (UUID token : tokens) {
+               try {
+                  _api.stopWaitingForTraderChange(token);
+               } catch (Exception e) {
+                  // Ignore
+               }
+            }
+            for (UUID sessionId : sessionIds) {
+               try {
+                  _api.stopWaitingForTradeSessionChange(sessionId);
+               } catch (Exception e) {
+                  // Ignore
+               }
+            }
+         }
+      });
+      t.setDaemon(true);
+      t.start();
+   }
+
+   /**
+    * Take the wait a response belongs to, or null if the wait was cancelled
+    */
+   private synchronized Wait takePendingWait(Response response) {
+      Wait wait = _pendingWaits.remove(response._requestId);
+      if (wait == null) {
+         return null;
+      }
+      if (wait._tradeSessionId == null) {
+         _traderRequestId = 0;
+      } else {
+         _tradeSessionRequests.remove(wait._tradeSessionId);
+      }
+      return wait;
+   }
+
+   /**
+    * Issue the next wait for the subject of a wait that got its response, if
+    * it is still watched
+    */
+   private synchronized void reissue(Wait wait, long delayMs) {
+      if (_dispatcher == null) {
+         return;
+      }
+      if (wait._tradeSessionId == null) {
+         if (_watchTrader && _traderRequestId == 0) {
+            issueTraderWait(delayMs);
+         }
+      } else if (_watchedTradeSessions.containsKey(wait._tradeSessionId)
+            && !_tradeSessionRequests.containsKey(wait._tradeSessionId)) {
+         issueTradeSessionWait(wait._tradeSessionId, delayMs);
+      }
+   }
+
+   /**
+    * @return true if the trader timestamp changed and the trader is watched
+    */
+   private synchronized boolean updateTraderTimestamp(long timestamp) {
+      if (timestamp == _traderTimestamp) {
+         return false;
+      }
+      _traderTimestamp = timestamp;
+      return _watchTrader;
+   }
+
+   /**
+    * @return true if the trade session is watched and changed since it was
+    *         last reported
+    */
+   private synchronized boolean updateLastChange(TradeSession tradeSession) {
+      _invalidatedSessionId = null;
+      Long lastChange = _watchedTradeSessions.get(tradeSession.id);
+      if (lastChange == null || lastChange >= tradeSession.lastChange) {
+         return false;
+      }
+      _watchedTradeSessions.put(tradeSession.id, tradeSession.lastChange);
+      return true;
+   }
+
+   /**
+    * Invalidate a session rejected by the server, unless another wait
+    * already did
+    *
+    * @return the delay before the next wait
+    */
+   private synchronized long invalidateSession(UUID sessionId) {
+      if (sessionId.equals(_invalidatedSessionId)) {
+         return 0;
+      }
+      _source.invalidateSession(sessionId);
+      // If a fresh session got rejected too, don't hammer the server
+      long delayMs = _invalidatedSessionId == null ? 0 : RETRY_TIMEOUT_MS;
+      _invalidatedSessionId = sessionId;
+      return delayMs;
+   }
+
+   private void dispatch(Response response) {
+      Wait wait = takePendingWait(response);
+      if (wait == null) {
+         // Cancelled, or the stream was restarted
+         return;
+      }
+      if (response._noTrader) {
+         // The user might be about to enable local trader, try again later
+         reissue(wait, NO_TRADER_TIMEOUT_MS);
+         return;
+      }
+      int errorCode = response._errorCode;
+      if (errorCode == LtApi.ERROR_CODE_SUCCESS) {
+         // The next wait starts from the new timestamp before the listener
+         // gets to see the change
+         if (wait._tradeSessionId == null) {
+            boolean changed = updateTraderTimestamp(response._traderTimestamp);
+            reissue(wait, 0);
+            if (changed) {
+               _listener.onTraderChanged(response._traderTimestamp);
+            }
+         } else {
+            boolean changed = updateLastChange(response._tradeSession);
+            reissue(wait, 0);
+            if (changed) {
+               _listener.onTradeSessionChanged(response._tradeSession);
+            }
+         }
+      } else if (errorCode == LtApi.ERROR_CODE_WAIT_TIMEOUT) {
+         reissue(wait, 0);
+      } else if (response._sessionId != null
+            && (errorCode == LtApi.ERROR_CODE_INVALID_SESSION || errorCode == LtApi.ERROR_CODE_TRADER_LOGIN_REQUIRED)) {
+         reissue(wait, invalidateSession(response._sessionId));
+      } else {
+         reissue(wait, RETRY_TIMEOUT_MS);
+         _listener.onError(errorCode);
+      }
+   }
+
+   /**
+    * The response to a wait, ordered by priority and then by arrival
+    */
+   private static class Response implements Comparable<Response> {
+      private final long _requestId;
+      private final int _priority;
+      private long _sequence;
+      private int _errorCode;
+      private boolean _noTrader;
+      private UUID _sessionId;
+      private long _traderTimestamp;
+      private TradeSession _tradeSession;
+
+      private Response(long requestId, int priority) {
+         _requestId = requestId;
+         _priority = priority;
+      }
+
+      @Override
+      public int compareTo(Response other) {
+         if (_priority != other._priority) {
+            return _priority < other._priority ? -1 : 1;
+         }
+         return _sequence < other._sequence ? -1 : (_sequence == other._sequence ? 0 : 1);
+      }
+   }
+
+   /**
+    * A single long poll for the trader, or for one trade session if the trade
+    * session ID is set
+    */
+   private class Wait implements Runnable {
+      private final long _requestId;
+      private final UUID _tradeSessionId;
+      private final long _timestamp;
+      private final long _delayMs;
+      private final UUID _token;
+      private Dispatcher _dispatcher;
+      private UUID _sessionId;
+      private boolean _isCancelled;
+
+      private Wait(long requestId, UUID tradeSessionId, long timestamp, long delayMs) {
+         _requestId = requestId;
+         _tradeSessionId = tradeSessionId;
+         _timestamp = timestamp;
+         _delayMs = delayMs;
+         _token = UUID.randomUUID();
+      }
+
+      @Override
+      public void run() {
+         Response response = new Response(_requestId, _tradeSessionId == null ? PRIORITY_TRADER
+               : PRIORITY_TRADE_SESSION);
+         try {
+            if (!sleep(_delayMs)) {
+               return;
+            }
+            Address trader = _source.getTraderAddress();
+            if (trader == null) {
+               response._noTrader = true;
+            } else if (_tradeSessionId == null) {
+               response._traderTimestamp = _api.waitForTraderChange(trader, _token, _timestamp).getResult();
+            } else {
+               response._sessionId = _source.getLoggedInSessionId();
+               if (!setSessionId(response._sessionId)) {
+                  return;
+               }
+               response._tradeSession = _api.waitForTradeSessionChange(response._sessionId, _tradeSessionId,
+                     _timestamp).getResult();
+            }
+         } catch (LtApiException e) {
+            response._errorCode = e.errorCode;
+         } catch (InterruptedException e) {
+            return;
+         }
+         _dispatcher.respond(response);
+      }
+
+      /**
+       * @return false if the wait was cancelled
+       */
+      private synchronized boolean sleep(long ms) throws InterruptedException {
+         if (ms > 0 && !_isCancelled) {
+            wait(ms);
+         }
+         return !_isCancelled;
+      }
+
+      /**
+       * Remember the session used for the wait, so that a cancel can stop it
+       *
+       * @return false if the wait was cancelled
+       */
+      private synchronized boolean setSessionId(UUID sessionId) {
+         _sessionId = sessionId;
+         return !_isCancelled;
+      }
+
+      /**
+       * @return the session used for the wait if it already got one
+       */
+      private synchronized UUID cancel() {
+         _isCancelled = true;
+         notifyAll();
+         return _sessionId;
+      }
+   }
+
+   /**
+    * Runs the waits and dispatches their responses on a single thread
+    */
+   private class Dispatcher implements Runnable {
+      private final Thread _thread;
+      private final ExecutorService _executor;
+      private final PriorityBlockingQueue<Response> _responses;
+      private volatile boolean _isCancelled;
+
+      private Dispatcher() {
+         _responses = new PriorityBlockingQueue<Response>();
+         _executor = Executors.newCachedThreadPool(new ThreadFactory() {
+
+            @Override
+            public Thread newThread(Runnable r) {
+               Thread thread = new Thread(r, "LtChangeStream wait");
+               thread.setDaemon(true);
+               return thread;
+            }
+         });
+         _thread = new Thread(this);
+         _thread.setDaemon(true);
+         _thread.setName("LtChangeStream");
+         _thread.start();
+      }
+
+      private void execute(Wait wait) {
+         wait._dispatcher = this;
+         _executor.execute(wait);
+      }
+
+      private void respond(Response response) {
+         response._sequence = _nextSequence.incrementAndGet();
+         _responses.add(response);
+      }
+
+      @Override
+      public void run() {
+         try {
+            while (!_isCancelled) {
+               Response response = _responses.take();
+               if (_isCancelled) {
+                  return;
+               }
+               dispatch(response);
+            }
+         } catch (InterruptedException e) {
+            // Cancelled
+         }
+      }
+
+      private void cancel() {
+         _isCancelled = true;
+         _executor.shutdown();
+         _thread.interrupt();
+      }
+   }
+}
@@ -16,6 +16,8 @@
 
 package com.mycelium.lt;
 
+import java.util.Arrays;
+import java.util.List;
 import java.util.UUID;
 
 import junit.framework.Assert;
@@ -38,6 +40,12 @@ public class MessageEncryptionTest {
    private static final String MESSAGE_TWO = "";
    private static final String MESSAGE_THREE = "Hello World!Hello World!Hello World!Hello World!Hello World!Hello World!Hello World!Hello World!";
 
+   private static final UUID FIXED_TRADE_SESSION_ID = UUID.fromString("6c1f1d2e-5b7a-4c3d-9e8f-0a1b2c3d4e5f");
+   // MESSAGE_ONE and MESSAGE_THREE encrypted for FIXED_TRADE_SESSION_ID with
+   // the keys used in these tests
+   private static final String ENCRYPTED_ONE = "ycHXoffm2wzVc/gKfvLApQAq4CzVo6DCIezaLFmF5D8";
+   private static final String ENCRYPTED_THREE = "AdBFiMh73A6c5dl/sEUKH7kEbU6MqDoGmqnRCsI/Fe5hDCcuvZjew3o8ws+2urQzFXdYLS9SwzZH6IDNdNF7BScGabs+H0+HlnlPyqNnvE48UDsvYccE4oSczRHdUwMq3OpjutiMDhCQ9137zEc4IDDuld40awO4jlIXbZ2eU+I";
+
    @Test
    public void testEncryptionDecryptionPositive() {
       // Generate random trade session ID, encryption key and derive HMAC key
@@ -100,6 +108,57 @@ public class MessageEncryptionTest {
       }
    }
 
+   @Test
+   public void testKnownCiphertext() throws InvalidChatMessage {
+      HdKeyNode root = HdKeyNode.fromSeed(MASTER_SEED);
+      ChatMessageEncryptionKey encryptionKey = ChatMessageEncryptionKey.fromEcdh(root.createChildPublicKey(1),
+            root.createChildPrivateKey(0), FIXED_TRADE_SESSION_ID);
+      Assert.assertEquals(ENCRYPTED_ONE, encryptionKey.encryptChatMessage(MESSAGE_ONE));
+      Assert.assertEquals(ENCRYPTED_THREE, encryptionKey.encryptChatMessage(MESSAGE_THREE));
+      Assert.assertEquals(MESSAGE_ONE, encryptionKey.decryptAndCheckChatMessage(ENCRYPTED_ONE));
+      Assert.assertEquals(MESSAGE_THREE, encryptionKey.decryptAndCheckChatMessage(ENCRYPTED_THREE));
+   }
+
+   @Test
+   public void testSharedSecretCache() {
+      HdKeyNode root = HdKeyNode.fromSeed(MASTER_SEED);
+      InMemoryPrivateKey myPrv = root.createChildPrivateKey(0);
+      PublicKey foreignPub = root.createChildPublicKey(1);
+      UUID tradeSessionId = UUID.randomUUID();
+
+      ChatMessageEncryptionKey first = ChatMessageEncryptionKey.fromEcdh(foreignPub, myPrv, tradeSessionId);
+      ChatMessageEncryptionKey cached = ChatMessageEncryptionKey.fromEcdh(foreignPub, myPrv, tradeSessionId);
+      Assert.assertEquals(first, cached);
+
+      // Wiping a key must not affect the cached secret
+      cached.wipe();
+      Assert.assertEquals(first, ChatMessageEncryptionKey.fromEcdh(foreignPub, myPrv, tradeSessionId));
+
+      // Neither must evicting it
+      for (int i = 0; i < ChatMessageEncryptionKey.SHARED_SECRET_CACHE_SIZE + 1; i++) {
+         ChatMessageEncryptionKey.fromEcdh(root.createChildPublicKey(100 + i), myPrv, tradeSessionId);
+      }
+      Assert.assertEquals(first, ChatMessageEncryptionKey.fromEcdh(foreignPub, myPrv, tradeSessionId));
+      ChatMessageEncryptionKey.clearSharedSecretCache();
+      Assert.assertEquals(first, ChatMessageEncryptionKey.fromEcdh(foreignPub, myPrv, tradeSessionId));
+   }
+
+   @Test
+   public void testBulkDecryption() {
+      HdKeyNode root = HdKeyNode.fromSeed(MASTER_SEED);
+      ChatMessageEncryptionKey encryptionKey = ChatMessageEncryptionKey.fromEcdh(root.createChildPublicKey(1),
+            root.createChildPrivateKey(0), UUID.randomUUID());
+      String emsg1 = encryptionKey.encryptChatMessage(MESSAGE_ONE);
+      String emsg2 = encryptionKey.encryptChatMessage(MESSAGE_TWO);
+      String emsg3 = encryptionKey.encryptChatMessage(MESSAGE_THREE);
+      String broken = BaseEncoding.base64().omitPadding()
+            .encode(flipBit(200, BaseEncoding.base64().omitPadding().decode(emsg3)));
+
+      List<String> decrypted = encryptionKey.decryptAndCheckChatMessages(Arrays.asList(emsg1, broken, emsg2,
+            "not base 64!", emsg3));
+      Assert.assertEquals(Arrays.asList(MESSAGE_ONE, null, MESSAGE_TWO, null, MESSAGE_THREE), decrypted);
+   }
+
    private byte[] flipBit(int bitNum, byte[] data) {
       byte[] copy = BitUtils.copyOf(data, data.length);
       int index = bitNum >> 3;
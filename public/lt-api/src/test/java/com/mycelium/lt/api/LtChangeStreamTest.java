@@ -0,0 +1,468 @@
+/*
+ * Copyright 2013, 2014 Megion Research & Development GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.mycelium.lt.api;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.HashMap;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.mrd.bitlib.model.Address;
+import com.mrd.bitlib.model.NetworkParameters;
+import com.mycelium.lt.api.model.TradeSession;
+
+public class LtChangeStreamTest {
+
+   private static final long EVENT_TIMEOUT_MS = 5000;
+
+   /**
+    * Local stand-in for the Local Trader server, implementing only the calls
+    * used by the change stream
+    */
+   private static class StandInServer implements InvocationHandler {
+      private final long _waitTimeoutMs;
+      private final Map<UUID, TradeSession> _tradeSessions = new HashMap<UUID, TradeSession>();
+      private final Set<UUID> _stoppedTokens = new HashSet<UUID>();
+      private final Set<UUID> _stoppedSessions = new HashSet<UUID>();
+      private final Set<UUID> _validSessions = new HashSet<UUID>();
+      private long _traderTimestamp = 1;
+      private int _waiting;
+      private int _maxWaiting;
+      private int _waitingForTradeSession;
+      private int _maxWaitingForTradeSession;
+
+      private StandInServer(long waitTimeoutMs) {
+         _waitTimeoutMs = waitTimeoutMs;
+      }
+
+      private LtApi api() {
+         return (LtApi) Proxy.newProxyInstance(LtApi.class.getClassLoader(), new Class<?>[] { LtApi.class }, this);
+      }
+
+      private synchronized void putTradeSession(UUID id, long lastChange) {
+         _tradeSessions.put(id, tradeSession(id, lastChange));
+         _traderTimestamp++;
+         notifyAll();
+      }
+
+      /**
+       * Change a trade session without touching the trader
+       */
+      private synchronized void touchTradeSession(UUID id, long lastChange) {
+         _tradeSessions.put(id, tradeSession(id, lastChange));
+         notifyAll();
+      }
+
+      private synchronized void bumpTrader() {
+         _traderTimestamp++;
+         notifyAll();
+      }
+
+      private synchronized void addValidSession(UUID sessionId) {
+         _validSessions.add(sessionId);
+      }
+
+      private synchronized int getMaxWaiting() {
+         return _maxWaiting;
+      }
+
+      private synchronized int getMaxWaitingForTradeSession() {
+         return _maxWaitingForTradeSession;
+      }
+
+      /**
+       * Wait until a client waits for trader changes
+       */
+      private synchronized boolean awaitTraderWait() throws InterruptedException {
+         long deadline = System.currentTimeMillis() + EVENT_TIMEOUT_MS;
+         while (_waiting == 0 && System.currentTimeMillis() < deadline) {
+            wait(deadline - System.currentTimeMillis());
+         }
+         return _waiting > 0;
+      }
+
+      /**
+       * Wait until a client waits for trade session changes
+       */
+      private synchronized boolean awaitTradeSessionWait() throws InterruptedException {
+         long deadline = System.currentTimeMillis() + EVENT_TIMEOUT_MS;
+         while (_waitingForTradeSession == 0 && System.currentTimeMillis() < deadline) {
+            wait(deadline - System.currentTimeMillis());
+         }
+         return _waitingForTradeSession > 0;
+      }
+
+      /**
+       * Wait until no client waits for trader changes
+       */
+      private synchronized boolean awaitNoTraderWait() throws InterruptedException {
+         long deadline = System.currentTimeMillis() + EVENT_TIMEOUT_MS;
+         while (_waiting > 0 && System.currentTimeMillis() < deadline) {
+            wait(deadline - System.currentTimeMillis());
+         }
+         return _waiting == 0;
+      }
+
+      /**
+       * Wait until no client waits for trade session changes
+       */
+      private synchronized boolean awaitNoTradeSessionWait() throws InterruptedException {
+         long deadline = System.currentTimeMillis() + EVENT_TIMEOUT_MS;
+         while (_waitingForTradeSession > 0 && System.currentTimeMillis() < deadline) {
+            wait(deadline - System.currentTimeMillis());
+         }
+         return _waitingForTradeSession == 0;
+      }
+
+      @Override
+      public synchronized Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+         String name = method.getName();
+         if (name.equals("waitForTraderChange")) {
+            return waitForTraderChange((UUID) args[1], (Long) args[2]);
+         } else if (name.equals("waitForTradeSessionChange")) {
+            return waitForTradeSessionChange((UUID) args[0], (UUID) args[1], (Long) args[2]);
+         } else if (name.equals("stopWaitingForTradeSessionChange")) {
+            _stoppedSessions.add((UUID) args[0]);
+            notifyAll();
+            return new LtResponse<Void>(null);
+         } else if (name.equals("stopWaitingForTraderChange")) {
+            _stoppedTokens.add((UUID) args[0]);
+            notifyAll();
+            return new LtResponse<Void>(null);
+         } else if (name.equals("getActiveTradeSessions")) {
+            if (!_validSessions.contains(args[0])) {
+               return LtResponse.error(LtApi.ERROR_CODE_INVALID_SESSION);
+            }
+            return new LtResponse<LinkedList<TradeSession>>(new LinkedList<TradeSession>(_tradeSessions.values()));
+         } else if (name.equals("getTradeSession")) {
+            if (!_validSessions.contains(args[0])) {
+               return LtResponse.error(LtApi.ERROR_CODE_INVALID_SESSION);
+            }
+            TradeSession tradeSession = _tradeSessions.get(args[1]);
+            if (tradeSession == null) {
+               return LtResponse.error(LtApi.ERROR_CODE_INVALID_ARGUMENT);
+            }
+            return new LtResponse<TradeSession>(tradeSession);
+         }
+         throw new UnsupportedOperationException(name);
+      }
+
+      private LtResponse<Long> waitForTraderChange(UUID token, long timestamp) throws InterruptedException {
+         _waiting++;
+         _maxWaiting = Math.max(_maxWaiting, _waiting);
+         notifyAll();
+         try {
+            long deadline = System.currentTimeMillis() + _waitTimeoutMs;
+            while (_traderTimestamp == timestamp && !_stoppedTokens.contains(token)) {
+               long remaining = deadline - System.currentTimeMillis();
+               if (remaining <= 0) {
+                  return LtResponse.error(LtApi.ERROR_CODE_WAIT_TIMEOUT);
+               }
+               wait(remaining);
+            }
+            if (_stoppedTokens.contains(token)) {
+               return LtResponse.error(LtApi.ERROR_CODE_WAIT_TIMEOUT);
+            }
+            return new LtResponse<Long>(_traderTimestamp);
+         } finally {
+            _waiting--;
+            notifyAll();
+         }
+      }
+
+      private LtResponse<TradeSession> waitForTradeSessionChange(UUID sessionId, UUID tradeSessionId, long timestamp)
+            throws InterruptedException {
+         if (!_validSessions.contains(sessionId)) {
+            return LtResponse.error(LtApi.ERROR_CODE_INVALID_SESSION);
+         }
+         _waitingForTradeSession++;
+         _maxWaitingForTradeSession = Math.max(_maxWaitingForTradeSession, _waitingForTradeSession);
+         notifyAll();
+         try {
+            long deadline = System.currentTimeMillis() + _waitTimeoutMs;
+            while (!_stoppedSessions.contains(sessionId)) {
+               TradeSession tradeSession = _tradeSessions.get(tradeSessionId);
+               if (tradeSession != null && tradeSession.lastChange != timestamp) {
+                  return new LtResponse<TradeSession>(tradeSession);
+               }
+               long remaining = deadline - System.currentTimeMillis();
+               if (remaining <= 0) {
+                  break;
+               }
+               wait(remaining);
+            }
+            _stoppedSessions.remove(sessionId);
+            return LtResponse.error(LtApi.ERROR_CODE_WAIT_TIMEOUT);
+         } finally {
+            _waitingForTradeSession--;
+            notifyAll();
+         }
+      }
+   }
+
+   private static class Source implements LtChangeStream.SessionSource {
+      private UUID _sessionId = UUID.randomUUID();
+      private UUID _renewedSessionId = UUID.randomUUID();
+      private final Set<UUID> _invalidated = new HashSet<UUID>();
+
+      @Override
+      public Address getTraderAddress() {
+         return Address.getNullAddress(NetworkParameters.testNetwork);
+      }
+
+      @Override
+      public synchronized UUID getLoggedInSessionId() {
+         return _sessionId;
+      }
+
+      @Override
+      public synchronized void invalidateSession(UUID sessionId) {
+         _invalidated.add(sessionId);
+         _sessionId = _renewedSessionId;
+      }
+   }
+
+   private static class Events implements LtChangeStream.Listener {
+      private final BlockingQueue<Long> _traderChanges = new LinkedBlockingQueue<Long>();
+      private final BlockingQueue<TradeSession> _tradeSessionChanges = new LinkedBlockingQueue<TradeSession>();
+      private final List<String> _order = Collections.synchronizedList(new ArrayList<String>());
+      private final Set<Thread> _threads = Collections.synchronizedSet(new HashSet<Thread>());
+      private final CountDownLatch _held = new CountDownLatch(1);
+      private final CountDownLatch _released = new CountDownLatch(1);
+      private volatile boolean _holdTraderChange;
+
+      @Override
+      public void onTraderChanged(long timestamp) {
+         _threads.add(Thread.currentThread());
+         _order.add("trader");
+         _traderChanges.add(timestamp);
+         if (_holdTraderChange) {
+            // Keep the stream busy until the test releases it
+            _holdTraderChange = false;
+            _held.countDown();
+            try {
+               _released.await(EVENT_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+               // Stopped
+            }
+         }
+      }
+
+      @Override
+      public void onTradeSessionChanged(TradeSession tradeSession) {
+         _threads.add(Thread.currentThread());
+         _order.add("tradeSession");
+         _tradeSessionChanges.add(tradeSession);
+      }
+
+      @Override
+      public void onError(int errorCode) {
+      }
+
+      private TradeSession nextTradeSession() throws InterruptedException {
+         return _tradeSessionChanges.poll(EVENT_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+      }
+   }
+
+   private StandInServer _server;
+   private Source _source;
+   private Events _events;
+   private LtChangeStream _stream;
+
+   @Before
+   public void setUp() {
+      _server = new StandInServer(10000);
+      _source = new Source();
+      _server.addValidSession(_source.getLoggedInSessionId());
+      _events = new Events();
+      _stream = new LtChangeStream(_server.api(), _source, _events);
+   }
+
+   @After
+   public void tearDown() {
+      _stream.stop();
+   }
+
+   @Test
+   public void testOnlyWatchedChangesAreDelivered() throws InterruptedException {
+      UUID watched = UUID.randomUUID();
+      UUID other = UUID.randomUUID();
+      _server.putTradeSession(watched, 1);
+      _server.putTradeSession(other, 1);
+      _stream.watchTradeSession(watched, 1);
+
+      _server.putTradeSession(other, 2);
+      _server.putTradeSession(watched, 3);
+      TradeSession changed = _events.nextTradeSession();
+      Assert.assertEquals(watched, changed.id);
+      Assert.assertEquals(3, changed.lastChange);
+
+      // A trader change that does not touch the watched session
+      _server.bumpTrader();
+      Assert.assertNull(_events._tradeSessionChanges.poll(300, TimeUnit.MILLISECONDS));
+   }
+
+   @Test
+   public void testAllTradeSessionsShareOneStream() throws InterruptedException {
+      _stream.watchTrader(true);
+      Set<UUID> ids = new HashSet<UUID>();
+      for (int i = 0; i < 10; i++) {
+         UUID id = UUID.randomUUID();
+         ids.add(id);
+         _server.putTradeSession(id, 1);
+         _stream.watchTradeSession(id, 1);
+      }
+      // None of these changes touch the trader
+      for (UUID id : ids) {
+         _server.touchTradeSession(id, 2);
+      }
+      Set<UUID> changed = new HashSet<UUID>();
+      while (changed.size() < ids.size()) {
+         TradeSession tradeSession = _events.nextTradeSession();
+         Assert.assertNotNull(tradeSession);
+         Assert.assertEquals(2, tradeSession.lastChange);
+         changed.add(tradeSession.id);
+      }
+      Assert.assertEquals(ids, changed);
+      // One wait per watched subject, and every change is dispatched by the
+      // same thread
+      Assert.assertTrue(_server.awaitTraderWait());
+      Assert.assertEquals(1, _server.getMaxWaiting());
+      Assert.assertTrue(_server.getMaxWaitingForTradeSession() <= ids.size());
+      Assert.assertEquals(1, _events._threads.size());
+   }
+
+   @Test
+   public void testStaleWatchIsRefreshedWithoutWaiting() throws InterruptedException {
+      _stream.watchTrader(true);
+      Assert.assertNotNull(_events._traderChanges.poll(EVENT_TIMEOUT_MS, TimeUnit.MILLISECONDS));
+
+      // The stream is now blocked in a long poll, which must be aborted when
+      // a trade session that is already out of date gets watched
+      UUID id = UUID.randomUUID();
+      synchronized (_server) {
+         _server._tradeSessions.put(id, tradeSession(id, 5));
+      }
+      _stream.watchTradeSession(id, 1);
+      TradeSession changed = _events.nextTradeSession();
+      Assert.assertNotNull(changed);
+      Assert.assertEquals(5, changed.lastChange);
+   }
+
+   @Test
+   public void testUnwatchedTradeSessionIsDropped() throws InterruptedException {
+      UUID id = UUID.randomUUID();
+      _server.putTradeSession(id, 1);
+      _stream.watchTradeSession(id, 1);
+      Assert.assertTrue(_server.awaitTradeSessionWait());
+      _server.touchTradeSession(id, 2);
+      TradeSession changed = _events.nextTradeSession();
+      Assert.assertNotNull(changed);
+      Assert.assertEquals(2, changed.lastChange);
+
+      // The response to the cancelled wait must not be delivered
+      _stream.unwatchTradeSession(id);
+      _server.touchTradeSession(id, 3);
+      Assert.assertNull(_events._tradeSessionChanges.poll(300, TimeUnit.MILLISECONDS));
+
+      // Watching again issues a new wait, and the change is delivered once
+      _stream.watchTradeSession(id, 3);
+      Assert.assertTrue(_server.awaitTradeSessionWait());
+      _server.touchTradeSession(id, 4);
+      changed = _events.nextTradeSession();
+      Assert.assertNotNull(changed);
+      Assert.assertEquals(4, changed.lastChange);
+      Assert.assertNull(_events._tradeSessionChanges.poll(300, TimeUnit.MILLISECONDS));
+   }
+
+   @Test
+   public void testTraderChangesAreDispatchedFirst() throws InterruptedException {
+      UUID id = UUID.randomUUID();
+      _server.putTradeSession(id, 1);
+      _events._holdTraderChange = true;
+      _stream.watchTrader(true);
+      Assert.assertTrue(_events._held.await(EVENT_TIMEOUT_MS, TimeUnit.MILLISECONDS));
+
+      // While the stream is busy, a trade session change comes in before a
+      // trader change
+      _stream.watchTradeSession(id, 1);
+      Assert.assertTrue(_server.awaitTradeSessionWait());
+      _server.touchTradeSession(id, 2);
+      Assert.assertTrue(_server.awaitNoTradeSessionWait());
+      Assert.assertTrue(_server.awaitTraderWait());
+      _server.bumpTrader();
+      Assert.assertTrue(_server.awaitNoTraderWait());
+      // Give the waits time to queue their responses
+      Thread.sleep(200);
+      _events._released.countDown();
+
+      Assert.assertNotNull(_events.nextTradeSession());
+      Assert.assertEquals(Arrays.asList("trader", "trader", "tradeSession"), _events._order);
+   }
+
+   @Test
+   public void testInvalidSessionIsRenewed() throws InterruptedException {
+      // The server rejects the current session, but accepts the renewed one
+      UUID rejected = UUID.randomUUID();
+      UUID renewed = UUID.randomUUID();
+      _source._sessionId = rejected;
+      _source._renewedSessionId = renewed;
+      _server.addValidSession(renewed);
+      UUID id = UUID.randomUUID();
+      _server.putTradeSession(id, 2);
+      _stream.watchTradeSession(id, 1);
+      TradeSession changed = _events.nextTradeSession();
+      Assert.assertNotNull(changed);
+      Assert.assertEquals(2, changed.lastChange);
+      Assert.assertTrue(_source._invalidated.contains(rejected));
+   }
+
+   @Test
+   public void testStop() {
+      _stream.watchTrader(true);
+      _stream.watchTradeSession(UUID.randomUUID(), 1);
+      Assert.assertTrue(_stream.isRunning());
+      _stream.watchTrader(false);
+      Assert.assertTrue(_stream.isRunning());
+      _stream.stop();
+      Assert.assertFalse(_stream.isRunning());
+   }
+
+   private static TradeSession tradeSession(UUID id, long lastChange) {
+      return new TradeSession(id, 0, lastChange, null, 0, null, 0, 0, 100000000, 100000000, null, null, null, null,
+            null, null, null, null, null, false, true, null, 0D, null, null, null, null, null, null, false, true, null);
+   }
+}
@@ -0,0 +1,136 @@
+/*
+ * Copyright 2013, 2014 Megion Research and Development GmbH
+ *
+ * Licensed under the Microsoft Reference Source License (MS-RSL)
+ *
+ * This license governs use of the accompanying software. If you use the software, you accept this license.
+ * If you do not accept the license, do not use the software.
+ *
+ * 1. Definitions
+ * The terms "reproduce," "reproduction," and "distribution" have the same meaning here as under U.S. copyright law.
+ * "You" means the licensee of the software.
+ * "Your company" means the company you worked for when you downloaded the software.
+ * "Reference use" means use of the software within your company as a reference, in read only form, for the sole purposes
+ * of debugging your products, maintaining your products, or enhancing the interoperability of your products with the
+ * software, and specifically excludes the right to distribute the software outside of your company.
+ * "Licensed patents" means any Licensor patent claims which read directly on the software as distributed by the Licensor
+ * under this license.
+ *
+ * 2. Grant of Rights
+ * (A) Copyright Grant- Subject to the terms of this license, the Licensor grants you a non-transferable, non-exclusive,
+ * worldwide, royalty-free copyright license to reproduce the software for reference use.
+ * (B) Patent Grant- Subject to the terms of this license, the Licensor grants you a non-transferable, non-exclusive,
+ * worldwide, royalty-free patent license under licensed patents for reference use.
+ *
+ * 3. Limitations
+ * (A) No Trademark License- This license does not grant you any rights to use the Licensor’s name, logo, or trademarks.
+ * (B) If you begin patent litigation against the Licensor over patents that you think may apply to the software
+ * (including a cross-claim or counterclaim in a lawsuit), your license to the software ends automatically.
+ * (C) The software is licensed "as-is." You bear the risk of using it. The Licensor gives no express warranties,
+ * guarantees or conditions. You may have additional consumer rights under your local laws which this license cannot
+ * change. To the extent permitted under your local laws, the Licensor excludes the implied warranties of merchantability,
+ * fitness for a particular purpose and non-infringement.
+ */
+
+package com.mycelium.wallet;
+
+import java.util.concurrent.Executor;
+
+/**
+ * A component which is created on first use, or ahead of that on a
+ * background thread during startup. Whoever comes first creates the
+ * component, everybody else waits for it. The time spent creating it, and the
+ * time spent waiting for it if that happens, are recorded as startup phases.
+ */
+public abstract class LazyComponent<T> {
+
+   private final String _name;
+   private final StartupTimings _timings;
+   private T _value;
+   private RuntimeException _error;
+   private boolean _creating;
+
+   public LazyComponent(String name, StartupTimings timings) {
+      _name = name;
+      _timings = timings;
+   }
+
+   protected abstract T create();
+
+   public T get() {
+      synchronized (this) {
+         if (_value != null) {
+            return _value;
+         }
+         if (_creating) {
+            return await();
+         }
+         if (_error != null) {
+            throw _error;
+         }
+         _creating = true;
+      }
+      long start = System.nanoTime();
+      T value = null;
+      try {
+         value = create();
+         return value;
+      } catch (RuntimeException e) {
+         synchronized (this) {
+            _error = e;
+         }
+         throw e;
+      } finally {
+         _timings.record(_name, start);
+         synchronized (this) {
+            _value = value;
+            _creating = false;
+            notifyAll();
+         }
+      }
+   }
+
+   private T await() {
+      long start = System.nanoTime();
+      boolean interrupted = false;
+      try {
+         while (_creating) {
+            try {
+               wait();
+            } catch (InterruptedException e) {
+               interrupted = true;
+            }
+         }
+      } finally {
+         if (interrupted) {
+            Thread.currentThread().interrupt();
+         }
+      }
+      _timings.record("Waiting for " + _name, start);
+      if (_error != null) {
+         throw _error;
+      }
+      return _value;
+   }
+
+   /**
+    * Create the component on a background thread unless somebody else is
+    * already doing so
+    */
+   public void createInBackground(Executor executor) {
+      executor.execute(new Runnable() {
+         @Override
+         public void run() {
+            try {
+               get();
+            } catch (RuntimeException e) {
+               // Rethrown to the first caller needing the component
+            }
+         }
+      });
+   }
+
+   public synchronized boolean isReady() {
+      return _value != null;
+   }
+}
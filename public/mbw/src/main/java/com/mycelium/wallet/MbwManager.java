@@ -84,6 +84,9 @@ import com.squareup.otto.Subscribe;
 
 import java.io.*;
 import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
 import java.util.logging.Level;
 
 public class MbwManager {
@@ -116,9 +119,10 @@ public class MbwManager {
    private NetworkConnectionWatcher _connectionWatcher;
    private Context _applicationContext;
    private AndroidAsyncApi _asyncApi;
-   private AddressBookManager _addressBookManager;
-   private MetadataStorage _storage;
-   private LocalTraderManager _localTraderManager;
+   private final StartupTimings _startupTimings;
+   private final LazyComponent<AddressBookManager> _addressBookManager;
+   private final LazyComponent<MetadataStorage> _storage;
+   private final LazyComponent<LocalTraderManager> _localTraderManager;
    private Pin _pin;
 
    private MinerFee _minerFee;
@@ -143,6 +147,8 @@ public class MbwManager {
    private EvictingQueue<LogEntry> _wapiLogs = EvictingQueue.create(100);
 
    private MbwManager(Context evilContext) {
+      _startupTimings = new StartupTimings();
+      long start = System.nanoTime();
       _applicationContext = Preconditions.checkNotNull(evilContext.getApplicationContext());
       _environment = MbwEnvironment.determineEnvironment(_applicationContext);
       String version = VersionManager.determineVersion(_applicationContext);
@@ -164,6 +170,7 @@ public class MbwManager {
 
       _wapi = initWapi();
       _httpErrorCollector = HttpErrorCollector.registerInVM(_applicationContext, version, _wapi);
+      _startupTimings.record("Environment and API clients", start);
 
       if (android.os.Build.VERSION.SDK_INT < android.os.Build.VERSION_CODES.GINGERBREAD) {
          // Disable HTTP keep-alive on systems predating Gingerbread
@@ -179,9 +186,14 @@ public class MbwManager {
       _isBitidEnabled = _applicationContext.getResources().getBoolean(R.bool.bitid_enabled);
 
       // Local Trader
-      TradeSessionDb tradeSessionDb = new TradeSessionDb(_applicationContext);
       _ltApi = initLt();
-      _localTraderManager = new LocalTraderManager(_applicationContext, tradeSessionDb, getLtApi(), this);
+      _localTraderManager = new LazyComponent<LocalTraderManager>("Local trader", _startupTimings) {
+         @Override
+         protected LocalTraderManager create() {
+            TradeSessionDb tradeSessionDb = new TradeSessionDb(_applicationContext);
+            return new LocalTraderManager(_applicationContext, tradeSessionDb, getLtApi(), MbwManager.this);
+         }
+      };
 
       _pin = new Pin(
             preferences.getString(Constants.PIN_SETTING, ""),
@@ -197,8 +209,18 @@ public class MbwManager {
       WindowManager windowManager = (WindowManager) _applicationContext.getSystemService(Context.WINDOW_SERVICE);
       windowManager.getDefaultDisplay().getMetrics(dm);
 
-      _addressBookManager = new AddressBookManager(_applicationContext);
-      _storage = new MetadataStorage(_applicationContext);
+      _addressBookManager = new LazyComponent<AddressBookManager>("Address book", _startupTimings) {
+         @Override
+         protected AddressBookManager create() {
+            return new AddressBookManager(_applicationContext);
+         }
+      };
+      _storage = new LazyComponent<MetadataStorage>("Metadata storage", _startupTimings) {
+         @Override
+         protected MetadataStorage create() {
+            return new MetadataStorage(_applicationContext);
+         }
+      };
       exploreHelper = new ExploreHelper();
       _language = preferences.getString(Constants.LANGUAGE_SETTING, Locale.getDefault().getLanguage());
       _versionManager = new VersionManager(_applicationContext, _language, _asyncApi, version);
@@ -231,18 +253,50 @@ public class MbwManager {
             ? MrdExport.V1.ScryptParameters.DEFAULT_PARAMS
             : MrdExport.V1.ScryptParameters.LOW_MEM_PARAMS;
 
+      start = System.nanoTime();
       _walletManager = createWalletManager(_applicationContext, _environment);
+      _startupTimings.record("Wallet manager", start);
+
+      // The wallet manager is all the first screen needs, everything else
+      // loads in the background and whoever needs it first waits for it
+      startBackgroundComponents();
+
       _eventTranslator = new EventTranslator(new Handler(), _eventBus);
       _walletManager.addObserver(_eventTranslator);
       _exchangeRateManager.subscribe(_eventTranslator);
+      start = System.nanoTime();
       migrateOldKeys();
+      _startupTimings.record("Key migration", start);
 
       //for managing temp accounts created through scanning
       _tempWalletManager = createTempWalletManager(_applicationContext, _environment);
       _tempWalletManager.addObserver(_eventTranslator);
+   }
 
+   private void startBackgroundComponents() {
+      ExecutorService executor = Executors.newFixedThreadPool(2, new ThreadFactory() {
+         private int _count;
 
+         @Override
+         public synchronized Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "MbwStartup-" + (++_count));
+            thread.setDaemon(true);
+            return thread;
+         }
+      });
+      _storage.createInBackground(executor);
+      _localTraderManager.createInBackground(executor);
+      _addressBookManager.createInBackground(executor);
+      // Let the threads terminate once the components are created
+      executor.shutdown();
+   }
 
+   /**
+    * Get the timing of the startup phases, background phases may still be
+    * missing
+    */
+   public StartupTimings getStartupTimings() {
+      return _startupTimings;
    }
 
    private LtApiClient initLt() {
@@ -341,9 +395,10 @@ public class MbwManager {
       if (!_walletManager.getAccountIds().isEmpty()) return;
 
       // Get the local trader address, may be null
-      Address localTraderAddress = _localTraderManager.getLocalTraderAddress();
+      LocalTraderManager localTraderManager = getLocalTraderManager();
+      Address localTraderAddress = localTraderManager.getLocalTraderAddress();
       if (localTraderAddress == null) {
-         _localTraderManager.unsetLocalTraderAccount();
+         localTraderManager.unsetLocalTraderAccount();
       }
 
       //check which address was the last recently selected one
@@ -379,9 +434,9 @@ public class MbwManager {
          // See if we need to migrate this account to local trader
          if (record.address.equals(localTraderAddress)) {
             if (record.hasPrivateKey()) {
-               _localTraderManager.setLocalTraderData(account, record.key, record.address, _localTraderManager.getNickname());
+               localTraderManager.setLocalTraderData(account, record.key, record.address, localTraderManager.getNickname());
             } else {
-               _localTraderManager.unsetLocalTraderAccount();
+               localTraderManager.unsetLocalTraderAccount();
             }
          }
       }
@@ -412,7 +467,7 @@ public class MbwManager {
    }
 
    private void migrateAddressAndAccountLabelsToMetadataStorage() {
-      List<AddressBookManager.Entry> entries = _addressBookManager.getEntries();
+      List<AddressBookManager.Entry> entries = getAddressBookManager().getEntries();
       for (AddressBookManager.Entry entry : entries) {
 
          Address address = entry.getAddress();
@@ -421,10 +476,10 @@ public class MbwManager {
          UUID accountid = SingleAddressAccount.calculateId(address);
          if (_walletManager.getAccountIds().contains(accountid)) {
             //its one of our accounts, so we name it
-            _storage.storeAccountLabel(accountid, label);
+            getMetadataStorage().storeAccountLabel(accountid, label);
          } else {
             //we just put it into the addressbook
-            _storage.storeAddressLabel(address, label);
+            getMetadataStorage().storeAddressLabel(address, label);
          }
 
 
@@ -526,7 +581,7 @@ public class MbwManager {
    }
 
    public LocalTraderManager getLocalTraderManager() {
-      return _localTraderManager;
+      return _localTraderManager.get();
    }
 
    public ExchangeRateManager getExchangeRateManager() {
@@ -538,7 +593,7 @@ public class MbwManager {
    }
 
    public AddressBookManager getAddressBookManager() {
-      return _addressBookManager;
+      return _addressBookManager.get();
    }
 
    public boolean isPinProtected() {
@@ -990,7 +1045,7 @@ public class MbwManager {
    }
 
    public MetadataStorage getMetadataStorage() {
-      return _storage;
+      return _storage.get();
    }
 
    public RandomSource getRandomSource() {
@@ -0,0 +1,108 @@
+/*
+ * Copyright 2013, 2014 Megion Research and Development GmbH
+ *
+ * Licensed under the Microsoft Reference Source License (MS-RSL)
+ *
+ * This license governs use of the accompanying software. If you use the software, you accept this license.
+ * If you do not accept the license, do not use the software.
+ *
+ * 1. Definitions
+ * The terms "reproduce," "reproduction," and "distribution" have the same meaning here as under U.S. copyright law.
+ * "You" means the licensee of the software.
+ * "Your company" means the company you worked for when you downloaded the software.
+ * "Reference use" means use of the software within your company as a reference, in read only form, for the sole purposes
+ * of debugging your products, maintaining your products, or enhancing the interoperability of your products with the
+ * software, and specifically excludes the right to distribute the software outside of your company.
+ * "Licensed patents" means any Licensor patent claims which read directly on the software as distributed by the Licensor
+ * under this license.
+ *
+ * 2. Grant of Rights
+ * (A) Copyright Grant- Subject to the terms of this license, the Licensor grants you a non-transferable, non-exclusive,
+ * worldwide, royalty-free copyright license to reproduce the software for reference use.
+ * (B) Patent Grant- Subject to the terms of this license, the Licensor grants you a non-transferable, non-exclusive,
+ * worldwide, royalty-free patent license under licensed patents for reference use.
+ *
+ * 3. Limitations
+ * (A) No Trademark License- This license does not grant you any rights to use the Licensor’s name, logo, or trademarks.
+ * (B) If you begin patent litigation against the Licensor over patents that you think may apply to the software
+ * (including a cross-claim or counterclaim in a lawsuit), your license to the software ends automatically.
+ * (C) The software is licensed "as-is." You bear the risk of using it. The Licensor gives no express warranties,
+ * guarantees or conditions. You may have additional consumer rights under your local laws which this license cannot
+ * change. To the extent permitted under your local laws, the Licensor excludes the implied warranties of merchantability,
+ * fitness for a particular purpose and non-infringement.
+ */
+
+package com.mycelium.wallet;
+
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Records how long the phases of the application startup took, and on which
+ * thread they ran.
+ */
+public class StartupTimings {
+
+   public static class Phase {
+      public final String name;
+      public final String thread;
+      public final long startMs; // Relative to the start of the startup
+      public final long durationMs;
+
+      private Phase(String name, String thread, long startMs, long durationMs) {
+         this.name = name;
+         this.thread = thread;
+         this.startMs = startMs;
+         this.durationMs = durationMs;
+      }
+
+      @Override
+      public String toString() {
+         return name + ": " + durationMs + " ms at +" + startMs + " ms on " + thread;
+      }
+   }
+
+   private final long _origin;
+   private final List<Phase> _phases;
+
+   public StartupTimings() {
+      _origin = System.nanoTime();
+      _phases = new ArrayList<Phase>();
+   }
+
+   /**
+    * Record a phase that started at the specified {@link System#nanoTime()}
+    * and ends now on the current thread
+    */
+   public void record(String name, long startNanos) {
+      long now = System.nanoTime();
+      Phase phase = new Phase(name, Thread.currentThread().getName(),
+            TimeUnit.NANOSECONDS.toMillis(startNanos - _origin), TimeUnit.NANOSECONDS.toMillis(now - startNanos));
+      synchronized (this) {
+         _phases.add(phase);
+      }
+      Log.i(Constants.TAG, "Startup phase " + phase);
+   }
+
+   /**
+    * Get the phases recorded so far in the order they completed
+    */
+   public synchronized List<Phase> getPhases() {
+      return new ArrayList<Phase>(_phases);
+   }
+
+   @Override
+   public synchronized String toString() {
+      StringBuilder sb = new StringBuilder();
+      for (Phase phase : _phases) {
+         if (sb.length() > 0) {
+            sb.append('\n');
+         }
+         sb.append(phase);
+      }
+      return sb.toString();
+   }
+}
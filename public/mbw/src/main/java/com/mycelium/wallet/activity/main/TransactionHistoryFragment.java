@@ -391,13 +391,13 @@ public class TransactionHistoryFragment extends Fragment {
 
    private class Wrapper extends EndlessAdapter {
       private List<TransactionSummary> _toAdd;
-      private int lastOffset;
+      private TransactionSummary _last;
       private int chunkSize;
 
       private Wrapper(Context context, List<TransactionSummary> transactions) {
          super(new TransactionHistoryAdapter(context, transactions));
          _toAdd = new ArrayList<TransactionSummary>();
-         lastOffset = 0;
+         _last = transactions.isEmpty() ? null : transactions.get(transactions.size() - 1);
          chunkSize = 20;
       }
 
@@ -411,8 +411,12 @@ public class TransactionHistoryFragment extends Fragment {
       protected boolean cacheInBackground() {
          WalletAccount acc = _mbwManager.getSelectedAccount();
          synchronized (_toAdd) {
-            lastOffset += chunkSize;
-            _toAdd = acc.getTransactionHistory(lastOffset, chunkSize);
+            // Continue after the last record we have rather than at an offset,
+            // so the database does not have to skip over the previous pages
+            _toAdd = new ArrayList<TransactionSummary>(acc.getTransactionHistoryAfter(_last, chunkSize));
+            if (!_toAdd.isEmpty()) {
+               _last = _toAdd.get(_toAdd.size() - 1);
+            }
          }
          return _toAdd.size() == chunkSize;
       }
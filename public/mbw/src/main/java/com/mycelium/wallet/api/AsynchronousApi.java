@@ -41,6 +41,15 @@ import com.mycelium.wapi.api.request.VersionInfoRequest;
 import com.mycelium.wapi.api.response.VersionInfoResponse;
 import com.squareup.otto.Bus;
 
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
 
 /**
  * This class is an asynchronous wrapper for the MPB Client API. All the public
@@ -49,12 +58,34 @@ import com.squareup.otto.Bus;
  * functions there is a corresponding interface with a call-back function that
  * the caller must implement. This function is called once the AsyncTask has
  * completed or failed.
+ * <p/>
+ * Requests are executed by a small thread pool, requests initiated by the user
+ * are taken from the queue before background requests. A request which is
+ * identical to one that is queued or running is not executed again, its
+ * call-back gets the result of the request already in flight.
  */
 public abstract class AsynchronousApi {
 
+   public enum Priority {
+      USER, BACKGROUND
+   }
+
+   private static final int MAX_THREADS = 3;
+   private static final long KEEP_ALIVE_SECONDS = 30;
 
    private final Wapi _wapi;
    private final Bus eventBus;
+   private final ThreadPoolExecutor _executor;
+   private final Map<String, PooledRequest<?>> _inFlight;
+   private long _sequence;
+
+   // Statistics, guarded by this
+   private long _requests;
+   private long _deduplicated;
+   private int _maxQueueDepth;
+   private long _executed;
+   private long _totalWaitNanos;
+   private long _maxWaitNanos;
 
    /**
     * Create a new asynchronous API instance.
@@ -64,12 +95,29 @@ public abstract class AsynchronousApi {
    public AsynchronousApi(Wapi wapi, Bus eventBus) {
       _wapi = wapi;
       this.eventBus = eventBus;
+      _inFlight = new HashMap<String, PooledRequest<?>>();
+      _executor = new ThreadPoolExecutor(MAX_THREADS, MAX_THREADS, KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+            new PriorityBlockingQueue<Runnable>(), new ThreadFactory() {
+         private int _count;
+
+         @Override
+         public synchronized Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "AsynchronousApi-" + (++_count));
+            thread.setDaemon(true);
+            return thread;
+         }
+      });
+      _executor.allowCoreThreadTimeOut(true);
    }
 
 
    abstract protected CallbackRunnerInvoker createCallbackRunnerInvoker();
 
 
+   /**
+    * Check for a new wallet version in the background and post the result as
+    * a {@link WalletVersionEvent}
+    */
    public void getWalletVersion(final VersionInfoRequest versionRequest) {
       AbstractCallbackHandler<VersionInfoResponse> callback = new AbstractCallbackHandler<VersionInfoResponse>() {
          @Override
@@ -83,64 +131,131 @@ public abstract class AsynchronousApi {
             eventBus.post(latestVersion);
          }
       };
-      getWalletVersion(versionRequest, callback);
+      getWalletVersion(versionRequest, Priority.BACKGROUND, callback);
    }
 
-   public void getWalletVersion(final VersionInfoRequest req, AbstractCallbackHandler<VersionInfoResponse> callback) {
-      executeRequest(new AbstractCaller<VersionInfoResponse>(callback) {
+   /**
+    * Check for a new wallet version on behalf of the user
+    */
+   public AsyncTask getWalletVersion(VersionInfoRequest req, AbstractCallbackHandler<VersionInfoResponse> callback) {
+      return getWalletVersion(req, Priority.USER, callback);
+   }
+
+   public AsyncTask getWalletVersion(final VersionInfoRequest req, Priority priority,
+                                     AbstractCallbackHandler<VersionInfoResponse> callback) {
+      String key = "getWalletVersion:" + req.currentVersion + ":" + req.locale;
+      return executeRequest(new PooledRequest<VersionInfoResponse>(key, priority) {
          @Override
-         protected void callFunction() throws WapiException {
-            _response = _wapi.getVersionInfo(req).getResult();
+         protected VersionInfoResponse callFunction() throws WapiException {
+            return _wapi.getVersionInfo(req).getResult();
          }
-      });
+      }, callback);
    }
 
-   abstract private class SynchronousFunctionCaller implements Runnable, AsyncTask {
+   /**
+    * Snapshot of the request statistics of this instance
+    */
+   public static class Statistics {
+      public final long requests;
+      public final long deduplicated;
+      public final int queueDepth;
+      public final int maxQueueDepth;
+      public final long averageWaitMs;
+      public final long maxWaitMs;
 
-      protected WapiException _error;
-      private volatile boolean _canceled;
+      private Statistics(long requests, long deduplicated, int queueDepth, int maxQueueDepth, long averageWaitMs,
+                         long maxWaitMs) {
+         this.requests = requests;
+         this.deduplicated = deduplicated;
+         this.queueDepth = queueDepth;
+         this.maxQueueDepth = maxQueueDepth;
+         this.averageWaitMs = averageWaitMs;
+         this.maxWaitMs = maxWaitMs;
+      }
 
       @Override
-      public void cancel() {
-         _canceled = true;
+      public String toString() {
+         return "requests:" + requests + " deduplicated:" + deduplicated + " queue:" + queueDepth + " maxQueue:"
+               + maxQueueDepth + " avgWait:" + averageWaitMs + "ms maxWait:" + maxWaitMs + "ms";
+      }
+   }
+
+   public synchronized Statistics getStatistics() {
+      long averageWaitNanos = _executed == 0 ? 0 : _totalWaitNanos / _executed;
+      return new Statistics(_requests, _deduplicated, _executor.getQueue().size(), _maxQueueDepth,
+            TimeUnit.NANOSECONDS.toMillis(averageWaitNanos), TimeUnit.NANOSECONDS.toMillis(_maxWaitNanos));
+   }
+
+   /**
+    * A request executed on the thread pool on behalf of one or more
+    * subscribers. Requests with the same key are considered identical.
+    */
+   private abstract class PooledRequest<T> implements Runnable, Comparable<PooledRequest<?>> {
+      private final String _key;
+      private final List<Subscriber<T>> _subscribers;
+      private volatile Priority _priority;
+      private long _sequence;
+      private long _enqueuedAt;
+
+      private PooledRequest(String key, Priority priority) {
+         _key = key;
+         _priority = priority;
+         _subscribers = new ArrayList<Subscriber<T>>(1);
+      }
+
+      @Override
+      public int compareTo(PooledRequest<?> other) {
+         int result = _priority.compareTo(other._priority);
+         if (result != 0) {
+            return result;
+         }
+         return _sequence < other._sequence ? -1 : (_sequence == other._sequence ? 0 : 1);
       }
 
       @Override
       public void run() {
+         recordWait(System.nanoTime() - _enqueuedAt);
+         T response = null;
+         WapiException error = null;
          try {
-            callFunction();
+            response = callFunction();
          } catch (WapiException e) {
-            _error = new WapiException(e.errorCode);
+            error = new WapiException(e.errorCode);
          } finally {
-            if (_canceled) {
-               return; //todo fix please this will swallow OOME and other errors
+            for (Subscriber<T> subscriber : complete(this)) {
+               subscriber.callback(response, error);
             }
-            callback();
          }
       }
 
-      abstract protected void callFunction() throws WapiException;
-
-      abstract protected void callback();
+      abstract protected T callFunction() throws WapiException;
 
    }
 
-   private abstract class AbstractCaller<T> extends SynchronousFunctionCaller {
-
-      private AbstractCallbackHandler<T> _callbackHandler;
-      private CallbackRunnerInvoker _callbackInvoker;
-      protected T _response;
+   private class Subscriber<T> implements AsyncTask {
+      private final PooledRequest<T> _request;
+      private final AbstractCallbackHandler<T> _callbackHandler;
+      private final CallbackRunnerInvoker _callbackInvoker;
+      private volatile boolean _canceled;
 
-      private AbstractCaller(AbstractCallbackHandler<T> callbackHandler) {
+      private Subscriber(PooledRequest<T> request, AbstractCallbackHandler<T> callbackHandler) {
+         _request = request;
          _callbackHandler = callbackHandler;
+         // Created in the caller's thread, so that the call-back ends up there
          _callbackInvoker = createCallbackRunnerInvoker();
       }
 
       @Override
-      protected abstract void callFunction() throws WapiException;
+      public void cancel() {
+         _canceled = true;
+         dropIfAbandoned(_request);
+      }
 
-      protected void callback() {
-         _callbackInvoker.invoke(new AbstractCallbackRunner<T>(_callbackHandler, _response, _error));
+      private void callback(T response, WapiException error) {
+         if (_canceled) {
+            return;
+         }
+         _callbackInvoker.invoke(new AbstractCallbackRunner<T>(_callbackHandler, response, error));
       }
    }
 
@@ -162,9 +277,66 @@ public abstract class AsynchronousApi {
    }
 
 
-   private synchronized void executeRequest(SynchronousFunctionCaller caller) {
-      Thread thread = new Thread(caller);
-      thread.start();
+   private synchronized <T> AsyncTask executeRequest(PooledRequest<T> request, AbstractCallbackHandler<T> callback) {
+      _requests++;
+      @SuppressWarnings("unchecked")
+      PooledRequest<T> existing = (PooledRequest<T>) _inFlight.get(request._key);
+      if (existing != null) {
+         // Join the identical request in flight
+         _deduplicated++;
+         Subscriber<T> subscriber = new Subscriber<T>(existing, callback);
+         existing._subscribers.add(subscriber);
+         if (request._priority.compareTo(existing._priority) < 0 && _executor.remove(existing)) {
+            // Still queued, re-queue it with the higher priority
+            existing._priority = request._priority;
+            _executor.execute(existing);
+         }
+         return subscriber;
+      }
+      Subscriber<T> subscriber = new Subscriber<T>(request, callback);
+      request._subscribers.add(subscriber);
+      request._sequence = _sequence++;
+      request._enqueuedAt = System.nanoTime();
+      _inFlight.put(request._key, request);
+      _executor.execute(request);
+      _maxQueueDepth = Math.max(_maxQueueDepth, _executor.getQueue().size());
+      return subscriber;
+   }
+
+   /**
+    * Take a request out of the set of requests in flight, so that later
+    * identical requests get executed again
+    *
+    * @return the subscribers of the request
+    */
+   private synchronized <T> List<Subscriber<T>> complete(PooledRequest<T> request) {
+      if (_inFlight.get(request._key) == request) {
+         _inFlight.remove(request._key);
+      }
+      return new ArrayList<Subscriber<T>>(request._subscribers);
+   }
+
+   /**
+    * Remove a request from the queue if all of its subscribers have canceled
+    */
+   private synchronized void dropIfAbandoned(PooledRequest<?> request) {
+      if (_inFlight.get(request._key) != request) {
+         return;
+      }
+      for (Subscriber<?> subscriber : request._subscribers) {
+         if (!subscriber._canceled) {
+            return;
+         }
+      }
+      if (_executor.remove(request)) {
+         _inFlight.remove(request._key);
+      }
+   }
+
+   private synchronized void recordWait(long waitNanos) {
+      _executed++;
+      _totalWaitNanos += waitNanos;
+      _maxWaitNanos = Math.max(_maxWaitNanos, waitNanos);
    }
 
 }
@@ -51,6 +51,7 @@ import com.mycelium.lt.ApiUtils;
 import com.mycelium.lt.ChatMessageEncryptionKey;
 import com.mycelium.lt.api.LtApi;
 import com.mycelium.lt.api.LtApiException;
+import com.mycelium.lt.api.LtChangeStream;
 import com.mycelium.lt.api.model.LtSession;
 import com.mycelium.lt.api.model.TradeSession;
 import com.mycelium.lt.api.model.TraderInfo;
@@ -79,11 +80,14 @@ public class LocalTraderManager {
    final private LtApi _api;
    final private MbwManager _mbwManager;
    final private Set<LocalTraderEventSubscriber> _subscribers;
-   final private Thread _executer;
+   final private Map<Request.Lane, LaneExecutor> _lanes;
+   final private Map<Long, Request> _pendingRequests;
+   final private Object _sessionLock;
    final private Geocoder _geocoder;
-   private LtSession _session;
-   final private List<Request> _requests;
+   private volatile LtSession _session;
+   private String _sessionLanguage;
    private boolean _isLoggedIn;
+   private long _nextRequestId;
    private Address _localTraderAddress;
    private long _lastTraderSynchronization;
    private long _lastTraderNotification;
@@ -92,8 +96,10 @@ public class LocalTraderManager {
    private boolean _isLocalTraderDisabled;
    private boolean _playSoundOnTradeNotification;
    private boolean _useMiles;
-   private TraderChangeMonitor _traderChangeMonitor;
-   private TradeSessionChangeMonitor _tradeSessionChangeMonitor;
+   final private LtChangeStream _changeStream;
+   final private TradeSessionChangeMonitor _tradeSessionChangeMonitor;
+   private Set<UUID> _watchedTradeSessions;
+   private boolean _isMonitoringTrader;
    private boolean _notificationsEnabled;
    private TraderInfo _cachedTraderInfo;
    private long _lastNotificationSoundTimestamp;
@@ -113,7 +119,8 @@ public class LocalTraderManager {
       _api = api;
       _mbwManager = mbwManager;
       _subscribers = new HashSet<LocalTraderEventSubscriber>();
-      _requests = new LinkedList<Request>();
+      _pendingRequests = new HashMap<Long, Request>();
+      _sessionLock = new Object();
 
       // Preferences
       SharedPreferences preferences = _context.getSharedPreferences(Constants.LOCAL_TRADER_SETTINGS_NAME,
@@ -149,12 +156,14 @@ public class LocalTraderManager {
       _lastTraderSynchronization = preferences.getLong(Constants.LOCAL_TRADER_LAST_TRADER_SYNCHRONIZATION_SETTING, 0);
       _lastTraderNotification = preferences.getLong(Constants.LOCAL_TRADER_LAST_TRADER_NOTIFICATION_SETTING, 0);
 
-      _executer = new Thread(new Executor());
-      _executer.setDaemon(true);
-      _executer.start();
+      _lanes = new EnumMap<Request.Lane, LaneExecutor>(Request.Lane.class);
+      for (Request.Lane lane : Request.Lane.values()) {
+         _lanes.put(lane, new LaneExecutor(lane));
+      }
 
-      _traderChangeMonitor = new TraderChangeMonitor(this, _api);
-      _tradeSessionChangeMonitor = new TradeSessionChangeMonitor(this, _api);
+      _tradeSessionChangeMonitor = new TradeSessionChangeMonitor();
+      _watchedTradeSessions = new HashSet<UUID>();
+      _changeStream = new LtChangeStream(_api, new ChangeStreamSessionSource(), new ChangeStreamListener());
 
       _geocoder = new FallBackGeocoder(_mbwManager);
    }
@@ -177,34 +186,107 @@ public class LocalTraderManager {
       }
    }
 
-   public void makeRequest(Request request) {
+   /**
+    * Queue a request for execution on its lane
+    *
+    * @return the ID assigned to the request
+    */
+   public long makeRequest(Request request) {
       if (request.requiresLogin() && !hasLocalTraderAccount()) {
          throw new RuntimeException("Cannot make login request when trading is disabled");
       }
-      synchronized (_requests) {
-         _requests.add(request);
-         _requests.notify();
+      long requestId;
+      synchronized (_pendingRequests) {
+         requestId = ++_nextRequestId;
+         request.setRequestId(requestId);
+         _pendingRequests.put(requestId, request);
       }
+      _lanes.get(request.getLane()).enqueue(request);
+      return requestId;
    }
 
-   public void startMonitoringTrader() {
-      _traderChangeMonitor.startMonitoring();
+   /**
+    * Is the request with the specified ID queued or executing?
+    */
+   public boolean isRequestPending(long requestId) {
+      synchronized (_pendingRequests) {
+         return _pendingRequests.containsKey(requestId);
+      }
    }
 
-   public void stopMonitoringTrader() {
-      _traderChangeMonitor.stopMonitoring();
+   /**
+    * Cancel a request which has not started executing yet
+    *
+    * @return true if the request was cancelled
+    */
+   public boolean cancelRequest(long requestId) {
+      Request request;
+      synchronized (_pendingRequests) {
+         request = _pendingRequests.get(requestId);
+      }
+      if (request == null || !_lanes.get(request.getLane()).dequeue(request)) {
+         return false;
+      }
+      requestDone(request);
+      return true;
    }
 
-   public void startMonitoringTradeSession(TradeSessionChangeMonitor.Listener listener) {
-      if (_session == null) {
-         Log.e(TAG, "Trying to monitor trade session without having a session");
-         return;
+   private void requestDone(Request request) {
+      synchronized (_pendingRequests) {
+         _pendingRequests.remove(request.getRequestId());
       }
-      _tradeSessionChangeMonitor.startMonitoring(_session.id, listener);
    }
 
-   public void stopMonitoringTradeSession() {
+   public synchronized void startMonitoringTrader() {
+      _isMonitoringTrader = true;
+      _changeStream.watchTrader(true);
+      updateWatchedTradeSessions();
+   }
+
+   public synchronized void stopMonitoringTrader() {
+      _isMonitoringTrader = false;
+      _changeStream.watchTrader(false);
+      updateWatchedTradeSessions();
+   }
+
+   public synchronized void startMonitoringTradeSession(TradeSessionChangeMonitor.Listener listener) {
+      _tradeSessionChangeMonitor.startMonitoring(_changeStream, listener);
+      updateWatchedTradeSessions();
+   }
+
+   public synchronized void stopMonitoringTradeSession() {
       _tradeSessionChangeMonitor.stopMonitoring();
+      updateWatchedTradeSessions();
+   }
+
+   /**
+    * While a local trader screen is monitoring, watch every open trade session
+    * on the change stream, so that their changes arrive over the one stream
+    * whether they are on screen or not
+    */
+   private synchronized void updateWatchedTradeSessions() {
+      UUID onScreen = _tradeSessionChangeMonitor.getTradeSessionId();
+      Set<UUID> watch = new HashSet<UUID>();
+      if (onScreen != null) {
+         // Watched by the monitor with the timestamp on screen
+         watch.add(onScreen);
+      }
+      if (_isMonitoringTrader || onScreen != null) {
+         for (TradeSession tradeSession : _db.getAll()) {
+            if (!tradeSession.isOpen || !watch.add(tradeSession.id)) {
+               continue;
+            }
+            if (!_watchedTradeSessions.contains(tradeSession.id)) {
+               _changeStream.watchTradeSession(tradeSession.id, tradeSession.lastChange);
+            }
+         }
+      }
+      for (UUID id : _watchedTradeSessions) {
+         if (!watch.contains(id)) {
+            _changeStream.unwatchTradeSession(id);
+         }
+      }
+      _watchedTradeSessions = watch;
    }
 
    public void enableNotifications(boolean enabled) {
@@ -231,93 +313,152 @@ public class LocalTraderManager {
       public void unsetLocalTraderAccount();
    }
 
-   private class Executor implements Runnable, LocalManagerApiContext {
+   /**
+    * Get the ID of a session for the current language, creating a new session
+    * and logging in the local trader if necessary. The server is contacted
+    * without holding the session lock, so that lanes which already have what
+    * they need are not held up by another lane logging in.
+    */
+   private UUID obtainSession(boolean requiresLogin) throws LtApiException {
+      String language = _mbwManager.getLanguage();
+      for (int attempt = 0;; attempt++) {
+         LtSession session;
+         boolean isLoggedIn;
+         synchronized (_sessionLock) {
+            session = language.equals(_sessionLanguage) ? _session : null;
+            isLoggedIn = _isLoggedIn;
+         }
+         if (session == null) {
+            LtSession created = createSession(language);
+            synchronized (_sessionLock) {
+               if (_session != null && language.equals(_sessionLanguage)) {
+                  // Another lane was quicker, use its session
+                  session = _session;
+                  isLoggedIn = _isLoggedIn;
+               } else {
+                  _session = session = created;
+                  _sessionLanguage = language;
+                  _isLoggedIn = isLoggedIn = false;
+               }
+            }
+         }
+         if (!requiresLogin || isLoggedIn) {
+            return session.id;
+         }
+         try {
+            login(session.id);
+         } catch (LtApiException e) {
+            if (e.errorCode != LtApi.ERROR_CODE_INVALID_SESSION || attempt > 0) {
+               throw e;
+            }
+            invalidateSession(session.id);
+            continue;
+         }
+         synchronized (_sessionLock) {
+            if (_session == session) {
+               _isLoggedIn = true;
+            }
+         }
+         return session.id;
+      }
+   }
 
-      @Override
-      public void run() {
+   private LtSession createSession(String language) throws LtApiException {
+      return _api.createSession(LtApi.VERSION, language, _mbwManager.getBitcoinDenomination().getAsciiName())
+            .getResult();
+   }
 
-         String currentSessionLanguage = null;
+   private void login(UUID sessionId) throws LtApiException {
+      Preconditions.checkNotNull(sessionId);
+      // Sign session ID with private key
+      InMemoryPrivateKey privateKey = getLocalTraderPrivateKey();
+      if (privateKey == null) {
+         throw new LtApiException(LtApi.ERROR_CODE_TRADER_DOES_NOT_EXIST);
+      }
+      String sigHashSessionId = ApiUtils.generateUuidHashSignature(privateKey, sessionId, new AndroidRandomSource());
+      // Login
+      LoginParameters params = new LoginParameters(getLocalTraderAddress(), sigHashSessionId);
+      params.setGcmId(getGcmRegistrationId());
+      _api.traderLogin(sessionId, params).getResult();
+   }
 
+   /**
+    * Drop the current session, or only the specified one if it is not null
+    */
+   private void invalidateSession(UUID sessionId) {
+      synchronized (_sessionLock) {
+         if (sessionId == null || (_session != null && sessionId.equals(_session.id))) {
+            _session = null;
+            _isLoggedIn = false;
+         }
+      }
+   }
+
+   /**
+    * Executes the requests of one lane in the order they were made
+    */
+   private class LaneExecutor implements Runnable, LocalManagerApiContext {
+      private final LinkedList<Request> _queue;
+      private UUID _currentSessionId;
+
+      private LaneExecutor(Request.Lane lane) {
+         _queue = new LinkedList<Request>();
+         Thread thread = new Thread(this);
+         thread.setDaemon(true);
+         thread.setName(TAG + " " + lane);
+         thread.start();
+      }
+
+      private void enqueue(Request request) {
+         synchronized (_queue) {
+            _queue.add(request);
+            _queue.notify();
+         }
+      }
+
+      private boolean dequeue(Request request) {
+         synchronized (_queue) {
+            return _queue.remove(request);
+         }
+      }
+
+      @Override
+      public void run() {
          while (true) {
 
             // Grab a request or wait
             Request request;
-            synchronized (_requests) {
-               if (_requests.size() == 0) {
+            synchronized (_queue) {
+               while (_queue.isEmpty()) {
                   try {
-                     _requests.wait();
+                     _queue.wait();
                   } catch (InterruptedException e) {
-                     break;
+                     return;
                   }
                }
-               request = _requests.remove(0);
+               request = _queue.removeFirst();
             }
 
-            // If the request requires a session and we don't got one or if the
-            // language was changed, get a session
-            if (request.requiresSession()) {
-               if (_session == null || !_mbwManager.getLanguage().equals(currentSessionLanguage)) {
-                  if (renewSession()) {
-                     currentSessionLanguage = _mbwManager.getLanguage();
-                  } else {
+            try {
+               // Get a session and login if the request needs it
+               _currentSessionId = null;
+               if (request.requiresSession() || request.requiresLogin()) {
+                  try {
+                     _currentSessionId = obtainSession(request.requiresLogin());
+                  } catch (LtApiException e) {
+                     handleErrors(null, e.errorCode);
                      continue;
                   }
                }
-            }
-
-            // If the request requires a login and we don't are not logged in,
-            // login
-            if (request.requiresLogin() && !_isLoggedIn) {
-               if (!login()) {
-                  continue;
+               request.execute(this, _api, _currentSessionId, _subscribers);
+            } finally {
+               boolean requeued;
+               synchronized (_queue) {
+                  requeued = _queue.contains(request);
                }
-            }
-            request.execute(this, _api, _session.id, _subscribers);
-         }
-
-      }
-
-      private boolean renewSession() {
-         try {
-            // Get new session
-            _session = _api.createSession(LtApi.VERSION, _mbwManager.getLanguage(),
-                  _mbwManager.getBitcoinDenomination().getAsciiName()).getResult();
-            _isLoggedIn = false;
-            return true;
-         } catch (LtApiException e) {
-            // Handle errors
-            handleErrors(null, e.errorCode);
-            return false;
-         }
-      }
-
-      private boolean login() {
-         Preconditions.checkNotNull(_session.id);
-         // Sign session ID with private key
-         InMemoryPrivateKey privateKey = getLocalTraderPrivateKey();
-         if (privateKey == null) {
-            handleErrors(null, LtApi.ERROR_CODE_TRADER_DOES_NOT_EXIST);
-            return false;
-         }
-         String sigHashSessionId = ApiUtils.generateUuidHashSignature(privateKey, _session.id,
-               new AndroidRandomSource());
-         try {
-            // Login
-            LoginParameters params = new LoginParameters(getLocalTraderAddress(), sigHashSessionId);
-            params.setGcmId(getGcmRegistrationId());
-            _api.traderLogin(_session.id, params).getResult();
-            _isLoggedIn = true;
-            return true;
-         } catch (LtApiException e) {
-            if (e.errorCode == LtApi.ERROR_CODE_INVALID_SESSION) {
-               if (renewSession()) {
-                  return login();
-               } else {
-                  return false;
+               if (!requeued) {
+                  requestDone(request);
                }
-            } else {
-               handleErrors(null, e.errorCode);
-               return false;
             }
          }
       }
@@ -342,13 +483,11 @@ public class LocalTraderManager {
       public void handleErrors(Request request, int errorCode) {
          switch (errorCode) {
             case LtApi.ERROR_CODE_INVALID_SESSION:
-               if (renewSession()) {
-                  if (login()) {
-                     synchronized (_requests) {
-                        _requests.add(request);
-                        _requests.notify();
-                     }
-                  }
+               // Another lane may already have renewed the session, only drop
+               // the one we used and try again
+               invalidateSession(_currentSessionId);
+               if (request != null) {
+                  enqueue(request);
                }
                break;
             case LtApi.ERROR_CODE_NO_SERVER_CONNECTION:
@@ -358,15 +497,13 @@ public class LocalTraderManager {
                notifyIncompatibleApiVersion(errorCode);
                break;
             case LtApi.ERROR_CODE_TRADER_DOES_NOT_EXIST:
-               _isLoggedIn = false;
-               _session = null;
+               invalidateSession(null);
                // Disconnect trader account
                unsetLocalTraderAccount();
                notifyNoTraderAccount(errorCode);
                break;
             default:
-               _isLoggedIn = false;
-               _session = null;
+               invalidateSession(null);
                notifyError(errorCode);
                break;
          }
@@ -374,6 +511,44 @@ public class LocalTraderManager {
 
    }
 
+   private class ChangeStreamSessionSource implements LtChangeStream.SessionSource {
+
+      @Override
+      public Address getTraderAddress() {
+         return hasLocalTraderAccount() ? getLocalTraderAddress() : null;
+      }
+
+      @Override
+      public UUID getLoggedInSessionId() throws LtApiException {
+         return obtainSession(true);
+      }
+
+      @Override
+      public void invalidateSession(UUID sessionId) {
+         LocalTraderManager.this.invalidateSession(sessionId);
+      }
+   }
+
+   private class ChangeStreamListener implements LtChangeStream.Listener {
+
+      @Override
+      public void onTraderChanged(long timestamp) {
+         setLastTraderNotification(timestamp);
+      }
+
+      @Override
+      public void onTradeSessionChanged(TradeSession tradeSession) {
+         storeTradeSessionChange(tradeSession);
+         _tradeSessionChangeMonitor.onTradeSessionChanged(tradeSession);
+      }
+
+      @Override
+      public void onError(int errorCode) {
+         Log.w(TAG, "Change stream failed with error code " + errorCode + ", retrying in "
+               + (LtChangeStream.RETRY_TIMEOUT_MS / 1000) + " seconds");
+      }
+   }
+
    private void notifyNoConnection(final int errorCode) {
       synchronized (_subscribers) {
          for (final LocalTraderEventSubscriber s : _subscribers) {
@@ -516,10 +691,20 @@ public class LocalTraderManager {
          _db.insert(remoteItem);
       }
 
+      updateWatchedTradeSessions();
    }
 
    private synchronized void updateSingleTradeSession(TradeSession item) {
       _db.insert(item);
+      updateWatchedTradeSessions();
+   }
+
+   private synchronized void storeTradeSessionChange(TradeSession tradeSession) {
+      // Keep the viewed status, so that the change shows up as new
+      _db.update(tradeSession);
+      if (!tradeSession.isOpen) {
+         updateWatchedTradeSessions();
+      }
    }
 
    public void cacheTraderInfo(TraderInfo traderInfo) {
@@ -578,7 +763,8 @@ public class LocalTraderManager {
    }
 
    public void unsetLocalTraderAccount() {
-      _session = null;
+      invalidateSession(null);
+      ChatMessageEncryptionKey.clearSharedSecretCache();
       _localTraderAddress = null;
       _localTraderAccountId = null;
       _localTraderPrivateKey = null;
@@ -595,7 +781,8 @@ public class LocalTraderManager {
    }
 
    public void setLocalTraderData(UUID accountId, InMemoryPrivateKey privateKey, Address address, String nickname) {
-      _session = null;
+      invalidateSession(null);
+      ChatMessageEncryptionKey.clearSharedSecretCache();
       _localTraderAddress = Preconditions.checkNotNull(address);
       _localTraderAccountId = Preconditions.checkNotNull(accountId);
       _localTraderPrivateKey = Preconditions.checkNotNull(privateKey);
@@ -41,8 +41,10 @@ import java.text.DateFormat;
 import java.util.ArrayList;
 import java.util.Calendar;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Locale;
+import java.util.Map;
 import java.util.UUID;
 
 import android.app.Activity;
@@ -76,7 +78,6 @@ import com.mrd.bitlib.crypto.PublicKey;
 import com.mrd.bitlib.model.Transaction;
 import com.mrd.bitlib.util.HexUtils;
 import com.mycelium.lt.ChatMessageEncryptionKey;
-import com.mycelium.lt.ChatMessageEncryptionKey.InvalidChatMessage;
 import com.mycelium.lt.api.model.ActionState;
 import com.mycelium.lt.api.model.ChatEntry;
 import com.mycelium.lt.api.model.TradeSession;
@@ -127,6 +128,7 @@ public class TradeActivity extends Activity {
    private TextView _tvConfidence;
    private ListView _lvChat;
    private ChatAdapter _chatAdapter;
+   private final Map<ChatEntry, String> _decryptedChatMessages = new HashMap<ChatEntry, String>();
    private Ringtone _updateSound;
    private boolean _dingOnUpdates;
    private boolean _didShowInsufficientFunds;
@@ -528,7 +530,23 @@ public class TradeActivity extends Activity {
          _btAbort.setText(R.string.lt_abort_trade_button);
       }
 
-      // Chat
+      // Chat, decrypt all messages in one go rather than when they are shown
+      List<ChatEntry> chatMessages = new ArrayList<ChatEntry>();
+      List<String> encryptedChatMessages = new ArrayList<String>();
+      for (ChatEntry chatEntry : tradeSession.chatEntries) {
+         if (chatEntry.type == ChatEntry.TYPE_OWNER_CHAT || chatEntry.type == ChatEntry.TYPE_PEER_CHAT) {
+            chatMessages.add(chatEntry);
+            encryptedChatMessages.add(chatEntry.message);
+         }
+      }
+      _decryptedChatMessages.clear();
+      if (!chatMessages.isEmpty()) {
+         List<String> decryptedChatMessages = getChatMessageEncryptionKey().decryptAndCheckChatMessages(
+               encryptedChatMessages);
+         for (int i = 0; i < chatMessages.size(); i++) {
+            _decryptedChatMessages.put(chatMessages.get(i), decryptedChatMessages.get(i));
+         }
+      }
       _chatAdapter.clear();
       for (ChatEntry chatEntry : tradeSession.chatEntries) {
          _chatAdapter.add(chatEntry);
@@ -660,6 +678,7 @@ public class TradeActivity extends Activity {
          // Message text and color
          TextView tvMessage = (TextView) v.findViewById(R.id.tvMessage);
          String text;
+         String message;
          int color;
          // Message Color
          switch (o.type) {
@@ -668,21 +687,21 @@ public class TradeActivity extends Activity {
             color = _eventBackgroundColor;
             break;
          case ChatEntry.TYPE_OWNER_CHAT:
-            try {
-               text = new StringBuilder().append(_tradeSession.ownerName).append(": ")
-                     .append(getChatMessageEncryptionKey().decryptAndCheckChatMessage(o.message)).toString();
+            message = _decryptedChatMessages.get(o);
+            if (message != null) {
+               text = new StringBuilder().append(_tradeSession.ownerName).append(": ").append(message).toString();
                color = _ownerMessageBackgroundColor;
-            } catch (InvalidChatMessage e) {
+            } else {
                text = getString(R.string.lt_invalid_chat_message, _tradeSession.ownerName);
                color = _invalidMessageBackgroundColor;
             }
             break;
          case ChatEntry.TYPE_PEER_CHAT:
-            try {
-               text = new StringBuilder().append(_tradeSession.peerName).append(": ")
-                     .append(getChatMessageEncryptionKey().decryptAndCheckChatMessage(o.message)).toString();
+            message = _decryptedChatMessages.get(o);
+            if (message != null) {
+               text = new StringBuilder().append(_tradeSession.peerName).append(": ").append(message).toString();
                color = _peerMessageBackgroundColor;
-            } catch (InvalidChatMessage e) {
+            } else {
                text = getString(R.string.lt_invalid_chat_message, _tradeSession.peerName);
                color = _invalidMessageBackgroundColor;
             }
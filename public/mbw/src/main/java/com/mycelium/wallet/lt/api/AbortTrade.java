@@ -52,6 +52,11 @@ public class AbortTrade extends Request {
       _tradeSessionId = tradeSessionId;
    }
 
+   @Override
+   public Lane getLane() {
+      return Lane.TRADE;
+   }
+
    @Override
    public void execute(LocalManagerApiContext context, LtApi api, UUID sessionId,
          Collection<LocalTraderEventSubscriber> subscribers) {
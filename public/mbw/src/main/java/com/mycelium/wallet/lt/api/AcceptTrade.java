@@ -54,6 +54,11 @@ public class AcceptTrade extends Request {
       _tradeSessionTimestamp = tradeSessionTimestamp;
    }
 
+   @Override
+   public Lane getLane() {
+      return Lane.TRADE;
+   }
+
    @Override
    public void execute(LocalManagerApiContext context, LtApi api, UUID sessionId,
          Collection<LocalTraderEventSubscriber> subscribers) {
@@ -53,6 +53,11 @@ public class ChangeTradeSessionPrice extends Request {
       this.params = params;
    }
 
+   @Override
+   public Lane getLane() {
+      return Lane.TRADE;
+   }
+
    @Override
    public void execute(LocalManagerApiContext context, LtApi api, UUID sessionId,
          Collection<LocalTraderEventSubscriber> subscribers) {
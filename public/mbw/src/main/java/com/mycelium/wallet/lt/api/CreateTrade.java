@@ -55,6 +55,11 @@ public class CreateTrade extends Request {
       _fiatOffered = fiatOffered;
    }
 
+   @Override
+   public Lane getLane() {
+      return Lane.TRADE;
+   }
+
    @Override
    public void execute(LocalManagerApiContext context, LtApi api, UUID sessionId,
          Collection<LocalTraderEventSubscriber> subscribers) {
@@ -55,6 +55,11 @@ public class ReleaseBtc extends Request {
       _rawHexTransaction = rawHexTransaction;
    }
 
+   @Override
+   public Lane getLane() {
+      return Lane.TRADE;
+   }
+
    @Override
    public void execute(LocalManagerApiContext context, LtApi api, UUID sessionId,
          Collection<LocalTraderEventSubscriber> subscribers) {
@@ -44,9 +44,18 @@ import com.mycelium.wallet.lt.LocalTraderManager.LocalManagerApiContext;
 
 public abstract class Request implements Serializable{
    private static final long serialVersionUID = 1L;
-   
+
+   /**
+    * Requests on different lanes are executed independently of each other, so
+    * trading and chatting is not held up by slow searches and vice versa
+    */
+   public enum Lane {
+      TRADE, GENERAL
+   }
+
    private boolean _requiresSession;
    private boolean _requiresLogin;
+   private long _requestId;
 
    protected Request(boolean requiresSession, boolean requiresLogin) {
       _requiresSession = requiresSession;
@@ -61,6 +70,22 @@ public abstract class Request implements Serializable{
       return _requiresLogin;
    }
 
+   public Lane getLane() {
+      return Lane.GENERAL;
+   }
+
+   /**
+    * Get the ID assigned to this request by the local trader manager, or zero
+    * if the request has not been made yet
+    */
+   public long getRequestId() {
+      return _requestId;
+   }
+
+   public void setRequestId(long requestId) {
+      _requestId = requestId;
+   }
+
    public abstract void execute(LocalManagerApiContext context, LtApi api, UUID sessionId,
          Collection<LocalTraderEventSubscriber> subscribers);
 
@@ -55,12 +55,19 @@ import crl.android.pdfwriter.PDFWriter;
 import crl.android.pdfwriter.PaperSize;
 import crl.android.pdfwriter.StandardFonts;
 
+import java.io.BufferedOutputStream;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.io.Serializable;
 import java.text.DateFormat;
 import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 public class ExportDistiller {
 
@@ -131,21 +138,22 @@ public class ExportDistiller {
 
    }
 
-   public static String exportPrivateKeysToFile(Context context, ExportPdfParameters params,
-                                                ExportProgressTracker progressTracker, String filePath) throws IOException {
-      // Write document to file
-      String result = exportPrivateKeys(context, params, progressTracker);
+   public static void exportPrivateKeysToFile(Context context, ExportPdfParameters params,
+                                              ExportProgressTracker progressTracker, String filePath) throws IOException {
+      OutputStream stream = null;
       try {
-
-         FileOutputStream stream;
-         stream = getOutStream(context, filePath);
-         stream.write(result.getBytes("UTF-8"));
-         stream.close();
+         stream = new BufferedOutputStream(getOutStream(context, filePath));
+         // Each page is written to the file as soon as it is complete
+         MyWriter writer = createDocument(context, params, progressTracker, stream);
+         writer.close();
       } catch (IOException e) {
          Log.e("ExportDistiller", "IOException while writing file", e);
          throw e;
+      } finally {
+         if (stream != null) {
+            stream.close();
+         }
       }
-      return result;
    }
 
    private static FileOutputStream getOutStream(Context context, String filePath) throws FileNotFoundException {
@@ -156,9 +164,35 @@ public class ExportDistiller {
       }
    }
 
-   public static String exportPrivateKeys(Context context, ExportPdfParameters params,
-                                          ExportProgressTracker progressTracker) {
+   /**
+    * @param out the stream to write the document to while it is created
+    */
+   private static MyWriter createDocument(Context context, ExportPdfParameters params,
+                                          ExportProgressTracker progressTracker, OutputStream out) {
+      // Generate the QR codes of all records in the background while we lay
+      // out the pages
+      QrCodePrefetcher qrCodes = new QrCodePrefetcher();
+      try {
+         for (ExportEntry entry : params.getAllEntries()) {
+            if (entry.address != null) {
+               qrCodes.prefetch("bitcoin:" + entry.address);
+            }
+            if (entry.encryptedKey != null) {
+               qrCodes.prefetch(entry.encryptedKey);
+            }
+            if (entry.encryptedMasterSeed != null) {
+               qrCodes.prefetch(entry.encryptedMasterSeed);
+            }
+         }
+         return createDocument(context, params, progressTracker, qrCodes, out);
+      } finally {
+         qrCodes.shutdown();
+      }
+   }
 
+   private static MyWriter createDocument(Context context, ExportPdfParameters params,
+                                          ExportProgressTracker progressTracker, QrCodePrefetcher qrCodes,
+                                          OutputStream out) {
       int pageWidth = PaperSize.EXECUTIVE_WIDTH;
       int pageHeight = PaperSize.EXECUTIVE_HEIGHT;
 
@@ -183,7 +217,7 @@ public class ExportDistiller {
 
       int totalPages = 1 + ((totalRecords + RECORDS_PR_PAGE - 1) / RECORDS_PR_PAGE) + 1;
 
-      MyWriter writer = new MyWriter(pageWidth, pageHeight, 20, 20, 20, 20);
+      MyWriter writer = new MyWriter(pageWidth, pageHeight, 20, 20, 20, 20, qrCodes, out);
 
       // Watermark
 
@@ -357,7 +391,7 @@ public class ExportDistiller {
       }
 
       addFinalPage(writer, totalPages);
-      return writer.asString();
+      return writer;
    }
 
    private static String getTitle(boolean isActive, int entryNum, int totalEntries) {
@@ -782,8 +816,66 @@ public class ExportDistiller {
 
    }
 
+   /**
+    * Generates QR code matrices on a worker pool ahead of the page layout
+    */
+   private static class QrCodePrefetcher {
+      private final ExecutorService _executor;
+      private final Map<String, Future<BitMatrix>> _matrices;
+
+      public QrCodePrefetcher() {
+         _executor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+         _matrices = new HashMap<String, Future<BitMatrix>>();
+      }
+
+      public void prefetch(final String url) {
+         if (_matrices.containsKey(url)) {
+            return;
+         }
+         _matrices.put(url, _executor.submit(new Callable<BitMatrix>() {
+            @Override
+            public BitMatrix call() throws Exception {
+               return getQRCodeMatrix(url);
+            }
+         }));
+      }
+
+      public BitMatrix get(String url) {
+         Future<BitMatrix> future = _matrices.remove(url);
+         if (future == null) {
+            return getQRCodeMatrix(url);
+         }
+         try {
+            return future.get();
+         } catch (InterruptedException e) {
+            throw new RuntimeException(e);
+         } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+               throw (RuntimeException) e.getCause();
+            }
+            throw new RuntimeException(e.getCause());
+         }
+      }
+
+      public void shutdown() {
+         _executor.shutdownNow();
+      }
+   }
+
+   private static BitMatrix getQRCodeMatrix(String url) {
+      Hashtable<EncodeHintType, Object> hints = new Hashtable<EncodeHintType, Object>();
+      hints.put(EncodeHintType.ERROR_CORRECTION, ErrorCorrectionLevel.M);
+      hints.put(EncodeHintType.MARGIN, 0);
+      try {
+         return new QRCodeWriter().encode(url, BarcodeFormat.QR_CODE, 0, 0, hints);
+      } catch (final WriterException e) {
+         throw new RuntimeException(e);
+      }
+   }
+
    private static class MyWriter {
       private PDFWriter _writer;
+      private QrCodePrefetcher _qrCodes;
       private int _pageWidth;
       private int _pageHeight;
       private int _marginLeft;
@@ -793,10 +885,12 @@ public class ExportDistiller {
       protected int _offX;
       protected int _offY;
 
-      public MyWriter(int pageWidth, int pageHeight, int marginLeft, int marginRight, int marginTop, int marginBottom) {
+      public MyWriter(int pageWidth, int pageHeight, int marginLeft, int marginRight, int marginTop, int marginBottom,
+                      QrCodePrefetcher qrCodes, OutputStream out) {
+         _qrCodes = qrCodes;
          _pageWidth = pageWidth;
          _pageHeight = pageHeight;
-         _writer = new PDFWriter(pageWidth, pageHeight);
+         _writer = new PDFWriter(pageWidth, pageHeight, out);
          _marginLeft = marginLeft;
          _marginRight = marginRight;
          _marginTop = marginTop;
@@ -810,6 +904,7 @@ public class ExportDistiller {
       }
 
       public MyWriter(MyWriter writer) {
+         _qrCodes = writer._qrCodes;
          _pageWidth = writer._pageWidth;
          _pageHeight = writer._pageHeight;
          _writer = writer._writer;
@@ -889,7 +984,7 @@ public class ExportDistiller {
       }
 
       public void addQrCode(double cmX, double cmY, double cmSize, String url) {
-         BitMatrix matrix = getQRCodeMatrix(url);
+         BitMatrix matrix = _qrCodes.get(url);
          int xPos = translateCmX(cmX);
          int yPos = translateCmX(cmY);
          int width = matrix.getWidth();
@@ -913,19 +1008,8 @@ public class ExportDistiller {
          return Math.round(value * 10) / 10.0;
       }
 
-      private static BitMatrix getQRCodeMatrix(String url) {
-         Hashtable<EncodeHintType, Object> hints = new Hashtable<EncodeHintType, Object>();
-         hints.put(EncodeHintType.ERROR_CORRECTION, ErrorCorrectionLevel.M);
-         hints.put(EncodeHintType.MARGIN, 0);
-         try {
-            return new QRCodeWriter().encode(url, BarcodeFormat.QR_CODE, 0, 0, hints);
-         } catch (final WriterException e) {
-            throw new RuntimeException(e);
-         }
-      }
-
-      public String asString() {
-         return _writer.asString();
+      public void close() throws IOException {
+         _writer.close();
       }
 
       public int translateCmX(double cmX) {
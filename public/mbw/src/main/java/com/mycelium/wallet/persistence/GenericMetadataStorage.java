@@ -37,7 +37,6 @@ package com.mycelium.wallet.persistence;
 import android.content.Context;
 import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
-import android.database.sqlite.SQLiteOpenHelper;
 import android.database.sqlite.SQLiteStatement;
 import com.google.common.base.Optional;
 
@@ -51,13 +50,13 @@ public class GenericMetadataStorage {
    private static final String TABLE_TRANSACTION_LABELS = "transactionlabels";
    private static final String TABLE_KEY_VALUE_STORE = "keyValueStore";
 
-   private class OpenHelper extends SQLiteOpenHelper {
+   private class OpenHelper extends TunedSQLiteOpenHelper {
 
       private static final String DATABASE_NAME = "mds.db";
       private static final int DATABASE_VERSION = 3;
 
       public OpenHelper(Context context) {
-         super(context, DATABASE_NAME, null, DATABASE_VERSION);
+         super(context, DATABASE_NAME, DATABASE_VERSION);
       }
 
       @Override
@@ -86,6 +85,10 @@ public class GenericMetadataStorage {
       _insertOrReplaceKeyValueEntry = _db.compileStatement("INSERT OR REPLACE INTO " + TABLE_KEY_VALUE_STORE + " VALUES (?,?,?)");
    }
 
+   public SqliteQueryStatistics getQueryStatistics() {
+      return _openHelper.getQueryStatistics();
+   }
+
    protected void storeKeyCategoryValueEntry(final MetadataKeyCategory keyCategory, final String value){
       storeKeyCategoryValueEntry(keyCategory.key, keyCategory.category, value);
    }
@@ -119,6 +122,7 @@ public class GenericMetadataStorage {
    }
 
    private Optional<String> getKeyCategoryValueEntry(final String key, final String category){
+      long start = System.nanoTime();
       Cursor cursor = null;
       try {
          cursor = _db.query(false, TABLE_KEY_VALUE_STORE, new String[]{"value"}, " key = ? and category = ?", new String[]{key, category}, null, null, null, "1");
@@ -130,6 +134,7 @@ public class GenericMetadataStorage {
          if (cursor != null) {
             cursor.close();
          }
+         _openHelper.getQueryStatistics().record("getKeyCategoryValueEntry", start);
       }
    }
 
@@ -150,6 +155,7 @@ public class GenericMetadataStorage {
    }
 
    protected Map<String, String> getKeysAndValuesByCategory(final String category){
+      long start = System.nanoTime();
       Cursor cursor = null;
       try {
          Map<String, String> entries = new HashMap<String, String>();
@@ -162,6 +168,7 @@ public class GenericMetadataStorage {
          if (cursor != null) {
             cursor.close();
          }
+         _openHelper.getQueryStatistics().record("getKeysAndValuesByCategory", start);
       }
    }
 
@@ -170,6 +177,7 @@ public class GenericMetadataStorage {
    }
 
    protected Optional<String> getFirstKeyForCategoryValue(final String category, final String value){
+      long start = System.nanoTime();
       Cursor cursor = null;
       try {
          cursor = _db.query(false, TABLE_KEY_VALUE_STORE, new String[]{"key"}, " value = ? and category = ?", new String[]{value, category}, null, null, null, "1");
@@ -181,6 +189,7 @@ public class GenericMetadataStorage {
          if (cursor != null) {
             cursor.close();
          }
+         _openHelper.getQueryStatistics().record("getFirstKeyForCategoryValue", start);
       }
    }
 
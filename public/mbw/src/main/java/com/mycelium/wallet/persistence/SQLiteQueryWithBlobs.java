@@ -34,7 +34,7 @@
 
 package com.mycelium.wallet.persistence;
 
-import java.util.LinkedList;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.UUID;
 
@@ -51,7 +51,12 @@ import android.database.sqlite.SQLiteStatement;
 import android.database.sqlite.SQLiteDatabase.CursorFactory;
 import android.database.sqlite.SQLiteQuery;
 
-public class SQLiteQueryWithBlobs {
+/**
+ * A query with blob arguments, which are bound by acting as the cursor factory
+ * of the query. The SQL itself is compiled only once per connection as long
+ * as it does not change, see {@link TunedSQLiteOpenHelper}.
+ */
+public class SQLiteQueryWithBlobs implements CursorFactory {
 
    private static class BlobIndex {
       public byte[] blob;
@@ -63,27 +68,21 @@ public class SQLiteQueryWithBlobs {
       }
    }
 
-   private class MyCursorFactory implements CursorFactory {
-
-      @SuppressWarnings("deprecation")
-      @Override
-      public Cursor newCursor(SQLiteDatabase db, SQLiteCursorDriver masterQuery, String editTable, SQLiteQuery query) {
-         for (BlobIndex blobIndex : _blobIndex) {
-            query.bindBlob(blobIndex.index, blobIndex.blob);
-         }
-         return new SQLiteCursor(db, masterQuery, editTable, query);
-      }
-
-   }
-
    private SQLiteDatabase _db;
    private List<BlobIndex> _blobIndex;
-   MyCursorFactory _cursorFactory;
 
    public SQLiteQueryWithBlobs(SQLiteDatabase db) {
       _db = db;
-      _blobIndex = new LinkedList<BlobIndex>();
-      _cursorFactory = new MyCursorFactory();
+      _blobIndex = new ArrayList<BlobIndex>(2);
+   }
+
+   @SuppressWarnings("deprecation")
+   @Override
+   public Cursor newCursor(SQLiteDatabase db, SQLiteCursorDriver masterQuery, String editTable, SQLiteQuery query) {
+      for (BlobIndex blobIndex : _blobIndex) {
+         query.bindBlob(blobIndex.index, blobIndex.blob);
+      }
+      return new SQLiteCursor(db, masterQuery, editTable, query);
    }
 
    public void bindBlob(int index, byte[] blob) {
@@ -92,12 +91,12 @@ public class SQLiteQueryWithBlobs {
 
    public Cursor query(boolean distinct, String table, String[] columns, String selection, String[] selectionArgs,
          String groupBy, String having, String orderBy, String limit) {
-      return _db.queryWithFactory(_cursorFactory, distinct, table, columns, selection, selectionArgs, groupBy, having,
+      return _db.queryWithFactory(this, distinct, table, columns, selection, selectionArgs, groupBy, having,
             orderBy, limit);
    }
    
    public Cursor raw(String sql, String table){
-      return _db.rawQueryWithFactory(_cursorFactory, sql, null, table);
+      return _db.rawQueryWithFactory(this, sql, null, table);
    }
    
    public static byte[] uuidToBytes(UUID id) {
@@ -0,0 +1,103 @@
+/*
+ * Copyright 2013, 2014 Megion Research and Development GmbH
+ *
+ * Licensed under the Microsoft Reference Source License (MS-RSL)
+ *
+ * This license governs use of the accompanying software. If you use the software, you accept this license.
+ * If you do not accept the license, do not use the software.
+ *
+ * 1. Definitions
+ * The terms "reproduce," "reproduction," and "distribution" have the same meaning here as under U.S. copyright law.
+ * "You" means the licensee of the software.
+ * "Your company" means the company you worked for when you downloaded the software.
+ * "Reference use" means use of the software within your company as a reference, in read only form, for the sole purposes
+ * of debugging your products, maintaining your products, or enhancing the interoperability of your products with the
+ * software, and specifically excludes the right to distribute the software outside of your company.
+ * "Licensed patents" means any Licensor patent claims which read directly on the software as distributed by the Licensor
+ * under this license.
+ *
+ * 2. Grant of Rights
+ * (A) Copyright Grant- Subject to the terms of this license, the Licensor grants you a non-transferable, non-exclusive,
+ * worldwide, royalty-free copyright license to reproduce the software for reference use.
+ * (B) Patent Grant- Subject to the terms of this license, the Licensor grants you a non-transferable, non-exclusive,
+ * worldwide, royalty-free patent license under licensed patents for reference use.
+ *
+ * 3. Limitations
+ * (A) No Trademark License- This license does not grant you any rights to use the Licensor’s name, logo, or trademarks.
+ * (B) If you begin patent litigation against the Licensor over patents that you think may apply to the software
+ * (including a cross-claim or counterclaim in a lawsuit), your license to the software ends automatically.
+ * (C) The software is licensed "as-is." You bear the risk of using it. The Licensor gives no express warranties,
+ * guarantees or conditions. You may have additional consumer rights under your local laws which this license cannot
+ * change. To the extent permitted under your local laws, the Licensor excludes the implied warranties of merchantability,
+ * fitness for a particular purpose and non-infringement.
+ */
+
+package com.mycelium.wallet.persistence;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Counts the executions and the time spent per named query of a database.
+ */
+public class SqliteQueryStatistics {
+
+   private static class Counters {
+      long count;
+      long totalNanos;
+      long maxNanos;
+   }
+
+   private final Map<String, Counters> _counters = new TreeMap<String, Counters>();
+
+   /**
+    * Record an execution of the named query that started at the specified
+    * {@link System#nanoTime()}
+    */
+   public void record(String query, long startNanos) {
+      long nanos = System.nanoTime() - startNanos;
+      synchronized (this) {
+         Counters counters = _counters.get(query);
+         if (counters == null) {
+            counters = new Counters();
+            _counters.put(query, counters);
+         }
+         counters.count++;
+         counters.totalNanos += nanos;
+         counters.maxNanos = Math.max(counters.maxNanos, nanos);
+      }
+   }
+
+   public synchronized long getCount(String query) {
+      Counters counters = _counters.get(query);
+      return counters == null ? 0 : counters.count;
+   }
+
+   public synchronized long getTotalMillis(String query) {
+      Counters counters = _counters.get(query);
+      return counters == null ? 0 : TimeUnit.NANOSECONDS.toMillis(counters.totalNanos);
+   }
+
+   public synchronized long getMaxMillis(String query) {
+      Counters counters = _counters.get(query);
+      return counters == null ? 0 : TimeUnit.NANOSECONDS.toMillis(counters.maxNanos);
+   }
+
+   public synchronized void reset() {
+      _counters.clear();
+   }
+
+   @Override
+   public synchronized String toString() {
+      StringBuilder sb = new StringBuilder();
+      for (Map.Entry<String, Counters> entry : _counters.entrySet()) {
+         Counters counters = entry.getValue();
+         sb.append(entry.getKey()).append(": count ").append(counters.count).append(" total ")
+               .append(TimeUnit.NANOSECONDS.toMillis(counters.totalNanos)).append(" ms max ")
+               .append(TimeUnit.NANOSECONDS.toMillis(counters.maxNanos)).append(" ms\n");
+      }
+      return sb.toString();
+   }
+
+}
@@ -37,7 +37,6 @@ package com.mycelium.wallet.persistence;
 import android.content.Context;
 import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
-import android.database.sqlite.SQLiteOpenHelper;
 import android.database.sqlite.SQLiteStatement;
 import android.util.Log;
 
@@ -57,7 +56,7 @@ public class TradeSessionDb {
    private static final String TABLE_ACTIVE = "active";
    private static final String TABLE_VIEWTIME = "viewtime";
 
-   private class OpenHelper extends SQLiteOpenHelper {
+   private class OpenHelper extends TunedSQLiteOpenHelper {
 
       private static final String DATABASE_NAME = "tradesession.db";
       private static final int MINOR_DATABASE_VERSION = 3;
@@ -66,7 +65,7 @@ public class TradeSessionDb {
       private static final int DATABASE_VERSION = LtApi.VERSION << 8 + MINOR_DATABASE_VERSION;
 
       public OpenHelper(Context context) {
-         super(context, DATABASE_NAME, null, DATABASE_VERSION);
+         super(context, DATABASE_NAME, DATABASE_VERSION);
       }
 
       @Override
@@ -116,6 +115,10 @@ public class TradeSessionDb {
       _setViewTime = _database.compileStatement("INSERT OR REPLACE INTO viewtime  VALUES (?,?)");
    }
 
+   public SqliteQueryStatistics getQueryStatistics() {
+      return _openHelper.getQueryStatistics();
+   }
+
    public void close() {
       _openHelper.close();
    }
@@ -124,9 +127,10 @@ public class TradeSessionDb {
     * Get one session from the database
     */
    public TradeSession get(UUID id) {
+      long start = System.nanoTime();
       Cursor cursor = null;
       try {
-         cursor = _database.query(TABLE_ACTIVE, new String[]{"session"}, "id = \"" + id.toString() + "\"", null,
+         cursor = _database.query(TABLE_ACTIVE, new String[]{"session"}, "id = ?", new String[]{id.toString()},
                null, null, null);
          if (!cursor.moveToFirst()) {
             return null;
@@ -137,6 +141,7 @@ public class TradeSessionDb {
          if (cursor != null) {
             cursor.close();
          }
+         _openHelper.getQueryStatistics().record("get", start);
       }
    }
 
@@ -165,6 +170,7 @@ public class TradeSessionDb {
     * Get all active sessions from the database
     */
    public Collection<TradeSession> getAll() {
+      long start = System.nanoTime();
       Cursor cursor = null;
       try {
          List<TradeSession> entries = new LinkedList<TradeSession>();
@@ -183,6 +189,7 @@ public class TradeSessionDb {
          if (cursor != null) {
             cursor.close();
          }
+         _openHelper.getQueryStatistics().record("getAll", start);
       }
    }
 
@@ -258,9 +265,10 @@ public class TradeSessionDb {
     * Get the view time of one session
     */
    public long getViewTimeById(UUID id) {
+      long start = System.nanoTime();
       Cursor cursor = null;
       try {
-         cursor = _database.query(TABLE_VIEWTIME, new String[]{"viewtime"}, "id = \"" + id.toString() + "\"", null,
+         cursor = _database.query(TABLE_VIEWTIME, new String[]{"viewtime"}, "id = ?", new String[]{id.toString()},
                null, null, null);
          if (!cursor.moveToFirst()) {
             return -1;
@@ -270,6 +278,7 @@ public class TradeSessionDb {
          if (cursor != null) {
             cursor.close();
          }
+         _openHelper.getQueryStatistics().record("getViewTimeById", start);
       }
    }
 
@@ -56,10 +56,17 @@ import com.mycelium.wapi.wallet.single.SingleAddressAccount;
 
 import java.io.IOException;
 import java.io.Serializable;
+import java.util.ArrayList;
 import java.util.Date;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class CreateMrdBackupTask extends ServiceTask<Boolean> {
    private static final long serialVersionUID = 1L;
@@ -87,8 +94,8 @@ public class CreateMrdBackupTask extends ServiceTask<Boolean> {
    private String _stretchStatusMessage;
    private String _encryptStatusMessage;
    private String _pdfStatusMessage;
-   private Double _encryptionProgress;
-   private ExportProgressTracker _pdfProgress;
+   private volatile Double _encryptionProgress;
+   private volatile ExportProgressTracker _pdfProgress;
 
    public CreateMrdBackupTask(KdfParameters kdfParameters, Context context, WalletManager walletManager, KeyCipher cipher,
                               MetadataStorage storage, NetworkParameters network, String exportFilePath) {
@@ -156,7 +163,6 @@ public class CreateMrdBackupTask extends ServiceTask<Boolean> {
 
          // Encrypt
          _encryptionProgress = 0D;
-         double increment = 1D / (_active.size() + _archived.size());
 
          // Encrypt Master seed if present
          Optional<ExportEntry> encryptedMasterSeed;
@@ -167,17 +173,22 @@ public class CreateMrdBackupTask extends ServiceTask<Boolean> {
              encryptedMasterSeed = Optional.of(new ExportEntry(null, null, e, null));
          }
 
-         // Encrypt active
-         List<ExportEntry> encryptedActiveKeys = new LinkedList<ExportEntry>();
-         for (EntryToExport e : _active) {
-            encryptedActiveKeys.add(createExportEntry(e, encryptionParameters, _network));
-            _encryptionProgress += increment;
-         }
-         // Encrypt archived
-         List<ExportEntry> encryptedArchivedKeys = new LinkedList<ExportEntry>();
-         for (EntryToExport e : _archived) {
-            encryptedArchivedKeys.add(createExportEntry(e, encryptionParameters, _network));
-            _encryptionProgress += increment;
+         // Encrypt active and archived entries using all cores. Each entry
+         // requires a private key import and public key calculation
+         List<ExportEntry> encryptedActiveKeys;
+         List<ExportEntry> encryptedArchivedKeys;
+         ExecutorService executor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+         try {
+            AtomicInteger completed = new AtomicInteger();
+            int total = _active.size() + _archived.size();
+            List<Future<ExportEntry>> active = submitEncryption(executor, _active, encryptionParameters, completed, total);
+            List<Future<ExportEntry>> archived = submitEncryption(executor, _archived, encryptionParameters, completed, total);
+            encryptedActiveKeys = collect(active);
+            encryptedArchivedKeys = collect(archived);
+         } catch (InterruptedException e) {
+            return false;
+         } finally {
+            executor.shutdownNow();
          }
 
          // Generate PDF document
@@ -201,6 +212,42 @@ public class CreateMrdBackupTask extends ServiceTask<Boolean> {
       _kdfParameters.terminate();
    }
 
+   private List<Future<ExportEntry>> submitEncryption(ExecutorService executor, List<EntryToExport> entries,
+                                                     final EncryptionParameters parameters,
+                                                     final AtomicInteger completed, final int total) {
+      List<Future<ExportEntry>> futures = new ArrayList<Future<ExportEntry>>(entries.size());
+      for (final EntryToExport entry : entries) {
+         futures.add(executor.submit(new Callable<ExportEntry>() {
+            @Override
+            public ExportEntry call() throws Exception {
+               ExportEntry exportEntry = createExportEntry(entry, parameters, _network);
+               _encryptionProgress = (double) completed.incrementAndGet() / total;
+               return exportEntry;
+            }
+         }));
+      }
+      return futures;
+   }
+
+   private static List<ExportEntry> collect(List<Future<ExportEntry>> futures) throws InterruptedException {
+      // Preserve the order of the entries
+      List<ExportEntry> entries = new LinkedList<ExportEntry>();
+      for (Future<ExportEntry> future : futures) {
+         try {
+            entries.add(future.get());
+         } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+               throw (RuntimeException) e.getCause();
+            } else if (e.getCause() instanceof Error) {
+               // Includes OutOfMemoryError, which we report to the user
+               throw (Error) e.getCause();
+            }
+            throw new RuntimeException(e.getCause());
+         }
+      }
+      return entries;
+   }
+
    private static ExportEntry createExportEntry(EntryToExport toExport, EncryptionParameters parameters,
                                                 NetworkParameters network) {
       String encrypted = null;
@@ -37,7 +37,6 @@ package com.mycelium.wallet.wapi;
 import android.content.Context;
 import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
-import android.database.sqlite.SQLiteOpenHelper;
 import android.database.sqlite.SQLiteStatement;
 import android.util.Log;
 import com.google.common.base.Preconditions;
@@ -49,8 +48,13 @@ import com.mrd.bitlib.util.HexUtils;
 import com.mrd.bitlib.util.Sha256Hash;
 import com.mycelium.wapi.api.exception.DbCorruptedException;
 import com.mycelium.wallet.persistence.SQLiteQueryWithBlobs;
+import com.mycelium.wallet.persistence.SqliteQueryStatistics;
+import com.mycelium.wallet.persistence.TunedSQLiteOpenHelper;
 import com.mycelium.wapi.model.TransactionEx;
 import com.mycelium.wapi.model.TransactionOutputEx;
+import com.mycelium.wapi.model.TransactionOutputValue;
+import com.mycelium.wapi.model.TransactionStatus;
+import com.mycelium.wapi.model.TransactionSummaryEx;
 import com.mycelium.wapi.wallet.Bip44AccountBacking;
 import com.mycelium.wapi.wallet.SingleAddressAccountBacking;
 import com.mycelium.wapi.wallet.WalletManagerBacking;
@@ -63,14 +67,15 @@ public class SqliteWalletManagerBacking implements WalletManagerBacking {
 
    private static final String LOG_TAG = "SqliteAccountBacking";
    private static final String TABLE_KV = "kv";
+   private static final int MAX_VALUES_PER_QUERY = 200;
 
-   private class OpenHelper extends SQLiteOpenHelper {
+   private class OpenHelper extends TunedSQLiteOpenHelper {
 
       private static final String DATABASE_NAME = "walletbacking.db";
-      private static final int DATABASE_VERSION = 2;
+      private static final int DATABASE_VERSION = 4;
 
       public OpenHelper(Context context) {
-         super(context, DATABASE_NAME, null, DATABASE_VERSION);
+         super(context, DATABASE_NAME, DATABASE_VERSION);
       }
 
       @Override
@@ -82,8 +87,19 @@ public class SqliteWalletManagerBacking implements WalletManagerBacking {
 
       @Override
       public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+         if (oldVersion < 4) {
+            // The shared index name meant that only the first account's
+            // transaction table got a height index, the per-account indexes
+            // replacing it are created below
+            db.execSQL("DROP INDEX IF EXISTS heightIndex");
+         }
          for (UUID account : getAccountIds(db)) {
-            new SqliteAccountBacking(account, db).upgradeTables();
+            if (oldVersion < 2) {
+               dropAccountBackingTables(account, db);
+            }
+            // Creates the tables that are missing, the transaction summaries
+            // of existing transactions are rebuilt by the account on demand
+            createAccountBackingTables(account, db);
          }
          if (oldVersion==1 && newVersion>=2){
             db.execSQL("ALTER TABLE kv ADD COLUMN checksum BLOB");
@@ -102,10 +118,12 @@ public class SqliteWalletManagerBacking implements WalletManagerBacking {
    private final SQLiteStatement _deleteBip44Account;
    private final SQLiteStatement _insertOrReplaceKeyValue;
    private final SQLiteStatement _deleteKeyValue;
+   private final SqliteQueryStatistics _queryStatistics;
 
    public SqliteWalletManagerBacking(Context context) {
       OpenHelper _openHelper = new OpenHelper(context);
       _database = _openHelper.getWritableDatabase();
+      _queryStatistics = _openHelper.getQueryStatistics();
 
       _insertOrReplaceBip44Account = _database.compileStatement("INSERT OR REPLACE INTO bip44 VALUES (?,?,?,?,?,?,?,?)");
       _insertOrReplaceSingleAddressAccount = _database.compileStatement("INSERT OR REPLACE INTO single VALUES (?,?,?,?,?)");
@@ -164,9 +182,17 @@ public class SqliteWalletManagerBacking implements WalletManagerBacking {
       }
    }
 
+   /**
+    * The timing statistics of the hot read paths
+    */
+   public SqliteQueryStatistics getQueryStatistics() {
+      return _queryStatistics;
+   }
+
    @Override
    public void beginTransaction() {
-      _database.beginTransaction();
+      // Lets readers continue on their own connections while we write
+      _database.beginTransactionNonExclusive();
    }
 
    @Override
@@ -208,7 +234,7 @@ public class SqliteWalletManagerBacking implements WalletManagerBacking {
 
    @Override
    public void createBip44AccountContext(Bip44AccountContext context) {
-      _database.beginTransaction();
+      _database.beginTransactionNonExclusive();
       try {
 
          // Create backing tables
@@ -276,7 +302,7 @@ public class SqliteWalletManagerBacking implements WalletManagerBacking {
 
    @Override
    public void createSingleAddressAccountContext(SingleAddressAccountContext context) {
-      _database.beginTransaction();
+      _database.beginTransactionNonExclusive();
       try {
 
          // Create backing tables
@@ -362,6 +388,7 @@ public class SqliteWalletManagerBacking implements WalletManagerBacking {
 
    @Override
    public byte[] getValue(byte[] id) {
+      long start = System.nanoTime();
       Cursor cursor = null;
       try {
          SQLiteQueryWithBlobs blobQuery = new SQLiteQueryWithBlobs(_database);
@@ -386,11 +413,75 @@ public class SqliteWalletManagerBacking implements WalletManagerBacking {
          if (cursor != null) {
             cursor.close();
          }
+         _queryStatistics.record("getValue", start);
+      }
+   }
+
+   @Override
+   public List<byte[]> getValues(List<byte[]> ids) {
+      long startNanos = System.nanoTime();
+      Map<String, byte[]> found = new HashMap<String, byte[]>();
+      // Stay well below the maximum number of host parameters of SQLite
+      for (int start = 0; start < ids.size(); start += MAX_VALUES_PER_QUERY) {
+         List<byte[]> chunk = ids.subList(start, Math.min(ids.size(), start + MAX_VALUES_PER_QUERY));
+         SQLiteQueryWithBlobs blobQuery = new SQLiteQueryWithBlobs(_database);
+         for (int i = 0; i < chunk.size(); i++) {
+            blobQuery.bindBlob(i + 1, chunk.get(i));
+         }
+         Cursor cursor = null;
+         try {
+            cursor = blobQuery.query(false, TABLE_KV, new String[]{"k", "v", "checksum"}, inSelection("k", chunk.size()),
+                  null, null, null, null, null);
+            while (cursor.moveToNext()) {
+               byte[] id = cursor.getBlob(0);
+               byte[] value = cursor.getBlob(1);
+               byte[] checkSumDb = cursor.getBlob(2);
+               if (checkSumDb != null && !Arrays.equals(checkSumDb, calcChecksum(id, value))) {
+                  Log.e(LOG_TAG, "Checksum failed - SqliteDB might be corrupted");
+                  throw new DbCorruptedException("Checksum failed while reading from DB. Your file storage might be corrupted");
+               }
+               found.put(HexUtils.toHex(id), value);
+            }
+         } finally {
+            if (cursor != null) {
+               cursor.close();
+            }
+         }
+      }
+      List<byte[]> values = new ArrayList<byte[]>(ids.size());
+      for (byte[] id : ids) {
+         values.add(found.get(HexUtils.toHex(id)));
+      }
+      _queryStatistics.record("getValues", startNanos);
+      return values;
+   }
+
+   /**
+    * Build a selection matching a column against a number of blob parameters
+    */
+   private static String inSelection(String column, int count) {
+      StringBuilder selection = new StringBuilder(column).append(" IN (");
+      for (int i = 0; i < count; i++) {
+         selection.append(i == 0 ? "?" : ",?");
+      }
+      return selection.append(')').toString();
+   }
+
+   @Override
+   public synchronized void setValues(List<byte[]> ids, List<byte[]> values) {
+      _database.beginTransactionNonExclusive();
+      try {
+         for (int i = 0; i < ids.size(); i++) {
+            setValue(ids.get(i), values.get(i));
+         }
+         _database.setTransactionSuccessful();
+      } finally {
+         _database.endTransaction();
       }
    }
 
    @Override
-   public void setValue(byte[] key, byte[] value) {
+   public synchronized void setValue(byte[] key, byte[] value) {
       _insertOrReplaceKeyValue.bindBlob(1, key);
       SQLiteQueryWithBlobs.bindBlobWithNull(_insertOrReplaceKeyValue, 2, value);
       _insertOrReplaceKeyValue.bindBlob(3, calcChecksum(key, value));
@@ -405,7 +496,7 @@ public class SqliteWalletManagerBacking implements WalletManagerBacking {
    }
 
    @Override
-   public void deleteValue(byte[] id) {
+   public synchronized void deleteValue(byte[] id) {
       _deleteKeyValue.bindBlob(1, id);
       _deleteKeyValue.execute();
    }
@@ -418,10 +509,28 @@ public class SqliteWalletManagerBacking implements WalletManagerBacking {
             + " (outpoint BLOB PRIMARY KEY, height INTEGER, value INTEGER, isCoinbase INTEGER, script BLOB);");
       db.execSQL("CREATE TABLE IF NOT EXISTS " + getTxTableName(tableSuffix)
             + " (id BLOB PRIMARY KEY, height INTEGER, time INTEGER, binary BLOB);");
-      db.execSQL("CREATE INDEX IF NOT EXISTS heightIndex ON " + getTxTableName(tableSuffix) + " (height);");
+      // Index names are global, so these carry the table suffix. The extra
+      // columns let balance calculation and the young transaction check be
+      // answered from the index alone without touching scripts or binaries.
+      db.execSQL("CREATE INDEX IF NOT EXISTS utxoValueIndex_" + tableSuffix + " ON "
+            + getUtxoTableName(tableSuffix) + " (height, value, outpoint);");
+      db.execSQL("CREATE INDEX IF NOT EXISTS txHeightIndex_" + tableSuffix + " ON "
+            + getTxTableName(tableSuffix) + " (height, time, id);");
       db.execSQL("CREATE TABLE IF NOT EXISTS " + getOutgoingTxTableName(tableSuffix)
             + " (id BLOB PRIMARY KEY, raw BLOB);");
+      db.execSQL("CREATE TABLE IF NOT EXISTS " + getTxSummaryTableName(tableSuffix)
+            + " (id BLOB PRIMARY KEY, height INTEGER, time INTEGER, value INTEGER, destination BLOB);");
+      db.execSQL("CREATE INDEX IF NOT EXISTS historyIndex_" + tableSuffix + " ON "
+            + getTxSummaryTableName(tableSuffix) + " (height, id);");
+   }
 
+   private static void dropAccountBackingTables(UUID id, SQLiteDatabase db) {
+      String tableSuffix = uuidToTableSuffix(id);
+      db.execSQL("DROP TABLE IF EXISTS " + getUtxoTableName(tableSuffix));
+      db.execSQL("DROP TABLE IF EXISTS " + getPtxoTableName(tableSuffix));
+      db.execSQL("DROP TABLE IF EXISTS " + getTxTableName(tableSuffix));
+      db.execSQL("DROP TABLE IF EXISTS " + getOutgoingTxTableName(tableSuffix));
+      db.execSQL("DROP TABLE IF EXISTS " + getTxSummaryTableName(tableSuffix));
    }
 
    private static String uuidToTableSuffix(UUID uuid) {
@@ -444,6 +553,10 @@ public class SqliteWalletManagerBacking implements WalletManagerBacking {
       return "outtx_" + tableSuffix;
    }
 
+   private static String getTxSummaryTableName(String tableSuffix) {
+      return "txsum_" + tableSuffix;
+   }
+
 
    private class SqliteAccountBacking implements Bip44AccountBacking, SingleAddressAccountBacking {
 
@@ -452,6 +565,7 @@ public class SqliteWalletManagerBacking implements WalletManagerBacking {
       private final String ptxoTableName;
       private final String txTableName;
       private final String outTxTableName;
+      private final String txSummaryTableName;
       private final SQLiteStatement _insertOrReplaceUtxo;
       private final SQLiteStatement _deleteUtxo;
       private final SQLiteStatement _insertOrReplacePtxo;
@@ -459,6 +573,8 @@ public class SqliteWalletManagerBacking implements WalletManagerBacking {
       private final SQLiteStatement _deleteTx;
       private final SQLiteStatement _insertOrReplaceOutTx;
       private final SQLiteStatement _deleteOutTx;
+      private final SQLiteStatement _insertOrReplaceTxSummary;
+      private final SQLiteStatement _deleteTxSummary;
       private final SQLiteDatabase _db;
 
       private SqliteAccountBacking(UUID id, SQLiteDatabase db) {
@@ -469,6 +585,7 @@ public class SqliteWalletManagerBacking implements WalletManagerBacking {
          ptxoTableName = getPtxoTableName(tableSuffix);
          txTableName = getTxTableName(tableSuffix);
          outTxTableName = getOutgoingTxTableName(tableSuffix);
+         txSummaryTableName = getTxSummaryTableName(tableSuffix);
          _insertOrReplaceUtxo = db.compileStatement("INSERT OR REPLACE INTO " + utxoTableName + " VALUES (?,?,?,?,?)");
          _deleteUtxo = db.compileStatement("DELETE FROM " + utxoTableName + " WHERE outpoint = ?");
          _insertOrReplacePtxo = db.compileStatement("INSERT OR REPLACE INTO " + ptxoTableName + " VALUES (?,?,?,?,?)");
@@ -476,14 +593,12 @@ public class SqliteWalletManagerBacking implements WalletManagerBacking {
          _deleteTx = db.compileStatement("DELETE FROM " + txTableName + " WHERE id = ?");
          _insertOrReplaceOutTx = db.compileStatement("INSERT OR REPLACE INTO " + outTxTableName + " VALUES (?,?)");
          _deleteOutTx = db.compileStatement("DELETE FROM " + outTxTableName + " WHERE id = ?");
+         _insertOrReplaceTxSummary = db.compileStatement("INSERT OR REPLACE INTO " + txSummaryTableName + " VALUES (?,?,?,?,?)");
+         _deleteTxSummary = db.compileStatement("DELETE FROM " + txSummaryTableName + " WHERE id = ?");
       }
 
       private void dropTables() {
-         String tableSuffix = uuidToTableSuffix(_id);
-         _db.execSQL("DROP TABLE IF EXISTS " + getUtxoTableName(tableSuffix));
-         _db.execSQL("DROP TABLE IF EXISTS " + getPtxoTableName(tableSuffix));
-         _db.execSQL("DROP TABLE IF EXISTS " + getTxTableName(tableSuffix));
-         _db.execSQL("DROP TABLE IF EXISTS " + getOutgoingTxTableName(tableSuffix));
+         dropAccountBackingTables(_id, _db);
       }
 
       @Override
@@ -507,12 +622,7 @@ public class SqliteWalletManagerBacking implements WalletManagerBacking {
          _db.execSQL("DELETE FROM " + ptxoTableName);
          _db.execSQL("DELETE FROM " + txTableName);
          _db.execSQL("DELETE FROM " + outTxTableName);
-      }
-
-
-      private void upgradeTables() {
-         dropTables();
-         createAccountBackingTables(_id, _db);
+         _db.execSQL("DELETE FROM " + txSummaryTableName);
       }
 
       @Override
@@ -527,6 +637,7 @@ public class SqliteWalletManagerBacking implements WalletManagerBacking {
 
       @Override
       public Collection<TransactionOutputEx> getAllUnspentOutputs() {
+         long start = System.nanoTime();
          Cursor cursor = null;
          List<TransactionOutputEx> list = new LinkedList<TransactionOutputEx>();
          try {
@@ -543,11 +654,34 @@ public class SqliteWalletManagerBacking implements WalletManagerBacking {
             if (cursor != null) {
                cursor.close();
             }
+            _queryStatistics.record("getAllUnspentOutputs", start);
+         }
+      }
+
+      @Override
+      public Collection<TransactionOutputValue> getAllUnspentOutputValues() {
+         long start = System.nanoTime();
+         Cursor cursor = null;
+         List<TransactionOutputValue> list = new LinkedList<TransactionOutputValue>();
+         try {
+            // Covered by the value index, the scripts are never read
+            cursor = _db.rawQuery("SELECT outpoint, height, value FROM " + utxoTableName, new String[]{});
+            while (cursor.moveToNext()) {
+               list.add(new TransactionOutputValue(SQLiteQueryWithBlobs.outPointFromBytes(cursor.getBlob(0)),
+                     cursor.getInt(1), cursor.getLong(2)));
+            }
+            return list;
+         } finally {
+            if (cursor != null) {
+               cursor.close();
+            }
+            _queryStatistics.record("getAllUnspentOutputValues", start);
          }
       }
 
       @Override
       public TransactionOutputEx getUnspentOutput(OutPoint outPoint) {
+         long start = System.nanoTime();
          Cursor cursor = null;
          try {
             SQLiteQueryWithBlobs blobQuery = new SQLiteQueryWithBlobs(_db);
@@ -563,6 +697,7 @@ public class SqliteWalletManagerBacking implements WalletManagerBacking {
             if (cursor != null) {
                cursor.close();
             }
+            _queryStatistics.record("getUnspentOutput", start);
          }
       }
 
@@ -584,6 +719,7 @@ public class SqliteWalletManagerBacking implements WalletManagerBacking {
 
       @Override
       public TransactionOutputEx getParentTransactionOutput(OutPoint outPoint) {
+         long start = System.nanoTime();
          Cursor cursor = null;
          try {
             SQLiteQueryWithBlobs blobQuery = new SQLiteQueryWithBlobs(_db);
@@ -599,9 +735,52 @@ public class SqliteWalletManagerBacking implements WalletManagerBacking {
             if (cursor != null) {
                cursor.close();
             }
+            _queryStatistics.record("getParentTransactionOutput", start);
+         }
+      }
+
+      @Override
+      public void putParentTransactionOutputs(Collection<TransactionOutputEx> outputs) {
+         _db.beginTransactionNonExclusive();
+         try {
+            for (TransactionOutputEx output : outputs) {
+               putParentTransactionOutput(output);
+            }
+            _db.setTransactionSuccessful();
+         } finally {
+            _db.endTransaction();
          }
       }
 
+      @Override
+      public Collection<TransactionOutputEx> getParentTransactionOutputs(Collection<OutPoint> outPoints) {
+         long startNanos = System.nanoTime();
+         List<OutPoint> all = new ArrayList<OutPoint>(outPoints);
+         List<TransactionOutputEx> outputs = new ArrayList<TransactionOutputEx>(all.size());
+         for (int start = 0; start < all.size(); start += MAX_VALUES_PER_QUERY) {
+            List<OutPoint> chunk = all.subList(start, Math.min(all.size(), start + MAX_VALUES_PER_QUERY));
+            SQLiteQueryWithBlobs blobQuery = new SQLiteQueryWithBlobs(_db);
+            for (int i = 0; i < chunk.size(); i++) {
+               blobQuery.bindBlob(i + 1, SQLiteQueryWithBlobs.outPointToBytes(chunk.get(i)));
+            }
+            Cursor cursor = null;
+            try {
+               cursor = blobQuery.query(false, ptxoTableName, new String[]{"outpoint", "height", "value", "isCoinbase",
+                     "script"}, inSelection("outpoint", chunk.size()), null, null, null, null, null);
+               while (cursor.moveToNext()) {
+                  outputs.add(new TransactionOutputEx(SQLiteQueryWithBlobs.outPointFromBytes(cursor.getBlob(0)),
+                        cursor.getInt(1), cursor.getLong(2), cursor.getBlob(4), cursor.getInt(3) != 0));
+               }
+            } finally {
+               if (cursor != null) {
+                  cursor.close();
+               }
+            }
+         }
+         _queryStatistics.record("getParentTransactionOutputs", startNanos);
+         return outputs;
+      }
+
       @Override
       public boolean hasParentTransactionOutput(OutPoint outPoint) {
          Cursor cursor = null;
@@ -629,6 +808,7 @@ public class SqliteWalletManagerBacking implements WalletManagerBacking {
 
       @Override
       public TransactionEx getTransaction(Sha256Hash hash) {
+         long start = System.nanoTime();
          Cursor cursor = null;
          try {
             SQLiteQueryWithBlobs blobQuery = new SQLiteQueryWithBlobs(_db);
@@ -647,13 +827,49 @@ public class SqliteWalletManagerBacking implements WalletManagerBacking {
             if (cursor != null) {
                cursor.close();
             }
+            _queryStatistics.record("getTransaction", start);
          }
       }
 
+      @Override
+      public Collection<TransactionEx> getTransactions(Collection<Sha256Hash> hashes) {
+         long startNanos = System.nanoTime();
+         List<Sha256Hash> all = new ArrayList<Sha256Hash>(hashes);
+         List<TransactionEx> transactions = new ArrayList<TransactionEx>(all.size());
+         for (int start = 0; start < all.size(); start += MAX_VALUES_PER_QUERY) {
+            List<Sha256Hash> chunk = all.subList(start, Math.min(all.size(), start + MAX_VALUES_PER_QUERY));
+            SQLiteQueryWithBlobs blobQuery = new SQLiteQueryWithBlobs(_db);
+            for (int i = 0; i < chunk.size(); i++) {
+               blobQuery.bindBlob(i + 1, chunk.get(i).getBytes());
+            }
+            Cursor cursor = null;
+            try {
+               cursor = blobQuery.query(false, txTableName, new String[]{"id", "height", "time", "binary"},
+                     inSelection("id", chunk.size()), null, null, null, null, null);
+               while (cursor.moveToNext()) {
+                  int height = cursor.getInt(1);
+                  if (height == Integer.MAX_VALUE) {
+                     height = -1;
+                  }
+                  transactions.add(new TransactionEx(new Sha256Hash(cursor.getBlob(0)), height, cursor.getInt(2),
+                        cursor.getBlob(3)));
+               }
+            } finally {
+               if (cursor != null) {
+                  cursor.close();
+               }
+            }
+         }
+         _queryStatistics.record("getTransactions", startNanos);
+         return transactions;
+      }
+
       @Override
       public void deleteTransaction(Sha256Hash hash) {
          _deleteTx.bindBlob(1, hash.getBytes());
          _deleteTx.execute();
+         _deleteTxSummary.bindBlob(1, hash.getBytes());
+         _deleteTxSummary.execute();
       }
 
       @Override
@@ -674,6 +890,7 @@ public class SqliteWalletManagerBacking implements WalletManagerBacking {
 
       @Override
       public Collection<TransactionEx> getUnconfirmedTransactions() {
+         long start = System.nanoTime();
          Cursor cursor = null;
          List<TransactionEx> list = new LinkedList<TransactionEx>();
          try {
@@ -690,31 +907,33 @@ public class SqliteWalletManagerBacking implements WalletManagerBacking {
             if (cursor != null) {
                cursor.close();
             }
+            _queryStatistics.record("getUnconfirmedTransactions", start);
          }
       }
 
       @Override
-      public Collection<TransactionEx> getYoungTransactions(int maxConfirmations, int blockChainHeight) {
+      public Collection<TransactionStatus> getYoungTransactionStatuses(int maxConfirmations, int blockChainHeight) {
+         long start = System.nanoTime();
          int maxHeight = blockChainHeight - maxConfirmations + 1;
          Cursor cursor = null;
-         List<TransactionEx> list = new LinkedList<TransactionEx>();
+         List<TransactionStatus> list = new LinkedList<TransactionStatus>();
          try {
-            cursor = _db.rawQuery("SELECT id, height, time, binary FROM " + txTableName + " WHERE height >= ? ",
+            // A range scan on the height index, which also holds the time and ID
+            cursor = _db.rawQuery("SELECT id, height, time FROM " + txTableName + " WHERE height >= ? ",
                   new String[]{Integer.toString(maxHeight)});
             while (cursor.moveToNext()) {
                int height = cursor.getInt(1);
                if (height == Integer.MAX_VALUE) {
                   height = -1;
                }
-               TransactionEx tex = new TransactionEx(new Sha256Hash(cursor.getBlob(0)), height, cursor.getInt(2),
-                     cursor.getBlob(3));
-               list.add(tex);
+               list.add(new TransactionStatus(new Sha256Hash(cursor.getBlob(0)), true, height, cursor.getInt(2)));
             }
             return list;
          } finally {
             if (cursor != null) {
                cursor.close();
             }
+            _queryStatistics.record("getYoungTransactionStatuses", start);
          }
       }
 
@@ -765,17 +984,83 @@ public class SqliteWalletManagerBacking implements WalletManagerBacking {
       }
 
       @Override
-      public List<TransactionEx> getTransactionHistory(int offset, int limit) {
+      public void putTransactionSummary(TransactionSummaryEx summary) {
+         _insertOrReplaceTxSummary.bindBlob(1, summary.txid.getBytes());
+         _insertOrReplaceTxSummary.bindLong(2, summary.height == -1 ? Integer.MAX_VALUE : summary.height);
+         _insertOrReplaceTxSummary.bindLong(3, summary.time);
+         _insertOrReplaceTxSummary.bindLong(4, summary.value);
+         SQLiteQueryWithBlobs.bindBlobWithNull(_insertOrReplaceTxSummary, 5,
+               summary.destinationAddress == null ? null : summary.destinationAddress.getAllAddressBytes());
+         _insertOrReplaceTxSummary.executeInsert();
+      }
+
+      @Override
+      public void deleteTransactionSummaries() {
+         _db.execSQL("DELETE FROM " + txSummaryTableName);
+      }
+
+      @Override
+      public List<TransactionSummaryEx> getTransactionSummaries(int offset, int limit) {
+         long start = System.nanoTime();
          Cursor cursor = null;
-         List<TransactionEx> list = new LinkedList<TransactionEx>();
          try {
-            cursor = _db.rawQuery("SELECT id, height, time, binary FROM " + txTableName
-                        + " ORDER BY height desc limit ? offset ?",
+            cursor = _db.rawQuery("SELECT id, height, time, value, destination FROM " + txSummaryTableName
+                        + " ORDER BY height DESC, id DESC LIMIT ? OFFSET ?",
                   new String[]{Integer.toString(limit), Integer.toString(offset)});
+            return readTransactionSummaries(cursor);
+         } finally {
+            if (cursor != null) {
+               cursor.close();
+            }
+            _queryStatistics.record("getTransactionSummaries", start);
+         }
+      }
+
+      @Override
+      public List<TransactionSummaryEx> getTransactionSummariesAfter(int height, Sha256Hash txid, int limit) {
+         long start = System.nanoTime();
+         // Blobs compare like memcmp, which matches the unsigned txid order of
+         // TransactionSummaryEx
+         long h = height == -1 ? Integer.MAX_VALUE : height;
+         Cursor cursor = null;
+         try {
+            SQLiteQueryWithBlobs blobQuery = new SQLiteQueryWithBlobs(_db);
+            blobQuery.bindBlob(1, txid.getBytes());
+            cursor = blobQuery.raw("SELECT id, height, time, value, destination FROM " + txSummaryTableName
+                  + " WHERE height < " + h + " OR (height = " + h + " AND id < ?)"
+                  + " ORDER BY height DESC, id DESC LIMIT " + limit, txSummaryTableName);
+            return readTransactionSummaries(cursor);
+         } finally {
+            if (cursor != null) {
+               cursor.close();
+            }
+            _queryStatistics.record("getTransactionSummariesAfter", start);
+         }
+      }
+
+      private List<TransactionSummaryEx> readTransactionSummaries(Cursor cursor) {
+         List<TransactionSummaryEx> list = new ArrayList<TransactionSummaryEx>(cursor.getCount());
+         while (cursor.moveToNext()) {
+            int height = cursor.getInt(1);
+            if (height == Integer.MAX_VALUE) {
+               height = -1;
+            }
+            byte[] destination = cursor.getBlob(4);
+            list.add(new TransactionSummaryEx(new Sha256Hash(cursor.getBlob(0)), height, cursor.getInt(2),
+                  cursor.getLong(3), destination == null ? null : new Address(destination)));
+         }
+         return list;
+      }
+
+      @Override
+      public Collection<Sha256Hash> getTransactionIdsWithoutSummary() {
+         Cursor cursor = null;
+         List<Sha256Hash> list = new LinkedList<Sha256Hash>();
+         try {
+            cursor = _db.rawQuery("SELECT t.id FROM " + txTableName + " t LEFT JOIN " + txSummaryTableName
+                  + " s ON t.id = s.id WHERE s.id IS NULL", new String[]{});
             while (cursor.moveToNext()) {
-               TransactionEx tex = new TransactionEx(new Sha256Hash(cursor.getBlob(0)), cursor.getInt(1),
-                     cursor.getInt(2), cursor.getBlob(3));
-               list.add(tex);
+               list.add(new Sha256Hash(cursor.getBlob(0)));
             }
             return list;
          } finally {
@@ -41,6 +41,8 @@ import com.mycelium.wallet.Utils;
 import com.mycelium.wapi.api.exception.DbCorruptedException;
 import com.mycelium.wapi.wallet.WalletManagerBacking;
 
+import java.util.List;
+
 // Wrapper for SqliteWalletManagerBacking, to catch the DbCorrupted RuntimeException and inform the user about it
 public class SqliteWalletManagerBackingWrapper extends SqliteWalletManagerBacking {
    private final Context context;
@@ -66,4 +68,14 @@ public class SqliteWalletManagerBackingWrapper extends SqliteWalletManagerBackin
 
 
    }
+
+   @Override
+   public List<byte[]> getValues(List<byte[]> ids) {
+      try {
+         return super.getValues(ids);
+      }catch (final DbCorruptedException dbe){
+         // see getValue
+         throw new RuntimeException(dbe);
+      }
+   }
 }
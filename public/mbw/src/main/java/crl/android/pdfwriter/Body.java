@@ -41,6 +41,10 @@ public class Body extends List {
 		return mObjectsList.size();
 	}
 	
+	public int getGeneratedObjectsCount() {
+		return mGeneratedObjectsCount;
+	}
+
 	private int getNextAvailableObjectNumber() {
 		return ++mGeneratedObjectsCount + mObjectNumberStart;
 	}
@@ -0,0 +1,41 @@
+//
+//  Android PDF Writer
+//  http://coderesearchlabs.com/androidpdfwriter
+//
+//  by Javier Santo Domingo (j-a-s-d@coderesearchlabs.com)
+//
+
+package crl.android.pdfwriter;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Keeps track of the number of bytes written, which is the byte offset of
+ * the next object in the document.
+ */
+class CountingOutputStream extends FilterOutputStream {
+
+	private int mCount;
+
+	public CountingOutputStream(OutputStream out) {
+		super(out);
+	}
+
+	public int getCount() {
+		return mCount;
+	}
+
+	@Override
+	public void write(int b) throws IOException {
+		out.write(b);
+		mCount++;
+	}
+
+	@Override
+	public void write(byte[] b, int off, int len) throws IOException {
+		out.write(b, off, len);
+		mCount += len;
+	}
+}
@@ -33,10 +33,11 @@ public class CrossReferenceTable extends List {
 		sb.append(String.format("%010d", ByteOffset));
 		sb.append(" ");
 		sb.append(String.format("%05d", Generation));
+		// Entries must be exactly 20 bytes long
 		if (InUse) {
-			sb.append(" n ");
+			sb.append(" n");
 		} else {
-			sb.append(" f ");
+			sb.append(" f");
 		}
 		sb.append("\r\n");
 		mList.add(sb.toString());
@@ -62,7 +63,7 @@ public class CrossReferenceTable extends List {
 	@Override
 	public void clear() {
 		super.clear();
-		addObjectXRefInfo(0, 65536, false); // free objects linked list head
+		addObjectXRefInfo(0, 65535, false); // free objects linked list head
 		mObjectNumberStart = 0;
 	}
 
@@ -26,7 +26,8 @@ public class Header extends Base {
    }
 
    private void render() {
-      mRenderedHeader = "%PDF-" + mVersion + "\n%"+new String(new byte[]{-1,-2,-3,-4})+"\n";
+      // Binary comment, one char per byte in ISO-8859-1
+      mRenderedHeader = "%PDF-" + mVersion + "\n%\u00FF\u00FE\u00FD\u00FC\n";
    }
 
    @Override
@@ -17,10 +17,14 @@ public class Indentifiers {
 	private static char[] HexTable = {'0','1','2','3','4','5','6','7','8','9','A','B','C','D','E','F'};
 	
 	private static String calculateMd5(final String s) {
+		return calculateMd5(s.getBytes());
+	}
+
+	private static String calculateMd5(final byte[] data) {
         StringBuffer MD5Str = new StringBuffer();
 		try {
 	        MessageDigest MD5digester = java.security.MessageDigest.getInstance("MD5");
-	        MD5digester.update(s.getBytes());
+	        MD5digester.update(data == null ? new byte[0] : data);
 	        final byte binMD5[] = MD5digester.digest();
 	        final int len = binMD5.length;
 	        for (int i = 0; i < len; i++) {
@@ -58,4 +62,8 @@ public class Indentifiers {
 	public static String generateId(String data) {
 		return calculateMd5(data);
 	}
+
+	public static String generateId(byte[] data) {
+		return calculateMd5(data);
+	}
 }
\ No newline at end of file
@@ -7,11 +7,19 @@
 
 package crl.android.pdfwriter;
 
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
 public class IndirectObject extends Base {
 
 	private EnclosedContent mContent;
 	private Dictionary mDictionaryContent;
 	private Stream mStreamContent;
+	private byte[] mStreamBytes;
+	private String mStreamFilter;
 	private IndirectIdentifier mID;
 	private int mByteOffset;
 	private boolean mInUse;
@@ -95,6 +103,82 @@ public class IndirectObject extends Base {
    public int getStreamContentSize() {
       return mStreamContent.getContentSize();
    }
+
+	/**
+	 * Set binary stream data, which is only supported by {@link #writeTo}
+	 *
+	 * @param data   the encoded stream data
+	 * @param filter the filter used for encoding the data or null
+	 */
+	public void setStreamBytes(byte[] data, String filter) {
+		mStreamBytes = data;
+		mStreamFilter = filter;
+	}
+
+	/**
+	 * Write this object as bytes. The /Length and /Filter entries of a stream
+	 * are added here, so the dictionary content must not contain them.
+	 *
+	 * @param compress true if string stream content should be Flate compressed
+	 */
+	public void writeTo(OutputStream out, String encoding, boolean compress) throws IOException {
+		byte[] data = mStreamBytes;
+		String filter = mStreamFilter;
+		if (data == null && mStreamContent.hasContent()) {
+			data = mStreamContent.getContent().getBytes(encoding);
+			if (compress) {
+				data = deflate(data);
+				filter = "/FlateDecode";
+			}
+		}
+		StringBuilder sb = new StringBuilder();
+		sb.append(mID.toPDFString());
+		sb.append(" obj\n");
+		if (data != null) {
+			sb.append("<<\n");
+			sb.append(mDictionaryContent.getContent());
+			sb.append("  /Length ").append(data.length).append("\n");
+			if (filter != null) {
+				sb.append("  /Filter ").append(filter).append("\n");
+			}
+			sb.append(">>\nstream\n");
+			out.write(sb.toString().getBytes(encoding));
+			out.write(data);
+			out.write("\nendstream\nendobj\n\n".getBytes(encoding));
+		} else {
+			if (mDictionaryContent.hasContent()) {
+				sb.append(mDictionaryContent.toPDFString());
+			} else {
+				sb.append(mContent.getContent());
+			}
+			sb.append("endobj\n\n");
+			out.write(sb.toString().getBytes(encoding));
+		}
+	}
+
+	private static byte[] deflate(byte[] data) throws IOException {
+		ByteArrayOutputStream baos = new ByteArrayOutputStream(data.length / 2);
+		Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION);
+		DeflaterOutputStream dos = new DeflaterOutputStream(baos, deflater);
+		try {
+			dos.write(data);
+			dos.close();
+		} finally {
+			deflater.end();
+		}
+		return baos.toByteArray();
+	}
+
+	/**
+	 * Drop the content of an object that has been written, but keep its
+	 * identity for references
+	 */
+	public void releaseContent() {
+		mContent = new EnclosedContent();
+		mDictionaryContent = new Dictionary();
+		mStreamContent = new Stream();
+		mStreamBytes = null;
+	}
 	
 	protected String render() {
 		StringBuilder sb = new StringBuilder();
@@ -122,6 +206,8 @@ public class IndirectObject extends Base {
 		mContent.setEndKeyword("endobj", false, true);
 		mDictionaryContent = new Dictionary();
 		mStreamContent = new Stream();
+		mStreamBytes = null;
+		mStreamFilter = null;
 	}
 
 	@Override
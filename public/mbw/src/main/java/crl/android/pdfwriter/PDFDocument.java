@@ -7,12 +7,25 @@
 
 package crl.android.pdfwriter;
 
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+
 public class PDFDocument extends Base {
 
+	public static final String ENCODING = "ISO-8859-1";
+
 	private Header mHeader;
 	private Body mBody;
 	private CrossReferenceTable mCRT;
 	private Trailer mTrailer;
+
+	// Only used when streaming
+	private CountingOutputStream mOut;
+	private boolean mCompress;
+	private ArrayList<IndirectObject> mPending;
+	private int[] mOffsets;
+	private IOException mWriteError;
 	
 	public PDFDocument() {
 		mHeader = new Header();
@@ -22,6 +35,32 @@ public class PDFDocument extends Base {
 		mCRT = new CrossReferenceTable();
 		mTrailer = new Trailer();
 	}
+
+	/**
+	 * Create a document that is written to the stream while it is being built.
+	 * Included objects are held back until {@link #writePendingObjects()} is
+	 * called. After that they are written and their content is dropped, so
+	 * memory use does not grow with the number of pages. Write errors are
+	 * reported by {@link #close()}.
+	 *
+	 * @param compress true if content streams should be Flate compressed
+	 */
+	public PDFDocument(OutputStream out, boolean compress) {
+		this();
+		mOut = new CountingOutputStream(out);
+		mCompress = compress;
+		mPending = new ArrayList<IndirectObject>();
+		mOffsets = new int[64];
+		try {
+			mOut.write(mHeader.toPDFString().getBytes(ENCODING));
+		} catch (IOException e) {
+			mWriteError = e;
+		}
+	}
+
+	public boolean isStreaming() {
+		return mOut != null;
+	}
 	
 	public IndirectObject newIndirectObject() {
 		return mBody.getNewIndirectObject();
@@ -41,20 +80,76 @@ public class PDFDocument extends Base {
 	
 	public IndirectObject newStreamObject(String streamContent) {
 		IndirectObject iobj = mBody.getNewIndirectObject();
-		iobj.setDictionaryContent("  /Length " + Integer.toString(streamContent.length()) + "\n");
+		if (!isStreaming()) {
+			// The length is determined when the object is written
+			iobj.setDictionaryContent("  /Length " + Integer.toString(streamContent.length()) + "\n");
+		}
 		iobj.setStreamContent(streamContent);
 		return iobj;
 	}
 	
 	public void includeIndirectObject(IndirectObject iobj) {
-		mBody.includeIndirectObject(iobj);
+		if (isStreaming()) {
+			mPending.add(iobj);
+		} else {
+			mBody.includeIndirectObject(iobj);
+		}
+	}
+
+	/**
+	 * Write all objects included since the last call. Only used when streaming.
+	 */
+	public void writePendingObjects() {
+		if (mWriteError == null) {
+			try {
+				for (IndirectObject iobj : mPending) {
+					recordByteOffset(iobj.getNumberID(), mOut.getCount());
+					iobj.writeTo(mOut, ENCODING, mCompress);
+					iobj.releaseContent();
+				}
+			} catch (IOException e) {
+				mWriteError = e;
+			}
+		}
+		mPending.clear();
+	}
+
+	private void recordByteOffset(int number, int offset) {
+		if (number >= mOffsets.length) {
+			int[] offsets = new int[Math.max(number + 1, mOffsets.length * 2)];
+			System.arraycopy(mOffsets, 0, offsets, 0, mOffsets.length);
+			mOffsets = offsets;
+		}
+		mOffsets[number] = offset;
+	}
+
+	/**
+	 * Write the remaining objects, the cross reference table and the trailer.
+	 * Only used when streaming.
+	 */
+	public void close() throws IOException {
+		writePendingObjects();
+		if (mWriteError != null) {
+			throw mWriteError;
+		}
+		int count = mBody.getGeneratedObjectsCount();
+		mCRT.clear();
+		mCRT.setObjectNumberStart(mBody.getObjectNumberStart());
+		for (int number = 1; number <= count; number++) {
+			int offset = number < mOffsets.length ? mOffsets[number] : 0;
+			// Objects that were never written are marked as free
+			mCRT.addObjectXRefInfo(offset, 0, offset != 0);
+		}
+		mTrailer.setObjectsCount(count + 1);
+		mTrailer.setCrossReferenceTableByteOffset(mOut.getCount());
+		mTrailer.setId(Indentifiers.generateId());
+		mOut.write(mCRT.toPDFString().getBytes(ENCODING));
+		mOut.write(mTrailer.toPDFString().getBytes(ENCODING));
+		mOut.flush();
 	}
 	
-	@Override
-	public String toPDFString() {
-		StringBuilder sb = new StringBuilder();
-		sb.append(mHeader.toPDFString());
-		sb.append(mBody.toPDFString());
+	private void renderCrossReferenceTable() {
+		mCRT.clear();
 		mCRT.setObjectNumberStart(mBody.getObjectNumberStart());
 		int x = 0;
 		while (x < mBody.getObjectsCount()) {
@@ -63,6 +158,14 @@ public class PDFDocument extends Base {
 				mCRT.addObjectXRefInfo(iobj.getByteOffset(), iobj.getGeneration(), iobj.getInUse());
 			}
 		}
+	}
+
+	@Override
+	public String toPDFString() {
+		StringBuilder sb = new StringBuilder();
+		sb.append(mHeader.toPDFString());
+		sb.append(mBody.toPDFString());
+		renderCrossReferenceTable();
 		mTrailer.setObjectsCount(mBody.getObjectsCount());
 		mTrailer.setCrossReferenceTableByteOffset(sb.length());
 		mTrailer.setId(Indentifiers.generateId());
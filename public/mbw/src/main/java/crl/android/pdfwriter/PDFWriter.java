@@ -9,6 +9,9 @@ package crl.android.pdfwriter;
 
 import android.graphics.Bitmap;
 
+import java.io.IOException;
+import java.io.OutputStream;
+
 public class PDFWriter {
 
 	private PDFDocument mDocument;
@@ -17,19 +20,32 @@ public class PDFWriter {
 	private Page mCurrentPage;
 
 	public PDFWriter() {
-		newDocument(PaperSize.A4_WIDTH, PaperSize.A4_HEIGHT);
+		newDocument(new PDFDocument(), PaperSize.A4_WIDTH, PaperSize.A4_HEIGHT);
 	}
 
 	public PDFWriter(int pageWidth, int pageHeight) {
-		newDocument(pageWidth, pageHeight);
+		newDocument(new PDFDocument(), pageWidth, pageHeight);
 	}
-	
-	private void newDocument(int pageWidth, int pageHeight) {
-		mDocument = new PDFDocument();
+
+	/**
+	 * Create a writer that writes each page to the stream as soon as the next
+	 * page is started, with Flate compressed page contents. Pages that have
+	 * been written cannot be modified. Call {@link #close()} to write the rest
+	 * of the document.
+	 */
+	public PDFWriter(int pageWidth, int pageHeight, OutputStream out) {
+		newDocument(new PDFDocument(out, true), pageWidth, pageHeight);
+	}
+	
+	private void newDocument(PDFDocument document, int pageWidth, int pageHeight) {
+		mDocument = document;
 		mCatalog = mDocument.newIndirectObject();
-		mDocument.includeIndirectObject(mCatalog);
 		mPages = new Pages(mDocument, pageWidth, pageHeight);
-		mDocument.includeIndirectObject(mPages.getIndirectObject());
+		if (!mDocument.isStreaming()) {
+			// When streaming these are written last, as the page list grows
+			mDocument.includeIndirectObject(mCatalog);
+			mDocument.includeIndirectObject(mPages.getIndirectObject());
+		}
 		renderCatalog();
 		newPage();
 	}
@@ -39,9 +55,22 @@ public class PDFWriter {
 	}
 	
 	public void newPage() {
-		mCurrentPage = mPages.newPage();
-		mDocument.includeIndirectObject(mCurrentPage.getIndirectObject());
-		mPages.render();
+		if (mDocument.isStreaming()) {
+			writeCurrentPage();
+			mCurrentPage = mPages.newPage();
+			mDocument.includeIndirectObject(mCurrentPage.getIndirectObject());
+		} else {
+			mCurrentPage = mPages.newPage();
+			mDocument.includeIndirectObject(mCurrentPage.getIndirectObject());
+			mPages.render();
+		}
+	}
+
+	private void writeCurrentPage() {
+		if (mCurrentPage != null) {
+			mCurrentPage.render(mPages.getIndirectObject().getIndirectReference());
+			mDocument.writePendingObjects();
+		}
 	}
 	
 	public void setCurrentPage(int pageNumber) {
@@ -132,4 +161,15 @@ public class PDFWriter {
 		mPages.render();
 		return mDocument.toPDFString();
 	}
+
+	/**
+	 * Finish a streamed document
+	 */
+	public void close() throws IOException {
+		writeCurrentPage();
+		mPages.render();
+		mDocument.includeIndirectObject(mCatalog);
+		mDocument.includeIndirectObject(mPages.getIndirectObject());
+		mDocument.close();
+	}
 }
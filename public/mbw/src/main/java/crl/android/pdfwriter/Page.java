@@ -57,6 +57,10 @@ public class Page {
 	}
 	
 	public void render(String pagesIndirectReference) {
+		if (!mDocument.isStreaming()) {
+			// When streaming the length is determined when the contents are written
+			mPageContents.setDictionaryContent("  /Length " + Integer.toString(mPageContents.getStreamContentSize()) + "\n");
+		}
 		mIndirectObject.setDictionaryContent(
 			"  /Type /Page\n  /Parent " + pagesIndirectReference + "\n" +
 			"  /Resources <<\n" + getFontReferences() + getXObjectReferences() + "  >>\n" +
@@ -81,10 +85,8 @@ public class Page {
 	private void addContent(String content) {
       // Optimized by Jan. removed unnecessary copying 
       // This saves time and memory resources significantly!
+		// The /Length entry is set once in render()
 		mPageContents.addStreamContent(content);
-		//String streamContent = mPageContents.getStreamContent();
-		mPageContents.setDictionaryContent("  /Length " + Integer.toString(mPageContents.getStreamContentSize()) + "\n");
-		//mPageContents.setStreamContent(streamContent);
 	}
 	
 	public void addRawContent(String rawContent) {
@@ -13,6 +13,7 @@ public class Pages {
 
 	private PDFDocument mDocument;
 	private ArrayList<Page> mPageList;
+	private int mCount;
 	private IndirectObject mIndirectObject;
 	private Array mMediaBox;
 	private Array mKids;
@@ -33,24 +34,31 @@ public class Pages {
 	
 	public Page newPage() {
 		Page lPage = new Page(mDocument);
-		mPageList.add(lPage);
+		// A streamed document writes out finished pages, so we don't keep them
+		if (!mDocument.isStreaming()) {
+			mPageList.add(lPage);
+		}
+		mCount++;
 		mKids.addItem(lPage.getIndirectObject().getIndirectReference());
 		return lPage;
 	}
 	
 	public Page getPageAt(int position) {
+		if (mDocument.isStreaming()) {
+			throw new IllegalStateException("Pages of a streamed document cannot be revisited");
+		}
 		return mPageList.get(position);
 	}
 	
 	public int getCount() {
-		return mPageList.size();
+		return mCount;
 	}
 	
 	public void render() {
 		mIndirectObject.setDictionaryContent(
 				"  /Type /Pages\n" +
 				"  /MediaBox " + mMediaBox.toPDFString() + "\n" +
-				"  /Count " + Integer.toString(mPageList.size()) + "\n" +
+				"  /Count " + Integer.toString(mCount) + "\n" +
 				"  /Kids " + mKids.toPDFString() + "\n"
 		);
 		for (Page lPage: mPageList) {
@@ -36,30 +36,39 @@ public class XObjectImage {
 	private int mHeight = -1;
 	private String mName = "";
 	private String mId = "";
-	private String mProcessedImage = "";
+	private byte[] mDeflatedImage;
 	
 	public XObjectImage(PDFDocument document, Bitmap bitmap) {
 		mDocument = document;
-		mProcessedImage = processImage(configureBitmap(bitmap));
-		mId = Indentifiers.generateId(mProcessedImage);
+		mDeflatedImage = processImage(configureBitmap(bitmap));
+		mId = Indentifiers.generateId(mDeflatedImage);
 		mName = "/img" + (++mImageCount);
 	}
 	
 	public void appendToDocument() {
 		mIndirectObject = mDocument.newIndirectObject();
 		mDocument.includeIndirectObject(mIndirectObject);
-		mIndirectObject.addDictionaryContent(
+		String dictionary =
 			" /Type /XObject\n" +
 			" /Subtype /Image\n" +
-			" /Filter [/ASCII85Decode /FlateDecode]\n" +
 			" /Width " + mWidth + "\n" +
 			" /Height " + mHeight + "\n" +
 			" /BitsPerComponent " + Integer.toString(BITSPERCOMPONENT) + "\n" +
 			" /Interpolate " + Boolean.toString(INTERPOLATION) + "\n" +
-			" /ColorSpace " + DEVICE_RGB + "\n" +
-			" /Length " + mProcessedImage.length() + "\n"
-		);
-		mIndirectObject.addStreamContent(mProcessedImage);
+			" /ColorSpace " + DEVICE_RGB + "\n";
+		if (mDocument.isStreaming()) {
+			// Binary data, the length and filter are added when written
+			mIndirectObject.addDictionaryContent(dictionary);
+			mIndirectObject.setStreamBytes(mDeflatedImage, "/FlateDecode");
+		} else {
+			String encoded = encodeImageData(mDeflatedImage);
+			mIndirectObject.addDictionaryContent(dictionary +
+				" /Filter [/ASCII85Decode /FlateDecode]\n" +
+				" /Length " + encoded.length() + "\n"
+			);
+			mIndirectObject.addStreamContent(encoded);
+		}
+		mDeflatedImage = null;
 	}
 	
 	private Bitmap configureBitmap(Bitmap bitmap) {
@@ -106,12 +115,15 @@ public class XObjectImage {
 		return false;
 	}
 
-	private String encodeImageData(ByteArrayOutputStream baos) {
+	private String encodeImageData(byte[] deflated) {
+		if (deflated == null) {
+			return "";
+		}
 		ByteArrayOutputStream sob = new ByteArrayOutputStream();
       ASCII85Encoder enc85 = new ASCII85Encoder(sob);
 		try {
 			int i = 0;
-			for (byte b : baos.toByteArray()) {
+			for (byte b : deflated) {
 				enc85.write(b);
 				if (i++ == 255) {
 					sob.write((int)'\n');
@@ -131,10 +143,10 @@ public class XObjectImage {
 		return "";
 	}
 	
-	private String processImage(Bitmap bitmap) {
+	private byte[] processImage(Bitmap bitmap) {
    	    ByteArrayOutputStream baos = new ByteArrayOutputStream();
    	    if (deflateImageData(baos, getBitmapData(bitmap))) {
-   			return encodeImageData(baos);
+   			return baos.toByteArray();
    	    }
    	    return null;
 	}
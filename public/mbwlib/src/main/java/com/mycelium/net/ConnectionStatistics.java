@@ -0,0 +1,173 @@
+package com.mycelium.net;
+
+import javax.net.SocketFactory;
+import javax.net.ssl.HandshakeCompletedEvent;
+import javax.net.ssl.HandshakeCompletedListener;
+import javax.net.ssl.SSLSocket;
+import javax.net.ssl.SSLSocketFactory;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counts the clients handed out by an endpoint and the connections and TLS
+ * handshakes they needed. Every client handed out without a new connection
+ * reused a pooled one.
+ */
+public class ConnectionStatistics {
+
+   private final AtomicLong _clients = new AtomicLong();
+   private final AtomicLong _connections = new AtomicLong();
+   private final AtomicLong _handshakes = new AtomicLong();
+   private final AtomicLong _resumedHandshakes = new AtomicLong();
+
+   void clientHandedOut() {
+      _clients.incrementAndGet();
+   }
+
+   /**
+    * The number of clients handed out, which is one per request attempt
+    */
+   public long getClients() {
+      return _clients.get();
+   }
+
+   /**
+    * The number of TCP connections opened
+    */
+   public long getConnections() {
+      return _connections.get();
+   }
+
+   /**
+    * The number of completed TLS handshakes
+    */
+   public long getHandshakes() {
+      return _handshakes.get();
+   }
+
+   /**
+    * The number of completed TLS handshakes which resumed an earlier session
+    */
+   public long getResumedHandshakes() {
+      return _resumedHandshakes.get();
+   }
+
+   public void reset() {
+      _clients.set(0);
+      _connections.set(0);
+      _handshakes.set(0);
+      _resumedHandshakes.set(0);
+   }
+
+   @Override
+   public String toString() {
+      return "clients: " + getClients() + " connections: " + getConnections() + " handshakes: " + getHandshakes()
+            + " resumed: " + getResumedHandshakes();
+   }
+
+   SocketFactory countConnections(final SocketFactory factory) {
+      return new SocketFactory() {
+
+         private Socket count(Socket socket) {
+            _connections.incrementAndGet();
+            return socket;
+         }
+
+         @Override
+         public Socket createSocket() throws IOException {
+            return count(factory.createSocket());
+         }
+
+         @Override
+         public Socket createSocket(String host, int port) throws IOException {
+            return count(factory.createSocket(host, port));
+         }
+
+         @Override
+         public Socket createSocket(String host, int port, InetAddress localHost, int localPort) throws IOException {
+            return count(factory.createSocket(host, port, localHost, localPort));
+         }
+
+         @Override
+         public Socket createSocket(InetAddress host, int port) throws IOException {
+            return count(factory.createSocket(host, port));
+         }
+
+         @Override
+         public Socket createSocket(InetAddress address, int port, InetAddress localAddress, int localPort)
+               throws IOException {
+            return count(factory.createSocket(address, port, localAddress, localPort));
+         }
+      };
+   }
+
+   /**
+    * Wrap a socket factory, which keeps its certificate pinning, to count the
+    * handshakes of the sockets it layers over the pooled TCP connections
+    */
+   SSLSocketFactory countHandshakes(final SSLSocketFactory factory) {
+      return new SSLSocketFactory() {
+
+         private Socket count(Socket socket) {
+            if (socket instanceof SSLSocket) {
+               // A resumed session was created before this socket was
+               final long created = System.currentTimeMillis();
+               ((SSLSocket) socket).addHandshakeCompletedListener(new HandshakeCompletedListener() {
+                  @Override
+                  public void handshakeCompleted(HandshakeCompletedEvent event) {
+                     _handshakes.incrementAndGet();
+                     if (event.getSession().getCreationTime() < created) {
+                        _resumedHandshakes.incrementAndGet();
+                     }
+                  }
+               });
+            }
+            return socket;
+         }
+
+         @Override
+         public String[] getDefaultCipherSuites() {
+            return factory.getDefaultCipherSuites();
+         }
+
+         @Override
+         public String[] getSupportedCipherSuites() {
+            return factory.getSupportedCipherSuites();
+         }
+
+         @Override
+         public Socket createSocket(Socket socket, String host, int port, boolean autoClose) throws IOException {
+            return count(factory.createSocket(socket, host, port, autoClose));
+         }
+
+         @Override
+         public Socket createSocket() throws IOException {
+            return count(factory.createSocket());
+         }
+
+         @Override
+         public Socket createSocket(String host, int port) throws IOException {
+            return count(factory.createSocket(host, port));
+         }
+
+         @Override
+         public Socket createSocket(String host, int port, InetAddress localHost, int localPort) throws IOException {
+            return count(factory.createSocket(host, port, localHost, localPort));
+         }
+
+         @Override
+         public Socket createSocket(InetAddress host, int port) throws IOException {
+            return count(factory.createSocket(host, port));
+         }
+
+         @Override
+         public Socket createSocket(InetAddress address, int port, InetAddress localAddress, int localPort)
+               throws IOException {
+            return count(factory.createSocket(address, port, localAddress, localPort));
+         }
+      };
+   }
+
+}
@@ -1,13 +1,20 @@
 package com.mycelium.net;
 
+import com.squareup.okhttp.ConnectionPool;
 import com.squareup.okhttp.OkHttpClient;
 
+import javax.net.SocketFactory;
 import java.io.IOException;
 import java.net.URI;
 import java.net.URISyntaxException;
 
 public class HttpEndpoint {
+   private static final int MAX_IDLE_CONNECTIONS = 2;
+   private static final long KEEP_ALIVE_DURATION_MS = 60 * 1000;
+
    private final String baseUrlString;
+   private final ConnectionStatistics connectionStatistics = new ConnectionStatistics();
+   private OkHttpClient sharedClient;
 
    public HttpEndpoint(String baseUrlString) {
       this.baseUrlString = baseUrlString;
@@ -40,8 +47,45 @@ public class HttpEndpoint {
       }
    }
 
+   /**
+    * Get a client for one request. All clients of an endpoint share its
+    * connection pool, so requests reuse kept-alive connections and only the
+    * first one pays for the TCP and TLS handshakes. The client is a copy, so
+    * callers may change its timeouts.
+    */
    public OkHttpClient getClient(){
-      return new OkHttpClient();
+      connectionStatistics.clientHandedOut();
+      return getSharedClient().clone();
+   }
+
+   private synchronized OkHttpClient getSharedClient() {
+      if (sharedClient == null) {
+         sharedClient = createClient();
+      }
+      return sharedClient;
+   }
+
+   /**
+    * Create the client that all clients of this endpoint are copied from.
+    * HTTP/2 and SPDY are negotiated where the platform and the server support
+    * it, which are the defaults of OkHttp.
+    */
+   protected OkHttpClient createClient() {
+      OkHttpClient client = new OkHttpClient();
+      client.setConnectionPool(new ConnectionPool(MAX_IDLE_CONNECTIONS, KEEP_ALIVE_DURATION_MS));
+      client.setSocketFactory(connectionStatistics.countConnections(SocketFactory.getDefault()));
+      return client;
+   }
+
+   /**
+    * Close the idle pooled connections, for instance after a connection error
+    */
+   public void evictConnections() {
+      getSharedClient().getConnectionPool().evictAll();
+   }
+
+   public ConnectionStatistics getConnectionStatistics() {
+      return connectionStatistics;
    }
 
 }
@@ -18,10 +18,12 @@ public class HttpsEndpoint extends HttpEndpoint {
    }
 
    @Override
-   public OkHttpClient getClient() {
-      OkHttpClient client = super.getClient();
+   protected OkHttpClient createClient() {
+      OkHttpClient client = super.createClient();
       client.setHostnameVerifier(SslUtils.HOST_NAME_VERIFIER_ACCEPT_ALL);
-      client.setSslSocketFactory(this.getSslSocketFactory());
+      // The pinned factory is cached per thumbprint, so its TLS sessions are
+      // resumed when the pool has to open a new connection
+      client.setSslSocketFactory(getConnectionStatistics().countHandshakes(this.getSslSocketFactory()));
       return client;
    }
 }
@@ -32,6 +32,8 @@ public class TorHttpsEndpoint extends HttpsEndpoint implements FeedbackEndpoint
 
    @Override
    public void onError(){
+      // Do not reuse connections over the circuit that just failed
+      evictConnections();
       torManager.resetInterface();
    }
 
@@ -38,6 +38,7 @@ public interface Wapi {
 
 
    public final static int MAX_TRANSACTION_INVENTORY_LIMIT = 1000;
+   public final static int MAX_HEADERS_LIMIT = 10000;
    /**
     * Get the logger configured for this {@link Wapi}
     *
@@ -54,6 +55,19 @@ public interface Wapi {
     */
    WapiResponse<QueryUnspentOutputsResponse> queryUnspentOutputs(QueryUnspentOutputsRequest request);
 
+   /**
+    * Query the changes to the unspent outputs of a set of addresses above a block height
+    * <p/>
+    * The server may answer with the complete set of unspent outputs instead, for instance if the height is too far
+    * behind. Clients should ask for a height some blocks below the last height they synchronized to, so that
+    * shallow reorgs are reported as changes.
+    * Example HTTP POST:
+    * curl  -k -X POST -H "Content-Type: application/json"
+    *       -d '{"version":1,"addresses":["msxh4zZoVwdRXfgmAYYo2MpNrJi4snrH6C"],"sinceHeight":300000}'
+    *       https://144.76.165.115/wapitestnet/wapi/queryUnspentOutputsDelta
+    */
+   WapiResponse<QueryUnspentOutputsDeltaResponse> queryUnspentOutputsDelta(QueryUnspentOutputsDeltaRequest request);
+
    /**
     * Query the transaction inventory of a set of addresses with a limit on how many transaction IDs to retrieve
     * Example HTTP POST:
@@ -93,6 +107,28 @@ public interface Wapi {
     */
    WapiResponse<CheckTransactionsResponse> checkTransactions(CheckTransactionsRequest request);
 
+   /**
+    * Get consecutive block headers of the best chain
+    * <p/>
+    * The server returns up to {@link #MAX_HEADERS_LIMIT} headers from the requested height on, fewer if its chain
+    * ends before.
+    * Example HTTP POST:
+    * curl  -k -X POST -H "Content-Type: application/json"
+    *       -d '{"version":1,"fromHeight":300000,"count":2016}'
+    *       https://144.76.165.115/wapitestnet/wapi/getHeaders
+    */
+   WapiResponse<GetHeadersResponse> getHeaders(GetHeadersRequest request);
+
+   /**
+    * Get the merkle proofs of confirmed transactions, which prove against the block headers that the transactions
+    * are included in the blocks the server claims
+    * Example HTTP POST:
+    * curl  -k -X POST -H "Content-Type: application/json"
+    *       -d '{"version":1,"txIds":["1513b9b160ef6b20bbb06b7bb6e7364e58e27e1df53f8f7e12e67f17d46ad198"]}'
+    *       https://144.76.165.115/wapitestnet/wapi/getMerkleProofs
+    */
+   WapiResponse<GetMerkleProofsResponse> getMerkleProofs(GetMerkleProofsRequest request);
+
    /**
     * Query exchange rates
     * <p/>
@@ -46,6 +46,7 @@ public class WapiClient implements Wapi {
 
    private ObjectMapper _objectMapper;
    private WapiLogger _logger;
+   private final WapiTrafficStatistics _trafficStatistics = new WapiTrafficStatistics();
 
    private ServerEndpoints _serverEndpoints;
    private String versionCode;
@@ -65,11 +66,15 @@ public class WapiClient implements Wapi {
 
    private <T> WapiResponse<T> sendRequest(String function, Object request, TypeReference<WapiResponse<T>> typeReference) {
       try {
-         Response response = getConnectionAndSendRequest(function, request);
+         // Serialize once, the body is sent again for every retry
+         String toSend = getPostBody(request);
+         Response response = getConnectionAndSendRequest(function, toSend);
          if (response == null) {
             return new WapiResponse<T>(ERROR_CODE_NO_SERVER_CONNECTION, null);
          }
-         return _objectMapper.readValue(response.body().string(), typeReference);
+         byte[] body = response.body().bytes();
+         _trafficStatistics.record(function, toSend.length(), body.length);
+         return _objectMapper.readValue(body, typeReference);
       } catch (JsonParseException e) {
          logError("sendRequest failed with Json parsing error.", e);
          return new WapiResponse<T>(ERROR_CODE_INTERNAL_CLIENT_ERROR, null);
@@ -100,7 +105,7 @@ public class WapiClient implements Wapi {
     * timeout, retry all servers with a medium timeout, followed by a retry with
     * long timeout.
     */
-   private Response getConnectionAndSendRequest(String function, Object request) {
+   private Response getConnectionAndSendRequest(String function, String request) {
       Response response;
       response = getConnectionAndSendRequestWithTimeout(request, function, SHORT_TIMEOUT_MS);
       if (response != null) {
@@ -121,7 +126,7 @@ public class WapiClient implements Wapi {
     * Attempt to connect and send to a URL in our list of URLS, if it fails try
     * the next until we have cycled through all URLs. timeout.
     */
-   private Response getConnectionAndSendRequestWithTimeout(Object request, String function, int timeout) {
+   private Response getConnectionAndSendRequestWithTimeout(String toSend, String function, int timeout) {
       int originalConnectionIndex = _serverEndpoints.getCurrentEndpointIndex();
       while (true) {
          // currently active server-endpoint
@@ -137,7 +142,6 @@ public class WapiClient implements Wapi {
 
             Stopwatch callDuration = Stopwatch.createStarted();
             // build request
-            final String toSend = getPostBody(request);
             Request rq = new Request.Builder()
                   .addHeader(MYCELIUM_VERSION_HEADER, versionCode)
                   .post(RequestBody.create(MediaType.parse("application/json"), toSend))
@@ -193,6 +197,13 @@ public class WapiClient implements Wapi {
             });
    }
 
+   @Override
+   public WapiResponse<QueryUnspentOutputsDeltaResponse> queryUnspentOutputsDelta(QueryUnspentOutputsDeltaRequest request) {
+      return sendRequest(Function.QUERY_UNSPENT_OUTPUTS_DELTA, request,
+            new TypeReference<WapiResponse<QueryUnspentOutputsDeltaResponse>>() {
+            });
+   }
+
    @Override
    public WapiResponse<QueryTransactionInventoryResponse> queryTransactionInventory(
          QueryTransactionInventoryRequest request) {
@@ -222,6 +233,19 @@ public class WapiClient implements Wapi {
       return sendRequest(Function.CHECK_TRANSACTIONS, request, typeref);
    }
 
+   @Override
+   public WapiResponse<GetHeadersResponse> getHeaders(GetHeadersRequest request) {
+      return sendRequest(Function.GET_HEADERS, request, new TypeReference<WapiResponse<GetHeadersResponse>>() {
+      });
+   }
+
+   @Override
+   public WapiResponse<GetMerkleProofsResponse> getMerkleProofs(GetMerkleProofsRequest request) {
+      return sendRequest(Function.GET_MERKLE_PROOFS, request,
+            new TypeReference<WapiResponse<GetMerkleProofsResponse>>() {
+            });
+   }
+
    @Override
    public WapiResponse<QueryExchangeRatesResponse> queryExchangeRates(QueryExchangeRatesRequest request) {
       TypeReference<WapiResponse<QueryExchangeRatesResponse>> typeref = new TypeReference<WapiResponse<QueryExchangeRatesResponse>>() {
@@ -248,6 +272,13 @@ public class WapiClient implements Wapi {
    }
 
 
+   /**
+    * Get the number of calls and bytes transferred per function since this client was created
+    */
+   public WapiTrafficStatistics getTrafficStatistics() {
+      return _trafficStatistics;
+   }
+
    @Override
    public WapiLogger getLogger() {
       return _logger;
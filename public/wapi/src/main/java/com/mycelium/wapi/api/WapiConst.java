@@ -23,10 +23,13 @@ public class WapiConst {
    public static class Function {
 
       public static final String QUERY_UNSPENT_OUTPUTS = "queryUnspentOutputs";
+      public static final String QUERY_UNSPENT_OUTPUTS_DELTA = "queryUnspentOutputsDelta";
       public static final String QUERY_TRANSACTION_INVENTORY = "queryTransactionInventory";
       public static final String GET_TRANSACTIONS = "getTransactions";
       public static final String BROADCAST_TRANSACTION = "broadcastTransaction";
       public static final String CHECK_TRANSACTIONS = "checkTransactions";
+      public static final String GET_HEADERS = "getHeaders";
+      public static final String GET_MERKLE_PROOFS = "getMerkleProofs";
       public static final String QUERY_EXCHANGE_RATES = "queryExchangeRates";
       public static final String PING = "ping";
       public static final String COLLECT_ERROR = "collectError";
@@ -0,0 +1,77 @@
+/*
+ * Copyright 2013, 2014 Megion Research & Development GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.mycelium.wapi.api;
+
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Counts the calls made and the bytes sent and received per Wapi function.
+ */
+public class WapiTrafficStatistics {
+
+   private static class Counters {
+      long calls;
+      long bytesSent;
+      long bytesReceived;
+   }
+
+   private final Map<String, Counters> _counters = new TreeMap<String, Counters>();
+
+   public synchronized void record(String function, long bytesSent, long bytesReceived) {
+      Counters counters = _counters.get(function);
+      if (counters == null) {
+         counters = new Counters();
+         _counters.put(function, counters);
+      }
+      counters.calls++;
+      counters.bytesSent += bytesSent;
+      counters.bytesReceived += bytesReceived;
+   }
+
+   public synchronized long getCalls(String function) {
+      Counters counters = _counters.get(function);
+      return counters == null ? 0 : counters.calls;
+   }
+
+   public synchronized long getBytesSent(String function) {
+      Counters counters = _counters.get(function);
+      return counters == null ? 0 : counters.bytesSent;
+   }
+
+   public synchronized long getBytesReceived(String function) {
+      Counters counters = _counters.get(function);
+      return counters == null ? 0 : counters.bytesReceived;
+   }
+
+   public synchronized void reset() {
+      _counters.clear();
+   }
+
+   @Override
+   public synchronized String toString() {
+      StringBuilder sb = new StringBuilder();
+      for (Map.Entry<String, Counters> entry : _counters.entrySet()) {
+         Counters counters = entry.getValue();
+         sb.append(entry.getKey()).append(": calls ").append(counters.calls).append(" sent ")
+               .append(counters.bytesSent).append(" received ").append(counters.bytesReceived).append('\n');
+      }
+      return sb.toString();
+   }
+
+}
@@ -0,0 +1,42 @@
+/*
+ * Copyright 2013, 2014 Megion Research & Development GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mycelium.wapi.api.response;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import java.io.Serializable;
+
+/**
+ * Consecutive block headers of the best chain, serialized back to back in 80 bytes each
+ */
+public class GetHeadersResponse implements Serializable {
+   private static final long serialVersionUID = 1L;
+
+   @JsonProperty
+   public final int height;
+   @JsonProperty
+   public final int fromHeight;
+   @JsonProperty
+   public final byte[] headers;
+
+   public GetHeadersResponse(@JsonProperty("height") int height, @JsonProperty("fromHeight") int fromHeight,
+                             @JsonProperty("headers") byte[] headers) {
+      this.height = height;
+      this.fromHeight = fromHeight;
+      this.headers = headers;
+   }
+
+}
@@ -0,0 +1,59 @@
+/*
+ * Copyright 2013, 2014 Megion Research & Development GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.mycelium.wapi.api.response;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.mrd.bitlib.model.OutPoint;
+import com.mycelium.wapi.model.TransactionOutputEx;
+
+import java.io.Serializable;
+import java.util.Collection;
+
+/**
+ * The changes to the unspent outputs of a set of addresses since a given block height.
+ * <p/>
+ * Unless the response is complete, {@link #unspent} holds the unspent outputs that were created or changed state
+ * above the requested height or in the mempool, and {@link #removed} holds the outputs that were spent or ceased to
+ * exist there. Outputs that have not been touched since the requested height are not reported.
+ */
+public class QueryUnspentOutputsDeltaResponse implements Serializable {
+   private static final long serialVersionUID = 1L;
+
+   @JsonProperty
+   public final int height;
+   /**
+    * True if the server could not produce a delta and {@link #unspent} is the full set of unspent outputs
+    */
+   @JsonProperty
+   public final boolean complete;
+   @JsonProperty
+   public final Collection<TransactionOutputEx> unspent;
+   @JsonProperty
+   public final Collection<OutPoint> removed;
+
+   public QueryUnspentOutputsDeltaResponse(@JsonProperty("height") int height,
+                                           @JsonProperty("complete") boolean complete,
+                                           @JsonProperty("unspent") Collection<TransactionOutputEx> unspent,
+                                           @JsonProperty("removed") Collection<OutPoint> removed) {
+      this.height = height;
+      this.complete = complete;
+      this.unspent = unspent;
+      this.removed = removed;
+   }
+
+}
@@ -0,0 +1,54 @@
+/*
+ * Copyright 2013, 2014 Megion Research & Development GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.mycelium.wapi.model;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.mrd.bitlib.util.Sha256Hash;
+
+import java.io.Serializable;
+import java.util.List;
+
+/**
+ * Proves that a transaction is included in the block at a height: the merkle root computed from the transaction ID,
+ * its index in the block and its merkle branch is the merkle root of the block header
+ */
+public class MerkleProof implements Serializable {
+   private static final long serialVersionUID = 1L;
+
+   @JsonProperty
+   public final Sha256Hash txid;
+   @JsonProperty
+   public final int height;
+   @JsonProperty
+   public final int index;
+   @JsonProperty
+   public final List<Sha256Hash> branch;
+
+   public MerkleProof(@JsonProperty("txid") Sha256Hash txid, @JsonProperty("height") int height,
+                      @JsonProperty("index") int index, @JsonProperty("branch") List<Sha256Hash> branch) {
+      this.txid = txid;
+      this.height = height;
+      this.index = index;
+      this.branch = branch;
+   }
+
+   @Override
+   public String toString() {
+      return "txid:" + txid + " height:" + height + " index:" + index;
+   }
+
+}
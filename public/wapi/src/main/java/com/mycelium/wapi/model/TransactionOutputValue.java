@@ -0,0 +1,62 @@
+/*
+ * Copyright 2013, 2014 Megion Research & Development GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.mycelium.wapi.model;
+
+import com.mrd.bitlib.model.OutPoint;
+
+import java.io.Serializable;
+
+/**
+ * The value of an unspent output without its script, which is all that is
+ * needed for calculating balances
+ */
+public class TransactionOutputValue implements Serializable {
+   private static final long serialVersionUID = 1L;
+
+   public final OutPoint outPoint;
+   public final int height; // -1 means unconfirmed
+   public final long value;
+
+   public TransactionOutputValue(OutPoint outPoint, int height, long value) {
+      this.outPoint = outPoint;
+      this.height = height;
+      this.value = value;
+   }
+
+   @Override
+   public String toString() {
+      return "outPoint:" + outPoint + " height:" + height + " value: " + value;
+   }
+
+   @Override
+   public int hashCode() {
+      return outPoint.hashCode();
+   }
+
+   @Override
+   public boolean equals(Object obj) {
+      if (obj == this) {
+         return true;
+      }
+      if (!(obj instanceof TransactionOutputValue)) {
+         return false;
+      }
+      TransactionOutputValue other = (TransactionOutputValue) obj;
+      return outPoint.equals(other.outPoint);
+   }
+
+}
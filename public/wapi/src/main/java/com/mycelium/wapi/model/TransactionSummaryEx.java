@@ -0,0 +1,98 @@
+/*
+ * Copyright 2013, 2014 Megion Research & Development GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.mycelium.wapi.model;
+
+import com.google.common.primitives.UnsignedBytes;
+import com.mrd.bitlib.model.Address;
+import com.mrd.bitlib.util.Sha256Hash;
+
+import java.io.Serializable;
+
+/**
+ * The persisted part of a {@link TransactionSummary}, which is calculated
+ * once when a transaction is stored rather than each time the transaction
+ * history is shown.
+ */
+public class TransactionSummaryEx implements Serializable, Comparable<TransactionSummaryEx> {
+   private static final long serialVersionUID = 1L;
+
+   public final Sha256Hash txid;
+   public final int height; // -1 means unconfirmed
+   public final int time;
+   public final long value;
+   public final Address destinationAddress; // May be null
+
+   public TransactionSummaryEx(Sha256Hash txid, int height, int time, long value, Address destinationAddress) {
+      this.txid = txid;
+      this.height = height;
+      this.time = time;
+      this.value = value;
+      this.destinationAddress = destinationAddress;
+   }
+
+   /**
+    * Transaction history order: unconfirmed transactions first, then by
+    * height descending and finally by the unsigned txid bytes descending. This
+    * is the order used for keyset pagination, see
+    * {@link #isAfter(int, Sha256Hash)}
+    */
+   @Override
+   public int compareTo(TransactionSummaryEx other) {
+      return -compareKey(height, txid, other.height, other.txid);
+   }
+
+   /**
+    * Does this summary come after the summary with the specified height and
+    * txid in transaction history order?
+    */
+   public boolean isAfter(int height, Sha256Hash txid) {
+      return compareKey(this.height, this.txid, height, txid) < 0;
+   }
+
+   private static int compareKey(int height1, Sha256Hash txid1, int height2, Sha256Hash txid2) {
+      // Make pending transaction have maximum height
+      long h1 = height1 == -1 ? Integer.MAX_VALUE : height1;
+      long h2 = height2 == -1 ? Integer.MAX_VALUE : height2;
+      if (h1 != h2) {
+         return h1 < h2 ? -1 : 1;
+      }
+      return UnsignedBytes.lexicographicalComparator().compare(txid1.getBytes(), txid2.getBytes());
+   }
+
+   @Override
+   public int hashCode() {
+      return txid.hashCode();
+   }
+
+   @Override
+   public boolean equals(Object obj) {
+      if (obj == this) {
+         return true;
+      }
+      if (!(obj instanceof TransactionSummaryEx)) {
+         return false;
+      }
+      TransactionSummaryEx other = (TransactionSummaryEx) obj;
+      return txid.equals(other.txid);
+   }
+
+   @Override
+   public String toString() {
+      return "txid:" + txid + " height:" + height + " value:" + value;
+   }
+}
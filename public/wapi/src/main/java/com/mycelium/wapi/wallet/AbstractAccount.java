@@ -24,11 +24,15 @@ import com.mrd.bitlib.StandardTransactionBuilder.UnsignedTransaction;
 import com.mrd.bitlib.TransactionUtils;
 import com.mrd.bitlib.crypto.*;
 import com.mrd.bitlib.model.*;
+import com.mrd.bitlib.model.ScriptInterpreter.Result;
 import com.mrd.bitlib.model.Transaction.TransactionParsingException;
 import com.mrd.bitlib.util.BitUtils;
 import com.mrd.bitlib.util.ByteReader;
 import com.mrd.bitlib.util.HashUtils;
+import com.mrd.bitlib.util.OutPointMap;
 import com.mrd.bitlib.util.Sha256Hash;
+import com.mrd.bitlib.util.Sha256HashMap;
+import com.mrd.bitlib.util.Sha256HashSet;
 import com.mycelium.wapi.api.Wapi;
 import com.mycelium.wapi.api.WapiException;
 import com.mycelium.wapi.api.WapiLogger;
@@ -36,21 +40,37 @@ import com.mycelium.wapi.api.WapiResponse;
 import com.mycelium.wapi.api.request.BroadcastTransactionRequest;
 import com.mycelium.wapi.api.request.CheckTransactionsRequest;
 import com.mycelium.wapi.api.request.GetTransactionsRequest;
+import com.mycelium.wapi.api.request.QueryUnspentOutputsDeltaRequest;
 import com.mycelium.wapi.api.request.QueryUnspentOutputsRequest;
 import com.mycelium.wapi.api.response.BroadcastTransactionResponse;
 import com.mycelium.wapi.api.response.CheckTransactionsResponse;
 import com.mycelium.wapi.api.response.GetTransactionsResponse;
+import com.mycelium.wapi.api.response.QueryUnspentOutputsDeltaResponse;
 import com.mycelium.wapi.api.response.QueryUnspentOutputsResponse;
 import com.mycelium.wapi.model.*;
 import com.mycelium.wapi.wallet.KeyCipher.InvalidKeyCipher;
 import com.mycelium.wapi.wallet.WalletManager.Event;
 
 import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public abstract class AbstractAccount implements WalletAccount {
    public static final String USING_ARCHIVED_ACCOUNT = "Using archived account";
    private static final int COINBASE_MIN_CONFIRMATIONS = 120;
    private static final int MAX_TRANSACTIONS_TO_HANDLE_SIMULTANEOUSLY = 100;
+   private static final int CONFIRMATION_PAGE_SIZE = 1000;
+   /**
+    * Delta synchronization asks for the changes this many blocks below the last
+    * synchronized height, so that reorgs up to this depth are picked up
+    */
+   private static final int REORG_WINDOW = 6;
+   /**
+    * Parent transactions are parsed and verified in parallel from this many on
+    */
+   private static final int PARALLEL_VALIDATION_THRESHOLD = 8;
+   // Shared by all accounts, created on first use
+   private static ExecutorService _validationExecutor;
 
    public interface EventHandler {
       void onEvent(UUID accountId, Event event);
@@ -63,6 +83,19 @@ public abstract class AbstractAccount implements WalletAccount {
    protected Balance _cachedBalance;
    private EventHandler _eventHandler;
    protected boolean _allowZeroConfSpending;
+   private volatile boolean _transactionSummariesComplete;
+   private SyncStatistics _syncStatistics = new SyncStatistics();
+   private volatile AccountAddressIndex _addressIndex;
+   private volatile int _addressIndexSlot;
+   private boolean _deltaSyncEnabled;
+   private boolean _confirmedScriptVerificationEnabled;
+   private volatile SpvVerifier _spvVerifier;
+   // Confirmed transactions whose inclusion in their block could not be proven against the header chain
+   private volatile Collection<Sha256Hash> _unprovenTransactions = Collections.emptySet();
+   // The height and addresses our unspent outputs were last synchronized for,
+   // kept in memory only so the first synchronization after start is full
+   private int _syncedHeight = -1;
+   private Set<Address> _syncedAddresses = Collections.emptySet();
 
    protected AbstractAccount(AccountBacking backing, NetworkParameters network, Wapi wapi) {
       _network = network;
@@ -136,9 +169,7 @@ public abstract class AbstractAccount implements WalletAccount {
          if (funding == null || funding.isCoinBase) {
             continue;
          }
-         ScriptOutput fundingScript = ScriptOutput.fromScriptBytes(funding.script);
-         Address fundingAddress = fundingScript.getAddress(_network);
-         if (isMine(fundingAddress)) {
+         if (isMine(funding)) {
             return true;
          }
       }
@@ -153,8 +184,11 @@ public abstract class AbstractAccount implements WalletAccount {
     * @return true iff the putput was sent from one of our own addresses
     */
    protected boolean isMine(TransactionOutputEx output) {
+      if (!mightBeMine(output.script)) {
+         return false;
+      }
       ScriptOutput script = ScriptOutput.fromScriptBytes(output.script);
-      return isMine(script);
+      return isMine(script.getAddress(_network));
    }
 
    /**
@@ -164,10 +198,24 @@ public abstract class AbstractAccount implements WalletAccount {
     * @return true iff the script was created by one of our own addresses
     */
    protected boolean isMine(ScriptOutput script) {
+      if (!mightBeMine(script.getScriptBytes())) {
+         return false;
+      }
       Address address = script.getAddress(_network);
       return isMine(address);
    }
 
+   /**
+    * Determine from the raw bytes of an output script whether it may pay to one of our addresses. Only an account
+    * registered with an address index can tell, without building the address.
+    *
+    * @return false if the script certainly does not pay to one of our addresses
+    */
+   private boolean mightBeMine(byte[] scriptBytes) {
+      AccountAddressIndex index = _addressIndex;
+      return index == null || index.mightContainScript(scriptBytes);
+   }
+
    /**
     * Determine whether an address is one of our own addresses
     *
@@ -176,6 +224,57 @@ public abstract class AbstractAccount implements WalletAccount {
     */
    protected abstract boolean isMine(Address address);
 
+   /**
+    * Get all addresses for which {@link #isMine(Address)} currently returns true
+    */
+   protected abstract Collection<Address> getIndexedAddresses();
+
+   /**
+    * Register this account and its current addresses with the address index of its wallet manager, or unregister it
+    * if the index is null. The account keeps the index up to date, see {@link #indexAddress(Address)} and
+    * {@link #unindexAddresses()}.
+    */
+   synchronized void setAddressIndex(AccountAddressIndex index) {
+      if (_addressIndex != null) {
+         _addressIndex.unregister(_addressIndexSlot);
+         _addressIndex = null;
+      }
+      if (index != null) {
+         _addressIndexSlot = index.register(this);
+         for (Address address : getIndexedAddresses()) {
+            index.add(_addressIndexSlot, address);
+         }
+         _addressIndex = index;
+      }
+   }
+
+   /**
+    * Determine whether this account is registered with an address index and has to report its new addresses
+    */
+   protected boolean isAddressIndexed() {
+      return _addressIndex != null;
+   }
+
+   /**
+    * Add an address for which {@link #isMine(Address)} now returns true to the address index
+    */
+   protected void indexAddress(Address address) {
+      AccountAddressIndex index = _addressIndex;
+      if (index != null) {
+         index.add(_addressIndexSlot, address);
+      }
+   }
+
+   /**
+    * Remove all addresses of this account from the address index
+    */
+   protected void unindexAddresses() {
+      AccountAddressIndex index = _addressIndex;
+      if (index != null) {
+         index.removeAll(_addressIndexSlot);
+      }
+   }
+
    @Override
    public abstract UUID getId();
 
@@ -184,7 +283,69 @@ public abstract class AbstractAccount implements WalletAccount {
             address.getAllAddressBytes(), 9));
    }
 
+   /**
+    * Set whether unspent outputs may be synchronized by only fetching the changes since the last synchronization.
+    * This requires a server that supports {@link Wapi#queryUnspentOutputsDelta}.
+    */
+   void setDeltaSyncEnabled(boolean enabled) {
+      _deltaSyncEnabled = enabled;
+   }
+
+   /**
+    * Set whether the input scripts of confirmed transactions received from the server are verified against the parent
+    * outputs they spend before the transactions are stored. Unconfirmed transactions are always verified.
+    */
+   void setConfirmedScriptVerificationEnabled(boolean enabled) {
+      _confirmedScriptVerificationEnabled = enabled;
+   }
+
+   /**
+    * Set the verifier whose header chain bounds the confirmations of our transactions, or null to trust the
+    * confirmations reported by the server
+    */
+   void setSpvVerifier(SpvVerifier verifier) {
+      _spvVerifier = verifier;
+      if (verifier == null) {
+         _unprovenTransactions = Collections.emptySet();
+      }
+   }
+
+   void setSyncStatistics(SyncStatistics syncStatistics) {
+      _syncStatistics = syncStatistics;
+   }
+
+   /**
+    * Make the next synchronization of unspent outputs a full one. Call this whenever the local unspent outputs are
+    * changed other than by synchronizing them.
+    */
+   protected void forgetSyncedHeight() {
+      _syncedHeight = -1;
+   }
+
    protected boolean synchronizeUnspentOutputs(Collection<Address> addresses) {
+      long startTime = System.currentTimeMillis();
+      // A delta is only good for the addresses we synchronized last time
+      if (_deltaSyncEnabled && _syncedHeight >= 0 && _syncedAddresses.containsAll(addresses)) {
+         int sinceHeight = Math.max(0, _syncedHeight - REORG_WINDOW);
+         QueryUnspentOutputsDeltaResponse delta = null;
+         try {
+            delta = _wapi.queryUnspentOutputsDelta(new QueryUnspentOutputsDeltaRequest(Wapi.VERSION, addresses,
+                  sinceHeight)).getResult();
+         } catch (WapiException e) {
+            _logger.logError("Delta synchronization failed with error code: " + e.errorCode, e);
+         }
+         // If the chain is now shorter than where the delta starts we had a
+         // reorg deeper than our window and cannot trust the delta
+         if (delta != null && (delta.complete || delta.height >= sinceHeight)) {
+            boolean success = delta.complete
+                  ? updateUnspentOutputs(addresses, delta.height, delta.unspent)
+                  : updateUnspentOutputsFromDelta(addresses, sinceHeight, delta);
+            _syncStatistics.record(SyncStatistics.Mode.DELTA, System.currentTimeMillis() - startTime);
+            return success;
+         }
+         _syncStatistics.recordFallback();
+      }
+
       // Get the current unspent outputs as dictated by the block chain
       QueryUnspentOutputsResponse UnspentOutputResponse;
       try {
@@ -195,16 +356,25 @@ public abstract class AbstractAccount implements WalletAccount {
          postEvent(Event.SERVER_CONNECTION_ERROR);
          return false;
       }
-      Collection<TransactionOutputEx> remoteUnspent = UnspentOutputResponse.unspent;
+      boolean success = updateUnspentOutputs(addresses, UnspentOutputResponse.height, UnspentOutputResponse.unspent);
+      _syncStatistics.record(SyncStatistics.Mode.FULL, System.currentTimeMillis() - startTime);
+      return success;
+   }
+
+   /**
+    * Replace the local unspent outputs with the full remote set
+    */
+   private boolean updateUnspentOutputs(Collection<Address> addresses, int height,
+                                        Collection<TransactionOutputEx> remoteUnspent) {
       // Store the current block height
-      setBlockChainHeight(UnspentOutputResponse.height);
+      setBlockChainHeight(height);
       // Make a map for fast lookup
-      Map<OutPoint, TransactionOutputEx> remoteMap = toMap(remoteUnspent);
+      OutPointMap<TransactionOutputEx> remoteMap = toMap(remoteUnspent);
 
       // Get the current unspent outputs as it is believed to be locally
       Collection<TransactionOutputEx> localUnspent = _backing.getAllUnspentOutputs();
       // Make a map for fast lookup
-      Map<OutPoint, TransactionOutputEx> localMap = toMap(localUnspent);
+      OutPointMap<TransactionOutputEx> localMap = toMap(localUnspent);
 
       // Find remotely removed unspent outputs
       for (TransactionOutputEx l : localUnspent) {
@@ -217,8 +387,40 @@ public abstract class AbstractAccount implements WalletAccount {
          }
       }
 
+      return addOrUpdateUnspentOutputs(addresses, height, remoteUnspent, localMap);
+   }
+
+   /**
+    * Apply the changes above a block height to the local unspent outputs
+    */
+   private boolean updateUnspentOutputsFromDelta(Collection<Address> addresses, int sinceHeight,
+                                                 QueryUnspentOutputsDeltaResponse delta) {
+      setBlockChainHeight(delta.height);
+      OutPointMap<TransactionOutputEx> remoteMap = toMap(delta.unspent);
+      Collection<TransactionOutputEx> localUnspent = _backing.getAllUnspentOutputs();
+      OutPointMap<TransactionOutputEx> localMap = toMap(localUnspent);
+
+      // Every output that is unconfirmed or above the delta height and still
+      // unspent is reported, so the local ones missing are gone
+      for (TransactionOutputEx l : localUnspent) {
+         if ((l.height == -1 || l.height > sinceHeight) && !remoteMap.containsKey(l.outPoint)) {
+            _backing.deleteUnspentOutput(l.outPoint);
+         }
+      }
+      for (OutPoint removed : delta.removed) {
+         if (localMap.containsKey(removed)) {
+            _backing.deleteUnspentOutput(removed);
+         }
+      }
+
+      return addOrUpdateUnspentOutputs(addresses, delta.height, delta.unspent, localMap);
+   }
+
+   private boolean addOrUpdateUnspentOutputs(Collection<Address> addresses, int height,
+                                             Collection<TransactionOutputEx> remoteUnspent,
+                                             OutPointMap<TransactionOutputEx> localMap) {
       // Find remotely added unspent outputs
-      Set<Sha256Hash> transactionsToAddOrUpdate = new HashSet<Sha256Hash>();
+      Set<Sha256Hash> transactionsToAddOrUpdate = new Sha256HashSet();
       List<TransactionOutputEx> unspentOutputsToAddOrUpdate = new LinkedList<TransactionOutputEx>();
       for (TransactionOutputEx r : remoteUnspent) {
          TransactionOutputEx l = localMap.get(r.outPoint);
@@ -258,11 +460,14 @@ public abstract class AbstractAccount implements WalletAccount {
          }
       }
 
+      // Only now our unspent outputs are in sync with this height
+      _syncedHeight = height;
+      _syncedAddresses = new HashSet<Address>(addresses);
       return true;
    }
 
-   protected static Map<OutPoint, TransactionOutputEx> toMap(Collection<TransactionOutputEx> list) {
-      Map<OutPoint, TransactionOutputEx> map = new HashMap<OutPoint, TransactionOutputEx>();
+   protected static OutPointMap<TransactionOutputEx> toMap(Collection<TransactionOutputEx> list) {
+      OutPointMap<TransactionOutputEx> map = new OutPointMap<TransactionOutputEx>(list.size());
       for (TransactionOutputEx t : list) {
          map.put(t.outPoint, t);
       }
@@ -299,65 +504,128 @@ public abstract class AbstractAccount implements WalletAccount {
       }
 
       // Grab and handle parent transactions
-      fetchStoreAndValidateParentOutputs(txArray);
+      OutPointMap<TransactionOutputEx> parentOutputs = fetchStoreAndValidateParentOutputs(txArray);
+
+      verifyScripts(texArray, txArray, parentOutputs);
 
       // Store transaction locally
       for (int i = 0; i < txArray.size(); i++) {
-         _backing.putTransaction(texArray.get(i));
+         storeTransaction(texArray.get(i), txArray.get(i));
          onNewTransaction(texArray.get(i), txArray.get(i));
       }
    }
 
-   private void fetchStoreAndValidateParentOutputs(ArrayList<Transaction> transactions) throws WapiException {
-      Map<Sha256Hash, TransactionEx> parentTransactions = new HashMap<Sha256Hash, TransactionEx>();
-      Map<OutPoint, TransactionOutputEx> parentOutputs = new HashMap<OutPoint, TransactionOutputEx>();
+   /**
+    * Verify the input scripts of transactions against the parent outputs they
+    * spend, and drop the ones that are invalid. Confirmed transactions are only
+    * verified if enabled, as nothing but their scripts vouches for unconfirmed
+    * ones, while there are few of them. Transactions spending outputs we don't
+    * know or using scripts we cannot execute are kept.
+    */
+   private void verifyScripts(ArrayList<TransactionEx> texArray, ArrayList<Transaction> txArray,
+                              final OutPointMap<TransactionOutputEx> parentOutputs) {
+      List<Integer> indexes = new ArrayList<Integer>(txArray.size());
+      List<Transaction> toVerify = new ArrayList<Transaction>(txArray.size());
+      for (int i = 0; i < txArray.size(); i++) {
+         if (_confirmedScriptVerificationEnabled || texArray.get(i).height == -1) {
+            indexes.add(i);
+            toVerify.add(txArray.get(i));
+         }
+      }
+      if (toVerify.isEmpty()) {
+         return;
+      }
+      List<Result> results = TransactionVerifier.verify(toVerify, new TransactionVerifier.OutputScripts() {
+         @Override
+         public byte[] get(OutPoint outPoint) {
+            TransactionOutputEx output = parentOutputs.get(outPoint);
+            return output == null ? null : output.script;
+         }
+      }, getValidationExecutor());
+      // Indexes are ascending, so removing from the end keeps them valid
+      for (int i = results.size() - 1; i >= 0; i--) {
+         if (results.get(i) == Result.INVALID) {
+            int index = indexes.get(i);
+            _logger.logError("Received transaction with invalid input scripts: " + texArray.get(index).txid);
+            texArray.remove(index);
+            txArray.remove(index);
+         }
+      }
+   }
 
-      // Find list of parent outputs to fetch
-      Collection<Sha256Hash> toFetch = new HashSet<Sha256Hash>();
+   /**
+    * Store a transaction along with its summary. The parent outputs of the
+    * transaction must have been stored already.
+    */
+   private void storeTransaction(TransactionEx tex, Transaction tx) {
+      _backing.putTransaction(tex);
+      _backing.putTransactionSummary(summarize(tx, tex.time, tex.height));
+   }
+
+   /**
+    * @return the parent outputs spent by the transactions that are known
+    */
+   private OutPointMap<TransactionOutputEx> fetchStoreAndValidateParentOutputs(ArrayList<Transaction> transactions)
+         throws WapiException {
+      // Find the outpoints we need parent outputs for
+      OutPointMap<OutPoint> needed = new OutPointMap<OutPoint>();
       for (Transaction t : transactions) {
          for (TransactionInput in : t.inputs) {
             if (in.outPoint.hash.equals(OutPoint.COINBASE_OUTPOINT.hash)) {
                // Coinbase input, so no parent
                continue;
             }
-            TransactionOutputEx parentOutput = _backing.getParentTransactionOutput(in.outPoint);
-            if (parentOutput != null) {
-               // We already have the parent output, no need to fetch the entire
-               // parent transaction
-               parentOutputs.put(parentOutput.outPoint, parentOutput);
-               continue;
-            }
-            TransactionEx parentTransaction = _backing.getTransaction(in.outPoint.hash);
-            if (parentTransaction != null) {
-               // We had the parent transaction in our own transactions, no need to
-               // fetch it remotely
-               parentTransactions.put(parentTransaction.txid, parentTransaction);
-            } else {
-               // Need to fetch it
-               toFetch.add(in.outPoint.hash);
-            }
+            needed.put(in.outPoint, in.outPoint);
+         }
+      }
+      if (needed.isEmpty()) {
+         return new OutPointMap<TransactionOutputEx>();
+      }
+
+      // Look up the parent outputs we already have in one go
+      List<OutPoint> neededList = new ArrayList<OutPoint>(needed.size());
+      for (OutPoint outPoint : needed) {
+         neededList.add(outPoint);
+      }
+      OutPointMap<TransactionOutputEx> parentOutputs = toMap(_backing.getParentTransactionOutputs(neededList));
+
+      // For the rest we need the parent transactions. We may have them in our
+      // own transactions, otherwise we need to fetch them
+      Collection<Sha256Hash> missing = new Sha256HashSet();
+      for (OutPoint outPoint : neededList) {
+         if (!parentOutputs.containsKey(outPoint)) {
+            missing.add(outPoint.hash);
+         }
+      }
+      if (missing.isEmpty()) {
+         return parentOutputs;
+      }
+      List<TransactionEx> parentTransactions = new ArrayList<TransactionEx>(_backing.getTransactions(missing));
+      Collection<Sha256Hash> local = new Sha256HashSet(parentTransactions.size());
+      for (TransactionEx tex : parentTransactions) {
+         local.add(tex.txid);
+      }
+      Collection<Sha256Hash> toFetch = new Sha256HashSet();
+      for (Sha256Hash hash : missing) {
+         if (!local.contains(hash)) {
+            toFetch.add(hash);
          }
       }
 
       // Fetch missing parent transactions
+      int firstFetched = parentTransactions.size();
       if (toFetch.size() > 0) {
          GetTransactionsResponse result = _wapi.getTransactions(new GetTransactionsRequest(Wapi.VERSION, toFetch))
                .getResult();
-         for (TransactionEx tx : result.transactions) {
-            // Verify transaction hash. This is important as we don't want to
-            // have a transaction output associated with an outpoint that
-            // doesn't match.
-            // This is the end users protection against a rogue server that lies
-            // about the value of an output and makes you pay a large fee.
-            Sha256Hash hash = HashUtils.doubleSha256(tx.binary).reverse();
-            if (hash.equals(tx.txid)) {
-               parentTransactions.put(tx.txid, tx);
-            } else {
-               _logger.logError("Failed to validate transaction hash from server. Expected: " + tx.txid
-                     + " Calculated: " + hash);
-               throw new RuntimeException("Failed to validate transaction hash from server. Expected: " + tx.txid
-                     + " Calculated: " + hash);
-            }
+         parentTransactions.addAll(result.transactions);
+      }
+      List<Transaction> parsed = parseParentTransactions(parentTransactions, firstFetched);
+      Sha256HashMap<TransactionEx> parentTexMap = new Sha256HashMap<TransactionEx>(parentTransactions.size());
+      Sha256HashMap<Transaction> parentMap = new Sha256HashMap<Transaction>(parentTransactions.size());
+      for (int i = 0; i < parentTransactions.size(); i++) {
+         if (parsed.get(i) != null) {
+            parentTexMap.put(parentTransactions.get(i).txid, parentTransactions.get(i));
+            parentMap.put(parentTransactions.get(i).txid, parsed.get(i));
          }
       }
 
@@ -365,39 +633,116 @@ public abstract class AbstractAccount implements WalletAccount {
       // a slight probability that one of them was not found due to double
       // spends and/or malleability and network latency etc.
 
-      // Now figure out which parent outputs we need to persist
-      List<TransactionOutputEx> toPersist = new LinkedList<TransactionOutputEx>();
-      for (Transaction t : transactions) {
-         for (TransactionInput in : t.inputs) {
-            if (in.outPoint.hash.equals(OutPoint.COINBASE_OUTPOINT.hash)) {
-               // coinbase input, so no parent
-               continue;
-            }
-            TransactionOutputEx parentOutput = parentOutputs.get(in.outPoint);
-            if (parentOutput != null) {
-               // We had it all along
-               continue;
+      // Persist just the parent outputs that are spent by our transactions
+      List<TransactionOutputEx> toPersist = new ArrayList<TransactionOutputEx>();
+      for (OutPoint outPoint : neededList) {
+         if (parentOutputs.containsKey(outPoint)) {
+            // We had it all along
+            continue;
+         }
+         Transaction parent = parentMap.get(outPoint.hash);
+         if (parent == null || outPoint.index >= parent.outputs.length) {
+            _logger.logError("Parent transaction not found: " + outPoint.hash);
+            continue;
+         }
+         TransactionOutput output = parent.outputs[outPoint.index];
+         toPersist.add(new TransactionOutputEx(outPoint, parentTexMap.get(outPoint.hash).height, output.value,
+               output.script.getScriptBytes(), parent.isCoinbase()));
+      }
+      if (!toPersist.isEmpty()) {
+         _backing.putParentTransactionOutputs(toPersist);
+         for (TransactionOutputEx output : toPersist) {
+            parentOutputs.put(output.outPoint, output);
+         }
+      }
+      return parentOutputs;
+   }
+
+   /**
+    * Parse parent transactions. The ones from the given index on were fetched
+    * from the server and get their hash verified. Larger batches are handled
+    * in parallel.
+    *
+    * @return the parsed transactions in the same order, null for the ones
+    * that could not be parsed
+    */
+   private List<Transaction> parseParentTransactions(final List<TransactionEx> parents, final int firstFetched) {
+      List<Transaction> parsed = new ArrayList<Transaction>(parents.size());
+      if (parents.size() < PARALLEL_VALIDATION_THRESHOLD) {
+         for (int i = 0; i < parents.size(); i++) {
+            parsed.add(parseParentTransaction(parents.get(i), i >= firstFetched));
+         }
+         return parsed;
+      }
+      List<Future<Transaction>> futures = new ArrayList<Future<Transaction>>(parents.size());
+      for (int i = 0; i < parents.size(); i++) {
+         final TransactionEx tex = parents.get(i);
+         final boolean verifyHash = i >= firstFetched;
+         futures.add(getValidationExecutor().submit(new Callable<Transaction>() {
+            @Override
+            public Transaction call() {
+               return parseParentTransaction(tex, verifyHash);
             }
-            TransactionEx parentTex = parentTransactions.get(in.outPoint.hash);
-            if (parentTex != null) {
-               // Parent output not found, maybe we already have it
-               parentOutput = TransactionEx.getTransactionOutput(parentTex, in.outPoint.index);
-               toPersist.add(parentOutput);
-               continue;
+         }));
+      }
+      for (Future<Transaction> future : futures) {
+         try {
+            parsed.add(future.get());
+         } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+         } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+               throw (RuntimeException) e.getCause();
             }
-            _logger.logError("Parent transaction not found: " + in.outPoint.hash);
+            throw new RuntimeException(e.getCause());
+         }
+      }
+      return parsed;
+   }
+
+   private Transaction parseParentTransaction(TransactionEx tex, boolean verifyHash) {
+      if (verifyHash) {
+         // Verify transaction hash. This is important as we don't want to
+         // have a transaction output associated with an outpoint that
+         // doesn't match.
+         // This is the end users protection against a rogue server that lies
+         // about the value of an output and makes you pay a large fee.
+         Sha256Hash hash = HashUtils.doubleSha256(tex.binary).reverse();
+         if (!hash.equals(tex.txid)) {
+            _logger.logError("Failed to validate transaction hash from server. Expected: " + tex.txid
+                  + " Calculated: " + hash);
+            throw new RuntimeException("Failed to validate transaction hash from server. Expected: " + tex.txid
+                  + " Calculated: " + hash);
          }
       }
+      return TransactionEx.toTransaction(tex);
+   }
 
-      // Persist
-      for (TransactionOutputEx output : toPersist) {
-         _backing.putParentTransactionOutput(output);
+   private static synchronized ExecutorService getValidationExecutor() {
+      if (_validationExecutor == null) {
+         int threads = Runtime.getRuntime().availableProcessors();
+         ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 30, TimeUnit.SECONDS,
+               new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+            private final AtomicInteger _count = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable runnable) {
+               Thread thread = new Thread(runnable, "ParentValidation-" + _count.incrementAndGet());
+               thread.setDaemon(true);
+               return thread;
+            }
+         });
+         // Don't keep idle threads around between synchronizations
+         executor.allowCoreThreadTimeOut(true);
+         _validationExecutor = executor;
       }
+      return _validationExecutor;
    }
 
    protected Balance calculateLocalBalance() {
 
-      Collection<TransactionOutputEx> unspentOutputs = new HashSet<TransactionOutputEx>(_backing.getAllUnspentOutputs());
+      Collection<TransactionOutputValue> unspentOutputs = _backing.getAllUnspentOutputValues();
       long confirmed = 0;
       long pendingChange = 0;
       long pendingSending = 0;
@@ -407,9 +752,10 @@ public abstract class AbstractAccount implements WalletAccount {
       //
       // Determine the value we are receiving and create a set of outpoints for fast lookup
       //
-      Set<OutPoint> unspentOutPoints = new HashSet<OutPoint>();
-      for (TransactionOutputEx output : unspentOutputs) {
-         if (output.height == -1) {
+      OutPointMap<TransactionOutputValue> unspentOutPoints = new OutPointMap<TransactionOutputValue>(unspentOutputs.size());
+      int blockChainHeight = getVerifiedBlockChainHeight();
+      for (TransactionOutputValue output : unspentOutputs) {
+         if (getVerifiedHeight(output.outPoint.hash, output.height, blockChainHeight) == -1) {
             if (isFromMe(output.outPoint.hash)) {
                pendingChange += output.value;
             } else {
@@ -418,7 +764,7 @@ public abstract class AbstractAccount implements WalletAccount {
          } else {
             confirmed += output.value;
          }
-         unspentOutPoints.add(output.outPoint);
+         unspentOutPoints.put(output.outPoint, output);
       }
 
       //
@@ -449,11 +795,9 @@ public abstract class AbstractAccount implements WalletAccount {
                _logger.logError("Unable to find parent transaction output: " + input.outPoint);
                continue;
             }
-            TransactionOutput parentOutput = transform(parent);
-            Address fundingAddress = parentOutput.script.getAddress(_network);
-            if (isMine(fundingAddress)) {
+            if (isMine(parent)) {
                // One of our addresses are sending coins
-               pendingSending += parentOutput.value;
+               pendingSending += parent.value;
             }
          }
 
@@ -461,11 +805,9 @@ public abstract class AbstractAccount implements WalletAccount {
          // if it is already spent in another transaction
          for (int i = 0; i < t.outputs.length; i++) {
             TransactionOutput output = t.outputs[i];
-            Address destination = output.script.getAddress(_network);
-            if (isMine(destination)) {
+            if (isMine(output.script)) {
                // The funds are sent to us
-               OutPoint outPoint = new OutPoint(t.getHash(), i);
-               if (!unspentOutPoints.contains(outPoint)) {
+               if (!unspentOutPoints.containsKey(t.getHash(), i)) {
                   // This output has been spent, subtract it from the amount sent
                   pendingSending -= output.value;
                }
@@ -474,14 +816,8 @@ public abstract class AbstractAccount implements WalletAccount {
 
       }
 
-      int blockHeight = getBlockChainHeight();
       return new Balance(confirmed, pendingReceiving, pendingSending, pendingChange, System.currentTimeMillis(),
-            blockHeight, true, _allowZeroConfSpending);
-   }
-
-   private TransactionOutput transform(TransactionOutputEx parent) {
-      ScriptOutput script = ScriptOutput.fromScriptBytes(parent.script);
-      return new TransactionOutput(parent.value, script);
+            blockChainHeight, true, _allowZeroConfSpending);
    }
 
    /**
@@ -580,18 +916,77 @@ public abstract class AbstractAccount implements WalletAccount {
       // Note that this method is not synchronized, and we might fetch the transaction history while synchronizing
       // accounts. That should be ok as we write to the DB in a sane order.
 
-      List<TransactionSummary> history = new ArrayList<TransactionSummary>();
       checkNotArchived();
-      int blockChainHeight = getBlockChainHeight();
-      List<TransactionEx> list = _backing.getTransactionHistory(offset, limit);
-      for (TransactionEx tex : list) {
-         TransactionSummary item = transform(tex, blockChainHeight);
-         if (item != null) {
-            history.add(item);
-         }
+      ensureTransactionSummaries();
+      return transform(_backing.getTransactionSummaries(offset, limit));
+   }
+
+   @Override
+   public List<TransactionSummary> getTransactionHistoryAfter(TransactionSummary last, int limit) {
+      if (last == null) {
+         return getTransactionHistory(0, limit);
+      }
+      checkNotArchived();
+      ensureTransactionSummaries();
+      return transform(_backing.getTransactionSummariesAfter(last.height, last.txid, limit));
+   }
+
+   private List<TransactionSummary> transform(List<TransactionSummaryEx> list) {
+      List<TransactionSummary> history = new ArrayList<TransactionSummary>(list.size());
+      int blockChainHeight = getVerifiedBlockChainHeight();
+      // Usually there are no queued outgoing transactions, so avoid looking up each of them
+      boolean haveOutgoing = !_backing.getOutgoingTransactions().isEmpty();
+      for (TransactionSummaryEx summary : list) {
+         boolean isQueuedOutgoing = haveOutgoing && _backing.isOutgoingTransaction(summary.txid);
+         history.add(transform(summary, blockChainHeight, isQueuedOutgoing));
       }
       return history;
+   }
+
+   /**
+    * Summaries are stored along with transactions, but transactions stored by
+    * older versions have none. Calculate the missing ones the first time the
+    * history is needed.
+    */
+   private void ensureTransactionSummaries() {
+      if (_transactionSummariesComplete) {
+         return;
+      }
+      // Set before looking for missing summaries, so that summaries
+      // invalidated while we calculate are calculated again on the next call
+      _transactionSummariesComplete = true;
+      Collection<Sha256Hash> missing = _backing.getTransactionIdsWithoutSummary();
+      if (!missing.isEmpty()) {
+         _backing.beginTransaction();
+         try {
+            for (Sha256Hash txid : missing) {
+               TransactionEx tex = _backing.getTransaction(txid);
+               if (tex == null) {
+                  // Deleted while synchronizing
+                  continue;
+               }
+               Transaction tx = TransactionEx.toTransaction(tex);
+               if (tx == null) {
+                  _logger.logError("Unable to parse " + txid);
+                  continue;
+               }
+               _backing.putTransactionSummary(summarize(tx, tex.time, tex.height));
+            }
+            _backing.setTransactionSuccessful();
+         } finally {
+            _backing.endTransaction();
+         }
+      }
+   }
 
+   /**
+    * The value and destination of a stored summary depend on which addresses
+    * are ours. Call this when addresses are added, so that transactions stored
+    * before their addresses were known are summarized again.
+    */
+   protected void invalidateTransactionSummaries() {
+      _backing.deleteTransactionSummaries();
+      _transactionSummariesComplete = false;
    }
 
    @Override
@@ -602,6 +997,27 @@ public abstract class AbstractAccount implements WalletAccount {
 
    protected abstract void setBlockChainHeight(int blockHeight);
 
+   /**
+    * Get the block chain height confirmations are counted from. With a header chain this is capped at its height,
+    * so that the server cannot add confirmations by reporting blocks we have not verified.
+    */
+   protected int getVerifiedBlockChainHeight() {
+      int height = getBlockChainHeight();
+      SpvVerifier verifier = _spvVerifier;
+      return verifier == null ? height : Math.min(height, verifier.getHeaderChain().getHeight());
+   }
+
+   /**
+    * Get the height of the block a transaction is included in, or -1 if it is unconfirmed or its confirmation has
+    * not been verified against the header chain
+    */
+   private int getVerifiedHeight(Sha256Hash txid, int height, int blockChainHeight) {
+      if (height == -1 || height > blockChainHeight || _unprovenTransactions.contains(txid)) {
+         return -1;
+      }
+      return height;
+   }
+
    @Override
    public Transaction signTransaction(UnsignedTransaction unsigned, KeyCipher cipher, RandomSource randomSource)
          throws InvalidKeyCipher {
@@ -627,6 +1043,9 @@ public abstract class AbstractAccount implements WalletAccount {
    }
 
    private void markTransactionAsSpent(Transaction transaction) {
+      // If the transaction never makes it the spent outputs have to come back,
+      // which a delta would not tell us
+      forgetSyncedHeight();
       _backing.beginTransaction();
       try {
          // Remove inputs from unspent, marking them as spent
@@ -650,7 +1069,7 @@ public abstract class AbstractAccount implements WalletAccount {
 
          // Store transaction locally, so we have it in our history and don't
          // need to fetch it in a minute
-         _backing.putTransaction(TransactionEx.fromUnconfirmedTransaction(transaction));
+         storeTransaction(TransactionEx.fromUnconfirmedTransaction(transaction), transaction);
          _backing.setTransactionSuccessful();
       } finally {
          _backing.endTransaction();
@@ -678,12 +1097,13 @@ public abstract class AbstractAccount implements WalletAccount {
 
       // Prune confirmed outputs for coinbase outputs that are not old enough
       // for spending. Also prune unconfirmed receiving coins except for change
-      int blockChainHeight = getBlockChainHeight();
+      int blockChainHeight = getVerifiedBlockChainHeight();
       Iterator<TransactionOutputEx> it = list.iterator();
       while (it.hasNext()) {
          TransactionOutputEx output = it.next();
+         int height = getVerifiedHeight(output.outPoint.hash, output.height, blockChainHeight);
          if (output.isCoinBase) {
-            int confirmations = blockChainHeight - output.height;
+            int confirmations = height == -1 ? 0 : blockChainHeight - height;
             if (confirmations < COINBASE_MIN_CONFIRMATIONS) {
                it.remove();
                continue;
@@ -691,7 +1111,7 @@ public abstract class AbstractAccount implements WalletAccount {
          }
          // Unless we allow zero confirmation spending we prune all unconfirmed outputs sent from foreign addresses
          if (!_allowZeroConfSpending) {
-            if (output.height == -1 && !isFromMe(output.outPoint.hash)) {
+            if (height == -1 && !isFromMe(output.outPoint.hash)) {
                // Prune receiving coins that is not change sent to ourselves
                it.remove();
             }
@@ -815,6 +1235,26 @@ public abstract class AbstractAccount implements WalletAccount {
    }
 
    protected TransactionSummary transform(Transaction tx, int time, int height, int blockChainHeight) {
+      TransactionSummaryEx summary = summarize(tx, time, height);
+      return transform(summary, blockChainHeight, _backing.isOutgoingTransaction(tx.getHash()));
+   }
+
+   private TransactionSummary transform(TransactionSummaryEx summary, int blockChainHeight, boolean isQueuedOutgoing) {
+      int confirmations;
+      if (getVerifiedHeight(summary.txid, summary.height, blockChainHeight) == -1) {
+         confirmations = 0;
+      } else {
+         confirmations = blockChainHeight - summary.height + 1;
+      }
+      return new TransactionSummary(summary.txid, summary.value, summary.time, summary.height, confirmations,
+            isQueuedOutgoing, com.google.common.base.Optional.fromNullable(summary.destinationAddress));
+   }
+
+   /**
+    * Calculate the persisted part of the summary of a transaction, that is the
+    * net value for this account and the destination address
+    */
+   protected TransactionSummaryEx summarize(Transaction tx, int time, int height) {
       long value = 0;
       Address destAddress = null;
       for (TransactionOutput output : tx.outputs) {
@@ -841,22 +1281,13 @@ public abstract class AbstractAccount implements WalletAccount {
          }
       }
 
-      int confirmations;
-      if (height == -1) {
-         confirmations = 0;
-      } else {
-         confirmations = Math.max(0, blockChainHeight - height + 1);
-      }
-
       // only track a destinationAddress if it is an outgoing transaction (i.e. send money to someone)
       // to prevent the user that he tries to return money to an address he got bitcoin from.
       if (value >= 0){
          destAddress = null;
       }
 
-      boolean isQueuedOutgoing = _backing.isOutgoingTransaction(tx.getHash());
-
-      return new TransactionSummary(tx.getHash(), value, time, height, confirmations, isQueuedOutgoing, com.google.common.base.Optional.fromNullable(destAddress));
+      return new TransactionSummaryEx(tx.getHash(), height, time, value, destAddress);
    }
 
    @Override
@@ -869,7 +1300,7 @@ public abstract class AbstractAccount implements WalletAccount {
 
       // Transform it to a list of summaries
       List<TransactionOutputSummary> list = new ArrayList<TransactionOutputSummary>();
-      int blockChainHeight = getBlockChainHeight();
+      int blockChainHeight = getVerifiedBlockChainHeight();
       for (TransactionOutputEx output : outputs) {
 
          ScriptOutput script = ScriptOutput.fromScriptBytes(output.script);
@@ -881,10 +1312,10 @@ public abstract class AbstractAccount implements WalletAccount {
             address = script.getAddress(_network);
          }
          int confirmations;
-         if (output.height == -1) {
+         if (getVerifiedHeight(output.outPoint.hash, output.height, blockChainHeight) == -1) {
             confirmations = 0;
          } else {
-            confirmations = Math.max(0, blockChainHeight - output.height + 1);
+            confirmations = blockChainHeight - output.height + 1;
          }
 
          TransactionOutputSummary summary = new TransactionOutputSummary(output.outPoint, output.value, output.height, confirmations, address);
@@ -896,14 +1327,55 @@ public abstract class AbstractAccount implements WalletAccount {
    }
 
 
+   /**
+    * Verify the confirmations of our transactions against the header chain of a verifier. Transactions whose
+    * inclusion in their block cannot be proven are shown without confirmations.
+    *
+    * @return false if the server could not be reached
+    */
+   boolean verifyConfirmations(SpvVerifier verifier) {
+      ensureTransactionSummaries();
+      List<TransactionStatus> confirmed = new ArrayList<TransactionStatus>();
+      for (int offset = 0; ; offset += CONFIRMATION_PAGE_SIZE) {
+         List<TransactionSummaryEx> page = _backing.getTransactionSummaries(offset, CONFIRMATION_PAGE_SIZE);
+         for (TransactionSummaryEx summary : page) {
+            if (summary.height != -1) {
+               confirmed.add(new TransactionStatus(summary.txid, true, summary.height, summary.time));
+            }
+         }
+         if (page.size() < CONFIRMATION_PAGE_SIZE) {
+            break;
+         }
+      }
+      Collection<Sha256Hash> unproven = verifier.verify(confirmed);
+      if (unproven == null) {
+         postEvent(Event.SERVER_CONNECTION_ERROR);
+         return false;
+      }
+      if (!unproven.equals(_unprovenTransactions)) {
+         for (Sha256Hash txid : unproven) {
+            if (!_unprovenTransactions.contains(txid)) {
+               _logger.logError("Unable to prove that transaction " + txid + " is confirmed");
+            }
+         }
+         _unprovenTransactions = unproven;
+         postEvent(Event.TRANSACTION_HISTORY_CHANGED);
+      }
+      // The header chain may have grown, which confirms more of our outputs
+      updateLocalBalance();
+      return true;
+   }
+
    protected boolean monitorYoungTransactions() {
-      Collection<TransactionEx> list = _backing.getYoungTransactions(5, getBlockChainHeight());
+      Collection<TransactionStatus> list = _backing.getYoungTransactionStatuses(5, getBlockChainHeight());
       if (list.isEmpty()) {
          return true;
       }
+      Map<Sha256Hash, TransactionStatus> local = new HashMap<Sha256Hash, TransactionStatus>(list.size());
       List<Sha256Hash> txids = new ArrayList<Sha256Hash>(list.size());
-      for (TransactionEx tex : list) {
-         txids.add(tex.txid);
+      for (TransactionStatus status : list) {
+         local.put(status.txid, status);
+         txids.add(status.txid);
       }
       CheckTransactionsResponse result;
       try {
@@ -921,6 +1393,11 @@ public abstract class AbstractAccount implements WalletAccount {
             _backing.deleteTransaction(t.txid);
             continue;
          }
+         TransactionStatus current = local.get(t.txid);
+         if (current != null && current.height == t.height && current.time == t.time) {
+            continue;
+         }
+         // Only load the binary of transactions that actually changed
          TransactionEx tex = _backing.getTransaction(t.txid);
          Preconditions.checkNotNull(tex);
          if (tex.height != t.height || tex.time != t.time) {
@@ -931,7 +1408,13 @@ public abstract class AbstractAccount implements WalletAccount {
             System.out.println("Replacing:\n" + tex.toString() + "\nWith:\n" + newTex.toString());
             postEvent(Event.TRANSACTION_HISTORY_CHANGED);
             _backing.deleteTransaction(tex.txid);
-            _backing.putTransaction(newTex);
+            Transaction tx = TransactionEx.toTransaction(newTex);
+            if (tx == null) {
+               // Should not happen as we have parsed the transaction earlier
+               _backing.putTransaction(newTex);
+            } else {
+               storeTransaction(newTex, tx);
+            }
          }
       }
       return true;
@@ -990,7 +1473,7 @@ public abstract class AbstractAccount implements WalletAccount {
    @Override
    public TransactionSummary getTransactionSummary(Sha256Hash txid){
       TransactionEx tx = _backing.getTransaction(txid);
-      return transform(tx, tx.height);
+      return transform(tx, getVerifiedBlockChainHeight());
    }
 
    @Override
@@ -0,0 +1,237 @@
+/*
+ * Copyright 2013, 2014 Megion Research & Development GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.mycelium.wapi.wallet;
+
+import com.google.common.base.Preconditions;
+import com.mrd.bitlib.model.Address;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * Index from addresses to the accounts of a wallet manager.
+ * <p/>
+ * Each address takes one int in an open addressing table, which holds a 20
+ * bit fingerprint of its hash160 and the slot of its account. A fingerprint
+ * only narrows down the candidate accounts, every candidate is asked whether
+ * the address really is its own, so lookups are exact.
+ * <p/>
+ * An {@link AddressFilter} over the same addresses rejects most foreign
+ * addresses and output scripts up front. The index keeps the filter keys of
+ * its addresses to build the filter again when it fills up or addresses are
+ * removed.
+ * <p/>
+ * Lookups take no locks. Changes are serialized by the index and published
+ * by volatile writes, a table or filter that is built again is filled before
+ * it replaces the old one.
+ */
+class AccountAddressIndex {
+   private static final int SLOT_BITS = 12;
+   private static final int MAX_ACCOUNTS = (1 << SLOT_BITS) - 1;
+   private static final int FINGERPRINT_BITS = 32 - SLOT_BITS;
+   private static final int MAX_TABLE_SIZE = 1 << FINGERPRINT_BITS;
+   private static final int MIN_TABLE_SIZE = 64;
+
+   private volatile AtomicIntegerArray _table = new AtomicIntegerArray(MIN_TABLE_SIZE);
+   // Copied on write, the entry of account slot s is at s - 1
+   private volatile AbstractAccount[] _accounts = new AbstractAccount[0];
+   private int _size;
+   // The filter keys of the indexed addresses and the slots of their accounts
+   private long[] _keys = new long[MIN_TABLE_SIZE];
+   private int[] _keySlots = new int[MIN_TABLE_SIZE];
+   private int _keyCount;
+   private volatile AddressFilter _filter = new AddressFilter(MIN_TABLE_SIZE);
+
+   /**
+    * Make an account known to the index, after which it adds its addresses
+    *
+    * @return the slot of the account
+    */
+   synchronized int register(AbstractAccount account) {
+      AbstractAccount[] accounts = _accounts;
+      for (int i = 0; i < accounts.length; i++) {
+         if (accounts[i] == null) {
+            accounts = accounts.clone();
+            accounts[i] = account;
+            _accounts = accounts;
+            return i + 1;
+         }
+      }
+      Preconditions.checkState(accounts.length < MAX_ACCOUNTS, "Too many accounts");
+      AbstractAccount[] grown = new AbstractAccount[accounts.length + 1];
+      System.arraycopy(accounts, 0, grown, 0, accounts.length);
+      grown[accounts.length] = account;
+      _accounts = grown;
+      return grown.length;
+   }
+
+   /**
+    * Remove an account and its addresses from the index. Its slot may be
+    * reused afterwards.
+    */
+   synchronized void unregister(int slot) {
+      removeAll(slot);
+      AbstractAccount[] accounts = _accounts.clone();
+      accounts[slot - 1] = null;
+      _accounts = accounts;
+   }
+
+   synchronized void add(int slot, Address address) {
+      AtomicIntegerArray table = _table;
+      if ((_size + 1) * 2 > table.length() && table.length() < MAX_TABLE_SIZE) {
+         table = rebuild(table.length() * 2, 0);
+      }
+      Preconditions.checkState(_size < table.length() - 1, "Too many addresses");
+      byte[] bytes = address.getAllAddressBytes();
+      if (bytes.length == Address.NUM_ADDRESS_BYTES) {
+         // The filter lets other addresses pass, see AddressFilter.mightContain()
+         addKey(slot, AddressFilter.keyOf(bytes, 1));
+      }
+      insert(table, (fingerprint(address) << SLOT_BITS) | slot);
+      _size++;
+   }
+
+   private void addKey(int slot, long key) {
+      if (_keyCount == _keys.length) {
+         _keys = Arrays.copyOf(_keys, _keyCount * 2);
+         _keySlots = Arrays.copyOf(_keySlots, _keyCount * 2);
+      }
+      _keys[_keyCount] = key;
+      _keySlots[_keyCount] = slot;
+      _keyCount++;
+      if (_keyCount > _filter.getCapacity()) {
+         rebuildFilter();
+      } else {
+         _filter.add(key);
+      }
+   }
+
+   private void rebuildFilter() {
+      AddressFilter filter = new AddressFilter(Math.max(MIN_TABLE_SIZE, _keyCount * 2));
+      for (int i = 0; i < _keyCount; i++) {
+         filter.add(_keys[i]);
+      }
+      _filter = filter;
+   }
+
+   /**
+    * Remove all addresses of an account, which stays registered
+    */
+   synchronized void removeAll(int slot) {
+      rebuild(_table.length(), slot);
+      int keyCount = 0;
+      for (int i = 0; i < _keyCount; i++) {
+         if (_keySlots[i] != slot) {
+            _keys[keyCount] = _keys[i];
+            _keySlots[keyCount] = _keySlots[i];
+            keyCount++;
+         }
+      }
+      if (keyCount != _keyCount) {
+         _keyCount = keyCount;
+         rebuildFilter();
+      }
+   }
+
+   private AtomicIntegerArray rebuild(int tableSize, int skippedSlot) {
+      AtomicIntegerArray table = _table;
+      AtomicIntegerArray rebuilt = new AtomicIntegerArray(tableSize);
+      int size = 0;
+      for (int i = 0; i < table.length(); i++) {
+         int entry = table.get(i);
+         if (entry != 0 && (entry & MAX_ACCOUNTS) != skippedSlot) {
+            insert(rebuilt, entry);
+            size++;
+         }
+      }
+      _size = size;
+      _table = rebuilt;
+      return rebuilt;
+   }
+
+   private static void insert(AtomicIntegerArray table, int entry) {
+      int mask = table.length() - 1;
+      int index = (entry >>> SLOT_BITS) & mask;
+      while (table.get(index) != 0) {
+         index = (index + 1) & mask;
+      }
+      table.set(index, entry);
+   }
+
+   private static int fingerprint(Address address) {
+      byte[] bytes = address.getAllAddressBytes();
+      // The hash160 follows the version byte and is uniformly distributed
+      int fingerprint = 0;
+      for (int i = 1; i < Math.min(bytes.length, 4); i++) {
+         fingerprint = (fingerprint << 8) | (bytes[i] & 0xFF);
+      }
+      return fingerprint & (MAX_TABLE_SIZE - 1);
+   }
+
+   /**
+    * Get the accounts which have the specified address, usually zero or one
+    */
+   List<AbstractAccount> getAccounts(Address address) {
+      if (!_filter.mightContain(address)) {
+         return Collections.emptyList();
+      }
+      AtomicIntegerArray table = _table;
+      int fingerprint = fingerprint(address);
+      int mask = table.length() - 1;
+      int index = fingerprint & mask;
+      List<AbstractAccount> result = Collections.emptyList();
+      while (true) {
+         int entry = table.get(index);
+         if (entry == 0) {
+            return result;
+         }
+         if (entry >>> SLOT_BITS == fingerprint) {
+            // Read after the entry, which was added after its account was
+            // registered
+            AbstractAccount[] accounts = _accounts;
+            int slot = entry & MAX_ACCOUNTS;
+            AbstractAccount account = slot <= accounts.length ? accounts[slot - 1] : null;
+            if (account != null && !result.contains(account) && account.isMine(address)) {
+               if (result.isEmpty()) {
+                  result = new ArrayList<AbstractAccount>(1);
+               }
+               result.add(account);
+            }
+         }
+         index = (index + 1) & mask;
+      }
+   }
+
+   /**
+    * Determine whether an output script may pay to an indexed address, false
+    * means that it certainly does not
+    */
+   boolean mightContainScript(byte[] scriptBytes) {
+      return _filter.mightContainScript(scriptBytes);
+   }
+
+   /**
+    * Get the number of indexed addresses
+    */
+   synchronized int size() {
+      return _size;
+   }
+
+}
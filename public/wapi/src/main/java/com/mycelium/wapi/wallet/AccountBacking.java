@@ -20,6 +20,9 @@ import com.mrd.bitlib.model.OutPoint;
 import com.mrd.bitlib.util.Sha256Hash;
 import com.mycelium.wapi.model.TransactionEx;
 import com.mycelium.wapi.model.TransactionOutputEx;
+import com.mycelium.wapi.model.TransactionOutputValue;
+import com.mycelium.wapi.model.TransactionStatus;
+import com.mycelium.wapi.model.TransactionSummaryEx;
 import com.mycelium.wapi.wallet.bip44.Bip44AccountContext;
 import com.mycelium.wapi.wallet.single.SingleAddressAccountContext;
 
@@ -39,6 +42,12 @@ public interface AccountBacking {
 
    Collection<TransactionOutputEx> getAllUnspentOutputs();
 
+   /**
+    * Get the outpoint, height and value of all unspent outputs. Unlike
+    * {@link #getAllUnspentOutputs()} this does not load the output scripts.
+    */
+   Collection<TransactionOutputValue> getAllUnspentOutputValues();
+
    TransactionOutputEx getUnspentOutput(OutPoint outPoint);
 
    void deleteUnspentOutput(OutPoint outPoint);
@@ -49,19 +58,69 @@ public interface AccountBacking {
 
    TransactionOutputEx getParentTransactionOutput(OutPoint outPoint);
 
+   /**
+    * Store several parent outputs at once
+    */
+   void putParentTransactionOutputs(Collection<TransactionOutputEx> outputs);
+
+   /**
+    * Look up the parent outputs of several outpoints at once. Outpoints we
+    * have no parent output for are left out.
+    */
+   Collection<TransactionOutputEx> getParentTransactionOutputs(Collection<OutPoint> outPoints);
+
    boolean hasParentTransactionOutput(OutPoint outPoint);
 
    void putTransaction(TransactionEx transaction);
 
    TransactionEx getTransaction(Sha256Hash hash);
 
+   /**
+    * Look up several transactions at once. Transactions we do not have are
+    * left out.
+    */
+   Collection<TransactionEx> getTransactions(Collection<Sha256Hash> hashes);
+
+   /**
+    * Delete a transaction and its summary
+    */
    void deleteTransaction(Sha256Hash hash);
 
-   List<TransactionEx> getTransactionHistory(int offset, int limit);
+   void putTransactionSummary(TransactionSummaryEx summary);
+
+   /**
+    * Delete the summaries of all transactions, for instance because the
+    * addresses they were calculated for have changed
+    */
+   void deleteTransactionSummaries();
+
+   /**
+    * Get transaction summaries in transaction history order, see
+    * {@link TransactionSummaryEx#compareTo}
+    */
+   List<TransactionSummaryEx> getTransactionSummaries(int offset, int limit);
+
+   /**
+    * Get the transaction summaries following the summary with the specified
+    * height and txid in transaction history order. This does not need to skip
+    * over the previous pages like {@link #getTransactionSummaries(int, int)}.
+    */
+   List<TransactionSummaryEx> getTransactionSummariesAfter(int height, Sha256Hash txid, int limit);
+
+   /**
+    * Get the IDs of stored transactions which have no summary, for instance
+    * because they were stored by an older version
+    */
+   Collection<Sha256Hash> getTransactionIdsWithoutSummary();
 
    Collection<TransactionEx> getUnconfirmedTransactions();
 
-   Collection<TransactionEx> getYoungTransactions(int maxConfirmations, int blockChainHeight);
+   /**
+    * Get the ID, height and time of transactions with at most the specified
+    * number of confirmations, including unconfirmed ones. The transaction
+    * binaries are not loaded.
+    */
+   Collection<TransactionStatus> getYoungTransactionStatuses(int maxConfirmations, int blockChainHeight);
 
    boolean hasTransaction(Sha256Hash txid);
 
@@ -0,0 +1,129 @@
+/*
+ * Copyright 2013, 2014 Megion Research & Development GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.mycelium.wapi.wallet;
+
+import com.mrd.bitlib.model.Address;
+import com.mrd.bitlib.model.ScriptOutput;
+import com.mrd.bitlib.util.BitUtils;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Bloom filter over the hash160s of the addresses of a wallet manager, which
+ * tells from the raw bytes of an output script, without allocating, that it
+ * does not pay to any of them. Most foreign outputs are thereby rejected
+ * before an address is built for them.
+ * <p/>
+ * An address is keyed by the first eight bytes of its hash160, which are
+ * uniformly distributed and need no further hashing. The two halves of the
+ * key pick {@link #PROBES} bits by double hashing.
+ * <p/>
+ * Up to its capacity the filter has a false positive rate below 0.1%.
+ * Addresses cannot be removed, a filter is rather built again. There may be
+ * one writer, lookups take no locks and see an address once it was added.
+ */
+class AddressFilter {
+   static final int PROBES = 8;
+   private static final int BITS_PER_ADDRESS = 16;
+   private static final int MIN_BITS = 1024;
+
+   private final int _capacity;
+   private final int _mask;
+   private final AtomicLongArray _bits;
+
+   /**
+    * @param capacity the number of addresses the filter is sized for
+    */
+   AddressFilter(int capacity) {
+      int bits = MIN_BITS;
+      while (bits < capacity * BITS_PER_ADDRESS) {
+         bits <<= 1;
+      }
+      _capacity = bits / BITS_PER_ADDRESS;
+      _mask = bits - 1;
+      _bits = new AtomicLongArray(bits / 64);
+   }
+
+   /**
+    * Get the key of the hash160 at the specified offset
+    */
+   static long keyOf(byte[] bytes, int offset) {
+      return BitUtils.uint64ToLong(bytes, offset);
+   }
+
+   /**
+    * Get the number of addresses the filter holds with its designed false
+    * positive rate
+    */
+   int getCapacity() {
+      return _capacity;
+   }
+
+   void add(long key) {
+      int hash = (int) key;
+      int step = (int) (key >>> 32) | 1;
+      for (int i = 0; i < PROBES; i++) {
+         int bit = hash & _mask;
+         long word = _bits.get(bit >>> 6);
+         long mask = 1L << bit;
+         if ((word & mask) == 0) {
+            _bits.set(bit >>> 6, word | mask);
+         }
+         hash += step;
+      }
+   }
+
+   boolean mightContain(long key) {
+      int hash = (int) key;
+      int step = (int) (key >>> 32) | 1;
+      for (int i = 0; i < PROBES; i++) {
+         int bit = hash & _mask;
+         if ((_bits.get(bit >>> 6) & (1L << bit)) == 0) {
+            return false;
+         }
+         hash += step;
+      }
+      return true;
+   }
+
+   /**
+    * Determine whether an address may have been added, false means that it
+    * certainly was not
+    */
+   boolean mightContain(Address address) {
+      byte[] bytes = address.getAllAddressBytes();
+      if (bytes.length != Address.NUM_ADDRESS_BYTES) {
+         // Not keyed, see AccountAddressIndex.add()
+         return true;
+      }
+      return mightContain(keyOf(bytes, 1));
+   }
+
+   /**
+    * Determine whether an output script may pay to an address which was
+    * added, false means that it certainly does not. Scripts which do not pay
+    * to an address hash, like pay to public key scripts, may always.
+    */
+   boolean mightContainScript(byte[] scriptBytes) {
+      int offset = ScriptOutput.getAddressHashOffset(scriptBytes);
+      if (offset == -1) {
+         return true;
+      }
+      return mightContain(keyOf(scriptBytes, offset));
+   }
+
+}
@@ -22,6 +22,9 @@ import com.mrd.bitlib.util.HexUtils;
 import com.mrd.bitlib.util.Sha256Hash;
 import com.mycelium.wapi.model.TransactionEx;
 import com.mycelium.wapi.model.TransactionOutputEx;
+import com.mycelium.wapi.model.TransactionOutputValue;
+import com.mycelium.wapi.model.TransactionStatus;
+import com.mycelium.wapi.model.TransactionSummaryEx;
 import com.mycelium.wapi.wallet.bip44.Bip44AccountContext;
 import com.mycelium.wapi.wallet.single.SingleAddressAccountContext;
 
@@ -118,18 +121,34 @@ public class InMemoryWalletManagerBacking implements WalletManagerBacking {
    }
 
    @Override
-   public byte[] getValue(byte[] id) {
+   public synchronized byte[] getValue(byte[] id) {
       return _values.get(idToString(id));
    }
 
    @Override
-   public void setValue(byte[] id, byte[] plaintextValue) {
+   public synchronized void setValue(byte[] id, byte[] plaintextValue) {
       _values.put(idToString(id), plaintextValue);
    }
 
    @Override
-   public void deleteValue(byte[] id) {
-      _values.remove(id);
+   public synchronized void deleteValue(byte[] id) {
+      _values.remove(idToString(id));
+   }
+
+   @Override
+   public synchronized List<byte[]> getValues(List<byte[]> ids) {
+      List<byte[]> values = new ArrayList<byte[]>(ids.size());
+      for (byte[] id : ids) {
+         values.add(getValue(id));
+      }
+      return values;
+   }
+
+   @Override
+   public synchronized void setValues(List<byte[]> ids, List<byte[]> values) {
+      for (int i = 0; i < ids.size(); i++) {
+         setValue(ids.get(i), values.get(i));
+      }
    }
 
    private String idToString(byte[] id) {
@@ -140,12 +159,14 @@ public class InMemoryWalletManagerBacking implements WalletManagerBacking {
 
       private Map<OutPoint, TransactionOutputEx> _unspentOuputs;
       private Map<Sha256Hash, TransactionEx> _transactions;
+      private Map<Sha256Hash, TransactionSummaryEx> _transactionSummaries;
       private Map<OutPoint, TransactionOutputEx> _parentOutputs;
       private Map<Sha256Hash, byte[]> _outgoingTransactions;
 
       public InMemoryAccountBacking() {
          _unspentOuputs = new HashMap<OutPoint, TransactionOutputEx>();
          _transactions = new HashMap<Sha256Hash, TransactionEx>();
+         _transactionSummaries = new HashMap<Sha256Hash, TransactionSummaryEx>();
          _parentOutputs = new HashMap<OutPoint, TransactionOutputEx>();
          _outgoingTransactions = new HashMap<Sha256Hash, byte[]>();
       }
@@ -181,6 +202,7 @@ public class InMemoryWalletManagerBacking implements WalletManagerBacking {
       public void clear() {
          _unspentOuputs.clear();
          _transactions.clear();
+         _transactionSummaries.clear();
          _parentOutputs.clear();
          _outgoingTransactions.clear();
       }
@@ -190,6 +212,15 @@ public class InMemoryWalletManagerBacking implements WalletManagerBacking {
          return new LinkedList<TransactionOutputEx>(_unspentOuputs.values());
       }
 
+      @Override
+      public Collection<TransactionOutputValue> getAllUnspentOutputValues() {
+         List<TransactionOutputValue> values = new LinkedList<TransactionOutputValue>();
+         for (TransactionOutputEx output : _unspentOuputs.values()) {
+            values.add(new TransactionOutputValue(output.outPoint, output.height, output.value));
+         }
+         return values;
+      }
+
       @Override
       public TransactionOutputEx getUnspentOutput(OutPoint outPoint) {
          return _unspentOuputs.get(outPoint);
@@ -215,6 +246,25 @@ public class InMemoryWalletManagerBacking implements WalletManagerBacking {
          return _parentOutputs.get(outPoint);
       }
 
+      @Override
+      public void putParentTransactionOutputs(Collection<TransactionOutputEx> outputs) {
+         for (TransactionOutputEx output : outputs) {
+            _parentOutputs.put(output.outPoint, output);
+         }
+      }
+
+      @Override
+      public Collection<TransactionOutputEx> getParentTransactionOutputs(Collection<OutPoint> outPoints) {
+         List<TransactionOutputEx> outputs = new ArrayList<TransactionOutputEx>();
+         for (OutPoint outPoint : outPoints) {
+            TransactionOutputEx output = _parentOutputs.get(outPoint);
+            if (output != null) {
+               outputs.add(output);
+            }
+         }
+         return outputs;
+      }
+
       @Override
       public boolean hasParentTransactionOutput(OutPoint outPoint) {
          return _parentOutputs.containsKey(outPoint);
@@ -230,15 +280,37 @@ public class InMemoryWalletManagerBacking implements WalletManagerBacking {
          return _transactions.get(hash);
       }
 
+      @Override
+      public Collection<TransactionEx> getTransactions(Collection<Sha256Hash> hashes) {
+         List<TransactionEx> transactions = new ArrayList<TransactionEx>();
+         for (Sha256Hash hash : hashes) {
+            TransactionEx transaction = _transactions.get(hash);
+            if (transaction != null) {
+               transactions.add(transaction);
+            }
+         }
+         return transactions;
+      }
+
       @Override
       public void deleteTransaction(Sha256Hash hash) {
          _transactions.remove(hash);
+         _transactionSummaries.remove(hash);
       }
 
       @Override
-      public List<TransactionEx> getTransactionHistory(int offset, int limit) {
-         List<TransactionEx> list = new ArrayList<TransactionEx>();
-         list.addAll(_transactions.values());
+      public void putTransactionSummary(TransactionSummaryEx summary) {
+         _transactionSummaries.put(summary.txid, summary);
+      }
+
+      @Override
+      public void deleteTransactionSummaries() {
+         _transactionSummaries.clear();
+      }
+
+      @Override
+      public List<TransactionSummaryEx> getTransactionSummaries(int offset, int limit) {
+         List<TransactionSummaryEx> list = new ArrayList<TransactionSummaryEx>(_transactionSummaries.values());
          Collections.sort(list);
          if (offset >= list.size()) {
             return Collections.emptyList();
@@ -247,6 +319,29 @@ public class InMemoryWalletManagerBacking implements WalletManagerBacking {
          return Collections.unmodifiableList(list.subList(offset, endIndex));
       }
 
+      @Override
+      public List<TransactionSummaryEx> getTransactionSummariesAfter(int height, Sha256Hash txid, int limit) {
+         List<TransactionSummaryEx> list = new ArrayList<TransactionSummaryEx>();
+         for (TransactionSummaryEx summary : _transactionSummaries.values()) {
+            if (summary.isAfter(height, txid)) {
+               list.add(summary);
+            }
+         }
+         Collections.sort(list);
+         return Collections.unmodifiableList(list.subList(0, Math.min(limit, list.size())));
+      }
+
+      @Override
+      public Collection<Sha256Hash> getTransactionIdsWithoutSummary() {
+         List<Sha256Hash> list = new LinkedList<Sha256Hash>();
+         for (Sha256Hash txid : _transactions.keySet()) {
+            if (!_transactionSummaries.containsKey(txid)) {
+               list.add(txid);
+            }
+         }
+         return list;
+      }
+
       @Override
       public Collection<TransactionEx> getUnconfirmedTransactions() {
          List<TransactionEx> unconfirmed = new LinkedList<TransactionEx>();
@@ -259,12 +354,12 @@ public class InMemoryWalletManagerBacking implements WalletManagerBacking {
       }
 
       @Override
-      public Collection<TransactionEx> getYoungTransactions(int maxConfirmations, int blockChainHeight) {
-         List<TransactionEx> young = new LinkedList<TransactionEx>();
+      public Collection<TransactionStatus> getYoungTransactionStatuses(int maxConfirmations, int blockChainHeight) {
+         List<TransactionStatus> young = new LinkedList<TransactionStatus>();
          for (TransactionEx tex : _transactions.values()) {
             int confirmations = tex.calculateConfirmations(blockChainHeight);
             if (confirmations <= maxConfirmations) {
-               young.add(tex);
+               young.add(new TransactionStatus(tex.txid, true, tex.height, tex.time));
             }
          }
          return young;
@@ -0,0 +1,291 @@
+/*
+ * Copyright 2013, 2014 Megion Research & Development GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.mycelium.wapi.wallet;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Read-through cache for the plaintext values of a {@link SecureKeyValueStore}.
+ * <p/>
+ * The cache is split into stripes, each with its own lock and LRU map, so
+ * that lookups of different IDs rarely contend. Values are read from the
+ * backing without holding a lock. A write bumps the version of its stripe,
+ * and a value read concurrently with a write is not cached, so the cache never
+ * holds a value older than the backing. Writes go to the backing and the cache
+ * while holding the stripe lock. Absent values are cached too.
+ * <p/>
+ * Cached arrays are handed out as they are, callers must not modify them.
+ */
+public class PlaintextValueCache {
+
+   private static final int STRIPES = 16;
+   private static final int MAX_ENTRIES_PER_STRIPE = 256;
+   private static final byte[] ABSENT = new byte[0];
+
+   public static class Statistics {
+      public final long hits;
+      public final long misses;
+      public final int size;
+
+      private Statistics(long hits, long misses, int size) {
+         this.hits = hits;
+         this.misses = misses;
+         this.size = size;
+      }
+
+      public double getHitRate() {
+         long total = hits + misses;
+         return total == 0 ? 0 : (double) hits / total;
+      }
+
+      @Override
+      public String toString() {
+         return "hits:" + hits + " misses:" + misses + " size:" + size + " hitRate:" + getHitRate();
+      }
+   }
+
+   private static class Key {
+      private final byte[] _id;
+      private final int _hash;
+
+      private Key(byte[] id) {
+         _id = id;
+         _hash = Arrays.hashCode(id);
+      }
+
+      @Override
+      public int hashCode() {
+         return _hash;
+      }
+
+      @Override
+      public boolean equals(Object obj) {
+         return obj instanceof Key && Arrays.equals(_id, ((Key) obj)._id);
+      }
+   }
+
+   /**
+    * Entries in access order, dropping the least recently used ones
+    */
+   private static class EntryMap extends LinkedHashMap<Key, byte[]> {
+      private static final long serialVersionUID = 1L;
+
+      private EntryMap() {
+         super(16, 0.75f, true);
+      }
+
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<Key, byte[]> eldest) {
+         return size() > MAX_ENTRIES_PER_STRIPE;
+      }
+   }
+
+   private static class Stripe {
+      private final ReentrantLock _lock = new ReentrantLock();
+      private long _version;
+      private final EntryMap _entries = new EntryMap();
+   }
+
+   private final SecureKeyValueStoreBacking _backing;
+   private final Stripe[] _stripes;
+   private final AtomicLong _hits;
+   private final AtomicLong _misses;
+
+   public PlaintextValueCache(SecureKeyValueStoreBacking backing) {
+      _backing = backing;
+      _stripes = new Stripe[STRIPES];
+      for (int i = 0; i < STRIPES; i++) {
+         _stripes[i] = new Stripe();
+      }
+      _hits = new AtomicLong();
+      _misses = new AtomicLong();
+   }
+
+   private int stripeIndex(Key key) {
+      int h = key._hash;
+      h ^= (h >>> 16);
+      return h & (STRIPES - 1);
+   }
+
+   /**
+    * Get a value through the cache
+    *
+    * @param realId the ID as used in the backing
+    */
+   public byte[] get(byte[] realId) {
+      Key key = new Key(realId);
+      Stripe stripe = _stripes[stripeIndex(key)];
+      long version;
+      stripe._lock.lock();
+      try {
+         byte[] cached = stripe._entries.get(key);
+         if (cached != null) {
+            _hits.incrementAndGet();
+            return cached == ABSENT ? null : cached;
+         }
+         version = stripe._version;
+      } finally {
+         stripe._lock.unlock();
+      }
+      _misses.incrementAndGet();
+      byte[] value = _backing.getValue(realId);
+      cacheIfUnchanged(stripe, version, key, value);
+      return value;
+   }
+
+   /**
+    * Get several values through the cache, reading all the missing ones from
+    * the backing at once
+    *
+    * @param realIds the IDs as used in the backing
+    * @return the values in the order of the IDs, null for absent values
+    */
+   public List<byte[]> get(List<byte[]> realIds) {
+      int count = realIds.size();
+      List<byte[]> result = new ArrayList<byte[]>(count);
+      Key[] keys = new Key[count];
+      long[] versions = new long[count];
+      List<byte[]> missingIds = new ArrayList<byte[]>();
+      List<Integer> missingPositions = new ArrayList<Integer>();
+      for (int i = 0; i < count; i++) {
+         Key key = new Key(realIds.get(i));
+         keys[i] = key;
+         Stripe stripe = _stripes[stripeIndex(key)];
+         stripe._lock.lock();
+         try {
+            byte[] cached = stripe._entries.get(key);
+            if (cached != null) {
+               result.add(cached == ABSENT ? null : cached);
+               continue;
+            }
+            versions[i] = stripe._version;
+         } finally {
+            stripe._lock.unlock();
+         }
+         result.add(null);
+         missingIds.add(realIds.get(i));
+         missingPositions.add(i);
+      }
+      _hits.addAndGet(count - missingIds.size());
+      if (missingIds.isEmpty()) {
+         return result;
+      }
+      _misses.addAndGet(missingIds.size());
+      List<byte[]> values = _backing.getValues(missingIds);
+      for (int j = 0; j < missingIds.size(); j++) {
+         int position = missingPositions.get(j);
+         byte[] value = values.get(j);
+         result.set(position, value);
+         cacheIfUnchanged(_stripes[stripeIndex(keys[position])], versions[position], keys[position], value);
+      }
+      return result;
+   }
+
+   private void cacheIfUnchanged(Stripe stripe, long version, Key key, byte[] value) {
+      stripe._lock.lock();
+      try {
+         if (stripe._version == version) {
+            stripe._entries.put(key, value == null ? ABSENT : value);
+         }
+      } finally {
+         stripe._lock.unlock();
+      }
+   }
+
+   /**
+    * Write a value to the backing and the cache
+    *
+    * @param realId the ID as used in the backing
+    * @param value  the value or null for deleting the value
+    */
+   public void put(byte[] realId, byte[] value) {
+      Key key = new Key(realId);
+      Stripe stripe = _stripes[stripeIndex(key)];
+      stripe._lock.lock();
+      try {
+         stripe._version++;
+         if (value == null) {
+            _backing.deleteValue(realId);
+         } else {
+            _backing.setValue(realId, value);
+         }
+         stripe._entries.put(key, value == null ? ABSENT : value);
+      } finally {
+         stripe._lock.unlock();
+      }
+   }
+
+   /**
+    * Write several values to the backing at once and to the cache
+    *
+    * @param realIds the IDs as used in the backing
+    * @param values  the values in the order of the IDs
+    */
+   public void put(List<byte[]> realIds, List<byte[]> values) {
+      Key[] keys = new Key[realIds.size()];
+      boolean[] involved = new boolean[STRIPES];
+      for (int i = 0; i < keys.length; i++) {
+         keys[i] = new Key(realIds.get(i));
+         involved[stripeIndex(keys[i])] = true;
+      }
+      // Lock the stripes involved in index order, so that concurrent batches
+      // cannot deadlock
+      for (int s = 0; s < STRIPES; s++) {
+         if (involved[s]) {
+            _stripes[s]._lock.lock();
+         }
+      }
+      try {
+         for (int s = 0; s < STRIPES; s++) {
+            if (involved[s]) {
+               _stripes[s]._version++;
+            }
+         }
+         _backing.setValues(realIds, values);
+         for (int i = 0; i < keys.length; i++) {
+            byte[] value = values.get(i);
+            _stripes[stripeIndex(keys[i])]._entries.put(keys[i], value == null ? ABSENT : value);
+         }
+      } finally {
+         for (int s = STRIPES - 1; s >= 0; s--) {
+            if (involved[s]) {
+               _stripes[s]._lock.unlock();
+            }
+         }
+      }
+   }
+
+   public Statistics getStatistics() {
+      int size = 0;
+      for (Stripe stripe : _stripes) {
+         stripe._lock.lock();
+         try {
+            size += stripe._entries.size();
+         } finally {
+            stripe._lock.unlock();
+         }
+      }
+      return new Statistics(_hits.get(), _misses.get(), size);
+   }
+}
@@ -20,6 +20,9 @@ import com.google.common.base.Preconditions;
 import com.mrd.bitlib.crypto.RandomSource;
 import com.mycelium.wapi.wallet.KeyCipher.InvalidKeyCipher;
 
+import java.util.ArrayList;
+import java.util.List;
+
 /**
  * Secure encrypted storage and plaintext storage for arbitrary binary values using a user defined encryption key.
  * <p/>
@@ -30,6 +33,7 @@ import com.mycelium.wapi.wallet.KeyCipher.InvalidKeyCipher;
  * <p/>Note that the same user defined encryption key is used for all values inserted. The encryption key can be
  * replaced by calling {@link #replaceEncryptionKey(KeyCipher, KeyCipher)}
  * <p/>Note that for every ID an encrypted and a plaintext component can be stored.
+ * <p/>Plaintext values are read through a {@link PlaintextValueCache}, and do not contend on the lock of the store.
  */
 public class SecureKeyValueStore {
 
@@ -38,9 +42,11 @@ public class SecureKeyValueStore {
    private static final byte CIPHER_PREFIX = 2;
 
    private SecureKeyValueStoreBacking _backing;
+   private final PlaintextValueCache _plaintextCache;
 
    public SecureKeyValueStore(SecureKeyValueStoreBacking backing, RandomSource randomSource) {
       _backing = backing;
+      _plaintextCache = new PlaintextValueCache(backing);
       // Initialize key encryption key if necessary
       if (getEncryptedKeyEncryptionKey() == null) {
          byte[] kek = new byte[AesKeyCipher.AES_KEY_BYTE_LENGTH];
@@ -57,11 +63,21 @@ public class SecureKeyValueStore {
     * @param id The ID to get the value for
     * @return The plaintext value associated with the ID or null if no plaintext value was associated
     */
-   public synchronized byte[] getPlaintextValue(byte[] id) {
+   public byte[] getPlaintextValue(byte[] id) {
       if (id.length == 0) {
          throw new RuntimeException("IDs cannot have zero length");
       }
-      return _backing.getValue(getRealId(id, false));
+      return _plaintextCache.get(getRealId(id, false));
+   }
+
+   /**
+    * Get the plaintext values of several IDs, reading the ones that are not cached from the backing at once.
+    *
+    * @param ids The IDs to get the values for
+    * @return The plaintext values in the order of the IDs, null for IDs without a plaintext value
+    */
+   public List<byte[]> getPlaintextValues(List<byte[]> ids) {
+      return _plaintextCache.get(getRealIds(ids));
    }
 
    /**
@@ -72,11 +88,22 @@ public class SecureKeyValueStore {
     * @param id             The id to store a value under
     * @param plaintextValue The value to store
     */
-   public synchronized void storePlaintextValue(byte[] id, byte[] plaintextValue) {
+   public void storePlaintextValue(byte[] id, byte[] plaintextValue) {
       if (id.length == 0) {
          throw new RuntimeException("IDs cannot have zero length");
       }
-      _backing.setValue(getRealId(id, false), plaintextValue);
+      _plaintextCache.put(getRealId(id, false), plaintextValue);
+   }
+
+   /**
+    * Store several plaintext values at once.
+    *
+    * @param ids             The IDs to store values under
+    * @param plaintextValues The values to store in the order of the IDs
+    */
+   public void storePlaintextValues(List<byte[]> ids, List<byte[]> plaintextValues) {
+      Preconditions.checkArgument(ids.size() == plaintextValues.size());
+      _plaintextCache.put(getRealIds(ids), plaintextValues);
    }
 
    /**
@@ -85,7 +112,11 @@ public class SecureKeyValueStore {
     * @param id the ID of the plain text value to delete
     */
    public void deletePlaintextValue(byte[] id) {
-      _backing.deleteValue(getRealId(id, false));
+      _plaintextCache.put(getRealId(id, false), null);
+   }
+
+   public PlaintextValueCache.Statistics getPlaintextCacheStatistics() {
+      return _plaintextCache.getStatistics();
    }
 
    /**
@@ -185,6 +216,17 @@ public class SecureKeyValueStore {
    }
 
 
+   private List<byte[]> getRealIds(List<byte[]> ids) {
+      List<byte[]> realIds = new ArrayList<byte[]>(ids.size());
+      for (byte[] id : ids) {
+         if (id.length == 0) {
+            throw new RuntimeException("IDs cannot have zero length");
+         }
+         realIds.add(getRealId(id, false));
+      }
+      return realIds;
+   }
+
    private byte[] getRealId(byte[] id, boolean isEncrypted) {
       byte[] realId = new byte[id.length + 1];
       realId[0] = isEncrypted ? CIPHER_PREFIX : PLAIN_PREFIX;
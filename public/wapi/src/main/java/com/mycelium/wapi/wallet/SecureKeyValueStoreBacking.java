@@ -16,6 +16,8 @@
 
 package com.mycelium.wapi.wallet;
 
+import java.util.List;
+
 /**
  * Backing for a {@link com.mycelium.wapi.wallet.SecureKeyValueStore}
  */
@@ -45,5 +47,21 @@ public interface SecureKeyValueStoreBacking {
     */
    void deleteValue(byte[] id);
 
+   /**
+    * Get the values of several IDs at once.
+    *
+    * @param ids The IDs to get the values for
+    * @return The values in the order of the IDs, null for IDs without a value
+    */
+   List<byte[]> getValues(List<byte[]> ids);
+
+   /**
+    * Store several values at once, either all of them or none.
+    *
+    * @param ids    The IDs to store values under
+    * @param values The values to store in the order of the IDs
+    */
+   void setValues(List<byte[]> ids, List<byte[]> values);
+
 
 }
@@ -0,0 +1,184 @@
+/*
+ * Copyright 2013, 2014 Megion Research & Development GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.mycelium.wapi.wallet;
+
+import com.mrd.bitlib.model.Block;
+import com.mrd.bitlib.model.HeaderChain;
+import com.mrd.bitlib.model.HeaderChain.HeaderVerificationException;
+import com.mrd.bitlib.util.ByteReader;
+import com.mrd.bitlib.util.Sha256Hash;
+import com.mrd.bitlib.util.Sha256HashMap;
+import com.mrd.bitlib.util.Sha256HashSet;
+import com.mycelium.wapi.api.Wapi;
+import com.mycelium.wapi.api.WapiException;
+import com.mycelium.wapi.api.WapiLogger;
+import com.mycelium.wapi.api.request.GetHeadersRequest;
+import com.mycelium.wapi.api.request.GetMerkleProofsRequest;
+import com.mycelium.wapi.api.response.GetHeadersResponse;
+import com.mycelium.wapi.model.MerkleProof;
+import com.mycelium.wapi.model.TransactionStatus;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Keeps a chain of block headers in sync with the server and verifies the confirmations the server reports against
+ * it, so that a server cannot make up confirmations for transactions that are not in the block chain.
+ */
+public class SpvVerifier {
+
+   /**
+    * The top headers of our chain are fetched again on every synchronization, so that reorgs up to this depth
+    * replace them
+    */
+   private static final int REORG_WINDOW = 6;
+
+   private final HeaderChain _chain;
+   private final Wapi _wapi;
+   private final WapiLogger _logger;
+   // The hash of the block each transaction was proven to be included in
+   private final Sha256HashMap<Sha256Hash> _proven = new Sha256HashMap<Sha256Hash>();
+
+   public SpvVerifier(HeaderChain chain, Wapi wapi) {
+      _chain = chain;
+      _wapi = wapi;
+      _logger = wapi.getLogger();
+   }
+
+   public HeaderChain getHeaderChain() {
+      return _chain;
+   }
+
+   /**
+    * Fetch the headers our chain is missing from the server, many thousands at a time. If the headers do not connect
+    * to our chain, because its top is on a branch that got orphaned deeper than the reorg window, we step back
+    * further, doubling the window each time down to the start of the chain.
+    *
+    * @return false if the server could not be reached or sent headers that failed verification
+    */
+   public synchronized boolean synchronizeHeaders() {
+      int window = REORG_WINDOW;
+      int fromHeight = getWindowStart(window);
+      while (true) {
+         GetHeadersResponse response;
+         try {
+            response = _wapi.getHeaders(new GetHeadersRequest(Wapi.VERSION, fromHeight, Wapi.MAX_HEADERS_LIMIT))
+                  .getResult();
+         } catch (WapiException e) {
+            _logger.logError("Server connection failed with error code: " + e.errorCode, e);
+            return false;
+         }
+         int count = response.headers.length / Block.HEADER_SIZE;
+         if (count > 0 && !connects(response) && response.fromHeight > _chain.getStartHeight() + 1) {
+            window *= 2;
+            fromHeight = Math.min(getWindowStart(window), response.fromHeight - 1);
+            continue;
+         }
+         if (count > 0) {
+            try {
+               _chain.add(response.fromHeight, response.headers, 0, count);
+            } catch (HeaderVerificationException e) {
+               _logger.logError("Received invalid block headers: " + e.getMessage());
+               _chain.flush();
+               return false;
+            }
+         }
+         fromHeight = response.fromHeight + count;
+         if (count < Wapi.MAX_HEADERS_LIMIT || fromHeight > response.height) {
+            break;
+         }
+      }
+      _chain.flush();
+      return true;
+   }
+
+   private int getWindowStart(int window) {
+      return Math.max(_chain.getStartHeight() + 1, _chain.getHeight() + 1 - window);
+   }
+
+   /**
+    * @return true if the first header of the response follows the header below it in our chain
+    */
+   private boolean connects(GetHeadersResponse response) {
+      Sha256Hash previous = _chain.getHash(response.fromHeight - 1);
+      if (previous == null) {
+         // Above our chain, adding them fails anyway
+         return true;
+      }
+      try {
+         Block first = Block.headerFromByteReader(new ByteReader(response.headers));
+         return first.prevBlockHash.equals(previous);
+      } catch (ByteReader.InsufficientBytesException e) {
+         // Cannot happen, as the response has at least one header
+         return true;
+      }
+   }
+
+   /**
+    * Verify that confirmed transactions are included in the blocks at the heights the server reported. Proven
+    * transactions are remembered for as long as their block stays in our chain.
+    *
+    * @param confirmed the transaction IDs and heights of confirmed transactions
+    * @return the IDs of the transactions whose inclusion could not be proven, or null if the server could not be
+    * reached
+    */
+   public synchronized Collection<Sha256Hash> verify(Collection<TransactionStatus> confirmed) {
+      List<TransactionStatus> toProve = new ArrayList<TransactionStatus>();
+      Sha256HashMap<TransactionStatus> byTxid = new Sha256HashMap<TransactionStatus>();
+      for (TransactionStatus status : confirmed) {
+         Sha256Hash block = _proven.get(status.txid);
+         if (block == null || !block.equals(_chain.getHash(status.height))) {
+            toProve.add(status);
+            byTxid.put(status.txid, status);
+         }
+      }
+
+      Collection<Sha256Hash> proven = new Sha256HashSet();
+      for (int i = 0; i < toProve.size(); i += Wapi.MAX_TRANSACTION_INVENTORY_LIMIT) {
+         List<Sha256Hash> txids = new ArrayList<Sha256Hash>();
+         for (TransactionStatus status : toProve.subList(i, Math.min(toProve.size(),
+               i + Wapi.MAX_TRANSACTION_INVENTORY_LIMIT))) {
+            txids.add(status.txid);
+         }
+         Collection<MerkleProof> proofs;
+         try {
+            proofs = _wapi.getMerkleProofs(new GetMerkleProofsRequest(Wapi.VERSION, txids)).getResult().proofs;
+         } catch (WapiException e) {
+            _logger.logError("Server connection failed with error code: " + e.errorCode, e);
+            return null;
+         }
+         for (MerkleProof proof : proofs) {
+            TransactionStatus status = byTxid.get(proof.txid);
+            if (status != null && status.height == proof.height
+                  && _chain.isIncluded(proof.txid, proof.height, proof.index, proof.branch)) {
+               _proven.put(proof.txid, _chain.getHash(proof.height));
+               proven.add(proof.txid);
+            }
+         }
+      }
+      Collection<Sha256Hash> unproven = new Sha256HashSet();
+      for (TransactionStatus status : toProve) {
+         if (!proven.contains(status.txid)) {
+            unproven.add(status.txid);
+         }
+      }
+      return unproven;
+   }
+
+}
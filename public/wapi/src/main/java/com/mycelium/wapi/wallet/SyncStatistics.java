@@ -0,0 +1,76 @@
+/*
+ * Copyright 2013, 2014 Megion Research & Development GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.mycelium.wapi.wallet;
+
+/**
+ * Counts how unspent outputs of accounts were synchronized and how long it took.
+ */
+public class SyncStatistics {
+
+   public enum Mode {
+      /**
+       * The full set of unspent outputs was fetched and compared with the local set
+       */
+      FULL,
+      /**
+       * Only the changes since the last synchronized block height were fetched
+       */
+      DELTA
+   }
+
+   private final long[] _count = new long[Mode.values().length];
+   private final long[] _millis = new long[Mode.values().length];
+   private long _fallbacks;
+
+   synchronized void record(Mode mode, long millis) {
+      _count[mode.ordinal()]++;
+      _millis[mode.ordinal()] += millis;
+   }
+
+   synchronized void recordFallback() {
+      _fallbacks++;
+   }
+
+   public synchronized long getCount(Mode mode) {
+      return _count[mode.ordinal()];
+   }
+
+   public synchronized long getTotalMillis(Mode mode) {
+      return _millis[mode.ordinal()];
+   }
+
+   /**
+    * Get the number of times a delta synchronization was attempted but failed, and a full synchronization was done
+    * instead
+    */
+   public synchronized long getFallbacks() {
+      return _fallbacks;
+   }
+
+   @Override
+   public synchronized String toString() {
+      StringBuilder sb = new StringBuilder();
+      for (Mode mode : Mode.values()) {
+         sb.append(mode).append(": ").append(_count[mode.ordinal()]).append(" in ")
+               .append(_millis[mode.ordinal()]).append("ms ");
+      }
+      sb.append("fallbacks: ").append(_fallbacks);
+      return sb.toString();
+   }
+
+}
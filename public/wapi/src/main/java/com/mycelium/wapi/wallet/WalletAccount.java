@@ -97,6 +97,17 @@ public interface WalletAccount {
     */
    List<TransactionSummary> getTransactionHistory(int offset, int limit);
 
+   /**
+    * Get the part of the transaction history which follows a transaction
+    * summary previously returned, without skipping over the earlier parts of
+    * the history.
+    *
+    * @param last  the last summary of the previous page, or null to start at the
+    *              beginning of the history
+    * @param limit the maximum number of records to retrieve
+    */
+   List<TransactionSummary> getTransactionHistoryAfter(TransactionSummary last, int limit);
+
    TransactionSummary getTransactionSummary(Sha256Hash txid);
 
    /**
@@ -25,6 +25,7 @@ import com.mrd.bitlib.crypto.HdKeyNode;
 import com.mrd.bitlib.crypto.InMemoryPrivateKey;
 import com.mrd.bitlib.crypto.PublicKey;
 import com.mrd.bitlib.model.Address;
+import com.mrd.bitlib.model.HeaderChain;
 import com.mrd.bitlib.model.NetworkParameters;
 import com.mrd.bitlib.util.HexUtils;
 import com.mycelium.wapi.api.Wapi;
@@ -120,6 +121,7 @@ public class WalletManager {
    private WalletManagerBacking _backing;
    private final Map<UUID, AbstractAccount> _allAccounts;
    private final List<Bip44Account> _bip44Accounts;
+   private final AccountAddressIndex _addressIndex;
    private final Collection<Observer> _observers;
    private State _state;
    private Thread _synchronizationThread;
@@ -128,6 +130,10 @@ public class WalletManager {
    private Wapi _wapi;
    private WapiLogger _logger;
    private boolean _synchronizeTransactionHistory;
+   private boolean _deltaSyncEnabled;
+   private boolean _confirmedScriptVerificationEnabled;
+   private volatile SpvVerifier _spvVerifier;
+   private final SyncStatistics _syncStatistics;
 
    /**
     * Create a new wallet manager instance
@@ -144,11 +150,13 @@ public class WalletManager {
       _wapi = wapi;
       _logger = _wapi.getLogger();
       _allAccounts = new HashMap<UUID, AbstractAccount>();
+      _addressIndex = new AccountAddressIndex();
       _bip44Accounts = new ArrayList<Bip44Account>();
       _state = State.READY;
       _accountEventManager = new AccountEventManager();
       _observers = new LinkedList<Observer>();
       _synchronizeTransactionHistory = true;
+      _syncStatistics = new SyncStatistics();
       loadAccounts();
    }
 
@@ -247,6 +255,7 @@ public class WalletManager {
          SingleAddressAccount singleAddressAccount = (SingleAddressAccount) account;
          singleAddressAccount.forgetPrivateKey(cipher);
          account.setEventHandler(null);
+         account.setAddressIndex(null);
          _backing.deleteSingleAddressAccountContext(id);
          _allAccounts.remove(id);
       }
@@ -263,6 +272,65 @@ public class WalletManager {
       _synchronizeTransactionHistory = false;
    }
 
+   /**
+    * Enable or disable delta synchronization of unspent outputs.
+    * <p/>
+    * With delta synchronization accounts only fetch the unspent outputs that changed since their last
+    * synchronization instead of the full set. The first synchronization of an account is always a full one, and
+    * accounts fall back to a full synchronization if the server fails to deliver a delta. Only enable this for
+    * servers that support it.
+    */
+   public void setDeltaSyncEnabled(boolean enabled) {
+      synchronized (_allAccounts) {
+         _deltaSyncEnabled = enabled;
+         for (AbstractAccount account : _allAccounts.values()) {
+            account.setDeltaSyncEnabled(enabled);
+         }
+      }
+   }
+
+   /**
+    * Enable or disable verification of the input scripts of confirmed transactions received from the server.
+    * <p/>
+    * Accounts verify the signatures of received transactions against the parent outputs they spend and drop the
+    * transactions that are invalid. Transactions with scripts that cannot be executed locally are kept. Unconfirmed
+    * transactions are always verified, as they are few and nothing else vouches for them. Verifying confirmed ones as
+    * well is disabled by default, as checking signatures takes considerable CPU time when discovering an account
+    * with a long history.
+    */
+   public void setConfirmedScriptVerificationEnabled(boolean enabled) {
+      synchronized (_allAccounts) {
+         _confirmedScriptVerificationEnabled = enabled;
+         for (AbstractAccount account : _allAccounts.values()) {
+            account.setConfirmedScriptVerificationEnabled(enabled);
+         }
+      }
+   }
+
+   /**
+    * Verify the confirmations of transactions against a chain of block headers, which is kept in sync with the
+    * server on every synchronization.
+    * <p/>
+    * Transactions the server reports as confirmed but whose inclusion in a block cannot be proven against the headers
+    * are shown without confirmations. Pass null to trust the confirmations reported by the server, which is the
+    * default.
+    */
+   public void setHeaderChain(HeaderChain headerChain) {
+      synchronized (_allAccounts) {
+         _spvVerifier = headerChain == null ? null : new SpvVerifier(headerChain, _wapi);
+         for (AbstractAccount account : _allAccounts.values()) {
+            account.setSpvVerifier(_spvVerifier);
+         }
+      }
+   }
+
+   /**
+    * Get the statistics of how the accounts of this wallet manager synchronized their unspent outputs
+    */
+   public SyncStatistics getSyncStatistics() {
+      return _syncStatistics;
+   }
+
    /**
     * Get the IDs of the accounts managed by the wallet manager
     *
@@ -409,13 +477,12 @@ public class WalletManager {
     * @param address the address to query for
     * @return the account UUID if found.
     */
-   public synchronized Optional<UUID> getAccountByAddress(Address address) {
-      for (AbstractAccount account : _allAccounts.values()) {
-         if (account.isMine(address)) {
-            return Optional.of(account.getId());
-         }
+   public Optional<UUID> getAccountByAddress(Address address) {
+      List<AbstractAccount> accounts = _addressIndex.getAccounts(address);
+      if (accounts.isEmpty()) {
+         return Optional.absent();
       }
-      return Optional.absent();
+      return Optional.of(accounts.get(0).getId());
    }
 
    /**
@@ -424,9 +491,9 @@ public class WalletManager {
     * @param address the address to query for
     * @return true if any account in the wallet manager has the private key for the specified address
     */
-   public synchronized boolean hasPrivateKeyForAddress(Address address) {
-      for (AbstractAccount account : _allAccounts.values()) {
-         if (account.isMine(address) && account.canSpend()) {
+   public boolean hasPrivateKeyForAddress(Address address) {
+      for (AbstractAccount account : _addressIndex.getAccounts(address)) {
+         if (account.canSpend()) {
             return true;
          }
       }
@@ -478,6 +545,11 @@ public class WalletManager {
    public void addAccount(AbstractAccount account) {
       synchronized (_allAccounts) {
          account.setEventHandler(_accountEventManager);
+         account.setSyncStatistics(_syncStatistics);
+         account.setDeltaSyncEnabled(_deltaSyncEnabled);
+         account.setConfirmedScriptVerificationEnabled(_confirmedScriptVerificationEnabled);
+         account.setAddressIndex(_addressIndex);
+         account.setSpvVerifier(_spvVerifier);
          _allAccounts.put(account.getId(), account);
          _logger.logInfo("Account Added: " + account.getId());
       }
@@ -533,6 +605,25 @@ public class WalletManager {
                return false;
             }
          }
+         return verifyConfirmations();
+      }
+
+      private boolean verifyConfirmations() {
+         SpvVerifier verifier = _spvVerifier;
+         if (verifier == null) {
+            return true;
+         }
+         if (!verifier.synchronizeHeaders()) {
+            return false;
+         }
+         for (AbstractAccount account : _allAccounts.values()) {
+            if (account.isArchived()) {
+               continue;
+            }
+            if (!account.verifyConfirmations(verifier)) {
+               return false;
+            }
+         }
          return true;
       }
 
@@ -648,6 +739,7 @@ public class WalletManager {
       synchronized (_allAccounts) {
          _bip44Accounts.remove(last);
          _allAccounts.remove(last.getId());
+         ((AbstractAccount) last).setAddressIndex(null);
          _backing.deleteBip44AccountContext(last.getId());
          return true;
       }
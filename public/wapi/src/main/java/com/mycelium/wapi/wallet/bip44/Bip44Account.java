@@ -16,8 +16,6 @@
 
 package com.mycelium.wapi.wallet.bip44;
 
-import com.google.common.collect.BiMap;
-import com.google.common.collect.HashBiMap;
 import com.mrd.bitlib.crypto.InMemoryPrivateKey;
 import com.mrd.bitlib.crypto.PublicKey;
 import com.mrd.bitlib.model.*;
@@ -47,12 +45,13 @@ public class Bip44Account extends AbstractAccount implements ExportableAccount {
    private static final int EXTERNAL_MINIMAL_ADDRESS_LOOK_AHEAD_LENGTH = 1;
    private static final int INTERNAL_MINIMAL_ADDRESS_LOOK_AHEAD_LENGTH = 1;
    private static final long FORCED_DISCOVERY_INTERVAL_MS = 1000 * 60 * 60 * 24;
+   private static final int DISCOVERY_FETCH_BATCH_SIZE = 50;
 
    protected Bip44AccountBacking _backing;
    protected Bip44AccountContext _context;
    protected Bip44AccountKeyManager _keyManager;
-   protected BiMap<Address, Integer> _externalAddresses;
-   protected BiMap<Address, Integer> _internalAddresses;
+   protected Bip44AddressIndex _externalAddresses;
+   protected Bip44AddressIndex _internalAddresses;
    private Address _currentReceivingAddress;
    protected volatile boolean _isSynchronizing;
 
@@ -72,8 +71,10 @@ public class Bip44Account extends AbstractAccount implements ExportableAccount {
    }
 
    protected void initAddressCache() {
-      _externalAddresses = HashBiMap.create();
-      _internalAddresses = HashBiMap.create();
+      // Only load the address hashes, the addresses get indexed on demand
+      byte version = (byte) (_network.getStandardAddressHeader() & 0xFF);
+      _externalAddresses = new Bip44AddressIndex(version, _keyManager.loadAddressHashes(false));
+      _internalAddresses = new Bip44AddressIndex(version, _keyManager.loadAddressHashes(true));
    }
 
    @Override
@@ -127,10 +128,12 @@ public class Bip44Account extends AbstractAccount implements ExportableAccount {
 
    private void clearInternalStateInt(boolean isArchived) {
       _backing.clear();
+      forgetSyncedHeight();
       _context = new Bip44AccountContext(_context.getId(), _context.getAccountIndex(), isArchived);
       _context.persist(_backing);
       _externalAddresses.clear();
       _internalAddresses.clear();
+      unindexAddresses();
       _currentReceivingAddress = null;
       _cachedBalance = null;
       if (isActive()) {
@@ -163,7 +166,7 @@ public class Bip44Account extends AbstractAccount implements ExportableAccount {
       // The current receiving address is the next external address just above
       // the last
       // external address with activity
-      Address receivingAddress = _externalAddresses.inverse().get(_context.getLastExternalIndexWithActivity() + 1);
+      Address receivingAddress = _externalAddresses.get(_context.getLastExternalIndexWithActivity() + 1);
       if (receivingAddress != null && !receivingAddress.equals(_currentReceivingAddress)) {
          _currentReceivingAddress = receivingAddress;
          postEvent(Event.RECEIVING_ADDRESS_CHANGED);
@@ -172,7 +175,7 @@ public class Bip44Account extends AbstractAccount implements ExportableAccount {
 
    protected void ensureAddressIndexes(boolean isChangeChain, boolean full_look_ahead) {
       int index;
-      BiMap<Address, Integer> addressMap;
+      Bip44AddressIndex addressIndex;
       if (isChangeChain) {
          index = _context.getLastInternalIndexWithActivity();
          if (full_look_ahead) {
@@ -180,7 +183,7 @@ public class Bip44Account extends AbstractAccount implements ExportableAccount {
          } else {
             index += INTERNAL_MINIMAL_ADDRESS_LOOK_AHEAD_LENGTH;
          }
-         addressMap = _internalAddresses;
+         addressIndex = _internalAddresses;
       } else {
          index = _context.getLastExternalIndexWithActivity();
          if (full_look_ahead) {
@@ -188,14 +191,26 @@ public class Bip44Account extends AbstractAccount implements ExportableAccount {
          } else {
             index += +EXTERNAL_MINIMAL_ADDRESS_LOOK_AHEAD_LENGTH;
          }
-         addressMap = _externalAddresses;
+         addressIndex = _externalAddresses;
       }
-      while (index >= 0) {
-         if (addressMap.inverse().containsKey(index)) {
-            return;
+      int previousSize = addressIndex.size();
+      boolean derived = false;
+      while (addressIndex.size() <= index) {
+         if (!addressIndex.extend()) {
+            addressIndex.add(_keyManager.getAddress(isChangeChain, addressIndex.size()));
+            derived = true;
          }
-         addressMap.put(_keyManager.getAddress(isChangeChain, index), index);
-         index--;
+         if (isAddressIndexed()) {
+            indexAddress(addressIndex.get(addressIndex.size() - 1));
+         }
+      }
+      if (derived) {
+         _keyManager.storeAddressHashes(isChangeChain, addressIndex.getKnownHashes());
+      }
+      if (previousSize != 0 && addressIndex.size() != previousSize) {
+         // Stored transactions may involve the new addresses. Filling the
+         // empty index only restores addresses that were known already.
+         invalidateTransactionSummaries();
       }
    }
 
@@ -259,11 +274,11 @@ public class Bip44Account extends AbstractAccount implements ExportableAccount {
       // Make look ahead address list
       List<Address> lookAhead = new ArrayList<Address>(EXTERNAL_FULL_ADDRESS_LOOK_AHEAD_LENGTH + INTERNAL_FULL_ADDRESS_LOOK_AHEAD_LENGTH);
       for (int i = 0; i < EXTERNAL_FULL_ADDRESS_LOOK_AHEAD_LENGTH; i++) {
-         Address externalAddress = _externalAddresses.inverse().get(_context.getLastExternalIndexWithActivity() + 1 + i);
+         Address externalAddress = _externalAddresses.get(_context.getLastExternalIndexWithActivity() + 1 + i);
          if (externalAddress != null) lookAhead.add(externalAddress);
       }
       for (int i = 0; i < INTERNAL_FULL_ADDRESS_LOOK_AHEAD_LENGTH; i++) {
-         lookAhead.add(_internalAddresses.inverse().get(_context.getLastInternalIndexWithActivity() + 1 + i));
+         lookAhead.add(_internalAddresses.get(_context.getLastInternalIndexWithActivity() + 1 + i));
       }
       // Do look ahead query
       List<Sha256Hash> ids = _wapi.queryTransactionInventory(
@@ -275,23 +290,58 @@ public class Bip44Account extends AbstractAccount implements ExportableAccount {
       int lastExternalIndex = _context.getLastExternalIndexWithActivity();
       int lastInternalIndex = _context.getLastInternalIndexWithActivity();
 
-      Collection<TransactionEx> transactions = _wapi.getTransactions(new GetTransactionsRequest(Wapi.VERSION, ids))
-            .getResult().transactions;
-      handleNewExternalTransactions(transactions);
+      // Transactions are stored along with their verified parent outputs, so
+      // the ones we already have, for instance from a discovery that got
+      // interrupted, only need to be looked at again
+      List<Sha256Hash> toFetch = new ArrayList<Sha256Hash>(ids.size());
+      for (Sha256Hash id : ids) {
+         TransactionEx tex = _backing.getTransaction(id);
+         Transaction t = TransactionEx.toTransaction(tex);
+         if (t == null) {
+            toFetch.add(id);
+         } else {
+            onNewTransaction(tex, t);
+         }
+      }
+
+      // Fetch the rest in batches. Each batch is stored, so little is lost if
+      // the connection drops or the app gets killed. The indexes must not move
+      // past this window until all of it is stored though, as the next
+      // discovery has to query it again to find what is missing.
+      boolean windowStored = false;
+      try {
+         for (int i = 0; i < toFetch.size(); i += DISCOVERY_FETCH_BATCH_SIZE) {
+            List<Sha256Hash> batch = new ArrayList<Sha256Hash>(toFetch.subList(i,
+                  Math.min(toFetch.size(), i + DISCOVERY_FETCH_BATCH_SIZE)));
+            Collection<TransactionEx> transactions = _wapi.getTransactions(new GetTransactionsRequest(Wapi.VERSION, batch))
+                  .getResult().transactions;
+            handleNewExternalTransactions(transactions);
+         }
+         windowStored = true;
+      } finally {
+         if (!windowStored) {
+            _context.setLastExternalIndexWithActivity(lastExternalIndex);
+            _context.setLastInternalIndexWithActivity(lastInternalIndex);
+         }
+      }
+      _context.persistIfNecessary(_backing);
+
       // Return true if the last external or internal index has changed
       return lastExternalIndex != _context.getLastExternalIndexWithActivity() || lastInternalIndex != _context.getLastInternalIndexWithActivity();
    }
 
    private boolean updateUnspentOutputs() {
       // Get the list of addresses to monitor
-      Collection<Address> combined = new ArrayList<Address>(_externalAddresses.keySet().size()
+      Collection<Address> combined = new ArrayList<Address>(_externalAddresses.size()
             + _context.getLastInternalIndexWithActivity() - _context.getFirstMonitoredInternalIndex() + 1);
       // Add all external addresses
-      combined.addAll(_externalAddresses.keySet());
+      for (int i = 0; i < _externalAddresses.size(); i++) {
+         combined.add(_externalAddresses.get(i));
+      }
 
       // Add the change addresses we monitor
-      for (int i = _context.getFirstMonitoredInternalIndex(); i < _internalAddresses.keySet().size(); i++) {
-         combined.add(_internalAddresses.inverse().get(i));
+      for (int i = _context.getFirstMonitoredInternalIndex(); i < _internalAddresses.size(); i++) {
+         combined.add(_internalAddresses.get(i));
       }
 
       if (!synchronizeUnspentOutputs(combined)) {
@@ -320,8 +370,8 @@ public class Bip44Account extends AbstractAccount implements ExportableAccount {
             continue;
          }
          Address address = outputScript.getAddress(_network);
-         Integer index = _internalAddresses.get(address);
-         if (index != null) {
+         int index = _internalAddresses.indexOf(address);
+         if (index != -1) {
             minInternalIndex = Math.min(minInternalIndex, index);
          }
       }
@@ -341,7 +391,7 @@ public class Bip44Account extends AbstractAccount implements ExportableAccount {
 
    protected Address getChangeAddress() {
       // Get the next internal address just above the last address with activity
-      return _internalAddresses.inverse().get(_context.getLastInternalIndexWithActivity() + 1);
+      return _internalAddresses.get(_context.getLastInternalIndexWithActivity() + 1);
    }
 
    public Address getReceivingAddress() {
@@ -355,17 +405,15 @@ public class Bip44Account extends AbstractAccount implements ExportableAccount {
       List<Address> addresses = new ArrayList<Address>();
 
       //get all used external plus the next unused
-      BiMap<Integer, Address> external = _externalAddresses.inverse();
-      Integer externalIndex = _context.getLastExternalIndexWithActivity() + 1;
-      for (Integer i = 0; i <= externalIndex; i++) {
-         addresses.add(external.get(i));
+      int externalIndex = _context.getLastExternalIndexWithActivity() + 1;
+      for (int i = 0; i <= externalIndex; i++) {
+         addresses.add(_externalAddresses.get(i));
       }
 
       //get all used internal
-      BiMap<Integer, Address> internal = _internalAddresses.inverse();
-      Integer internalIndex = _context.getLastInternalIndexWithActivity();
-      for (Integer i = 0; i <= internalIndex; i++) {
-         addresses.add(internal.get(i));
+      int internalIndex = _context.getLastInternalIndexWithActivity();
+      for (int i = 0; i <= internalIndex; i++) {
+         addresses.add(_internalAddresses.get(i));
       }
 
       return addresses;
@@ -373,7 +421,19 @@ public class Bip44Account extends AbstractAccount implements ExportableAccount {
 
    @Override
    protected boolean isMine(Address address) {
-      return _internalAddresses.containsKey(address) || _externalAddresses.containsKey(address);
+      return _internalAddresses.contains(address) || _externalAddresses.contains(address);
+   }
+
+   @Override
+   protected Collection<Address> getIndexedAddresses() {
+      List<Address> addresses = new ArrayList<Address>(_externalAddresses.size() + _internalAddresses.size());
+      for (int i = 0; i < _externalAddresses.size(); i++) {
+         addresses.add(_externalAddresses.get(i));
+      }
+      for (int i = 0; i < _internalAddresses.size(); i++) {
+         addresses.add(_internalAddresses.get(i));
+      }
+      return addresses;
    }
 
    @Override
@@ -394,8 +454,8 @@ public class Bip44Account extends AbstractAccount implements ExportableAccount {
       for (int i = 0; i < t.outputs.length; i++) {
          TransactionOutput out = t.outputs[i];
          Address receivingAddress = out.script.getAddress(_network);
-         Integer externalIndex = _externalAddresses.get(receivingAddress);
-         if (externalIndex != null) {
+         int externalIndex = _externalAddresses.indexOf(receivingAddress);
+         if (externalIndex != -1) {
             updateLastExternalIndex(externalIndex);
          } else {
             updateLastInternalIndex(receivingAddress);
@@ -412,8 +472,8 @@ public class Bip44Account extends AbstractAccount implements ExportableAccount {
    }
 
    protected void updateLastInternalIndex(Address receivingAddress) {
-      Integer internalIndex = _internalAddresses.get(receivingAddress);
-      if (internalIndex != null) {
+      int internalIndex = _internalAddresses.indexOf(receivingAddress);
+      if (internalIndex != -1) {
          // Sends coins to an internal address, update internal max index
          // if necessary
          _context.setLastInternalIndexWithActivity(Math.max(_context.getLastInternalIndexWithActivity(),
@@ -424,12 +484,12 @@ public class Bip44Account extends AbstractAccount implements ExportableAccount {
    @Override
    public InMemoryPrivateKey getPrivateKeyForAddress(Address address, KeyCipher cipher) throws InvalidKeyCipher {
       boolean isChange = false;
-      Integer index = _externalAddresses.get(address);
-      if (index == null) {
-         index = _internalAddresses.get(address);
+      int index = _externalAddresses.indexOf(address);
+      if (index == -1) {
+         index = _internalAddresses.indexOf(address);
          isChange = true;
       }
-      if (index == null) {
+      if (index == -1) {
          return null;
       }
       return _keyManager.getPrivateKey(isChange, index, cipher);
@@ -438,12 +498,12 @@ public class Bip44Account extends AbstractAccount implements ExportableAccount {
    @Override
    protected PublicKey getPublicKeyForAddress(Address address) {
       boolean isChange = false;
-      Integer index = _externalAddresses.get(address);
-      if (index == null) {
-         index = _internalAddresses.get(address);
+      int index = _externalAddresses.indexOf(address);
+      if (index == -1) {
+         index = _internalAddresses.indexOf(address);
          isChange = true;
       }
-      if (index == null) {
+      if (index == -1) {
          return null;
       }
       return _keyManager.getPublicKey(isChange, index);
@@ -28,6 +28,8 @@ import com.mrd.bitlib.util.ByteWriter;
 import com.mycelium.wapi.wallet.KeyCipher;
 import com.mycelium.wapi.wallet.SecureKeyValueStore;
 
+import java.util.Arrays;
+import java.util.List;
 import java.util.UUID;
 
 /**
@@ -42,6 +44,9 @@ import java.util.UUID;
  * <p/>
  * Addresses are calculated from the appropriate public key on demand once, and then stored in plain text for fast
  * retrieval next time they are requested.
+ * <p/>
+ * Additionally the hash160s of all addresses of a chain can be stored as one plain text value, which allows loading
+ * the address index of a chain with a single read.
  */
 public class Bip44AccountKeyManager {
 
@@ -62,20 +67,23 @@ public class Bip44AccountKeyManager {
       HdKeyNode bip44Root = bip32Root.createChildNode(BIP44_PURPOSE);
       HdKeyNode coinTypeRoot = bip44Root.createChildNode(network.isProdnet() ? BIP44_PRODNET_COIN_TYPE : BIP44_TESTNET_COIN_TYPE);
 
-      // Create the account root. Store the private node encrypted and the public node in plain text
+      // Create the account root and store the private node encrypted
       HdKeyNode accountRoot = coinTypeRoot.createChildNode(accountIndex | 0x80000000);
       secureKeyValueStore.encryptAndStoreValue(getAccountNodeId(network, accountIndex), accountRoot.toCustomByteFormat(), cipher);
-      secureKeyValueStore.storePlaintextValue(getAccountNodeId(network, accountIndex), accountRoot.getPublicNode().toCustomByteFormat());
 
-      // Create the external chain root. Store the private node encrypted and the public node in plain text
+      // Create the external chain root and store the private node encrypted
       HdKeyNode externalChainRoot = accountRoot.createChildNode(0);
       secureKeyValueStore.encryptAndStoreValue(getChainNodeId(network, accountIndex, false), externalChainRoot.toCustomByteFormat(), cipher);
-      secureKeyValueStore.storePlaintextValue(getChainNodeId(network, accountIndex, false), externalChainRoot.getPublicNode().toCustomByteFormat());
 
-      // Create the change chain root. Store the private node encrypted and the public node in plain text
+      // Create the change chain root and store the private node encrypted
       HdKeyNode changeChainRoot = accountRoot.createChildNode(1);
       secureKeyValueStore.encryptAndStoreValue(getChainNodeId(network, accountIndex, true), changeChainRoot.toCustomByteFormat(), cipher);
-      secureKeyValueStore.storePlaintextValue(getChainNodeId(network, accountIndex, true), changeChainRoot.getPublicNode().toCustomByteFormat());
+
+      // Store the three public nodes in one go
+      secureKeyValueStore.storePlaintextValues(getPublicRootIds(network, accountIndex), Arrays.asList(
+            accountRoot.getPublicNode().toCustomByteFormat(),
+            externalChainRoot.getPublicNode().toCustomByteFormat(),
+            changeChainRoot.getPublicNode().toCustomByteFormat()));
       return new Bip44AccountKeyManager(accountIndex, network, secureKeyValueStore);
    }
 
@@ -92,17 +100,23 @@ public class Bip44AccountKeyManager {
 
       // Load the external and internal public nodes
       try {
-         _publicAccountRoot = HdKeyNode.fromCustomByteformat(secureKeyValueStore.getPlaintextValue(getAccountNodeId(network, accountIndex)));
+         List<byte[]> publicRoots = secureKeyValueStore.getPlaintextValues(getPublicRootIds(network, accountIndex));
+         _publicAccountRoot = HdKeyNode.fromCustomByteformat(publicRoots.get(0));
          Preconditions.checkState(!_publicAccountRoot.isPrivateHdKeyNode());
-         _publicExternalChainRoot = HdKeyNode.fromCustomByteformat(secureKeyValueStore.getPlaintextValue(getChainNodeId(network, accountIndex, false)));
+         _publicExternalChainRoot = HdKeyNode.fromCustomByteformat(publicRoots.get(1));
          Preconditions.checkState(!_publicExternalChainRoot.isPrivateHdKeyNode());
-         _publicChangeChainRoot = HdKeyNode.fromCustomByteformat(secureKeyValueStore.getPlaintextValue(getChainNodeId(network, accountIndex, true)));
+         _publicChangeChainRoot = HdKeyNode.fromCustomByteformat(publicRoots.get(2));
          Preconditions.checkState(!_publicChangeChainRoot.isPrivateHdKeyNode());
       } catch (ByteReader.InsufficientBytesException e) {
          throw new RuntimeException(e);
       }
    }
 
+   private static List<byte[]> getPublicRootIds(NetworkParameters network, int accountIndex) {
+      return Arrays.asList(getAccountNodeId(network, accountIndex), getChainNodeId(network, accountIndex, false),
+            getChainNodeId(network, accountIndex, true));
+   }
+
    public UUID getAccountId() {
       // Create a UUID from the byte indexes 8-15 and 16-23 of the account public key
       byte[] publicKeyBytes = _publicAccountRoot.getPublicKey().getPublicKeyBytes();
@@ -169,6 +183,22 @@ public class Bip44AccountKeyManager {
       return address;
    }
 
+   /**
+    * Load the concatenated hash160s of the chain addresses stored with {@link #storeAddressHashes}
+    *
+    * @return the hash160s or null if none were stored
+    */
+   public byte[] loadAddressHashes(boolean isChangeChain) {
+      return _secureKeyValueStore.getPlaintextValue(getAddressHashesId(_network, _accountIndex, isChangeChain));
+   }
+
+   /**
+    * Store the concatenated hash160s of the addresses of a chain, starting at index 0
+    */
+   public void storeAddressHashes(boolean isChangeChain, byte[] hashes) {
+      _secureKeyValueStore.storePlaintextValue(getAddressHashesId(_network, _accountIndex, isChangeChain), hashes);
+   }
+
    protected static byte[] getAccountNodeId(NetworkParameters network, int accountIndex) {
       // Create a compact unique account ID
       byte[] id = new byte[1 + 1 + 4];
@@ -188,6 +218,17 @@ public class Bip44AccountKeyManager {
       return id;
    }
 
+   private static byte[] getAddressHashesId(NetworkParameters network, int accountIndex, boolean isChangeChain) {
+      // Create a compact unique ID for the address hashes of a chain
+      byte[] id = new byte[1 + 1 + 4 + 1 + 1];
+      id[0] = 44; // BIP44
+      id[1] = (byte) (network.isProdnet() ? 0 : 1); // network
+      BitUtils.uint32ToByteArrayLE(accountIndex, id, 2); // account index
+      id[6] = (byte) (isChangeChain ? 1 : 0); // external chain or change chain
+      id[7] = 2; // address hashes
+      return id;
+   }
+
    private static byte[] getLeafNodeId(NetworkParameters network, int accountIndex, boolean isChangeChain, int index, boolean isHdNode) {
       // Create a compact unique address or HD node ID
       byte[] id = new byte[1 + 1 + 4 + 1 + 4 + 1];
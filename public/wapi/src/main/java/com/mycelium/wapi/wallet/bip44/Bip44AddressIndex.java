@@ -0,0 +1,215 @@
+/*
+ * Copyright 2013, 2014 Megion Research & Development GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.mycelium.wapi.wallet.bip44;
+
+import com.google.common.base.Preconditions;
+import com.mrd.bitlib.model.Address;
+import com.mrd.bitlib.util.BitUtils;
+
+import java.util.Arrays;
+
+/**
+ * Compact index of the addresses of one BIP44 chain, which can tell the
+ * address at a chain index and the chain index of an address.
+ * <p/>
+ * The address with chain index i is stored as its 20 byte hash160 at offset
+ * 20 * i of a flat byte array, and an open addressing table of ints maps
+ * hash160s to chain indexes. Address objects are only created when asked for,
+ * and a lookup does not allocate. The indexed addresses always cover the chain
+ * indexes 0 to size() - 1.
+ * <p/>
+ * Besides the indexed addresses the index remembers addresses which were
+ * known before, see {@link #clear()} and {@link #extend()}, so that they do
+ * not have to be derived again.
+ * <p/>
+ * There may be one writer, and {@link #indexOf(Address)} and
+ * {@link #contains(Address)} may be called concurrently with it. Grown arrays
+ * are filled before they are published, so a concurrent lookup may at worst
+ * miss the address being added or cleared.
+ */
+public class Bip44AddressIndex {
+   private static final int HASH_LENGTH = 20;
+   private static final int MIN_CAPACITY = 16;
+
+   private final byte _version;
+   private volatile byte[] _hashes;
+   private int _known;
+   private int _size;
+   private volatile int[] _table;
+
+   /**
+    * @param version     the version byte of the addresses of this chain
+    * @param knownHashes the concatenated hash160s of the addresses known from
+    *                    before, as returned by {@link #getKnownHashes()}, may
+    *                    be null
+    */
+   public Bip44AddressIndex(byte version, byte[] knownHashes) {
+      _version = version;
+      if (knownHashes == null || knownHashes.length % HASH_LENGTH != 0) {
+         knownHashes = new byte[0];
+      }
+      _known = knownHashes.length / HASH_LENGTH;
+      _hashes = new byte[Math.max(MIN_CAPACITY, _known) * HASH_LENGTH];
+      System.arraycopy(knownHashes, 0, _hashes, 0, knownHashes.length);
+      _table = allocateTable(_hashes.length / HASH_LENGTH);
+   }
+
+   private static int[] allocateTable(int capacity) {
+      // Keep the load factor at or below 0.5
+      int tableSize = MIN_CAPACITY;
+      while (tableSize < capacity * 2) {
+         tableSize <<= 1;
+      }
+      return new int[tableSize];
+   }
+
+   /**
+    * Get the number of indexed addresses
+    */
+   public int size() {
+      return _size;
+   }
+
+   /**
+    * Index the next address if it is known from before
+    *
+    * @return false if the next address is not known and has to be added with
+    *         {@link #add(Address)}
+    */
+   public boolean extend() {
+      if (_size >= _known) {
+         return false;
+      }
+      insert(_size++);
+      return true;
+   }
+
+   /**
+    * Add the address with the chain index size()
+    */
+   public void add(Address address) {
+      byte[] bytes = address.getAllAddressBytes();
+      Preconditions.checkArgument(bytes.length == HASH_LENGTH + 1 && bytes[0] == _version);
+      if (_size == _hashes.length / HASH_LENGTH) {
+         byte[] hashes = new byte[_hashes.length * 2];
+         System.arraycopy(_hashes, 0, hashes, 0, _known * HASH_LENGTH);
+         int[] table = allocateTable(hashes.length / HASH_LENGTH);
+         for (int i = 0; i < _size; i++) {
+            insert(table, hashes, i);
+         }
+         // Publish the hashes first, a reader seeing the new table must see them
+         _hashes = hashes;
+         _table = table;
+      }
+      System.arraycopy(bytes, 1, _hashes, _size * HASH_LENGTH, HASH_LENGTH);
+      insert(_size++);
+      _known = Math.max(_known, _size);
+   }
+
+   private void insert(int index) {
+      insert(_table, _hashes, index);
+   }
+
+   private static void insert(int[] table, byte[] hashes, int index) {
+      int mask = table.length - 1;
+      int slot = slotOf(hashes, index * HASH_LENGTH, mask);
+      while (table[slot] != 0) {
+         slot = (slot + 1) & mask;
+      }
+      table[slot] = index + 1;
+   }
+
+   private static int slotOf(byte[] bytes, int offset, int mask) {
+      // hash160s are uniformly distributed, any four bytes will do
+      return (int) BitUtils.uint32ToLong(bytes, offset) & mask;
+   }
+
+   /**
+    * Get the chain index of an address or -1 if it is not indexed
+    */
+   public int indexOf(Address address) {
+      if (address == null) {
+         return -1;
+      }
+      byte[] bytes = address.getAllAddressBytes();
+      if (bytes.length != HASH_LENGTH + 1 || bytes[0] != _version) {
+         return -1;
+      }
+      // Read the table before the hashes, see add()
+      int[] table = _table;
+      byte[] hashes = _hashes;
+      int mask = table.length - 1;
+      int slot = slotOf(bytes, 1, mask);
+      while (true) {
+         int entry = table[slot];
+         if (entry == 0) {
+            return -1;
+         }
+         if (matches(hashes, entry - 1, bytes)) {
+            return entry - 1;
+         }
+         slot = (slot + 1) & mask;
+      }
+   }
+
+   private static boolean matches(byte[] hashes, int index, byte[] addressBytes) {
+      int offset = index * HASH_LENGTH;
+      for (int i = 0; i < HASH_LENGTH; i++) {
+         if (hashes[offset + i] != addressBytes[i + 1]) {
+            return false;
+         }
+      }
+      return true;
+   }
+
+   public boolean contains(Address address) {
+      return indexOf(address) != -1;
+   }
+
+   /**
+    * Get the address with the specified chain index or null if it is not
+    * indexed
+    */
+   public Address get(int index) {
+      if (index < 0 || index >= _size) {
+         return null;
+      }
+      byte[] bytes = new byte[HASH_LENGTH + 1];
+      bytes[0] = _version;
+      System.arraycopy(_hashes, index * HASH_LENGTH, bytes, 1, HASH_LENGTH);
+      return new Address(bytes);
+   }
+
+   /**
+    * Remove all addresses from the index. They are still remembered and
+    * indexed again by {@link #extend()}.
+    */
+   public void clear() {
+      _size = 0;
+      Arrays.fill(_table, 0);
+   }
+
+   /**
+    * Get the concatenated hash160s of all known addresses, for persisting
+    */
+   public byte[] getKnownHashes() {
+      byte[] result = new byte[_known * HASH_LENGTH];
+      System.arraycopy(_hashes, 0, result, 0, result.length);
+      return result;
+   }
+}
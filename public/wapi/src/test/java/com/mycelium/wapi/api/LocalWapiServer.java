@@ -0,0 +1,531 @@
+package com.mycelium.wapi.api;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.mrd.bitlib.crypto.InMemoryPrivateKey;
+import com.mrd.bitlib.crypto.RandomSource;
+import com.mrd.bitlib.model.*;
+import com.mrd.bitlib.util.BitUtils;
+import com.mrd.bitlib.util.ByteWriter;
+import com.mrd.bitlib.util.HashUtils;
+import com.mrd.bitlib.util.Sha256Hash;
+import com.mycelium.wapi.api.WapiConst.Function;
+import com.mycelium.wapi.api.request.*;
+import com.mycelium.wapi.api.response.*;
+import com.mycelium.wapi.model.MerkleProof;
+import com.mycelium.wapi.model.TransactionEx;
+import com.mycelium.wapi.model.TransactionOutputEx;
+import com.mycelium.wapi.model.TransactionStatus;
+
+import java.io.IOException;
+import java.util.*;
+
+/**
+ * An in-process stand-in for the Wapi server which serves unspent outputs both in full and as deltas.
+ * <p/>
+ * Every output remembers the height at which it last changed state, -1 meaning it changed in the mempool. Requests
+ * and responses are sent through JSON like with the real server, which lets us count the bytes transferred.
+ * <p/>
+ * Block headers are mined on demand with a low difficulty, every block holding a unique coinbase and the
+ * transactions confirmed at its height.
+ */
+public class LocalWapiServer implements Wapi {
+
+   /**
+    * The lowest difficulty of the blocks, which lets about every second hash meet the target
+    */
+   public static final int PROOF_OF_WORK_LIMIT = 0x207fffff;
+   private static final int GENESIS_TIME = 1400000000;
+
+   private static class Entry {
+      final Address address;
+      final TransactionOutputEx output;
+      boolean removed;
+      int touchedHeight;
+
+      Entry(Address address, TransactionOutputEx output, boolean removed, int touchedHeight) {
+         this.address = address;
+         this.output = output;
+         this.removed = removed;
+         this.touchedHeight = touchedHeight;
+      }
+   }
+
+   private final ObjectMapper _objectMapper;
+   private final WapiTrafficStatistics _trafficStatistics = new WapiTrafficStatistics();
+   private final Map<OutPoint, Entry> _entries = new LinkedHashMap<OutPoint, Entry>();
+   private final Map<Sha256Hash, TransactionEx> _transactions = new HashMap<Sha256Hash, TransactionEx>();
+   private int _height;
+   // Blocks added to the height the server reports without having them
+   private int _heightInflation;
+   private int _deltaHorizon;
+   private long _nonce;
+   private int _getTransactionsCallsLeft = -1;
+   private int _transactionsServed;
+   // The transactions confirmed at a height, and the blocks mined so far
+   private final Map<Integer, List<Sha256Hash>> _confirmed = new HashMap<Integer, List<Sha256Hash>>();
+   private final List<Block> _blocks = new ArrayList<Block>();
+   private final List<List<Sha256Hash>> _blockTransactions = new ArrayList<List<Sha256Hash>>();
+   private long _blocksMined;
+   private final RandomSource _randomSource = new RandomSource() {
+      private final Random _random = new Random(1);
+
+      @Override
+      public void nextBytes(byte[] bytes) {
+         _random.nextBytes(bytes);
+      }
+   };
+
+   public LocalWapiServer(int height) {
+      _height = height;
+      _objectMapper = new ObjectMapper();
+      _objectMapper.configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+      _objectMapper.registerModule(new WapiJsonModule());
+   }
+
+   public int getHeight() {
+      return _height;
+   }
+
+   public WapiTrafficStatistics getTrafficStatistics() {
+      return _trafficStatistics;
+   }
+
+   /**
+    * Set the lowest height the server can serve deltas from, older requests get the full set
+    */
+   public void setDeltaHorizon(int height) {
+      _deltaHorizon = height;
+   }
+
+   /**
+    * Let the given number of getTransactions calls succeed and fail all after, -1 for no failures
+    */
+   public void setGetTransactionsCallsLeft(int calls) {
+      _getTransactionsCallsLeft = calls;
+   }
+
+   /**
+    * Get the number of transactions handed out by getTransactions
+    */
+   public int getTransactionsServed() {
+      return _transactionsServed;
+   }
+
+   /**
+    * Put an unconfirmed transaction paying to an address into the mempool
+    */
+   public OutPoint receive(Address address, long value) {
+      byte[] coinbaseScript = new byte[8];
+      BitUtils.uint64ToByteArrayLE(_nonce++, coinbaseScript, 0);
+      TransactionInput input = new TransactionInput(OutPoint.COINBASE_OUTPOINT, new ScriptInputCoinbase(coinbaseScript));
+      return add(new TransactionInput[]{input}, address, value);
+   }
+
+   /**
+    * Put an unconfirmed transaction paying the same value to each of the addresses into the mempool
+    */
+   public List<OutPoint> receive(List<Address> addresses, long value) {
+      byte[] coinbaseScript = new byte[8];
+      BitUtils.uint64ToByteArrayLE(_nonce++, coinbaseScript, 0);
+      TransactionInput input = new TransactionInput(OutPoint.COINBASE_OUTPOINT, new ScriptInputCoinbase(coinbaseScript));
+      return add(new TransactionInput[]{input}, addresses, value);
+   }
+
+   /**
+    * Put an unconfirmed transaction into the mempool which spends outputs and pays to an address
+    */
+   public OutPoint pay(List<OutPoint> from, Address address, long value) {
+      TransactionInput[] inputs = new TransactionInput[from.size()];
+      for (int i = 0; i < inputs.length; i++) {
+         inputs[i] = new TransactionInput(from.get(i), ScriptInput.EMPTY);
+         spend(from.get(i));
+      }
+      return add(inputs, address, value);
+   }
+
+   /**
+    * Put an unconfirmed transaction into the mempool which spends outputs with signatures made by a key and pays to
+    * an address
+    */
+   public OutPoint pay(List<OutPoint> from, InMemoryPrivateKey key, Address address, long value) {
+      TransactionInput[] inputs = new TransactionInput[from.size()];
+      for (int i = 0; i < inputs.length; i++) {
+         inputs[i] = new TransactionInput(from.get(i), ScriptInput.EMPTY);
+      }
+      TransactionVerifier verifier = new TransactionVerifier(createTransaction(inputs, address, value));
+      TransactionInput[] signed = new TransactionInput[inputs.length];
+      for (int i = 0; i < inputs.length; i++) {
+         byte[] fundingScript = _entries.get(from.get(i)).output.script;
+         Sha256Hash hash = verifier.getSignatureHash(i, fundingScript, TransactionVerifier.SIGHASH_ALL);
+         byte[] signature = key.makeStandardBitcoinSignature(hash, _randomSource);
+         signed[i] = new TransactionInput(from.get(i), new ScriptInputStandard(signature,
+               key.getPublicKey().getPublicKeyBytes()));
+         spend(from.get(i));
+      }
+      return add(signed, address, value);
+   }
+
+   private static Transaction createTransaction(TransactionInput[] inputs, Address address, long value) {
+      return createTransaction(inputs, Collections.singletonList(address), value);
+   }
+
+   private static Transaction createTransaction(TransactionInput[] inputs, List<Address> addresses, long value) {
+      TransactionOutput[] outputs = new TransactionOutput[addresses.size()];
+      for (int i = 0; i < outputs.length; i++) {
+         outputs[i] = new TransactionOutput(value, new ScriptOutputStandard(addresses.get(i).getTypeSpecificBytes()));
+      }
+      return new Transaction(1, inputs, outputs, 0);
+   }
+
+   private OutPoint add(TransactionInput[] inputs, Address address, long value) {
+      return add(inputs, Collections.singletonList(address), value).get(0);
+   }
+
+   private List<OutPoint> add(TransactionInput[] inputs, List<Address> addresses, long value) {
+      Transaction tx = createTransaction(inputs, addresses, value);
+      _transactions.put(tx.getHash(), new TransactionEx(tx.getHash(), -1, 0, tx.toBytes()));
+      List<OutPoint> outPoints = new ArrayList<OutPoint>(addresses.size());
+      for (int i = 0; i < tx.outputs.length; i++) {
+         OutPoint outPoint = new OutPoint(tx.getHash(), i);
+         _entries.put(outPoint, new Entry(addresses.get(i), new TransactionOutputEx(outPoint, -1, value,
+               tx.outputs[i].script.getScriptBytes(), tx.isCoinbase()), false, -1));
+         outPoints.add(outPoint);
+      }
+      return outPoints;
+   }
+
+   /**
+    * Serve the binary of another transaction when asked for a transaction, like a rogue server would
+    */
+   public void forge(Sha256Hash txid, Sha256Hash other) {
+      TransactionEx tex = _transactions.get(txid);
+      _transactions.put(txid, new TransactionEx(txid, tex.height, tex.time, _transactions.get(other).binary));
+   }
+
+   /**
+    * Spend an output by a transaction in the mempool
+    */
+   public void spend(OutPoint outPoint) {
+      Entry entry = _entries.get(outPoint);
+      entry.removed = true;
+      entry.touchedHeight = -1;
+   }
+
+   /**
+    * Drop the mempool transaction that created an output, like after a double spend
+    */
+   public void drop(OutPoint outPoint) {
+      Entry entry = _entries.get(outPoint);
+      if (entry.output.height == -1) {
+         entry.removed = true;
+         entry.touchedHeight = _height;
+      }
+   }
+
+   /**
+    * Mine a block with everything in the mempool
+    */
+   public void mineBlock() {
+      _height++;
+      List<Sha256Hash> confirmed = new ArrayList<Sha256Hash>();
+      _confirmed.put(_height, confirmed);
+      for (Map.Entry<OutPoint, Entry> mapEntry : _entries.entrySet()) {
+         Entry entry = mapEntry.getValue();
+         if (entry.touchedHeight != -1) {
+            continue;
+         }
+         if (entry.output.height == -1) {
+            mapEntry.setValue(withHeight(entry, _height));
+            if (!confirmed.contains(entry.output.outPoint.hash)) {
+               confirmed.add(entry.output.outPoint.hash);
+            }
+         } else {
+            entry.touchedHeight = _height;
+         }
+      }
+   }
+
+   /**
+    * Orphan the topmost blocks and return their transactions to the mempool
+    */
+   public void reorg(int depth) {
+      _height -= depth;
+      while (_blocks.size() > _height + 1) {
+         _blocks.remove(_blocks.size() - 1);
+         _blockTransactions.remove(_blockTransactions.size() - 1);
+      }
+      for (Map.Entry<OutPoint, Entry> mapEntry : _entries.entrySet()) {
+         Entry entry = mapEntry.getValue();
+         if (entry.touchedHeight <= _height) {
+            continue;
+         }
+         if (entry.output.height > _height) {
+            mapEntry.setValue(withHeight(entry, -1));
+         } else {
+            entry.touchedHeight = -1;
+         }
+      }
+   }
+
+   /**
+    * Claim that the transaction that created an output confirmed at a height without putting it in that block, like
+    * a rogue server would
+    */
+   public void fakeConfirmation(OutPoint outPoint, int height) {
+      Entry entry = _entries.get(outPoint);
+      _entries.put(outPoint, withHeight(entry, height));
+   }
+
+   /**
+    * Report a block chain height above the real one, like a rogue server would
+    */
+   public void inflateHeight(int blocks) {
+      _heightInflation = blocks;
+   }
+
+   /**
+    * Get the serialized header of the block at a height
+    */
+   public byte[] getHeader(int height) {
+      mineHeaders();
+      ByteWriter writer = new ByteWriter(Block.HEADER_SIZE);
+      _blocks.get(height).headerToByteWriter(writer);
+      return writer.toBytes();
+   }
+
+   private void mineHeaders() {
+      while (_blocks.size() <= _height) {
+         int height = _blocks.size();
+         // A unique coinbase makes the blocks mined after a reorg differ from the orphaned ones
+         byte[] coinbase = new byte[8];
+         BitUtils.uint64ToByteArrayLE(_blocksMined++, coinbase, 0);
+         List<Sha256Hash> txids = new ArrayList<Sha256Hash>();
+         txids.add(HashUtils.doubleSha256(coinbase).reverse());
+         if (_confirmed.containsKey(height)) {
+            txids.addAll(_confirmed.get(height));
+         }
+         Sha256Hash prevBlockHash = Sha256Hash.ZERO_HASH;
+         int bits = PROOF_OF_WORK_LIMIT;
+         if (height > 0) {
+            Block previous = _blocks.get(height - 1);
+            prevBlockHash = previous.getHash();
+            bits = previous.difficultyTarget;
+            if (height % HeaderChain.RETARGET_INTERVAL == 0) {
+               Block first = _blocks.get(height - HeaderChain.RETARGET_INTERVAL);
+               bits = HeaderChain.retarget(bits, previous.time - first.time, PROOF_OF_WORK_LIMIT);
+            }
+         }
+         Sha256Hash merkleRoot = MerkleTree.computeRoot(txids);
+         int time = GENESIS_TIME + height * 600;
+         Block block;
+         int nonce = 0;
+         do {
+            block = new Block(1, prevBlockHash, merkleRoot, time, bits, nonce++, new Transaction[0]);
+         } while (!block.hasValidProofOfWork());
+         _blocks.add(block);
+         _blockTransactions.add(txids);
+      }
+   }
+
+   private Entry withHeight(Entry entry, int height) {
+      TransactionOutputEx o = entry.output;
+      TransactionEx tex = _transactions.get(o.outPoint.hash);
+      _transactions.put(tex.txid, new TransactionEx(tex.txid, height, tex.time, tex.binary));
+      return new Entry(entry.address, new TransactionOutputEx(o.outPoint, height, o.value, o.script, o.isCoinBase),
+            entry.removed, height);
+   }
+
+   /**
+    * Get the outputs that are currently unspent for a set of addresses
+    */
+   public Set<OutPoint> getUnspent(Collection<Address> addresses) {
+      Set<OutPoint> unspent = new HashSet<OutPoint>();
+      for (Entry entry : _entries.values()) {
+         if (!entry.removed && addresses.contains(entry.address)) {
+            unspent.add(entry.output.outPoint);
+         }
+      }
+      return unspent;
+   }
+
+   private <T> WapiResponse<T> transfer(String function, Object request, T result,
+                                        TypeReference<WapiResponse<T>> typeReference) {
+      try {
+         byte[] requestBytes = _objectMapper.writeValueAsBytes(request);
+         byte[] responseBytes = _objectMapper.writeValueAsBytes(new WapiResponse<T>(result));
+         _trafficStatistics.record(function, requestBytes.length, responseBytes.length);
+         return _objectMapper.readValue(responseBytes, typeReference);
+      } catch (IOException e) {
+         throw new RuntimeException(e);
+      }
+   }
+
+   @Override
+   public WapiLogger getLogger() {
+      return new WapiLogger() {
+         @Override
+         public void logError(String message, Exception e) {
+            System.err.println(message);
+            System.err.println(e.toString());
+         }
+
+         @Override
+         public void logError(String message) {
+            System.err.println(message);
+         }
+
+         @Override
+         public void logInfo(String message) {
+         }
+      };
+   }
+
+   @Override
+   public WapiResponse<QueryUnspentOutputsResponse> queryUnspentOutputs(QueryUnspentOutputsRequest request) {
+      List<TransactionOutputEx> unspent = new ArrayList<TransactionOutputEx>();
+      for (Entry entry : _entries.values()) {
+         if (!entry.removed && request.addresses.contains(entry.address)) {
+            unspent.add(entry.output);
+         }
+      }
+      return transfer(Function.QUERY_UNSPENT_OUTPUTS, request, new QueryUnspentOutputsResponse(_height + _heightInflation, unspent),
+            new TypeReference<WapiResponse<QueryUnspentOutputsResponse>>() {
+            });
+   }
+
+   @Override
+   public WapiResponse<QueryUnspentOutputsDeltaResponse> queryUnspentOutputsDelta(QueryUnspentOutputsDeltaRequest request) {
+      boolean complete = request.sinceHeight < _deltaHorizon || request.sinceHeight > _height;
+      List<TransactionOutputEx> unspent = new ArrayList<TransactionOutputEx>();
+      List<OutPoint> removed = new ArrayList<OutPoint>();
+      for (Entry entry : _entries.values()) {
+         if (!request.addresses.contains(entry.address)) {
+            continue;
+         }
+         if (complete) {
+            if (!entry.removed) {
+               unspent.add(entry.output);
+            }
+         } else if (entry.touchedHeight == -1 || entry.touchedHeight > request.sinceHeight) {
+            if (entry.removed) {
+               removed.add(entry.output.outPoint);
+            } else {
+               unspent.add(entry.output);
+            }
+         }
+      }
+      return transfer(Function.QUERY_UNSPENT_OUTPUTS_DELTA, request,
+            new QueryUnspentOutputsDeltaResponse(_height + _heightInflation, complete, unspent, removed),
+            new TypeReference<WapiResponse<QueryUnspentOutputsDeltaResponse>>() {
+            });
+   }
+
+   @Override
+   public WapiResponse<QueryTransactionInventoryResponse> queryTransactionInventory(QueryTransactionInventoryRequest request) {
+      List<Sha256Hash> txIds = new ArrayList<Sha256Hash>();
+      for (Entry entry : _entries.values()) {
+         if (request.addresses.contains(entry.address) && txIds.size() < request.limit
+               && !txIds.contains(entry.output.outPoint.hash)) {
+            txIds.add(entry.output.outPoint.hash);
+         }
+      }
+      return transfer(Function.QUERY_TRANSACTION_INVENTORY, request, new QueryTransactionInventoryResponse(_height + _heightInflation, txIds),
+            new TypeReference<WapiResponse<QueryTransactionInventoryResponse>>() {
+            });
+   }
+
+   @Override
+   public WapiResponse<GetTransactionsResponse> getTransactions(GetTransactionsRequest request) {
+      if (_getTransactionsCallsLeft == 0) {
+         return new WapiResponse<GetTransactionsResponse>(ERROR_CODE_NO_SERVER_CONNECTION, null);
+      } else if (_getTransactionsCallsLeft > 0) {
+         _getTransactionsCallsLeft--;
+      }
+      List<TransactionEx> transactions = new ArrayList<TransactionEx>();
+      for (Sha256Hash txid : request.txIds) {
+         TransactionEx tex = _transactions.get(txid);
+         if (tex != null) {
+            transactions.add(tex);
+         }
+      }
+      _transactionsServed += transactions.size();
+      return transfer(Function.GET_TRANSACTIONS, request, new GetTransactionsResponse(transactions),
+            new TypeReference<WapiResponse<GetTransactionsResponse>>() {
+            });
+   }
+
+   @Override
+   public WapiResponse<BroadcastTransactionResponse> broadcastTransaction(BroadcastTransactionRequest request) {
+      return new WapiResponse<BroadcastTransactionResponse>(ERROR_CODE_INTERNAL_SERVER_ERROR, null);
+   }
+
+   @Override
+   public WapiResponse<CheckTransactionsResponse> checkTransactions(CheckTransactionsRequest request) {
+      List<TransactionStatus> statuses = new ArrayList<TransactionStatus>();
+      for (Sha256Hash txid : request.txIds) {
+         TransactionEx tex = _transactions.get(txid);
+         statuses.add(tex == null ? new TransactionStatus(txid, false, -1, 0)
+               : new TransactionStatus(txid, true, tex.height, tex.time));
+      }
+      return transfer(Function.CHECK_TRANSACTIONS, request, new CheckTransactionsResponse(statuses),
+            new TypeReference<WapiResponse<CheckTransactionsResponse>>() {
+            });
+   }
+
+   @Override
+   public WapiResponse<GetHeadersResponse> getHeaders(GetHeadersRequest request) {
+      mineHeaders();
+      int count = Math.max(0, Math.min(Math.min(request.count, MAX_HEADERS_LIMIT), _height - request.fromHeight + 1));
+      ByteWriter writer = new ByteWriter(count * Block.HEADER_SIZE);
+      for (int i = 0; i < count; i++) {
+         _blocks.get(request.fromHeight + i).headerToByteWriter(writer);
+      }
+      return transfer(Function.GET_HEADERS, request, new GetHeadersResponse(_height + _heightInflation, request.fromHeight,
+            writer.toBytes()), new TypeReference<WapiResponse<GetHeadersResponse>>() {
+      });
+   }
+
+   @Override
+   public WapiResponse<GetMerkleProofsResponse> getMerkleProofs(GetMerkleProofsRequest request) {
+      mineHeaders();
+      List<MerkleProof> proofs = new ArrayList<MerkleProof>();
+      for (Sha256Hash txid : request.txIds) {
+         TransactionEx tex = _transactions.get(txid);
+         // There is no block at a made up height
+         if (tex == null || tex.height == -1 || tex.height >= _blockTransactions.size()) {
+            continue;
+         }
+         List<Sha256Hash> txids = _blockTransactions.get(tex.height);
+         int index = txids.indexOf(txid);
+         if (index != -1) {
+            proofs.add(new MerkleProof(txid, tex.height, index, MerkleTree.getBranch(txids, index)));
+         }
+      }
+      return transfer(Function.GET_MERKLE_PROOFS, request, new GetMerkleProofsResponse(proofs),
+            new TypeReference<WapiResponse<GetMerkleProofsResponse>>() {
+            });
+   }
+
+   @Override
+   public WapiResponse<QueryExchangeRatesResponse> queryExchangeRates(QueryExchangeRatesRequest request) {
+      return new WapiResponse<QueryExchangeRatesResponse>(ERROR_CODE_INTERNAL_SERVER_ERROR, null);
+   }
+
+   @Override
+   public WapiResponse<PingResponse> ping() {
+      return new WapiResponse<PingResponse>(new PingResponse("local"));
+   }
+
+   @Override
+   public WapiResponse<ErrorCollectorResponse> collectError(ErrorCollectorRequest request) {
+      return new WapiResponse<ErrorCollectorResponse>(ERROR_CODE_INTERNAL_SERVER_ERROR, null);
+   }
+
+   @Override
+   public WapiResponse<VersionInfoResponse> getVersionInfo(VersionInfoRequest request) {
+      return new WapiResponse<VersionInfoResponse>(ERROR_CODE_INTERNAL_SERVER_ERROR, null);
+   }
+
+}
@@ -0,0 +1,117 @@
+package com.mycelium.wapi.wallet;
+
+import com.google.common.base.Optional;
+import com.mrd.bitlib.crypto.Bip39;
+import com.mrd.bitlib.crypto.InMemoryPrivateKey;
+import com.mrd.bitlib.crypto.RandomSource;
+import com.mrd.bitlib.model.Address;
+import com.mrd.bitlib.model.NetworkParameters;
+import com.mycelium.wapi.api.LocalWapiServer;
+import com.mycelium.wapi.wallet.bip44.Bip44Account;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+
+import static org.junit.Assert.*;
+
+public class AccountAddressIndexTest {
+
+   private static final NetworkParameters NETWORK = NetworkParameters.testNetwork;
+   private static final String MASTER_SEED_WORDS = "degree rain vendor coffee push math onion inside pyramid blush stick treat";
+
+   private static WalletManager createWalletManager() {
+      InMemoryWalletManagerBacking backing = new InMemoryWalletManagerBacking();
+      final Random random = new Random(1);
+      SecureKeyValueStore store = new SecureKeyValueStore(backing, new RandomSource() {
+         @Override
+         public void nextBytes(byte[] bytes) {
+            random.nextBytes(bytes);
+         }
+      });
+      return new WalletManager(store, backing, NETWORK, new LocalWapiServer(1000));
+   }
+
+   private static Address randomAddress(Random random) {
+      byte[] hash = new byte[20];
+      random.nextBytes(hash);
+      return Address.fromStandardBytes(hash, NETWORK);
+   }
+
+   @Test
+   public void singleAddressAccounts() throws KeyCipher.InvalidKeyCipher {
+      WalletManager manager = createWalletManager();
+      Random random = new Random(42);
+      List<Address> addresses = new ArrayList<Address>();
+      List<UUID> ids = new ArrayList<UUID>();
+      for (int i = 0; i < 60; i++) {
+         Address address = randomAddress(random);
+         addresses.add(address);
+         ids.add(manager.createSingleAddressAccount(address));
+      }
+      InMemoryPrivateKey key = new InMemoryPrivateKey(new RandomSource() {
+         @Override
+         public void nextBytes(byte[] bytes) {
+            new Random(7).nextBytes(bytes);
+         }
+      });
+      UUID spendingId = manager.createSingleAddressAccount(key, AesKeyCipher.defaultKeyCipher());
+      Address spendingAddress = key.getPublicKey().toAddress(NETWORK);
+
+      for (int i = 0; i < addresses.size(); i++) {
+         assertEquals(Optional.of(ids.get(i)), manager.getAccountByAddress(addresses.get(i)));
+         assertFalse(manager.hasPrivateKeyForAddress(addresses.get(i)));
+      }
+      assertEquals(Optional.of(spendingId), manager.getAccountByAddress(spendingAddress));
+      assertTrue(manager.hasPrivateKeyForAddress(spendingAddress));
+      for (int i = 0; i < 1000; i++) {
+         assertFalse(manager.isMyAddress(randomAddress(random)));
+      }
+
+      manager.deleteSingleAddressAccount(ids.get(10), AesKeyCipher.defaultKeyCipher());
+      assertFalse(manager.isMyAddress(addresses.get(10)));
+      assertEquals(Optional.of(ids.get(11)), manager.getAccountByAddress(addresses.get(11)));
+
+      // Archived single address accounts still own their address
+      manager.getAccount(ids.get(20)).archiveAccount();
+      assertEquals(Optional.of(ids.get(20)), manager.getAccountByAddress(addresses.get(20)));
+   }
+
+   @Test
+   public void bip44AccountsFollowTheirAddressRange() throws KeyCipher.InvalidKeyCipher {
+      WalletManager manager = createWalletManager();
+      KeyCipher cipher = AesKeyCipher.defaultKeyCipher();
+      manager.configureBip32MasterSeed(Bip39.generateSeedFromWordList(MASTER_SEED_WORDS.split(" "), ""), cipher);
+      UUID id = manager.createAdditionalBip44Account(cipher);
+      Bip44Account account = (Bip44Account) manager.getAccount(id);
+      Address receiving = account.getReceivingAddress();
+      assertEquals(Optional.of(id), manager.getAccountByAddress(receiving));
+      assertTrue(manager.hasPrivateKeyForAddress(receiving));
+
+      account.archiveAccount();
+      assertFalse(manager.isMyAddress(receiving));
+
+      account.activateAccount();
+      assertEquals(Optional.of(id), manager.getAccountByAddress(receiving));
+   }
+
+   @Test
+   public void growsAndRemovesEntries() {
+      WalletManager manager = createWalletManager();
+      AbstractAccount first = (AbstractAccount) manager.getAccount(manager.createSingleAddressAccount(
+            randomAddress(new Random(1))));
+      AccountAddressIndex index = new AccountAddressIndex();
+      int slot = index.register(first);
+      Random random = new Random(3);
+      for (int i = 0; i < 5000; i++) {
+         index.add(slot, randomAddress(random));
+      }
+      assertEquals(5000, index.size());
+      index.removeAll(slot);
+      assertEquals(0, index.size());
+      index.unregister(slot);
+      assertEquals(slot, index.register(first));
+   }
+}
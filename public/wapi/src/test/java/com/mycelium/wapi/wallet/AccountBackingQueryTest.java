@@ -0,0 +1,121 @@
+package com.mycelium.wapi.wallet;
+
+import com.mrd.bitlib.model.Address;
+import com.mrd.bitlib.model.NetworkParameters;
+import com.mrd.bitlib.model.OutPoint;
+import com.mrd.bitlib.util.Sha256Hash;
+import com.mycelium.wapi.model.TransactionEx;
+import com.mycelium.wapi.model.TransactionOutputEx;
+import com.mycelium.wapi.model.TransactionOutputValue;
+import com.mycelium.wapi.model.TransactionStatus;
+import com.mycelium.wapi.wallet.single.SingleAddressAccountContext;
+import org.junit.Ignore;
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.UUID;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class AccountBackingQueryTest {
+
+   private static final int CHAIN_HEIGHT = 10000;
+
+   private static Sha256Hash randomHash(Random random) {
+      byte[] bytes = new byte[Sha256Hash.HASH_LENGTH];
+      random.nextBytes(bytes);
+      return new Sha256Hash(bytes);
+   }
+
+   private static int randomHeight(Random random) {
+      return random.nextInt(20) == 0 ? -1 : CHAIN_HEIGHT - random.nextInt(CHAIN_HEIGHT);
+   }
+
+   private static AccountBacking createBacking(Random random, int count) {
+      InMemoryWalletManagerBacking walletBacking = new InMemoryWalletManagerBacking();
+      UUID id = UUID.randomUUID();
+      walletBacking.createSingleAddressAccountContext(new SingleAddressAccountContext(id,
+            Address.getNullAddress(NetworkParameters.testNetwork), false, 0));
+      AccountBacking backing = walletBacking.getSingleAddressAccountBacking(id);
+      byte[] script = new byte[25];
+      byte[] binary = new byte[250];
+      for (int i = 0; i < count; i++) {
+         backing.putUnspentOutput(new TransactionOutputEx(new OutPoint(randomHash(random), i & 3),
+               randomHeight(random), random.nextInt(100000000), script, false));
+         backing.putTransaction(new TransactionEx(randomHash(random), randomHeight(random), i, binary));
+      }
+      return backing;
+   }
+
+   @Test
+   public void valuesMatchUnspentOutputs() {
+      AccountBacking backing = createBacking(new Random(42), 500);
+      Map<OutPoint, TransactionOutputValue> values = new HashMap<OutPoint, TransactionOutputValue>();
+      for (TransactionOutputValue value : backing.getAllUnspentOutputValues()) {
+         values.put(value.outPoint, value);
+      }
+      assertEquals(500, values.size());
+      for (TransactionOutputEx output : backing.getAllUnspentOutputs()) {
+         TransactionOutputValue value = values.get(output.outPoint);
+         assertEquals(output.height, value.height);
+         assertEquals(output.value, value.value);
+      }
+   }
+
+   @Test
+   public void youngStatusesIncludeUnconfirmed() {
+      AccountBacking backing = createBacking(new Random(7), 2000);
+      Set<Sha256Hash> young = new HashSet<Sha256Hash>();
+      for (TransactionStatus status : backing.getYoungTransactionStatuses(5, CHAIN_HEIGHT)) {
+         assertTrue(status.found);
+         TransactionEx tex = backing.getTransaction(status.txid);
+         assertEquals(tex.height, status.height);
+         assertEquals(tex.time, status.time);
+         young.add(status.txid);
+      }
+      int unconfirmed = backing.getUnconfirmedTransactions().size();
+      assertTrue(unconfirmed > 0);
+      assertTrue(young.size() > unconfirmed);
+      for (TransactionEx tex : backing.getUnconfirmedTransactions()) {
+         assertTrue(young.contains(tex.txid));
+      }
+   }
+
+   @Test
+   @Ignore
+   public void testSpeed() {
+      AccountBacking backing = createBacking(new Random(1), 100000);
+      for (int round = 0; round < 5; round++) {
+         long start = System.nanoTime();
+         long total = 0;
+         for (TransactionOutputEx output : backing.getAllUnspentOutputs()) {
+            total += output.value;
+         }
+         long outputsNanos = System.nanoTime() - start;
+
+         start = System.nanoTime();
+         for (TransactionOutputValue value : backing.getAllUnspentOutputValues()) {
+            total -= value.value;
+         }
+         long valuesNanos = System.nanoTime() - start;
+         assertEquals(0, total);
+
+         start = System.nanoTime();
+         int unconfirmed = backing.getUnconfirmedTransactions().size();
+         long unconfirmedNanos = System.nanoTime() - start;
+
+         start = System.nanoTime();
+         int young = backing.getYoungTransactionStatuses(5, CHAIN_HEIGHT).size();
+         long youngNanos = System.nanoTime() - start;
+
+         System.out.println("outputs: " + outputsNanos / 1000000 + " ms, values: " + valuesNanos / 1000000
+               + " ms, unconfirmed (" + unconfirmed + "): " + unconfirmedNanos / 1000000 + " ms, young (" + young
+               + "): " + youngNanos / 1000000 + " ms");
+      }
+   }
+}
@@ -0,0 +1,164 @@
+package com.mycelium.wapi.wallet;
+
+import com.mrd.bitlib.crypto.RandomSource;
+import com.mrd.bitlib.model.Address;
+import com.mrd.bitlib.model.NetworkParameters;
+import com.mrd.bitlib.model.ScriptOutput;
+import com.mrd.bitlib.model.ScriptOutputP2SH;
+import com.mrd.bitlib.model.ScriptOutputStandard;
+import com.mycelium.wapi.api.LocalWapiServer;
+import org.junit.Ignore;
+import org.junit.Test;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class AddressFilterTest {
+
+   private static final NetworkParameters NETWORK = NetworkParameters.testNetwork;
+
+   private static byte[] randomHash(Random random) {
+      byte[] hash = new byte[20];
+      random.nextBytes(hash);
+      return hash;
+   }
+
+   private static AddressFilter createFilter(Random random, byte[][] hashes) {
+      AddressFilter filter = new AddressFilter(hashes.length);
+      for (int i = 0; i < hashes.length; i++) {
+         hashes[i] = randomHash(random);
+         filter.add(AddressFilter.keyOf(hashes[i], 0));
+      }
+      return filter;
+   }
+
+   private static int countFalsePositives(AddressFilter filter, Random random, int count) {
+      int positives = 0;
+      for (int i = 0; i < count; i++) {
+         if (filter.mightContainScript(new ScriptOutputStandard(randomHash(random)).getScriptBytes())) {
+            positives++;
+         }
+      }
+      return positives;
+   }
+
+   @Test
+   public void addedAddressesAreContained() {
+      byte[][] hashes = new byte[1000][];
+      AddressFilter filter = createFilter(new Random(42), hashes);
+      for (byte[] hash : hashes) {
+         assertTrue(filter.mightContain(Address.fromStandardBytes(hash, NETWORK)));
+         assertTrue(filter.mightContainScript(new ScriptOutputStandard(hash).getScriptBytes()));
+         assertTrue(filter.mightContainScript(new ScriptOutputP2SH(hash).getScriptBytes()));
+      }
+   }
+
+   @Test
+   public void scriptsWithoutAddressHashMayAlwaysBeContained() {
+      AddressFilter filter = new AddressFilter(10);
+      byte[] pubkeyScript = new byte[35];
+      pubkeyScript[0] = 33;
+      pubkeyScript[1] = 2;
+      pubkeyScript[34] = (byte) 0xac;
+      assertEquals(-1, ScriptOutput.getAddressHashOffset(pubkeyScript));
+      assertTrue(filter.mightContainScript(pubkeyScript));
+      assertTrue(filter.mightContainScript(new byte[0]));
+      assertFalse(filter.mightContainScript(new ScriptOutputStandard(new byte[20]).getScriptBytes()));
+   }
+
+   @Test
+   public void falsePositiveRateAtCapacity() {
+      Random random = new Random(7);
+      AddressFilter filter = createFilter(random, new byte[5000][]);
+      AddressFilter full = createFilter(random, new byte[filter.getCapacity()][]);
+      assertTrue(countFalsePositives(filter, random, 100000) < 100);
+      assertTrue(countFalsePositives(full, random, 100000) < 100);
+   }
+
+   @Test
+   public void indexRebuildsFilter() {
+      InMemoryWalletManagerBacking backing = new InMemoryWalletManagerBacking();
+      final Random random = new Random(3);
+      SecureKeyValueStore store = new SecureKeyValueStore(backing, new RandomSource() {
+         @Override
+         public void nextBytes(byte[] bytes) {
+            random.nextBytes(bytes);
+         }
+      });
+      WalletManager manager = new WalletManager(store, backing, NETWORK, new LocalWapiServer(1000));
+      AccountAddressIndex index = new AccountAddressIndex();
+      int first = index.register((AbstractAccount) manager.getAccount(manager.createSingleAddressAccount(
+            Address.fromStandardBytes(randomHash(random), NETWORK))));
+      int second = index.register((AbstractAccount) manager.getAccount(manager.createSingleAddressAccount(
+            Address.fromStandardBytes(randomHash(random), NETWORK))));
+      Set<Address> firstAddresses = new HashSet<Address>();
+      Set<Address> secondAddresses = new HashSet<Address>();
+      for (int i = 0; i < 3000; i++) {
+         Address address = Address.fromStandardBytes(randomHash(random), NETWORK);
+         if (i % 3 == 0) {
+            firstAddresses.add(address);
+            index.add(first, address);
+         } else {
+            secondAddresses.add(address);
+            index.add(second, address);
+         }
+      }
+      index.removeAll(first);
+      for (Address address : secondAddresses) {
+         assertTrue(index.mightContainScript(new ScriptOutputStandard(address.getTypeSpecificBytes()).getScriptBytes()));
+      }
+      int positives = 0;
+      for (Address address : firstAddresses) {
+         if (index.mightContainScript(new ScriptOutputStandard(address.getTypeSpecificBytes()).getScriptBytes())) {
+            positives++;
+         }
+      }
+      assertTrue(positives < 10);
+   }
+
+   @Test
+   @Ignore
+   public void testSpeed() {
+      Random random = new Random(1);
+      byte[][] hashes = new byte[2000][];
+      AddressFilter filter = createFilter(random, hashes);
+      Set<Address> addresses = new HashSet<Address>();
+      for (byte[] hash : hashes) {
+         addresses.add(Address.fromStandardBytes(hash, NETWORK));
+      }
+      byte[][] scripts = new byte[100000][];
+      for (int i = 0; i < scripts.length; i++) {
+         scripts[i] = new ScriptOutputStandard(randomHash(random)).getScriptBytes();
+      }
+      System.out.println("false positives: " + countFalsePositives(filter, random, 1000000) + " per million");
+      for (int round = 0; round < 5; round++) {
+         long start = System.nanoTime();
+         int found = 0;
+         for (int n = 0; n < 10; n++) {
+            for (byte[] script : scripts) {
+               if (addresses.contains(ScriptOutput.fromScriptBytes(script).getAddress(NETWORK))) {
+                  found++;
+               }
+            }
+         }
+         long addressNanos = System.nanoTime() - start;
+
+         start = System.nanoTime();
+         for (int n = 0; n < 10; n++) {
+            for (byte[] script : scripts) {
+               if (filter.mightContainScript(script)) {
+                  found++;
+               }
+            }
+         }
+         long filterNanos = System.nanoTime() - start;
+         System.out.println("addresses: " + addressNanos / 1000000 + " ms, filter: " + filterNanos / 1000000
+               + " ms (" + found + ")");
+      }
+   }
+}
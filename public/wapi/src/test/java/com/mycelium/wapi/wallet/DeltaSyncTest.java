@@ -0,0 +1,154 @@
+package com.mycelium.wapi.wallet;
+
+import com.mrd.bitlib.crypto.RandomSource;
+import com.mrd.bitlib.model.Address;
+import com.mrd.bitlib.model.NetworkParameters;
+import com.mrd.bitlib.model.OutPoint;
+import com.mycelium.wapi.api.LocalWapiServer;
+import com.mycelium.wapi.api.WapiConst.Function;
+import com.mycelium.wapi.model.TransactionOutputSummary;
+import org.junit.Test;
+
+import java.util.*;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class DeltaSyncTest {
+
+   private static final NetworkParameters NETWORK = NetworkParameters.testNetwork;
+
+   private static class Wallet {
+      final WalletManager manager;
+      final AbstractAccount account;
+
+      Wallet(LocalWapiServer server, Address address, boolean deltaSync) {
+         InMemoryWalletManagerBacking backing = new InMemoryWalletManagerBacking();
+         final Random random = new Random(1);
+         SecureKeyValueStore store = new SecureKeyValueStore(backing, new RandomSource() {
+            @Override
+            public void nextBytes(byte[] bytes) {
+               random.nextBytes(bytes);
+            }
+         });
+         manager = new WalletManager(store, backing, NETWORK, server);
+         manager.setDeltaSyncEnabled(deltaSync);
+         account = (AbstractAccount) manager.getAccount(manager.createSingleAddressAccount(address));
+      }
+
+      Map<OutPoint, Integer> synchronize() {
+         assertTrue(account.synchronize(false));
+         Map<OutPoint, Integer> unspent = new HashMap<OutPoint, Integer>();
+         for (TransactionOutputSummary summary : account.getUnspentTransactionOutputSummary()) {
+            unspent.put(summary.outPoint, summary.height);
+         }
+         return unspent;
+      }
+   }
+
+   private static Address randomAddress(Random random) {
+      byte[] hash = new byte[20];
+      random.nextBytes(hash);
+      return Address.fromStandardBytes(hash, NETWORK);
+   }
+
+   @Test
+   public void deltaMatchesFullSynchronization() {
+      Random random = new Random(42);
+      Address address = randomAddress(random);
+      LocalWapiServer server = new LocalWapiServer(1000);
+      Wallet full = new Wallet(server, address, false);
+      Wallet delta = new Wallet(server, address, true);
+      List<OutPoint> received = new ArrayList<OutPoint>();
+
+      for (int round = 0; round < 300; round++) {
+         switch (random.nextInt(6)) {
+            case 0:
+            case 1:
+               received.add(server.receive(address, 1000 + random.nextInt(100000)));
+               break;
+            case 2:
+               if (!received.isEmpty()) {
+                  server.spend(received.remove(random.nextInt(received.size())));
+               }
+               break;
+            case 3:
+               if (!received.isEmpty()) {
+                  server.drop(received.get(random.nextInt(received.size())));
+               }
+               break;
+            case 4:
+               server.mineBlock();
+               break;
+            default:
+               // Stay within the reorg window
+               server.reorg(1 + random.nextInt(6));
+               for (int i = random.nextInt(8); i > 0; i--) {
+                  server.mineBlock();
+               }
+         }
+         Map<OutPoint, Integer> fullUnspent = full.synchronize();
+         assertEquals(fullUnspent, delta.synchronize());
+         assertEquals(server.getUnspent(Collections.singletonList(address)), fullUnspent.keySet());
+      }
+
+      SyncStatistics statistics = delta.manager.getSyncStatistics();
+      assertEquals(1, statistics.getCount(SyncStatistics.Mode.FULL));
+      assertEquals(299, statistics.getCount(SyncStatistics.Mode.DELTA));
+      assertEquals(0, statistics.getFallbacks());
+   }
+
+   @Test
+   public void deltaTransfersLess() {
+      Random random = new Random(7);
+      Address address = randomAddress(random);
+      LocalWapiServer server = new LocalWapiServer(1000);
+      for (int i = 0; i < 200; i++) {
+         server.receive(address, 100000);
+         server.mineBlock();
+      }
+      Wallet full = new Wallet(server, address, false);
+      Wallet delta = new Wallet(server, address, true);
+      full.synchronize();
+      delta.synchronize();
+      server.getTrafficStatistics().reset();
+
+      server.receive(address, 5000);
+      server.mineBlock();
+      assertEquals(full.synchronize(), delta.synchronize());
+
+      long fullBytes = server.getTrafficStatistics().getBytesReceived(Function.QUERY_UNSPENT_OUTPUTS);
+      long deltaBytes = server.getTrafficStatistics().getBytesReceived(Function.QUERY_UNSPENT_OUTPUTS_DELTA);
+      assertTrue(deltaBytes > 0);
+      assertTrue(deltaBytes * 20 < fullBytes);
+   }
+
+   @Test
+   public void completeResponseBeyondHorizon() {
+      Random random = new Random(3);
+      Address address = randomAddress(random);
+      LocalWapiServer server = new LocalWapiServer(1000);
+      OutPoint old = server.receive(address, 100000);
+      server.mineBlock();
+      Wallet delta = new Wallet(server, address, true);
+      assertEquals(1, delta.synchronize().size());
+
+      // The server no longer knows what changed around our last height
+      server.spend(old);
+      for (int i = 0; i < 20; i++) {
+         server.mineBlock();
+      }
+      server.setDeltaHorizon(server.getHeight() - 5);
+      assertEquals(0, delta.synchronize().size());
+
+      // A reorg deeper than our window makes the server fall back too
+      server.setDeltaHorizon(0);
+      OutPoint recent = server.receive(address, 100000);
+      server.mineBlock();
+      assertEquals(1, delta.synchronize().size());
+      server.reorg(10);
+      server.drop(recent);
+      assertEquals(0, delta.synchronize().size());
+   }
+
+}
@@ -0,0 +1,89 @@
+package com.mycelium.wapi.wallet;
+
+import com.mrd.bitlib.crypto.RandomSource;
+import com.mrd.bitlib.model.Address;
+import com.mrd.bitlib.model.NetworkParameters;
+import com.mrd.bitlib.model.OutPoint;
+import com.mycelium.wapi.api.LocalWapiServer;
+import com.mycelium.wapi.model.TransactionOutputEx;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+
+public class ParentOutputResolutionTest {
+
+   private static final NetworkParameters NETWORK = NetworkParameters.testNetwork;
+   // Enough parents to have them validated in parallel
+   private static final int PARENTS = 20;
+
+   private static Address randomAddress(Random random) {
+      byte[] hash = new byte[20];
+      random.nextBytes(hash);
+      return Address.fromStandardBytes(hash, NETWORK);
+   }
+
+   private static AccountBacking synchronize(LocalWapiServer server, Address address) {
+      InMemoryWalletManagerBacking backing = new InMemoryWalletManagerBacking();
+      final Random random = new Random(1);
+      SecureKeyValueStore store = new SecureKeyValueStore(backing, new RandomSource() {
+         @Override
+         public void nextBytes(byte[] bytes) {
+            random.nextBytes(bytes);
+         }
+      });
+      WalletManager manager = new WalletManager(store, backing, NETWORK, server);
+      UUID id = manager.createSingleAddressAccount(address);
+      ((AbstractAccount) manager.getAccount(id)).synchronize(false);
+      return backing.getSingleAddressAccountBacking(id);
+   }
+
+   private static List<OutPoint> createParents(LocalWapiServer server, Random random) {
+      Address other = randomAddress(random);
+      List<OutPoint> parents = new ArrayList<OutPoint>();
+      for (int i = 0; i < PARENTS; i++) {
+         parents.add(server.receive(other, 1000 + i));
+      }
+      server.mineBlock();
+      return parents;
+   }
+
+   @Test
+   public void spentParentOutputsAreStored() {
+      Random random = new Random(42);
+      LocalWapiServer server = new LocalWapiServer(1000);
+      List<OutPoint> parents = createParents(server, random);
+      Address address = randomAddress(random);
+      OutPoint received = server.pay(parents, address, 5000);
+      server.mineBlock();
+
+      AccountBacking backing = synchronize(server, address);
+      assertNotNull(backing.getUnspentOutput(received));
+      List<TransactionOutputEx> stored = new ArrayList<TransactionOutputEx>(backing.getParentTransactionOutputs(parents));
+      assertEquals(PARENTS, stored.size());
+      for (TransactionOutputEx output : stored) {
+         assertEquals(1000 + parents.indexOf(output.outPoint), output.value);
+         assertEquals(1001, output.height);
+      }
+      // Only the spent outputs are stored, not the parent transactions
+      assertFalse(backing.hasTransaction(parents.get(0).hash));
+   }
+
+   @Test(expected = RuntimeException.class)
+   public void forgedParentIsRejected() {
+      Random random = new Random(7);
+      LocalWapiServer server = new LocalWapiServer(1000);
+      List<OutPoint> parents = createParents(server, random);
+      Address address = randomAddress(random);
+      server.pay(parents, address, 5000);
+      server.forge(parents.get(PARENTS / 2).hash, parents.get(0).hash);
+      synchronize(server, address);
+   }
+
+}
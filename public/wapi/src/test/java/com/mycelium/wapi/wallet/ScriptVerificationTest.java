@@ -0,0 +1,112 @@
+package com.mycelium.wapi.wallet;
+
+import com.mrd.bitlib.crypto.InMemoryPrivateKey;
+import com.mrd.bitlib.crypto.RandomSource;
+import com.mrd.bitlib.model.Address;
+import com.mrd.bitlib.model.NetworkParameters;
+import com.mrd.bitlib.model.OutPoint;
+import com.mycelium.wapi.api.LocalWapiServer;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ScriptVerificationTest {
+
+   private static final NetworkParameters NETWORK = NetworkParameters.testNetwork;
+   // Enough inputs to have them verified in parallel
+   private static final int PARENTS = 10;
+
+   private static RandomSource randomSource(final Random random) {
+      return new RandomSource() {
+         @Override
+         public void nextBytes(byte[] bytes) {
+            random.nextBytes(bytes);
+         }
+      };
+   }
+
+   private static Address randomAddress(Random random) {
+      byte[] hash = new byte[20];
+      random.nextBytes(hash);
+      return Address.fromStandardBytes(hash, NETWORK);
+   }
+
+   private static AccountBacking synchronize(LocalWapiServer server, Address address, boolean verifyConfirmed) {
+      InMemoryWalletManagerBacking backing = new InMemoryWalletManagerBacking();
+      SecureKeyValueStore store = new SecureKeyValueStore(backing, randomSource(new Random(1)));
+      WalletManager manager = new WalletManager(store, backing, NETWORK, server);
+      manager.setConfirmedScriptVerificationEnabled(verifyConfirmed);
+      UUID id = manager.createSingleAddressAccount(address);
+      ((AbstractAccount) manager.getAccount(id)).synchronize(false);
+      return backing.getSingleAddressAccountBacking(id);
+   }
+
+   private static List<OutPoint> createParents(LocalWapiServer server, Address address) {
+      List<OutPoint> parents = new ArrayList<OutPoint>();
+      for (int i = 0; i < PARENTS; i++) {
+         parents.add(server.receive(address, 1000 + i));
+      }
+      return parents;
+   }
+
+   @Test
+   public void invalidTransactionsAreDropped() {
+      Random random = new Random(42);
+      LocalWapiServer server = new LocalWapiServer(1000);
+      InMemoryPrivateKey key = new InMemoryPrivateKey(randomSource(random));
+      Address funding = key.getPublicKey().toAddress(NETWORK);
+      List<OutPoint> signedParents = createParents(server, funding);
+      List<OutPoint> unsignedParents = createParents(server, funding);
+      server.mineBlock();
+
+      Address address = randomAddress(random);
+      OutPoint signed = server.pay(signedParents, key, address, 5000);
+      OutPoint unsigned = server.pay(unsignedParents, address, 5000);
+      server.mineBlock();
+
+      AccountBacking backing = synchronize(server, address, true);
+      assertTrue(backing.hasTransaction(signed.hash));
+      assertFalse(backing.hasTransaction(unsigned.hash));
+   }
+
+   @Test
+   public void confirmedVerificationCanBeDisabled() {
+      Random random = new Random(7);
+      LocalWapiServer server = new LocalWapiServer(1000);
+      List<OutPoint> parents = createParents(server, randomAddress(random));
+      server.mineBlock();
+
+      Address address = randomAddress(random);
+      OutPoint unsigned = server.pay(parents, address, 5000);
+      server.mineBlock();
+
+      AccountBacking backing = synchronize(server, address, false);
+      assertTrue(backing.hasTransaction(unsigned.hash));
+   }
+
+   @Test
+   public void unconfirmedTransactionsAreAlwaysVerified() {
+      Random random = new Random(11);
+      LocalWapiServer server = new LocalWapiServer(1000);
+      InMemoryPrivateKey key = new InMemoryPrivateKey(randomSource(random));
+      Address funding = key.getPublicKey().toAddress(NETWORK);
+      List<OutPoint> signedParents = createParents(server, funding);
+      List<OutPoint> unsignedParents = createParents(server, funding);
+      server.mineBlock();
+
+      // Both stay in the mempool
+      Address address = randomAddress(random);
+      OutPoint signed = server.pay(signedParents, key, address, 5000);
+      OutPoint unsigned = server.pay(unsignedParents, address, 5000);
+
+      AccountBacking backing = synchronize(server, address, false);
+      assertTrue(backing.hasTransaction(signed.hash));
+      assertFalse(backing.hasTransaction(unsigned.hash));
+   }
+}
@@ -6,13 +6,19 @@ import com.mrd.bitlib.util.HexUtils;
 import org.junit.Test;
 
 import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.List;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 
 public class SecureKeyValueStoreTest {
 
    private static final byte[] ID_1 = HexUtils.toBytes("000102030405060708090a0b0c0d0e0f");
    private static final byte[] VALUE_1 = HexUtils.toBytes("0123456789abcdef");
+   private static final byte[] ID_2 = HexUtils.toBytes("101112131415161718191a1b1c1d1e1f");
+   private static final byte[] VALUE_2 = HexUtils.toBytes("fedcba9876543210");
 
    private static class MyRandomSource implements RandomSource {
       SecureRandom _rnd;
@@ -45,4 +51,51 @@ public class SecureKeyValueStoreTest {
       assertTrue(BitUtils.areEqual(result, VALUE_1));
    }
 
+   @Test
+   public void plaintextValuesAreCached() {
+      SecureKeyValueStore store = new SecureKeyValueStore(new InMemoryWalletManagerBacking(), new MyRandomSource());
+      store.storePlaintextValue(ID_1, VALUE_1);
+      assertTrue(BitUtils.areEqual(store.getPlaintextValue(ID_1), VALUE_1));
+      assertNull(store.getPlaintextValue(ID_2));
+      assertNull(store.getPlaintextValue(ID_2));
+      PlaintextValueCache.Statistics statistics = store.getPlaintextCacheStatistics();
+      assertEquals(2, statistics.hits);
+      assertEquals(1, statistics.misses);
+   }
+
+   @Test
+   public void batchedPlaintextValues() {
+      SecureKeyValueStore store = new SecureKeyValueStore(new InMemoryWalletManagerBacking(), new MyRandomSource());
+      store.storePlaintextValue(ID_1, VALUE_1);
+      List<byte[]> result = store.getPlaintextValues(Arrays.asList(ID_1, ID_2));
+      assertTrue(BitUtils.areEqual(result.get(0), VALUE_1));
+      assertNull(result.get(1));
+
+      store.storePlaintextValues(Arrays.asList(ID_1, ID_2), Arrays.asList(VALUE_2, VALUE_1));
+      result = store.getPlaintextValues(Arrays.asList(ID_1, ID_2));
+      assertTrue(BitUtils.areEqual(result.get(0), VALUE_2));
+      assertTrue(BitUtils.areEqual(result.get(1), VALUE_1));
+   }
+
+   @Test
+   public void batchedAbsentValuesAreCached() {
+      SecureKeyValueStore store = new SecureKeyValueStore(new InMemoryWalletManagerBacking(), new MyRandomSource());
+      store.storePlaintextValues(Arrays.asList(ID_1, ID_2), Arrays.asList(VALUE_1, null));
+      assertNull(store.getPlaintextValue(ID_2));
+      assertEquals(1, store.getPlaintextCacheStatistics().hits);
+      assertEquals(0, store.getPlaintextCacheStatistics().misses);
+   }
+
+   @Test
+   public void deleteInvalidatesCache() {
+      InMemoryWalletManagerBacking backing = new InMemoryWalletManagerBacking();
+      SecureKeyValueStore store = new SecureKeyValueStore(backing, new MyRandomSource());
+      store.storePlaintextValue(ID_1, VALUE_1);
+      assertTrue(BitUtils.areEqual(store.getPlaintextValue(ID_1), VALUE_1));
+      store.deletePlaintextValue(ID_1);
+      assertNull(store.getPlaintextValue(ID_1));
+      // A fresh store on the same backing agrees with the cached view
+      assertNull(new SecureKeyValueStore(backing, new MyRandomSource()).getPlaintextValue(ID_1));
+   }
+
 }
@@ -0,0 +1,263 @@
+package com.mycelium.wapi.wallet;
+
+import com.mrd.bitlib.crypto.RandomSource;
+import com.mrd.bitlib.model.Address;
+import com.mrd.bitlib.model.HeaderChain;
+import com.mrd.bitlib.model.HeaderChain.Checkpoint;
+import com.mrd.bitlib.model.NetworkParameters;
+import com.mrd.bitlib.model.OutPoint;
+import com.mrd.bitlib.util.HashUtils;
+import com.mrd.bitlib.util.Sha256Hash;
+import com.mycelium.wapi.api.LocalWapiServer;
+import com.mycelium.wapi.api.Wapi;
+import com.mycelium.wapi.model.Balance;
+import com.mycelium.wapi.model.TransactionOutputEx;
+import com.mycelium.wapi.model.TransactionOutputSummary;
+import com.mycelium.wapi.model.TransactionSummary;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class SpvVerificationTest {
+
+   private static final NetworkParameters NETWORK = NetworkParameters.testNetwork;
+   // More headers than fit into one response, across several retargets
+   private static final int HEIGHT = Wapi.MAX_HEADERS_LIMIT + 2500;
+
+   private File _file;
+
+   @Before
+   public void createFile() throws IOException {
+      _file = File.createTempFile("headers", ".bin");
+   }
+
+   @After
+   public void deleteFile() {
+      _file.delete();
+   }
+
+   private static Address randomAddress(Random random) {
+      byte[] hash = new byte[20];
+      random.nextBytes(hash);
+      return Address.fromStandardBytes(hash, NETWORK);
+   }
+
+   private static WalletManager createWalletManager(LocalWapiServer server) {
+      InMemoryWalletManagerBacking backing = new InMemoryWalletManagerBacking();
+      final Random random = new Random(1);
+      SecureKeyValueStore store = new SecureKeyValueStore(backing, new RandomSource() {
+         @Override
+         public void nextBytes(byte[] bytes) {
+            random.nextBytes(bytes);
+         }
+      });
+      return new WalletManager(store, backing, NETWORK, server);
+   }
+
+   private HeaderChain openChain(LocalWapiServer server) throws IOException {
+      return new HeaderChain(_file, new Checkpoint(0, server.getHeader(0)), LocalWapiServer.PROOF_OF_WORK_LIMIT,
+            false);
+   }
+
+   private static Map<Sha256Hash, Integer> getConfirmations(WalletAccount account) {
+      Map<Sha256Hash, Integer> confirmations = new HashMap<Sha256Hash, Integer>();
+      for (TransactionSummary summary : account.getTransactionHistory(0, 100)) {
+         confirmations.put(summary.txid, summary.confirmations);
+      }
+      return confirmations;
+   }
+
+   @Test
+   public void confirmationsAreProven() throws IOException {
+      Random random = new Random(42);
+      LocalWapiServer server = new LocalWapiServer(HEIGHT);
+      Address address = randomAddress(random);
+      OutPoint confirmed = server.receive(address, 1000);
+      server.mineBlock();
+      OutPoint faked = server.receive(address, 2000);
+      server.fakeConfirmation(faked, HEIGHT + 1);
+      OutPoint unconfirmed = server.receive(address, 3000);
+
+      HeaderChain chain = openChain(server);
+      SpvVerifier verifier = new SpvVerifier(chain, server);
+      assertTrue(verifier.synchronizeHeaders());
+      assertEquals(HEIGHT + 1, chain.getHeight());
+      assertEquals(HashUtils.doubleSha256(server.getHeader(HEIGHT + 1)).reverse(), chain.getHash(HEIGHT + 1));
+
+      WalletManager manager = createWalletManager(server);
+      AbstractAccount account = (AbstractAccount) manager.getAccount(manager.createSingleAddressAccount(address));
+      assertTrue(account.synchronize(false));
+      Map<Sha256Hash, Integer> confirmations = getConfirmations(account);
+      assertEquals(1, (int) confirmations.get(faked.hash));
+
+      assertTrue(account.verifyConfirmations(verifier));
+      confirmations = getConfirmations(account);
+      assertEquals(1, (int) confirmations.get(confirmed.hash));
+      assertEquals(0, (int) confirmations.get(faked.hash));
+      assertEquals(0, (int) confirmations.get(unconfirmed.hash));
+
+      // A reorg puts all of them into new blocks
+      server.reorg(1);
+      server.mineBlock();
+      server.mineBlock();
+      assertTrue(account.synchronize(false));
+      assertTrue(verifier.synchronizeHeaders());
+      assertEquals(HEIGHT + 2, chain.getHeight());
+      assertEquals(HashUtils.doubleSha256(server.getHeader(HEIGHT + 1)).reverse(), chain.getHash(HEIGHT + 1));
+      assertTrue(account.verifyConfirmations(verifier));
+      confirmations = getConfirmations(account);
+      assertEquals(2, (int) confirmations.get(confirmed.hash));
+      assertEquals(2, (int) confirmations.get(faked.hash));
+      assertEquals(2, (int) confirmations.get(unconfirmed.hash));
+      chain.close();
+
+      // The chain picks up where it stopped
+      chain = openChain(server);
+      assertEquals(HEIGHT + 2, chain.getHeight());
+      chain.close();
+   }
+
+   @Test
+   public void deepReorgIsRecovered() throws IOException {
+      LocalWapiServer server = new LocalWapiServer(1000);
+      HeaderChain chain = openChain(server);
+      SpvVerifier verifier = new SpvVerifier(chain, server);
+      assertTrue(verifier.synchronizeHeaders());
+      assertEquals(1000, chain.getHeight());
+
+      // Our top 20 blocks get orphaned by a longer branch, far deeper than the
+      // headers fetched again on every synchronization
+      server.reorg(20);
+      for (int i = 0; i < 22; i++) {
+         server.mineBlock();
+      }
+      assertTrue(verifier.synchronizeHeaders());
+      assertEquals(1002, chain.getHeight());
+      assertEquals(HashUtils.doubleSha256(server.getHeader(981)).reverse(), chain.getHash(981));
+      assertEquals(HashUtils.doubleSha256(server.getHeader(1002)).reverse(), chain.getHash(1002));
+      chain.close();
+   }
+
+   private static Set<OutPoint> getSpendable(AbstractAccount account) {
+      Set<OutPoint> spendable = new HashSet<OutPoint>();
+      for (TransactionOutputEx output : account.getSpendableOutputs()) {
+         spendable.add(output.outPoint);
+      }
+      return spendable;
+   }
+
+   @Test
+   public void inflatedHeightIsCapped() throws IOException {
+      Random random = new Random(3);
+      LocalWapiServer server = new LocalWapiServer(1000);
+      Address address = randomAddress(random);
+      // Coinbase outputs at 1001 and 1051
+      OutPoint confirmed = server.receive(address, 1000);
+      for (int i = 0; i < 50; i++) {
+         server.mineBlock();
+      }
+      OutPoint young = server.receive(address, 8000);
+      for (int i = 0; i < 71; i++) {
+         server.mineBlock();
+      }
+      OutPoint unproven = server.receive(address, 2000);
+      server.fakeConfirmation(unproven, 1001);
+      OutPoint beyondChain = server.receive(address, 4000);
+      server.fakeConfirmation(beyondChain, 1150);
+      server.inflateHeight(100);
+
+      HeaderChain chain = openChain(server);
+      SpvVerifier verifier = new SpvVerifier(chain, server);
+      assertTrue(verifier.synchronizeHeaders());
+      assertEquals(1121, chain.getHeight());
+
+      WalletManager manager = createWalletManager(server);
+      AbstractAccount account = (AbstractAccount) manager.getAccount(manager.createSingleAddressAccount(address));
+      assertTrue(account.synchronize(false));
+      assertEquals(1221, account.getBlockChainHeight());
+      assertEquals(221, (int) getConfirmations(account).get(confirmed.hash));
+      // The made up blocks mature the young coinbase output
+      assertEquals(new HashSet<OutPoint>(Arrays.asList(confirmed, young, unproven)), getSpendable(account));
+
+      // Blocks beyond our header chain do not count, even before the
+      // confirmations are verified
+      account.setSpvVerifier(verifier);
+      assertEquals(1121, account.getVerifiedBlockChainHeight());
+      Map<Sha256Hash, Integer> confirmations = getConfirmations(account);
+      assertEquals(121, (int) confirmations.get(confirmed.hash));
+      assertEquals(0, (int) confirmations.get(beyondChain.hash));
+
+      assertTrue(account.verifyConfirmations(verifier));
+      confirmations = getConfirmations(account);
+      assertEquals(121, (int) confirmations.get(confirmed.hash));
+      assertEquals(71, (int) confirmations.get(young.hash));
+      assertEquals(0, (int) confirmations.get(unproven.hash));
+      assertEquals(0, (int) confirmations.get(beyondChain.hash));
+      for (TransactionOutputSummary output : account.getUnspentTransactionOutputSummary()) {
+         assertEquals(confirmations.get(output.outPoint.hash), (Integer) output.confirmations);
+      }
+      Balance balance = account.getBalance();
+      assertEquals(9000, balance.confirmed);
+      assertEquals(6000, balance.pendingReceiving);
+      assertEquals(1121, balance.blockHeight);
+      assertEquals(Collections.singleton(confirmed), getSpendable(account));
+
+      // Trusting the server again
+      account.setSpvVerifier(null);
+      assertEquals(221, (int) getConfirmations(account).get(confirmed.hash));
+      chain.close();
+   }
+
+   @Test
+   public void walletManagerVerifiesWhileSynchronizing() throws Exception {
+      Random random = new Random(7);
+      LocalWapiServer server = new LocalWapiServer(1000);
+      Address address = randomAddress(random);
+      server.receive(address, 1000);
+      server.mineBlock();
+      OutPoint faked = server.receive(address, 2000);
+      server.fakeConfirmation(faked, 1001);
+
+      WalletManager manager = createWalletManager(server);
+      UUID id = manager.createSingleAddressAccount(address);
+      HeaderChain chain = openChain(server);
+      manager.setHeaderChain(chain);
+      final CountDownLatch done = new CountDownLatch(1);
+      manager.addObserver(new WalletManager.Observer() {
+         @Override
+         public void onWalletStateChanged(WalletManager wallet, WalletManager.State state) {
+            if (state == WalletManager.State.READY) {
+               done.countDown();
+            }
+         }
+
+         @Override
+         public void onAccountEvent(WalletManager wallet, UUID accountId, WalletManager.Event event) {
+         }
+      });
+      manager.startSynchronization();
+      assertTrue(done.await(60, TimeUnit.SECONDS));
+
+      assertEquals(1001, chain.getHeight());
+      Map<Sha256Hash, Integer> confirmations = getConfirmations(manager.getAccount(id));
+      assertEquals(2, confirmations.size());
+      assertEquals(0, (int) confirmations.get(faked.hash));
+      chain.close();
+   }
+}
@@ -0,0 +1,84 @@
+/*
+ * Copyright 2013, 2014 Megion Research & Development GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.mycelium.wapi.wallet;
+
+import com.mrd.bitlib.model.Address;
+import com.mrd.bitlib.model.NetworkParameters;
+import com.mrd.bitlib.util.Sha256Hash;
+import com.mycelium.wapi.model.TransactionSummaryEx;
+import com.mycelium.wapi.wallet.single.SingleAddressAccountContext;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class TransactionSummaryPaginationTest {
+
+   private static AccountBacking createBacking(Random random, int count) {
+      InMemoryWalletManagerBacking walletBacking = new InMemoryWalletManagerBacking();
+      UUID id = UUID.randomUUID();
+      walletBacking.createSingleAddressAccountContext(new SingleAddressAccountContext(id,
+            Address.getNullAddress(NetworkParameters.testNetwork), false, 0));
+      AccountBacking backing = walletBacking.getSingleAddressAccountBacking(id);
+      for (int i = 0; i < count; i++) {
+         byte[] txid = new byte[Sha256Hash.HASH_LENGTH];
+         random.nextBytes(txid);
+         // Few distinct heights, so many transactions share a height
+         int height = random.nextInt(10) == 0 ? -1 : random.nextInt(5) + 100;
+         backing.putTransactionSummary(new TransactionSummaryEx(new Sha256Hash(txid), height, 0, i, null));
+      }
+      return backing;
+   }
+
+   @Test
+   public void keysetPagesMatchOffsetPages() {
+      AccountBacking backing = createBacking(new Random(42), 95);
+      List<TransactionSummaryEx> all = backing.getTransactionSummaries(0, Integer.MAX_VALUE);
+      assertEquals(95, all.size());
+
+      List<TransactionSummaryEx> paged = new ArrayList<TransactionSummaryEx>();
+      List<TransactionSummaryEx> page = backing.getTransactionSummaries(0, 10);
+      while (!page.isEmpty()) {
+         paged.addAll(page);
+         TransactionSummaryEx last = page.get(page.size() - 1);
+         page = backing.getTransactionSummariesAfter(last.height, last.txid, 10);
+      }
+      assertEquals(all, paged);
+   }
+
+   @Test
+   public void unconfirmedComeFirst() {
+      AccountBacking backing = createBacking(new Random(7), 50);
+      List<TransactionSummaryEx> all = backing.getTransactionSummaries(0, Integer.MAX_VALUE);
+      boolean seenConfirmed = false;
+      int lastHeight = Integer.MAX_VALUE;
+      for (TransactionSummaryEx summary : all) {
+         if (summary.height == -1) {
+            assertTrue(!seenConfirmed);
+         } else {
+            seenConfirmed = true;
+            assertTrue(summary.height <= lastHeight);
+            lastHeight = summary.height;
+         }
+      }
+   }
+}
@@ -4,6 +4,7 @@ import com.mrd.bitlib.crypto.Bip39;
 import com.mrd.bitlib.crypto.RandomSource;
 import com.mrd.bitlib.model.Address;
 import com.mrd.bitlib.model.NetworkParameters;
+import com.mrd.bitlib.model.OutPoint;
 import com.mrd.bitlib.util.Sha256Hash;
 import com.mycelium.wapi.api.Wapi;
 import com.mycelium.wapi.api.WapiLogger;
@@ -11,6 +12,7 @@ import com.mycelium.wapi.api.WapiResponse;
 import com.mycelium.wapi.api.request.*;
 import com.mycelium.wapi.api.response.*;
 import com.mycelium.wapi.model.ExchangeRate;
+import com.mycelium.wapi.model.MerkleProof;
 import com.mycelium.wapi.model.TransactionEx;
 import com.mycelium.wapi.model.TransactionOutputEx;
 import com.mycelium.wapi.model.TransactionStatus;
@@ -80,6 +82,13 @@ public class Bip44AccountTest {
          return new WapiResponse<QueryUnspentOutputsResponse>(response);
       }
 
+      @Override
+      public WapiResponse<QueryUnspentOutputsDeltaResponse> queryUnspentOutputsDelta(QueryUnspentOutputsDeltaRequest request) {
+         QueryUnspentOutputsDeltaResponse response = new QueryUnspentOutputsDeltaResponse(0, false,
+               new ArrayList<TransactionOutputEx>(), new ArrayList<OutPoint>());
+         return new WapiResponse<QueryUnspentOutputsDeltaResponse>(response);
+      }
+
       @Override
       public WapiResponse<QueryTransactionInventoryResponse> queryTransactionInventory(QueryTransactionInventoryRequest request) {
          QueryTransactionInventoryResponse response = new QueryTransactionInventoryResponse(0, new ArrayList<Sha256Hash>());
@@ -104,6 +113,18 @@ public class Bip44AccountTest {
          return new WapiResponse<CheckTransactionsResponse>(response);
       }
 
+      @Override
+      public WapiResponse<GetHeadersResponse> getHeaders(GetHeadersRequest request) {
+         GetHeadersResponse response = new GetHeadersResponse(0, request.fromHeight, new byte[0]);
+         return new WapiResponse<GetHeadersResponse>(response);
+      }
+
+      @Override
+      public WapiResponse<GetMerkleProofsResponse> getMerkleProofs(GetMerkleProofsRequest request) {
+         GetMerkleProofsResponse response = new GetMerkleProofsResponse(new ArrayList<MerkleProof>());
+         return new WapiResponse<GetMerkleProofsResponse>(response);
+      }
+
       @Override
       public WapiResponse<QueryExchangeRatesResponse> queryExchangeRates(QueryExchangeRatesRequest request) {
          QueryExchangeRatesResponse response = new QueryExchangeRatesResponse(request.currency, new ExchangeRate[]{});
@@ -0,0 +1,77 @@
+package com.mycelium.wapi.wallet.bip44;
+
+import com.mrd.bitlib.model.Address;
+import com.mrd.bitlib.model.NetworkParameters;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class Bip44AddressIndexTest {
+
+   private static final NetworkParameters NETWORK = NetworkParameters.productionNetwork;
+   private static final byte VERSION = (byte) NETWORK.getStandardAddressHeader();
+
+   private static List<Address> randomAddresses(int count) {
+      Random random = new Random(42);
+      List<Address> addresses = new ArrayList<Address>();
+      for (int i = 0; i < count; i++) {
+         byte[] hash = new byte[20];
+         random.nextBytes(hash);
+         addresses.add(Address.fromStandardBytes(hash, NETWORK));
+      }
+      return addresses;
+   }
+
+   @Test
+   public void lookupBothWays() {
+      List<Address> addresses = randomAddresses(100);
+      Bip44AddressIndex index = new Bip44AddressIndex(VERSION, null);
+      for (Address address : addresses) {
+         assertFalse(index.extend());
+         index.add(address);
+      }
+      assertEquals(100, index.size());
+      for (int i = 0; i < addresses.size(); i++) {
+         assertEquals(addresses.get(i), index.get(i));
+         assertEquals(i, index.indexOf(addresses.get(i)));
+      }
+      assertNull(index.get(100));
+      assertEquals(-1, index.indexOf(randomAddresses(101).get(100)));
+   }
+
+   @Test
+   public void otherAddressTypesAreNotMatched() {
+      Address address = randomAddresses(1).get(0);
+      Bip44AddressIndex index = new Bip44AddressIndex(VERSION, null);
+      index.add(address);
+      Address p2sh = Address.fromP2SHBytes(address.getTypeSpecificBytes(), NETWORK);
+      assertFalse(index.contains(p2sh));
+      assertTrue(index.contains(address));
+   }
+
+   @Test
+   public void knownAddressesAreRestored() {
+      List<Address> addresses = randomAddresses(30);
+      Bip44AddressIndex index = new Bip44AddressIndex(VERSION, null);
+      for (Address address : addresses) {
+         index.add(address);
+      }
+      Bip44AddressIndex loaded = new Bip44AddressIndex(VERSION, index.getKnownHashes());
+      assertEquals(0, loaded.size());
+      assertFalse(loaded.contains(addresses.get(0)));
+      for (int i = 0; i < 20; i++) {
+         assertTrue(loaded.extend());
+      }
+      assertTrue(loaded.contains(addresses.get(19)));
+      assertFalse(loaded.contains(addresses.get(20)));
+
+      loaded.clear();
+      assertEquals(0, loaded.size());
+      assertFalse(loaded.contains(addresses.get(0)));
+      assertArrayEquals(index.getKnownHashes(), loaded.getKnownHashes());
+   }
+}
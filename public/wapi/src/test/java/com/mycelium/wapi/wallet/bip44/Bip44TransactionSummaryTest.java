@@ -0,0 +1,87 @@
+/*
+ * Copyright 2013, 2014 Megion Research & Development GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.mycelium.wapi.wallet.bip44;
+
+import com.mrd.bitlib.crypto.Bip39;
+import com.mrd.bitlib.crypto.RandomSource;
+import com.mrd.bitlib.model.Address;
+import com.mrd.bitlib.model.NetworkParameters;
+import com.mrd.bitlib.model.OutPoint;
+import com.mrd.bitlib.util.Sha256Hash;
+import com.mycelium.wapi.api.LocalWapiServer;
+import com.mycelium.wapi.model.TransactionSummary;
+import com.mycelium.wapi.wallet.*;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.UUID;
+
+import static org.junit.Assert.assertEquals;
+
+public class Bip44TransactionSummaryTest {
+
+   private static final String MASTER_SEED_WORDS = "degree rain vendor coffee push math onion inside pyramid blush stick treat";
+   private static final NetworkParameters NETWORK = NetworkParameters.productionNetwork;
+   private static final long VALUE = 100000;
+
+   @Test
+   public void transactionStoredBeforeItsAddressIsDerivedIsSummarizedAgain() throws KeyCipher.InvalidKeyCipher {
+      LocalWapiServer server = new LocalWapiServer(1000);
+      InMemoryWalletManagerBacking backing = new InMemoryWalletManagerBacking();
+      final Random random = new Random(1);
+      SecureKeyValueStore store = new SecureKeyValueStore(backing, new RandomSource() {
+         @Override
+         public void nextBytes(byte[] bytes) {
+            random.nextBytes(bytes);
+         }
+      });
+      WalletManager walletManager = new WalletManager(store, backing, NETWORK, server);
+      walletManager.configureBip32MasterSeed(Bip39.generateSeedFromWordList(MASTER_SEED_WORDS.split(" "), ""),
+            AesKeyCipher.defaultKeyCipher());
+      UUID accountId = walletManager.createAdditionalBip44Account(AesKeyCipher.defaultKeyCipher());
+      Bip44AccountKeyManager keyManager = new Bip44AccountKeyManager(0, NETWORK, store);
+
+      // The first look ahead window finds this transaction through address 0,
+      // before address 21 has been derived
+      List<OutPoint> outPoints = server.receive(Arrays.asList(keyManager.getAddress(false, 0),
+            keyManager.getAddress(false, 21)), VALUE);
+      Sha256Hash both = outPoints.get(0).hash;
+      // Spent elsewhere, so synchronizing unspent outputs does not fetch the
+      // transaction again
+      server.pay(outPoints, Address.getNullAddress(NETWORK), 2 * VALUE);
+      // Activity at address 10 makes the next window include address 21
+      Sha256Hash single = server.receive(keyManager.getAddress(false, 10), VALUE).hash;
+      server.mineBlock();
+
+      Bip44Account account = (Bip44Account) walletManager.getAccount(accountId);
+      assertEquals(true, account.synchronize(false));
+      assertEquals(keyManager.getAddress(false, 22), account.getReceivingAddress());
+
+      Map<Sha256Hash, Long> values = new HashMap<Sha256Hash, Long>();
+      for (TransactionSummary summary : account.getTransactionHistory(0, 10)) {
+         values.put(summary.txid, summary.value);
+      }
+      assertEquals(2, values.size());
+      assertEquals(Long.valueOf(2 * VALUE), values.get(both));
+      assertEquals(Long.valueOf(VALUE), values.get(single));
+   }
+
+}
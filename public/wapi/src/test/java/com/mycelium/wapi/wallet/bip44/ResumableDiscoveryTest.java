@@ -0,0 +1,164 @@
+package com.mycelium.wapi.wallet.bip44;
+
+import com.mrd.bitlib.crypto.Bip39;
+import com.mrd.bitlib.crypto.RandomSource;
+import com.mrd.bitlib.model.NetworkParameters;
+import com.mycelium.wapi.api.LocalWapiServer;
+import com.mycelium.wapi.wallet.*;
+import org.junit.Test;
+
+import java.util.Random;
+import java.util.UUID;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ResumableDiscoveryTest {
+
+   private static final String MASTER_SEED_WORDS = "degree rain vendor coffee push math onion inside pyramid blush stick treat";
+   private static final NetworkParameters NETWORK = NetworkParameters.productionNetwork;
+   private static final int USED_ADDRESSES = 60;
+   private static final int BUSY_ADDRESSES = 20;
+   private static final int TRANSACTIONS_PER_BUSY_ADDRESS = 4;
+
+   private static class Restore {
+      final InMemoryWalletManagerBacking backing = new InMemoryWalletManagerBacking();
+      final SecureKeyValueStore store;
+      final UUID accountId;
+
+      Restore(LocalWapiServer server) throws KeyCipher.InvalidKeyCipher {
+         final Random random = new Random(1);
+         store = new SecureKeyValueStore(backing, new RandomSource() {
+            @Override
+            public void nextBytes(byte[] bytes) {
+               random.nextBytes(bytes);
+            }
+         });
+         WalletManager walletManager = new WalletManager(store, backing, NETWORK, server);
+         walletManager.configureBip32MasterSeed(Bip39.generateSeedFromWordList(MASTER_SEED_WORDS.split(" "), ""),
+               AesKeyCipher.defaultKeyCipher());
+         accountId = walletManager.createAdditionalBip44Account(AesKeyCipher.defaultKeyCipher());
+      }
+
+      /**
+       * Load the account with a fresh wallet manager, like after an app restart
+       */
+      Bip44Account load(LocalWapiServer server) {
+         return (Bip44Account) new WalletManager(store, backing, NETWORK, server).getAccount(accountId);
+      }
+
+      /**
+       * Synchronize the account with a fresh wallet manager, like after an app restart
+       */
+      Bip44Account synchronize(LocalWapiServer server, boolean expectSuccess) {
+         Bip44Account account = load(server);
+         assertEquals(expectSuccess, account.synchronize(false));
+         return account;
+      }
+   }
+
+   private static LocalWapiServer createServer() throws KeyCipher.InvalidKeyCipher {
+      LocalWapiServer server = new LocalWapiServer(1000);
+      Bip44AccountKeyManager keyManager = new Bip44AccountKeyManager(0, NETWORK, new Restore(server).store);
+      for (int i = 0; i < USED_ADDRESSES; i++) {
+         server.receive(keyManager.getAddress(false, i), 100000);
+         server.mineBlock();
+      }
+      return server;
+   }
+
+   /**
+    * Create a server with several transactions for each of the first addresses, more than one look ahead window
+    * fetches in one batch
+    */
+   private static LocalWapiServer createBusyServer() throws KeyCipher.InvalidKeyCipher {
+      LocalWapiServer server = new LocalWapiServer(1000);
+      Bip44AccountKeyManager keyManager = new Bip44AccountKeyManager(0, NETWORK, new Restore(server).store);
+      for (int round = 0; round < TRANSACTIONS_PER_BUSY_ADDRESS; round++) {
+         for (int i = 0; i < BUSY_ADDRESSES; i++) {
+            server.receive(keyManager.getAddress(false, i), 100000);
+         }
+         server.mineBlock();
+      }
+      return server;
+   }
+
+   @Test
+   public void interruptedDiscoveryResumes() throws KeyCipher.InvalidKeyCipher {
+      // Find out how many transactions an uninterrupted restore fetches
+      LocalWapiServer server = createServer();
+      Restore restore = new Restore(server);
+      Bip44Account account = restore.synchronize(server, true);
+      int uninterrupted = server.getTransactionsServed();
+      Bip44AccountKeyManager keyManager = new Bip44AccountKeyManager(0, NETWORK, restore.store);
+      assertEquals(keyManager.getAddress(false, USED_ADDRESSES), account.getReceivingAddress());
+
+      // Now lose the connection after two look ahead windows
+      server = createServer();
+      restore = new Restore(server);
+      server.setGetTransactionsCallsLeft(2);
+      restore.synchronize(server, false);
+      int beforeInterruption = server.getTransactionsServed();
+      assertTrue(beforeInterruption > 0);
+      assertFalse(beforeInterruption >= uninterrupted);
+
+      server.setGetTransactionsCallsLeft(-1);
+      account = restore.synchronize(server, true);
+      assertEquals(keyManager.getAddress(false, USED_ADDRESSES), account.getReceivingAddress());
+      // Nothing was fetched twice
+      assertEquals(uninterrupted, server.getTransactionsServed());
+   }
+
+   /**
+    * Find out how many transactions an uninterrupted restore from the busy server fetches
+    */
+   private static int busyUninterrupted() throws KeyCipher.InvalidKeyCipher {
+      LocalWapiServer server = createBusyServer();
+      new Restore(server).synchronize(server, true);
+      return server.getTransactionsServed();
+   }
+
+   @Test
+   public void windowInterruptedBetweenBatchesIsQueriedAgain() throws KeyCipher.InvalidKeyCipher {
+      int total = BUSY_ADDRESSES * TRANSACTIONS_PER_BUSY_ADDRESS;
+      LocalWapiServer server = createBusyServer();
+      Restore restore = new Restore(server);
+      Bip44AccountKeyManager keyManager = new Bip44AccountKeyManager(0, NETWORK, restore.store);
+
+      // The first batch of the window moves the last active address to the
+      // end of the window, then the connection drops
+      server.setGetTransactionsCallsLeft(1);
+      Bip44Account account = restore.load(server);
+      assertFalse(account.synchronize(false));
+      assertTrue(server.getTransactionsServed() < total);
+
+      // Retrying with the same account finds the rest of the window
+      server.setGetTransactionsCallsLeft(-1);
+      assertTrue(account.synchronize(false));
+      assertEquals(keyManager.getAddress(false, BUSY_ADDRESSES), account.getReceivingAddress());
+      assertEquals(total, account.getTransactionHistory(0, 2 * total).size());
+      // Nothing was fetched twice
+      assertEquals(busyUninterrupted(), server.getTransactionsServed());
+   }
+
+   @Test
+   public void windowInterruptedBetweenBatchesIsQueriedAgainAfterRestart() throws KeyCipher.InvalidKeyCipher {
+      int total = BUSY_ADDRESSES * TRANSACTIONS_PER_BUSY_ADDRESS;
+      LocalWapiServer server = createBusyServer();
+      Restore restore = new Restore(server);
+      Bip44AccountKeyManager keyManager = new Bip44AccountKeyManager(0, NETWORK, restore.store);
+
+      server.setGetTransactionsCallsLeft(1);
+      restore.synchronize(server, false);
+      assertTrue(server.getTransactionsServed() < total);
+
+      server.setGetTransactionsCallsLeft(-1);
+      Bip44Account account = restore.synchronize(server, true);
+      assertEquals(keyManager.getAddress(false, BUSY_ADDRESSES), account.getReceivingAddress());
+      assertEquals(total, account.getTransactionHistory(0, 2 * total).size());
+      // Nothing was fetched twice
+      assertEquals(busyUninterrupted(), server.getTransactionsServed());
+   }
+
+}